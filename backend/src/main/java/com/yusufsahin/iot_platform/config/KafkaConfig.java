@@ -1,61 +1,340 @@
 package com.yusufsahin.iot_platform.config;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.yusufsahin.iot_platform.dto.AlertMessageDto;
+import com.yusufsahin.iot_platform.dto.SensorDataDto;
+import com.yusufsahin.iot_platform.serde.SensorDataDeserializer;
+import com.yusufsahin.iot_platform.serde.SensorDataFormat;
+import com.yusufsahin.iot_platform.serde.SensorDataSerializer;
+import com.yusufsahin.iot_platform.serde.TimedDeserializer;
+import com.yusufsahin.iot_platform.service.IngestMetrics;
+import com.yusufsahin.iot_platform.service.SensorDataPartitionOwnership;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.kafka.clients.admin.NewTopic;
 import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.CooperativeStickyAssignor;
 import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.common.config.TopicConfig;
+import org.apache.kafka.common.serialization.ByteArrayDeserializer;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
+import org.apache.kafka.common.serialization.Serializer;
 import org.apache.kafka.common.serialization.StringDeserializer;
 import org.apache.kafka.common.serialization.StringSerializer;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.dao.NonTransientDataAccessException;
 import org.springframework.kafka.annotation.EnableKafka;
+import org.springframework.kafka.config.TopicBuilder;
 import org.springframework.kafka.config.ConcurrentKafkaListenerContainerFactory;
 import org.springframework.kafka.core.*;
+import org.springframework.kafka.listener.ContainerProperties;
+import org.springframework.kafka.listener.DefaultErrorHandler;
+import org.springframework.kafka.core.MicrometerConsumerListener;
+import org.springframework.kafka.core.MicrometerProducerListener;
+import org.springframework.kafka.retrytopic.RetryTopicConfiguration;
+import org.springframework.kafka.retrytopic.RetryTopicConfigurationBuilder;
+import org.springframework.kafka.support.serializer.DelegatingByTypeSerializer;
+import org.springframework.kafka.support.serializer.ErrorHandlingDeserializer;
+import org.springframework.kafka.support.serializer.JsonSerializer;
+import org.springframework.util.backoff.FixedBackOff;
 
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
 
 @Configuration
 @EnableKafka
 public class KafkaConfig {
 
+    // Readings the write-behind buffer could not persist; consumed one record at a time and retried through
+    // <topic>-retry-0..n with exponential backoff, then parked in <topic>-dlt (see sensorDataRetryTopicConfiguration)
+    public static final String SENSOR_DATA_TOPIC = "sensor-data";
+    public static final String SENSOR_DATA_FAILED_TOPIC = "sensor-data-failed";
+    public static final String SENSOR_DATA_DLT = SENSOR_DATA_FAILED_TOPIC + "-dlt";
+    // WebSocket frames shared by all instances in cluster fan-out mode (see ClusterBroadcastPublisher)
+    public static final String SENSOR_DATA_BROADCAST_TOPIC = "sensor-data-broadcast";
+    public static final String ALERT_BROADCAST_TOPIC = "alert-broadcast";
+    // Alert transitions for downstream consumers, written transactionally (see AlertTopicPublisher)
+    public static final String ALERTS_TOPIC = "alerts";
+
     // Inject bootstrapServers from application.properties
     @Value("${spring.kafka.bootstrap-servers}")
     private String bootstrapServers;
 
+    // Upper bound on records handed to the batch listener per poll
+    @Value("${iot.kafka.consumer.max-batch-size:500}")
+    private int maxBatchSize;
+
+    // How long the broker may hold a fetch to fill up a batch
+    @Value("${iot.kafka.consumer.max-linger-ms:100}")
+    private int maxLingerMs;
+
+    @Value("${iot.kafka.consumer.min-batch-bytes:65536}")
+    private int minBatchBytes;
+
+    // Listener containers (one consumer thread each), one per partition unless set; threads beyond the partition
+    // count stay idle
+    @Value("${iot.kafka.consumer.concurrency:${iot.kafka.topic.sensor-data.partitions:6}}")
+    private int concurrency;
+
+    @Value("${iot.kafka.topic.sensor-data.partitions:6}")
+    private int sensorDataPartitions;
+
+    @Value("${iot.kafka.topic.replication-factor:1}")
+    private short replicationFactor;
+
+    // Producer batching for the high-volume sensor-data topic
+    @Value("${iot.kafka.producer.linger-ms:20}")
+    private int producerLingerMs;
+
+    @Value("${iot.kafka.producer.batch-size:65536}")
+    private int producerBatchSize;
+
+    @Value("${iot.kafka.producer.compression:lz4}")
+    private String producerCompression;
+
+    // Format producers write to sensor-data; consumers accept both, so this can be switched with a rolling deploy
+    @Value("${iot.kafka.topic.sensor-data.format:JSON}")
+    private SensorDataFormat sensorDataFormat;
+
+    // Non-blocking retries of failed readings: attempts include the first one on sensor-data-failed
+    @Value("${iot.kafka.retry.attempts:5}")
+    private int retryAttempts;
+
+    @Value("${iot.kafka.retry.initial-interval-ms:1000}")
+    private long retryInitialIntervalMs;
+
+    @Value("${iot.kafka.retry.multiplier:4.0}")
+    private double retryMultiplier;
+
+    @Value("${iot.kafka.retry.max-interval-ms:300000}")
+    private long retryMaxIntervalMs;
+
+    // Broadcast frames are only useful while live; a node joining later starts at the end anyway
+    @Value("${iot.websocket.cluster.retention-ms:3600000}")
+    private long broadcastRetentionMs;
+
+    // Must be stable per instance and unique across instances: a restarted instance fences its predecessor's
+    // open transactions under the same id instead of leaving read_committed consumers waiting for their timeout
+    @Value("${iot.alerts.topic.transaction-id-prefix:iot-platform-alerts-${HOSTNAME:local}-}")
+    private String alertsTransactionIdPrefix;
+
     // GROUP_ID_CONFIG will remain hardcoded as per current KafkaConfig.java
     private final String CONSUMER_GROUP_ID = "iot-platform-group";
 
+    // Created on startup if missing; readings are keyed by deviceId, so a device always maps to one partition
     @Bean
-    public KafkaTemplate<String, String> kafkaTemplate() {
-        return new KafkaTemplate<>(producerFactory());
+    public NewTopic sensorDataTopic() {
+        return TopicBuilder.name(SENSOR_DATA_TOPIC)
+                .partitions(sensorDataPartitions)
+                .replicas(replicationFactor)
+                .build();
     }
 
+    // Keyed by deviceId like sensor-data, so the transitions of one alert stay in order
     @Bean
-    public ProducerFactory<String, String> producerFactory() {
+    @ConditionalOnProperty(name = "iot.alerts.topic.enabled", havingValue = "true")
+    public NewTopic alertsTopic() {
+        return TopicBuilder.name(ALERTS_TOPIC)
+                .partitions(sensorDataPartitions)
+                .replicas(replicationFactor)
+                .build();
+    }
+
+    // One partition keeps frames in publishing order; each is a conflated tick or an alert batch, so volume stays low
+    @Bean
+    @ConditionalOnProperty(name = "iot.websocket.cluster.enabled", havingValue = "true")
+    public NewTopic sensorDataBroadcastTopic() {
+        return broadcastTopic(SENSOR_DATA_BROADCAST_TOPIC);
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "iot.websocket.cluster.enabled", havingValue = "true")
+    public NewTopic alertBroadcastTopic() {
+        return broadcastTopic(ALERT_BROADCAST_TOPIC);
+    }
+
+    private NewTopic broadcastTopic(String name) {
+        return TopicBuilder.name(name)
+                .partitions(1)
+                .replicas(replicationFactor)
+                .config(TopicConfig.RETENTION_MS_CONFIG, Long.toString(broadcastRetentionMs))
+                .build();
+    }
+
+    // Every node reads the broadcast topics in a group of its own. Offsets are never committed (MANUAL acks that
+    // never come): a node that (re)starts joins at the live end instead of replaying stale frames.
+    @Bean
+    public ConcurrentKafkaListenerContainerFactory<String, String> broadcastListenerContainerFactory() {
+        Map<String, Object> config = new HashMap<>();
+        config.put(ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
+        config.put(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "latest");
+        config.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, false);
+        config.put(ConsumerConfig.ALLOW_AUTO_CREATE_TOPICS_CONFIG, false);
+        ConcurrentKafkaListenerContainerFactory<String, String> factory = new ConcurrentKafkaListenerContainerFactory<>();
+        factory.setConsumerFactory(new DefaultKafkaConsumerFactory<>(config, new StringDeserializer(), new StringDeserializer()));
+        factory.setBatchListener(true);
+        factory.getContainerProperties().setAckMode(ContainerProperties.AckMode.MANUAL);
+        return factory;
+    }
+
+    // Dead letters keep their original bytes when they could not be decoded, so this template writes both
+    // SensorDataDto and raw byte[] values. Readings are written as JSON whatever the configured format: the
+    // binary layout cannot carry a reading with missing fields, and the DLT stays readable for operators.
+    @Bean
+    public KafkaTemplate<String, Object> deadLetterKafkaTemplate(ObjectMapper objectMapper, MeterRegistry meterRegistry) {
+        Map<String, Object> config = new HashMap<>();
+        config.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
+        config.put(ProducerConfig.LINGER_MS_CONFIG, producerLingerMs);
+        config.put(ProducerConfig.COMPRESSION_TYPE_CONFIG, producerCompression);
+        Map<Class<?>, Serializer<?>> valueSerializers = new LinkedHashMap<>();
+        valueSerializers.put(SensorDataDto.class, new SensorDataSerializer(SensorDataFormat.JSON, objectMapper));
+        valueSerializers.put(byte[].class, new ByteArraySerializer());
+        DefaultKafkaProducerFactory<String, Object> factory = new DefaultKafkaProducerFactory<>(config,
+                new StringSerializer(), new DelegatingByTypeSerializer(valueSerializers));
+        factory.addListener(new MicrometerProducerListener<>(meterRegistry));
+        return new KafkaTemplate<>(factory);
+    }
+
+    // Dead-letter replay reads values as they are stored and republishes them unchanged
+    @Bean
+    public ConsumerFactory<String, byte[]> deadLetterConsumerFactory() {
+        Map<String, Object> config = new HashMap<>();
+        config.put(ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
+        config.put(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "earliest");
+        config.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, false);
+        config.put(ConsumerConfig.MAX_POLL_RECORDS_CONFIG, maxBatchSize);
+        config.put(ConsumerConfig.ALLOW_AUTO_CREATE_TOPICS_CONFIG, false);
+        return new DefaultKafkaConsumerFactory<>(config, new StringDeserializer(), new ByteArrayDeserializer());
+    }
+
+    @Bean
+    public KafkaTemplate<String, String> kafkaTemplate(MeterRegistry meterRegistry) {
+        return new KafkaTemplate<>(producerFactory(meterRegistry));
+    }
+
+    @Bean
+    public ProducerFactory<String, String> producerFactory(MeterRegistry meterRegistry) {
         Map<String, Object> config = new HashMap<>();
         config.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers); // Use injected value
         config.put(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, StringSerializer.class);
         config.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, StringSerializer.class);
-        return new DefaultKafkaProducerFactory<>(config);
+        DefaultKafkaProducerFactory<String, String> factory = new DefaultKafkaProducerFactory<>(config);
+        factory.addListener(new MicrometerProducerListener<>(meterRegistry));
+        return factory;
     }
 
+    // Transactional (and therefore idempotent, acks=all) producer for the alerts topic; it is only used through
+    // executeInTransaction, one transaction per persisted alert batch
     @Bean
-    public ConsumerFactory<String, String> consumerFactory() {
+    public KafkaTemplate<String, AlertMessageDto> alertsKafkaTemplate(ObjectMapper objectMapper, MeterRegistry meterRegistry) {
+        Map<String, Object> config = new HashMap<>();
+        config.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
+        config.put(ProducerConfig.LINGER_MS_CONFIG, producerLingerMs);
+        config.put(ProducerConfig.COMPRESSION_TYPE_CONFIG, producerCompression);
+        JsonSerializer<AlertMessageDto> valueSerializer = new JsonSerializer<>(objectMapper);
+        valueSerializer.setAddTypeInfo(false);
+        DefaultKafkaProducerFactory<String, AlertMessageDto> factory = new DefaultKafkaProducerFactory<>(config,
+                new StringSerializer(), valueSerializer);
+        factory.setTransactionIdPrefix(alertsTransactionIdPrefix);
+        factory.addListener(new MicrometerProducerListener<>(meterRegistry));
+        return new KafkaTemplate<>(factory);
+    }
+
+    @Bean
+    public KafkaTemplate<String, SensorDataDto> sensorDataKafkaTemplate(ObjectMapper objectMapper, MeterRegistry meterRegistry) {
+        return new KafkaTemplate<>(sensorDataProducerFactory(objectMapper, meterRegistry));
+    }
+
+    @Bean
+    public ProducerFactory<String, SensorDataDto> sensorDataProducerFactory(ObjectMapper objectMapper, MeterRegistry meterRegistry) {
+        Map<String, Object> config = new HashMap<>();
+        config.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
+        config.put(ProducerConfig.LINGER_MS_CONFIG, producerLingerMs);
+        config.put(ProducerConfig.BATCH_SIZE_CONFIG, producerBatchSize);
+        config.put(ProducerConfig.COMPRESSION_TYPE_CONFIG, producerCompression);
+        DefaultKafkaProducerFactory<String, SensorDataDto> factory = new DefaultKafkaProducerFactory<>(config,
+                new StringSerializer(), new SensorDataSerializer(sensorDataFormat, objectMapper));
+        factory.addListener(new MicrometerProducerListener<>(meterRegistry));
+        return factory;
+    }
+
+    @Bean
+    public ConsumerFactory<String, SensorDataDto> consumerFactory(ObjectMapper objectMapper, IngestMetrics ingestMetrics,
+                                                                 MeterRegistry meterRegistry) {
         Map<String, Object> config = new HashMap<>();
         config.put(ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers); // Use injected value
         config.put(ConsumerConfig.GROUP_ID_CONFIG, CONSUMER_GROUP_ID); // Keep using the hardcoded group ID
-        config.put(ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class);
-        config.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class);
         config.put(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "earliest");
-        return new DefaultKafkaConsumerFactory<>(config);
+        config.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, false);
+        // Never hand the listener records of aborted or still open producer transactions
+        config.put(ConsumerConfig.ISOLATION_LEVEL_CONFIG, "read_committed");
+        config.put(ConsumerConfig.MAX_POLL_RECORDS_CONFIG, maxBatchSize);
+        config.put(ConsumerConfig.FETCH_MAX_WAIT_MS_CONFIG, maxLingerMs);
+        config.put(ConsumerConfig.FETCH_MIN_BYTES_CONFIG, minBatchBytes);
+        // Rebalances when scaling concurrency or instances only move the partitions that change owner
+        config.put(ConsumerConfig.PARTITION_ASSIGNMENT_STRATEGY_CONFIG, CooperativeStickyAssignor.class.getName());
+        // A record that cannot be decoded reaches the listener with a null value instead of failing the whole poll
+        DefaultKafkaConsumerFactory<String, SensorDataDto> factory = new DefaultKafkaConsumerFactory<>(config,
+                new StringDeserializer(),
+                new ErrorHandlingDeserializer<>(new TimedDeserializer<>(new SensorDataDeserializer(objectMapper),
+                        ingestMetrics.stage(IngestMetrics.Stage.DESERIALIZE))));
+        // Kafka client metrics, including kafka.consumer.fetch.manager.records.lag(.max) per partition
+        factory.addListener(new MicrometerConsumerListener<>(meterRegistry));
+        return factory;
     }
 
     @Bean
-    public ConcurrentKafkaListenerContainerFactory<String, String> kafkaListenerContainerFactory() {
-        ConcurrentKafkaListenerContainerFactory<String, String> factory =
+    public ConcurrentKafkaListenerContainerFactory<String, SensorDataDto> kafkaListenerContainerFactory(
+            ConsumerFactory<String, SensorDataDto> consumerFactory, SensorDataPartitionOwnership partitionOwnership) {
+        ConcurrentKafkaListenerContainerFactory<String, SensorDataDto> factory =
                 new ConcurrentKafkaListenerContainerFactory<>();
-        factory.setConsumerFactory(consumerFactory());
+        factory.setConsumerFactory(consumerFactory);
+        // Each poll is delivered as one List<ConsumerRecord>. Offsets are committed when the write-behind
+        // writer acknowledges the poll after persisting it; MANUAL acks from that thread are queued and
+        // committed by the consumer thread on its next poll (which keeps running while the container is paused).
+        factory.setBatchListener(true);
+        factory.setConcurrency(concurrency);
+        factory.getContainerProperties().setAckMode(ContainerProperties.AckMode.MANUAL);
+        // The hot tier only answers while this node holds every partition
+        factory.getContainerProperties().setConsumerRebalanceListener(partitionOwnership);
+        // The listener only fails when a dead letter cannot be published, i.e. Kafka itself is unavailable;
+        // keep redelivering the poll instead of skipping it after the default ten attempts
+        factory.setCommonErrorHandler(new DefaultErrorHandler(new FixedBackOff(1000L, FixedBackOff.UNLIMITED_ATTEMPTS)));
         return factory;
     }
 
+    // Record listener for the retry chain: each failed reading is retried and dead-lettered on its own
+    @Bean
+    public ConcurrentKafkaListenerContainerFactory<String, SensorDataDto> sensorDataRetryListenerContainerFactory(
+            ConsumerFactory<String, SensorDataDto> consumerFactory) {
+        ConcurrentKafkaListenerContainerFactory<String, SensorDataDto> factory =
+                new ConcurrentKafkaListenerContainerFactory<>();
+        factory.setConsumerFactory(consumerFactory);
+        return factory;
+    }
+
+    // Each retry topic holds records until their backoff has elapsed (its partitions are paused meanwhile),
+    // so retries never block sensor-data. Constraint violations and undecodable records skip straight to the
+    // DLT, whose records carry the kafka_dlt-exception-* and kafka_dlt-original-* headers. Nothing consumes
+    // the DLT (the framework's logging DLT listener is not started); records stay there until replayed.
+    @Bean
+    public RetryTopicConfiguration sensorDataRetryTopicConfiguration(
+            KafkaTemplate<String, Object> deadLetterKafkaTemplate,
+            ConcurrentKafkaListenerContainerFactory<String, SensorDataDto> sensorDataRetryListenerContainerFactory) {
+        return RetryTopicConfigurationBuilder.newInstance()
+                .includeTopic(SENSOR_DATA_FAILED_TOPIC)
+                .maxAttempts(retryAttempts)
+                .exponentialBackoff(retryInitialIntervalMs, retryMultiplier, retryMaxIntervalMs)
+                .suffixTopicsWithIndexValues()
+                .notRetryOn(NonTransientDataAccessException.class)
+                .traversingCauses()
+                .autoCreateTopicsWith(sensorDataPartitions, replicationFactor)
+                .listenerFactory(sensorDataRetryListenerContainerFactory)
+                .autoStartDltHandler(false)
+                .create(deadLetterKafkaTemplate);
+    }
+
 }
@@ -1,12 +1,21 @@
 package com.yusufsahin.iot_platform.controller;
 
 import com.yusufsahin.iot_platform.dto.AlertMessageDto;
+import com.yusufsahin.iot_platform.dto.AlertMessagePage;
+import com.yusufsahin.iot_platform.dto.KeysetCursor;
+import com.yusufsahin.iot_platform.model.AlertMessage;
 import com.yusufsahin.iot_platform.service.AlertService;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpStatus;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
 
+import java.time.LocalDateTime;
 import java.util.List;
 
 @RestController
@@ -14,18 +23,53 @@ import java.util.List;
 public class AlertMessageController {
 
     private final AlertService alertService;
+    private final int defaultPageLimit;
+    private final int maxPageLimit;
 
-    public AlertMessageController(AlertService alertService) {
+    public AlertMessageController(AlertService alertService,
+                                  @Value("${iot.alerts.page.default-limit:100}") int defaultPageLimit,
+                                  @Value("${iot.alerts.page.max-limit:1000}") int maxPageLimit) {
         this.alertService = alertService;
+        this.defaultPageLimit = defaultPageLimit;
+        this.maxPageLimit = maxPageLimit;
     }
 
+    // The newest limit alerts (default-limit, at most max-limit), newest first; older ones are paged through /search
     @GetMapping
-    public List<AlertMessageDto> getAllAlertMessages() {
-        return alertService.getAllAlertMessages();
+    public List<AlertMessageDto> getAllAlertMessages(@RequestParam(value = "limit", required = false) Integer limit) {
+        return alertService.getLatestAlertMessages(pageLimit(limit));
     }
-    
+
     @GetMapping("/device/{deviceId}")
-    public List<AlertMessageDto> getAlertMessagesByDeviceId(@PathVariable("deviceId") String deviceId) {
-        return alertService.getAlertMessagesByDeviceId(deviceId);
+    public List<AlertMessageDto> getAlertMessagesByDeviceId(@PathVariable("deviceId") String deviceId,
+                                                            @RequestParam(value = "limit", required = false) Integer limit) {
+        return alertService.getLatestAlertMessagesByDeviceId(deviceId, pageLimit(limit));
+    }
+
+    // Keyset-paginated alerts of one device, newest first; pass the returned nextCursor to fetch older alerts
+    @GetMapping("/search")
+    public AlertMessagePage searchAlertMessages(
+            @RequestParam("deviceId") String deviceId,
+            @RequestParam(value = "from", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @RequestParam(value = "to", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+            @RequestParam(value = "severity", required = false) AlertMessage.AlertSeverity severity,
+            @RequestParam(value = "alertType", required = false) AlertMessage.AlertType alertType,
+            @RequestParam(value = "limit", required = false) Integer limit,
+            @RequestParam(value = "cursor", required = false) String cursor) {
+        if (from != null && to != null && !from.isBefore(to)) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "'from' must be before 'to'");
+        }
+        int pageLimit = pageLimit(limit);
+        KeysetCursor before;
+        try {
+            before = cursor == null ? null : KeysetCursor.decode(cursor);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid cursor", e);
+        }
+        return alertService.getAlertMessagePage(deviceId, from, to, severity, alertType, before, pageLimit);
+    }
+
+    private int pageLimit(Integer limit) {
+        return limit == null ? defaultPageLimit : Math.max(1, Math.min(limit, maxPageLimit));
     }
-} 
\ No newline at end of file
+}
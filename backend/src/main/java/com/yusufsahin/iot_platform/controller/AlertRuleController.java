@@ -0,0 +1,32 @@
+package com.yusufsahin.iot_platform.controller;
+
+import com.yusufsahin.iot_platform.service.rule.AlertRuleDefinition;
+import com.yusufsahin.iot_platform.service.rule.AlertRuleEngine;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.io.IOException;
+import java.util.List;
+
+@RestController
+@RequestMapping("/api/v1/alert-rules")
+public class AlertRuleController {
+
+    private final AlertRuleEngine alertRuleEngine;
+
+    public AlertRuleController(AlertRuleEngine alertRuleEngine) {
+        this.alertRuleEngine = alertRuleEngine;
+    }
+
+    @GetMapping
+    public List<AlertRuleDefinition> getAlertRules() {
+        return alertRuleEngine.getRules();
+    }
+
+    @PostMapping("/reload")
+    public List<AlertRuleDefinition> reloadAlertRules() throws IOException {
+        return alertRuleEngine.reload().getDefinitions();
+    }
+}
@@ -0,0 +1,29 @@
+package com.yusufsahin.iot_platform.controller;
+
+import com.yusufsahin.iot_platform.dto.DeadLetterReplayResult;
+import com.yusufsahin.iot_platform.service.DeadLetterReplayService;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+@RestController
+@RequestMapping("/api/v1/admin/dead-letters")
+public class DeadLetterController {
+
+    private final DeadLetterReplayService deadLetterReplayService;
+    private final int defaultMaxRecords;
+
+    public DeadLetterController(DeadLetterReplayService deadLetterReplayService,
+                                @Value("${iot.kafka.dlt.replay.max-records:10000}") int defaultMaxRecords) {
+        this.deadLetterReplayService = deadLetterReplayService;
+        this.defaultMaxRecords = defaultMaxRecords;
+    }
+
+    // Sends up to max dead letters back through the normal sensor-data ingest, oldest first
+    @PostMapping("/replay")
+    public DeadLetterReplayResult replay(@RequestParam(value = "max", required = false) Integer max) {
+        return deadLetterReplayService.replay(max == null ? defaultMaxRecords : Math.max(1, max));
+    }
+}
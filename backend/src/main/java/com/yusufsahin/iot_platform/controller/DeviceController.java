@@ -0,0 +1,37 @@
+package com.yusufsahin.iot_platform.controller;
+
+import com.yusufsahin.iot_platform.dto.SensorDataDto;
+import com.yusufsahin.iot_platform.service.LatestReadingCache;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.List;
+
+@RestController
+@RequestMapping("/api/v1/devices")
+public class DeviceController {
+
+    private final LatestReadingCache latestReadingCache;
+
+    public DeviceController(LatestReadingCache latestReadingCache) {
+        this.latestReadingCache = latestReadingCache;
+    }
+
+    @GetMapping("/latest")
+    public List<SensorDataDto> getLatestReadings() {
+        return latestReadingCache.getAllLatest();
+    }
+
+    @GetMapping("/{deviceId}/latest")
+    public SensorDataDto getLatestReading(@PathVariable("deviceId") String deviceId) {
+        SensorDataDto latest = latestReadingCache.getLatest(deviceId);
+        if (latest == null) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "No readings for device " + deviceId);
+        }
+        return latest;
+    }
+}
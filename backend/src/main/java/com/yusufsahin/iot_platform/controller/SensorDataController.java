@@ -1,32 +1,172 @@
 package com.yusufsahin.iot_platform.controller;
 
+import com.yusufsahin.iot_platform.dto.BulkIngestResult;
+import com.yusufsahin.iot_platform.dto.KeysetCursor;
+import com.yusufsahin.iot_platform.dto.SensorDataAggregates;
 import com.yusufsahin.iot_platform.dto.SensorDataDto;
+import com.yusufsahin.iot_platform.serde.SensorDataFormat;
+import com.yusufsahin.iot_platform.service.BulkIngestService;
 import com.yusufsahin.iot_platform.service.SensorDataService;
+import com.yusufsahin.iot_platform.service.rollup.RollupResolution;
+import com.yusufsahin.iot_platform.service.rollup.SensorDataRollupService;
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.async.WebAsyncTask;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDateTime;
 import java.util.List;
+import java.util.concurrent.TimeoutException;
+import java.util.zip.GZIPInputStream;
 
 @RestController
 @RequestMapping("/api/v1/sensor-data")
 public class SensorDataController {
 
+    private static final String BULK_NDJSON = "application/x-ndjson";
+
     private final SensorDataService sensorDataService;
+    private final SensorDataRollupService rollupService;
+    private final BulkIngestService bulkIngestService;
+    private final int defaultPageLimit;
+    private final int maxPageLimit;
+    private final Duration defaultWindow;
+
+    // Uploads block on the client for as long as its body takes to arrive; on virtual threads a slow gateway
+    // costs a parked continuation instead of a platform thread
+    private final SimpleAsyncTaskExecutor bulkIngestExecutor = new SimpleAsyncTaskExecutor("bulk-ingest-");
 
-    public SensorDataController(SensorDataService sensorDataService) {
+    public SensorDataController(SensorDataService sensorDataService,
+                                SensorDataRollupService rollupService,
+                                BulkIngestService bulkIngestService,
+                                @Value("${iot.sensor-data.page.default-limit:500}") int defaultPageLimit,
+                                @Value("${iot.sensor-data.page.max-limit:10000}") int maxPageLimit,
+                                @Value("${iot.sensor-data.default-window-minutes:60}") long defaultWindowMinutes) {
         this.sensorDataService = sensorDataService;
+        this.rollupService = rollupService;
+        this.bulkIngestService = bulkIngestService;
+        this.bulkIngestExecutor.setVirtualThreads(true);
+        this.defaultPageLimit = defaultPageLimit;
+        this.maxPageLimit = maxPageLimit;
+        this.defaultWindow = Duration.ofMinutes(defaultWindowMinutes);
     }
 
+    // Readings in [from, to); to defaults to now and from to default-window-minutes before to.
+    // Longer histories are paged through /readings or downloaded from /export.
     @GetMapping
-    public List<SensorDataDto> getAllSensorData() {
-        return sensorDataService.getAllSensorData();
+    public List<SensorDataDto> getAllSensorData(
+            @RequestParam(value = "from", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @RequestParam(value = "to", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to) {
+        LocalDateTime end = to != null ? to : LocalDateTime.now();
+        LocalDateTime start = from != null ? from : end.minus(defaultWindow);
+        if (!start.isBefore(end)) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "'from' must be before 'to'");
+        }
+        return sensorDataService.getSensorData(start, end);
     }
 
+    // Same window defaults as above, for one device
     @GetMapping("/device/{deviceId}")
-    public List<SensorDataDto> getSensorDataByDeviceId(@PathVariable("deviceId") String deviceId) {
-        return sensorDataService.getSensorDataByDeviceId(deviceId);
+    public List<SensorDataDto> getSensorDataByDeviceId(
+            @PathVariable("deviceId") String deviceId,
+            @RequestParam(value = "from", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @RequestParam(value = "to", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to) {
+        LocalDateTime end = to != null ? to : LocalDateTime.now();
+        LocalDateTime start = from != null ? from : end.minus(defaultWindow);
+        if (!start.isBefore(end)) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "'from' must be before 'to'");
+        }
+        return sensorDataService.getSensorDataByDeviceId(deviceId, start, end);
+    }
+
+    // Keyset-paginated readings of one device in [from, to); pass the returned nextCursor to fetch the next page
+    @GetMapping("/readings")
+    public ResponseEntity<StreamingResponseBody> getSensorDataPage(
+            @RequestParam("deviceId") String deviceId,
+            @RequestParam(value = "from", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @RequestParam(value = "to", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+            @RequestParam(value = "limit", required = false) Integer limit,
+            @RequestParam(value = "cursor", required = false) String cursor) {
+        if (from != null && to != null && !from.isBefore(to)) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "'from' must be before 'to'");
+        }
+        int pageLimit = limit == null ? defaultPageLimit : Math.max(1, Math.min(limit, maxPageLimit));
+        KeysetCursor after;
+        try {
+            after = cursor == null ? null : KeysetCursor.decode(cursor);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid cursor", e);
+        }
+
+        StreamingResponseBody body = out -> sensorDataService.writeSensorDataPage(deviceId, from, to, after, pageLimit, out);
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(body);
+    }
+
+    // Whole [from, to) range of one device (or of all devices without deviceId) as a streamed CSV download
+    @GetMapping("/export")
+    public ResponseEntity<StreamingResponseBody> exportSensorData(
+            @RequestParam(value = "deviceId", required = false) String deviceId,
+            @RequestParam("from") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @RequestParam("to") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to) {
+        if (!from.isBefore(to)) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "'from' must be before 'to'");
+        }
+        String filename = (deviceId == null ? "sensor-data" : "sensor-data-" + deviceId) + ".csv";
+        StreamingResponseBody body = out -> sensorDataService.exportCsv(deviceId, from, to, out);
+        return ResponseEntity.ok()
+                .contentType(new MediaType("text", "csv", StandardCharsets.UTF_8))
+                .header(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.attachment()
+                        .filename(filename, StandardCharsets.UTF_8).build().toString())
+                .body(body);
+    }
+
+    // Bulk upload for gateways: NDJSON (application/x-ndjson) or length-prefixed binary records
+    // (application/octet-stream, see SensorDataRecordReader), optionally gzip-encoded. Responds once the
+    // accepted readings are persisted, with per-record reasons for the first rejected ones.
+    @PostMapping(value = "/bulk", consumes = {BULK_NDJSON, MediaType.APPLICATION_OCTET_STREAM_VALUE})
+    public WebAsyncTask<BulkIngestResult> ingestBulk(HttpServletRequest request) {
+        SensorDataFormat format = MediaType.APPLICATION_OCTET_STREAM.isCompatibleWith(MediaType.parseMediaType(request.getContentType()))
+                ? SensorDataFormat.BINARY
+                : SensorDataFormat.JSON;
+        boolean gzip = "gzip".equalsIgnoreCase(request.getHeader(HttpHeaders.CONTENT_ENCODING));
+        return new WebAsyncTask<>(null, bulkIngestExecutor, () -> {
+            try (InputStream body = gzip ? new GZIPInputStream(request.getInputStream()) : request.getInputStream()) {
+                return bulkIngestService.ingest(body, format);
+            } catch (TimeoutException e) {
+                throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Readings not persisted in time, retry the upload", e);
+            }
+        });
+    }
+
+    // Rolled-up min/max/avg/count/last per metric; resolution defaults to the finest one that fits the range
+    @GetMapping("/aggregates")
+    public SensorDataAggregates getSensorDataAggregates(
+            @RequestParam("deviceId") String deviceId,
+            @RequestParam("from") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @RequestParam(value = "to", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+            @RequestParam(value = "resolution", required = false) RollupResolution resolution) {
+        LocalDateTime end = to != null ? to : LocalDateTime.now();
+        if (!from.isBefore(end)) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "'from' must be before 'to'");
+        }
+        return rollupService.getAggregates(deviceId, from, end, resolution);
     }
 
 }
@@ -9,6 +9,11 @@ public record AlertMessageDto(
         AlertMessage.AlertSeverity severity,
         AlertMessage.AlertType alertType,
         LocalDateTime timestamp,
-        Long sensorDataId
+        String deviceId,
+        Long sensorDataId,
+        AlertMessage.AlertStatus status,
+        int occurrences,
+        LocalDateTime lastSeenAt,
+        LocalDateTime resolvedAt
 ) {
 }
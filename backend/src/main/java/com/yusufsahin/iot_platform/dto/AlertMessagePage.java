@@ -0,0 +1,9 @@
+package com.yusufsahin.iot_platform.dto;
+
+import java.util.List;
+
+public record AlertMessagePage(
+        List<AlertMessageDto> items,
+        String nextCursor
+) {
+}
@@ -0,0 +1,11 @@
+package com.yusufsahin.iot_platform.dto;
+
+import java.util.List;
+
+// errors describes the first rejected records by their 1-based position in the upload
+public record BulkIngestResult(
+        long accepted,
+        long rejected,
+        List<String> errors
+) {
+}
@@ -0,0 +1,8 @@
+package com.yusufsahin.iot_platform.dto;
+
+// remaining: dead letters still queued after this replay (more can be replayed with another call)
+public record DeadLetterReplayResult(
+        long replayed,
+        long remaining
+) {
+}
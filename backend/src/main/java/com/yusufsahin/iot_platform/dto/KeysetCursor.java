@@ -0,0 +1,37 @@
+package com.yusufsahin.iot_platform.dto;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+
+// Keyset position (timestamp, id) of the last row of a page, exchanged with clients as an opaque token
+public record KeysetCursor(LocalDateTime timestamp, long id) {
+
+    public static KeysetCursor of(SensorDataDto sensorData) {
+        return new KeysetCursor(sensorData.timestamp(), sensorData.id());
+    }
+
+    public static KeysetCursor of(AlertMessageDto alertMessage) {
+        return new KeysetCursor(alertMessage.timestamp(), alertMessage.id());
+    }
+
+    public String encode() {
+        String raw = timestamp + "|" + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static KeysetCursor decode(String token) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+            int separator = raw.lastIndexOf('|');
+            if (separator < 0) {
+                throw new IllegalArgumentException("Malformed cursor: " + token);
+            }
+            return new KeysetCursor(LocalDateTime.parse(raw.substring(0, separator)),
+                    Long.parseLong(raw.substring(separator + 1)));
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("Malformed cursor: " + token, e);
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package com.yusufsahin.iot_platform.dto;
+
+import com.yusufsahin.iot_platform.model.Metric;
+
+import java.time.LocalDateTime;
+
+public record SensorDataAggregateDto(
+        LocalDateTime bucketStart,
+        Metric metric,
+        double min,
+        double max,
+        double avg,
+        long count,
+        double last
+) {
+}
@@ -0,0 +1,15 @@
+package com.yusufsahin.iot_platform.dto;
+
+import com.yusufsahin.iot_platform.service.rollup.RollupResolution;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+public record SensorDataAggregates(
+        String deviceId,
+        RollupResolution resolution,
+        LocalDateTime from,
+        LocalDateTime to,
+        List<SensorDataAggregateDto> buckets
+) {
+}
@@ -1,6 +1,7 @@
 package com.yusufsahin.iot_platform.dto.converter;
 
 import com.yusufsahin.iot_platform.dto.AlertMessageDto;
+import org.hibernate.proxy.HibernateProxy;
 
 public class AlertMessageDtoConverter {
 
@@ -11,7 +12,24 @@ public class AlertMessageDtoConverter {
             alertMessage.getSeverity(),
             alertMessage.getAlertType(),
             alertMessage.getTimestamp(),
-            alertMessage.getSensorData().getId()
+            alertMessage.getDeviceId(),
+            sensorDataId(alertMessage),
+            alertMessage.getStatus(),
+            alertMessage.getOccurrences(),
+            alertMessage.getLastSeenAt(),
+            alertMessage.getResolvedAt()
         );
     }
+
+    // Reads the id from the proxy's lazy initializer so listing alerts never loads the reading
+    private static Long sensorDataId(com.yusufsahin.iot_platform.model.AlertMessage alertMessage) {
+        Object sensorData = alertMessage.getSensorData();
+        if (sensorData == null) {
+            return null;
+        }
+        if (sensorData instanceof HibernateProxy proxy) {
+            return (Long) proxy.getHibernateLazyInitializer().getIdentifier();
+        }
+        return alertMessage.getSensorData().getId();
+    }
 }
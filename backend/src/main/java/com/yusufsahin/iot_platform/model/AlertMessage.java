@@ -30,6 +30,20 @@ public class AlertMessage {
     @Column(nullable = false)
     private LocalDateTime timestamp;
 
+    // Denormalized from the triggering reading so alerts can be filtered by device without joining sensors
+    @Column(name = "device_id")
+    private String deviceId;
+
+    // One row per (device, AlertType) episode: opened once, updated while ongoing, closed on resolve
+    @Enumerated(EnumType.STRING)
+    private AlertStatus status = AlertStatus.OPEN;
+
+    private int occurrences = 1;
+
+    private LocalDateTime lastSeenAt;
+
+    private LocalDateTime resolvedAt;
+
     @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "sensor_data_id")
     private SensorData sensorData;
@@ -38,10 +52,16 @@ public class AlertMessage {
         INFO, WARNING, ERROR, CRITICAL
     }
 
+    public enum AlertStatus {
+        OPEN, ONGOING, RESOLVED
+    }
+
     public enum AlertType {
         TEMPERATURE_HIGH, TEMPERATURE_LOW,
         HUMIDITY_HIGH, HUMIDITY_LOW,
         PRESSURE_HIGH, PRESSURE_LOW,
-        DEVICE_OFFLINE, BATTERY_LOW
+        DEVICE_OFFLINE, BATTERY_LOW,
+        // Raised by the streaming anomaly detector rather than by threshold rules
+        ZSCORE_ANOMALY, SUDDEN_JUMP
     }
 }
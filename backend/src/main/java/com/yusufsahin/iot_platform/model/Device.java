@@ -0,0 +1,31 @@
+package com.yusufsahin.iot_platform.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+// Registry row per device; readings reference it through deviceKey. Instances held by DeviceRegistry
+// are shared across threads and never modified, a location change replaces the cached instance.
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Entity
+@Table(name = "devices", schema = "iot_platform")
+public class Device {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @Column(name = "device_key")
+    private Integer deviceKey;
+
+    @Column(nullable = false, unique = true)
+    private String deviceId;
+
+    private String location;
+
+    @Column(nullable = false, insertable = false, updatable = false)
+    private LocalDateTime createdAt;
+}
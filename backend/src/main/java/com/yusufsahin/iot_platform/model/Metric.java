@@ -0,0 +1,21 @@
+package com.yusufsahin.iot_platform.model;
+
+public enum Metric {
+    TEMPERATURE,
+    HUMIDITY,
+    PRESSURE,
+    BATTERY_LEVEL;
+
+    // Cached copy, values() clones the array on every call
+    public static final Metric[] VALUES = values();
+
+    // Returns NaN when the reading does not carry this metric
+    public double read(SensorData sensorData) {
+        return switch (this) {
+            case TEMPERATURE -> sensorData.getTemperature() != null ? sensorData.getTemperature() : Double.NaN;
+            case HUMIDITY -> sensorData.getHumidity() != null ? sensorData.getHumidity() : Double.NaN;
+            case PRESSURE -> sensorData.getPressure() != null ? sensorData.getPressure() : Double.NaN;
+            case BATTERY_LEVEL -> sensorData.getBatteryLevel() != null ? sensorData.getBatteryLevel() : Double.NaN;
+        };
+    }
+}
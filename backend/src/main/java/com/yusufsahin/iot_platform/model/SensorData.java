@@ -19,7 +19,12 @@ public class SensorData {
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
 
-    @Column(nullable = false)
+    // Key into iot_platform.devices, resolved through DeviceRegistry
+    @Column(name = "device_key", nullable = false)
+    private Integer deviceKey;
+
+    // Not stored per reading: filled from the registry (or taken from the incoming message on ingest)
+    @Transient
     private String deviceId;
 
     private Double temperature; // °C
@@ -29,7 +34,9 @@ public class SensorData {
     @Column(nullable = false)
     private LocalDateTime timestamp;
 
+    // Where the device was when it took this reading; the registry only knows its latest location
     private String location;
+
     private Integer batteryLevel; // 0-100
 
     @OneToMany(mappedBy = "sensorData", cascade = CascadeType.ALL, fetch = FetchType.LAZY)
@@ -0,0 +1,105 @@
+package com.yusufsahin.iot_platform.repository;
+
+import com.yusufsahin.iot_platform.model.AlertMessage;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Types;
+import java.util.List;
+import java.util.stream.Collectors;
+
+@Repository
+public class AlertMessageBatchRepository {
+
+    private static final int MAX_ROWS_PER_STATEMENT = 1000;
+
+    // An alert row is identified by its key (device_id, alert_type, timestamp), see V7__unique_alert_key.sql.
+    // Writes never replace a newer state with an older one: a resolved row is final and occurrences only grow.
+    // That makes replaying a spilled or retried state harmless, whichever of its row's writes got there first.
+    private static final String NEWER = "a.resolved_at IS NULL AND a.occurrences <= EXCLUDED.occurrences";
+    private static final List<String> STATE_COLUMNS =
+            List.of("message", "severity", "sensor_data_id", "status", "occurrences", "last_seen_at", "resolved_at");
+
+    private static final String INSERT_PREFIX =
+            "INSERT INTO iot_platform.alert_messages AS a " +
+            "(message, severity, alert_type, timestamp, device_id, sensor_data_id, status, occurrences, last_seen_at, resolved_at) VALUES ";
+    private static final String ROW_PLACEHOLDER = "(?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+    // Every row is returned, the kept ones too, so ids map back by position
+    private static final String UPSERT_SUFFIX =
+            " ON CONFLICT (device_id, alert_type, timestamp) DO UPDATE SET " +
+            STATE_COLUMNS.stream()
+                    .map(column -> column + " = CASE WHEN " + NEWER + " THEN EXCLUDED." + column + " ELSE a." + column + " END")
+                    .collect(Collectors.joining(", ")) +
+            " RETURNING id";
+
+    private static final String UPDATE =
+            "UPDATE iot_platform.alert_messages SET message = ?, severity = ?, sensor_data_id = ?, status = ?, " +
+            "occurrences = ?, last_seen_at = ?, resolved_at = ? " +
+            "WHERE id = ? AND timestamp = ? AND resolved_at IS NULL AND occurrences <= ?";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public AlertMessageBatchRepository(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    // Same multi-row INSERT ... RETURNING id scheme as SensorDataBatchRepository, updating the row of an alert key
+    // that already exists. A key must not occur twice in one call.
+    public void upsertAll(List<AlertMessage> alerts) {
+        for (int from = 0; from < alerts.size(); from += MAX_ROWS_PER_STATEMENT) {
+            upsertChunk(alerts.subList(from, Math.min(from + MAX_ROWS_PER_STATEMENT, alerts.size())));
+        }
+    }
+
+    // JDBC batch of single-row updates by id and opening timestamp, skipping rows that hold a newer state
+    public void updateAll(List<AlertMessage> alerts) {
+        if (alerts.isEmpty()) {
+            return;
+        }
+        jdbcTemplate.batchUpdate(UPDATE, alerts, MAX_ROWS_PER_STATEMENT, (ps, alert) -> {
+            ps.setString(1, alert.getMessage());
+            ps.setString(2, alert.getSeverity().name());
+            ps.setObject(3, alert.getSensorData() != null ? alert.getSensorData().getId() : null, Types.BIGINT);
+            ps.setString(4, alert.getStatus().name());
+            ps.setInt(5, alert.getOccurrences());
+            ps.setObject(6, alert.getLastSeenAt());
+            ps.setObject(7, alert.getResolvedAt());
+            ps.setLong(8, alert.getId());
+            // The opening timestamp never changes; it lets day-partitioned storage prune to a single partition
+            ps.setObject(9, alert.getTimestamp());
+            ps.setInt(10, alert.getOccurrences());
+        });
+    }
+
+    private void upsertChunk(List<AlertMessage> chunk) {
+        StringBuilder sql = new StringBuilder(INSERT_PREFIX.length() + chunk.size() * (ROW_PLACEHOLDER.length() + 1) + UPSERT_SUFFIX.length());
+        sql.append(INSERT_PREFIX);
+        for (int i = 0; i < chunk.size(); i++) {
+            if (i > 0) {
+                sql.append(',');
+            }
+            sql.append(ROW_PLACEHOLDER);
+        }
+        sql.append(UPSERT_SUFFIX);
+
+        List<Long> ids = jdbcTemplate.query(sql.toString(), ps -> {
+            int index = 1;
+            for (AlertMessage alert : chunk) {
+                ps.setString(index++, alert.getMessage());
+                ps.setString(index++, alert.getSeverity() != null ? alert.getSeverity().name() : null);
+                ps.setString(index++, alert.getAlertType() != null ? alert.getAlertType().name() : null);
+                ps.setObject(index++, alert.getTimestamp());
+                ps.setString(index++, alert.getDeviceId());
+                ps.setObject(index++, alert.getSensorData() != null ? alert.getSensorData().getId() : null, Types.BIGINT);
+                ps.setString(index++, alert.getStatus() != null ? alert.getStatus().name() : null);
+                ps.setInt(index++, alert.getOccurrences());
+                ps.setObject(index++, alert.getLastSeenAt());
+                ps.setObject(index++, alert.getResolvedAt());
+            }
+        }, (rs, rowNum) -> rs.getLong(1));
+
+        for (int i = 0; i < chunk.size(); i++) {
+            chunk.get(i).setId(ids.get(i));
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package com.yusufsahin.iot_platform.repository;
+
+import com.yusufsahin.iot_platform.dto.AlertMessageDto;
+import com.yusufsahin.iot_platform.dto.KeysetCursor;
+import com.yusufsahin.iot_platform.model.AlertMessage;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+@Repository
+public class AlertMessageQueryRepository {
+
+    private static final String COLUMNS = "id, message, severity, alert_type, timestamp, device_id, sensor_data_id, " +
+            "status, occurrences, last_seen_at, resolved_at";
+
+    private static final RowMapper<AlertMessageDto> ALERT_MESSAGE_ROW_MAPPER = (rs, rowNum) -> new AlertMessageDto(
+            rs.getLong("id"),
+            rs.getString("message"),
+            enumOrNull(AlertMessage.AlertSeverity.class, rs.getString("severity")),
+            enumOrNull(AlertMessage.AlertType.class, rs.getString("alert_type")),
+            rs.getTimestamp("timestamp").toLocalDateTime(),
+            rs.getString("device_id"),
+            rs.getObject("sensor_data_id", Long.class),
+            enumOrNull(AlertMessage.AlertStatus.class, rs.getString("status")),
+            rs.getInt("occurrences"),
+            toLocalDateTime(rs.getTimestamp("last_seen_at")),
+            toLocalDateTime(rs.getTimestamp("resolved_at"))
+    );
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public AlertMessageQueryRepository(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    // Keyset page of one device's alerts, newest first, served by idx_alert_messages_device_timestamp.
+    // from is inclusive, to is exclusive; severity and alertType are optional equality filters.
+    public List<AlertMessageDto> findByDevice(String deviceId, LocalDateTime from, LocalDateTime to,
+                                              AlertMessage.AlertSeverity severity, AlertMessage.AlertType alertType,
+                                              KeysetCursor before, int limit) {
+        StringBuilder sql = new StringBuilder("SELECT ").append(COLUMNS)
+                .append(" FROM iot_platform.alert_messages WHERE device_id = ?");
+        List<Object> args = new ArrayList<>(8);
+        args.add(deviceId);
+        if (from != null) {
+            sql.append(" AND timestamp >= ?");
+            args.add(Timestamp.valueOf(from));
+        }
+        if (to != null) {
+            sql.append(" AND timestamp < ?");
+            args.add(Timestamp.valueOf(to));
+        }
+        if (severity != null) {
+            sql.append(" AND severity = ?");
+            args.add(severity.name());
+        }
+        if (alertType != null) {
+            sql.append(" AND alert_type = ?");
+            args.add(alertType.name());
+        }
+        if (before != null) {
+            sql.append(" AND (timestamp, id) < (?, ?)");
+            args.add(Timestamp.valueOf(before.timestamp()));
+            args.add(before.id());
+        }
+        sql.append(" ORDER BY timestamp DESC, id DESC LIMIT ?");
+        args.add(limit);
+
+        return jdbcTemplate.query(sql.toString(), ALERT_MESSAGE_ROW_MAPPER, args.toArray());
+    }
+
+    // Newest alerts across all devices, served by idx_alert_messages_timestamp
+    public List<AlertMessageDto> findLatest(int limit) {
+        return jdbcTemplate.query("SELECT " + COLUMNS + " FROM iot_platform.alert_messages " +
+                "ORDER BY timestamp DESC, id DESC LIMIT ?", ALERT_MESSAGE_ROW_MAPPER, limit);
+    }
+
+    // Alerts still open or ongoing, oldest first, served by idx_alert_messages_unresolved
+    public void streamUnresolved(Consumer<AlertMessage> consumer) {
+        jdbcTemplate.query("SELECT id, message, severity, alert_type, timestamp, device_id, status, occurrences, last_seen_at " +
+                "FROM iot_platform.alert_messages WHERE status IN ('OPEN', 'ONGOING') " +
+                "AND device_id IS NOT NULL AND alert_type IS NOT NULL ORDER BY timestamp, id", rs -> {
+            AlertMessage alert = new AlertMessage();
+            alert.setId(rs.getLong("id"));
+            alert.setMessage(rs.getString("message"));
+            alert.setSeverity(enumOrNull(AlertMessage.AlertSeverity.class, rs.getString("severity")));
+            alert.setAlertType(AlertMessage.AlertType.valueOf(rs.getString("alert_type")));
+            alert.setTimestamp(rs.getTimestamp("timestamp").toLocalDateTime());
+            alert.setDeviceId(rs.getString("device_id"));
+            alert.setStatus(AlertMessage.AlertStatus.valueOf(rs.getString("status")));
+            alert.setOccurrences(rs.getInt("occurrences"));
+            alert.setLastSeenAt(toLocalDateTime(rs.getTimestamp("last_seen_at")));
+            consumer.accept(alert);
+        });
+    }
+
+    private static <E extends Enum<E>> E enumOrNull(Class<E> type, String name) {
+        return name != null ? Enum.valueOf(type, name) : null;
+    }
+
+    private static LocalDateTime toLocalDateTime(Timestamp timestamp) {
+        return timestamp != null ? timestamp.toLocalDateTime() : null;
+    }
+}
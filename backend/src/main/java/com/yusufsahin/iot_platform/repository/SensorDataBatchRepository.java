@@ -0,0 +1,64 @@
+package com.yusufsahin.iot_platform.repository;
+
+import com.yusufsahin.iot_platform.model.SensorData;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Types;
+import java.util.List;
+
+@Repository
+public class SensorDataBatchRepository {
+
+    // 7 bind parameters per row keeps a full chunk well under the 32767 parameter limit of the driver
+    static final int MAX_ROWS_PER_STATEMENT = 1000;
+
+    private static final String INSERT_PREFIX =
+            "INSERT INTO iot_platform.sensors " +
+            "(device_key, temperature, humidity, pressure, timestamp, location, battery_level) VALUES ";
+    private static final String ROW_PLACEHOLDER = "(?, ?, ?, ?, ?, ?, ?)";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public SensorDataBatchRepository(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    // One multi-row INSERT per chunk; generated ids are written back onto the entities.
+    // Runs inside the caller's transaction; deviceKey must already be assigned by DeviceRegistry.
+    public void insertAll(List<SensorData> readings) {
+        for (int from = 0; from < readings.size(); from += MAX_ROWS_PER_STATEMENT) {
+            insertChunk(readings.subList(from, Math.min(from + MAX_ROWS_PER_STATEMENT, readings.size())));
+        }
+    }
+
+    private void insertChunk(List<SensorData> chunk) {
+        StringBuilder sql = new StringBuilder(INSERT_PREFIX.length() + chunk.size() * (ROW_PLACEHOLDER.length() + 1) + 16);
+        sql.append(INSERT_PREFIX);
+        for (int i = 0; i < chunk.size(); i++) {
+            if (i > 0) {
+                sql.append(',');
+            }
+            sql.append(ROW_PLACEHOLDER);
+        }
+        sql.append(" RETURNING id");
+
+        // PostgreSQL returns the RETURNING rows of a single multi-row VALUES insert in input order
+        List<Long> ids = jdbcTemplate.query(sql.toString(), ps -> {
+            int index = 1;
+            for (SensorData reading : chunk) {
+                ps.setInt(index++, reading.getDeviceKey());
+                ps.setObject(index++, reading.getTemperature(), Types.DOUBLE);
+                ps.setObject(index++, reading.getHumidity(), Types.DOUBLE);
+                ps.setObject(index++, reading.getPressure(), Types.DOUBLE);
+                ps.setObject(index++, reading.getTimestamp());
+                ps.setString(index++, reading.getLocation());
+                ps.setObject(index++, reading.getBatteryLevel(), Types.INTEGER);
+            }
+        }, (rs, rowNum) -> rs.getLong(1));
+
+        for (int i = 0; i < chunk.size(); i++) {
+            chunk.get(i).setId(ids.get(i));
+        }
+    }
+}
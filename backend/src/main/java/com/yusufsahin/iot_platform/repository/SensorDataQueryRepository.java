@@ -0,0 +1,93 @@
+package com.yusufsahin.iot_platform.repository;
+
+import com.yusufsahin.iot_platform.dto.KeysetCursor;
+import com.yusufsahin.iot_platform.dto.SensorDataDto;
+import com.yusufsahin.iot_platform.model.Device;
+import com.yusufsahin.iot_platform.service.DeviceRegistry;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Repository;
+
+import javax.sql.DataSource;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+// Read-side JDBC queries that hand rows to a callback one at a time instead of building result lists
+@Repository
+public class SensorDataQueryRepository {
+
+    private static final int FETCH_SIZE = 1000;
+
+    static final String COLUMNS = "id, device_key, temperature, humidity, pressure, timestamp, location, battery_level";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final DeviceRegistry deviceRegistry;
+
+    // deviceId comes from the registry cache rather than from each row
+    private final RowMapper<SensorDataDto> sensorDataRowMapper;
+
+    public SensorDataQueryRepository(DataSource dataSource, DeviceRegistry deviceRegistry) {
+        // Own template so the fetch size does not leak into the write-side repositories;
+        // PostgreSQL only honours it inside a transaction
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.jdbcTemplate.setFetchSize(FETCH_SIZE);
+        this.deviceRegistry = deviceRegistry;
+        this.sensorDataRowMapper = (rs, rowNum) -> {
+            Device device = deviceRegistry.get(rs.getInt("device_key"));
+            return new SensorDataDto(
+                    rs.getLong("id"),
+                    device != null ? device.getDeviceId() : null,
+                    rs.getObject("temperature", Double.class),
+                    rs.getObject("humidity", Double.class),
+                    rs.getObject("pressure", Double.class),
+                    rs.getTimestamp("timestamp").toLocalDateTime(),
+                    rs.getString("location"),
+                    rs.getObject("battery_level", Integer.class)
+            );
+        };
+    }
+
+    // Keyset page ordered by (timestamp, id), served by idx_sensors_device_timestamp.
+    // from is inclusive, to is exclusive, after is the cursor of the previous page.
+    public void streamByDevice(String deviceId, LocalDateTime from, LocalDateTime to,
+                               KeysetCursor after, int limit, Consumer<SensorDataDto> consumer) {
+        Integer deviceKey = deviceRegistry.findKey(deviceId);
+        if (deviceKey == null) {
+            return;
+        }
+        StringBuilder sql = new StringBuilder("SELECT ").append(COLUMNS)
+                .append(" FROM iot_platform.sensors WHERE device_key = ?");
+        List<Object> args = new ArrayList<>(6);
+        args.add(deviceKey);
+        if (from != null) {
+            sql.append(" AND timestamp >= ?");
+            args.add(Timestamp.valueOf(from));
+        }
+        if (to != null) {
+            sql.append(" AND timestamp < ?");
+            args.add(Timestamp.valueOf(to));
+        }
+        if (after != null) {
+            sql.append(" AND (timestamp, id) > (?, ?)");
+            args.add(Timestamp.valueOf(after.timestamp()));
+            args.add(after.id());
+        }
+        sql.append(" ORDER BY timestamp, id LIMIT ?");
+        args.add(limit);
+
+        jdbcTemplate.query(sql.toString(), rs -> {
+            consumer.accept(sensorDataRowMapper.mapRow(rs, 0));
+        }, args.toArray());
+    }
+
+    // Newest reading of every device in one pass; DISTINCT ON walks idx_sensors_device_timestamp backwards per device
+    public void streamLatestPerDevice(Consumer<SensorDataDto> consumer) {
+        jdbcTemplate.query("SELECT DISTINCT ON (device_key) " + COLUMNS +
+                " FROM iot_platform.sensors ORDER BY device_key, timestamp DESC, id DESC", rs -> {
+            consumer.accept(sensorDataRowMapper.mapRow(rs, 0));
+        });
+    }
+}
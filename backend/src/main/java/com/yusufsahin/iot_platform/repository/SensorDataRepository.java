@@ -1,13 +1,47 @@
 package com.yusufsahin.iot_platform.repository;
 
 import com.yusufsahin.iot_platform.model.SensorData;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.AvailableHints;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 
+import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 public interface SensorDataRepository extends JpaRepository<SensorData, Long> {
 
     Optional<SensorData> findById(Long id);
-    List<SensorData> findByDeviceId(String deviceId);
+
+    // Readings reference devices by DeviceRegistry key, not by deviceId. Reads are time-bounded: [from, to) lets
+    // day-partitioned storage prune to the partitions in range
+    @Query("SELECT s FROM SensorData s WHERE s.deviceKey = :deviceKey AND s.timestamp >= :from AND s.timestamp < :to ORDER BY s.timestamp")
+    List<SensorData> findByDeviceKeyInRange(@Param("deviceKey") Integer deviceKey,
+                                            @Param("from") LocalDateTime from,
+                                            @Param("to") LocalDateTime to);
+
+    @Query("SELECT s FROM SensorData s WHERE s.timestamp >= :from AND s.timestamp < :to ORDER BY s.timestamp")
+    List<SensorData> findInRange(@Param("from") LocalDateTime from, @Param("to") LocalDateTime to);
+
+    // Forward-only cursors for exports: rows are fetched EXPORT_FETCH_SIZE at a time (PostgreSQL only honours the
+    // fetch size inside a transaction) and loaded read-only. Callers must close the stream and detach each entity,
+    // otherwise the persistence context keeps every row.
+    String EXPORT_FETCH_SIZE = "1000";
+
+    @QueryHints({@QueryHint(name = AvailableHints.HINT_FETCH_SIZE, value = EXPORT_FETCH_SIZE),
+            @QueryHint(name = AvailableHints.HINT_READ_ONLY, value = "true")})
+    @Query("SELECT s FROM SensorData s WHERE s.deviceKey = :deviceKey AND s.timestamp >= :from AND s.timestamp < :to ORDER BY s.timestamp, s.id")
+    Stream<SensorData> streamByDeviceKeyInRange(@Param("deviceKey") Integer deviceKey,
+                                                @Param("from") LocalDateTime from,
+                                                @Param("to") LocalDateTime to);
+
+    // Unordered: sorting every device's readings would need a full sort before the first row is sent
+    @QueryHints({@QueryHint(name = AvailableHints.HINT_FETCH_SIZE, value = EXPORT_FETCH_SIZE),
+            @QueryHint(name = AvailableHints.HINT_READ_ONLY, value = "true")})
+    @Query("SELECT s FROM SensorData s WHERE s.timestamp >= :from AND s.timestamp < :to")
+    Stream<SensorData> streamInRange(@Param("from") LocalDateTime from, @Param("to") LocalDateTime to);
 }
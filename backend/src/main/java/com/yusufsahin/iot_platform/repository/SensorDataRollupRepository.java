@@ -0,0 +1,94 @@
+package com.yusufsahin.iot_platform.repository;
+
+import com.yusufsahin.iot_platform.dto.SensorDataAggregateDto;
+import com.yusufsahin.iot_platform.model.Metric;
+import com.yusufsahin.iot_platform.service.rollup.RollupAccumulator;
+import com.yusufsahin.iot_platform.service.rollup.RollupBucket;
+import com.yusufsahin.iot_platform.service.rollup.RollupResolution;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+@Repository
+public class SensorDataRollupRepository {
+
+    private static final int MAX_ROWS_PER_BATCH = 1000;
+
+    // Merges a partial bucket into the stored one, so flushing the same bucket twice only adds the new readings
+    private static final String UPSERT = "INSERT INTO iot_platform.%s AS r " +
+            "(device_id, bucket_start, metric, min_value, max_value, sum_value, sample_count, last_value, last_timestamp) " +
+            "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?) " +
+            "ON CONFLICT (device_id, bucket_start, metric) DO UPDATE SET " +
+            "min_value = LEAST(r.min_value, EXCLUDED.min_value), " +
+            "max_value = GREATEST(r.max_value, EXCLUDED.max_value), " +
+            "sum_value = r.sum_value + EXCLUDED.sum_value, " +
+            "sample_count = r.sample_count + EXCLUDED.sample_count, " +
+            "last_value = CASE WHEN EXCLUDED.last_timestamp >= r.last_timestamp THEN EXCLUDED.last_value ELSE r.last_value END, " +
+            "last_timestamp = GREATEST(r.last_timestamp, EXCLUDED.last_timestamp)";
+
+    private static final String SELECT_RANGE = "SELECT bucket_start, metric, min_value, max_value, sum_value, sample_count, last_value " +
+            "FROM iot_platform.%s WHERE device_id = ? AND bucket_start >= ? AND bucket_start < ? " +
+            "ORDER BY bucket_start, metric";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+
+    public SensorDataRollupRepository(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    // All or nothing: the upsert adds to the stored sums and counts, so a caller that retries the whole map after
+    // a failure must not find part of it already applied
+    public void upsertAll(RollupResolution resolution, Map<RollupBucket, RollupAccumulator> buckets) {
+        List<Object[]> rows = new ArrayList<>(buckets.size() * Metric.VALUES.length);
+        for (Map.Entry<RollupBucket, RollupAccumulator> entry : buckets.entrySet()) {
+            RollupBucket bucket = entry.getKey();
+            RollupAccumulator accumulator = entry.getValue();
+            Timestamp bucketStart = Timestamp.valueOf(LocalDateTime.ofEpochSecond(bucket.bucketStart(), 0, ZoneOffset.UTC));
+            for (Metric metric : Metric.VALUES) {
+                int m = metric.ordinal();
+                if (accumulator.getCount(m) == 0) {
+                    continue;
+                }
+                rows.add(new Object[]{
+                        bucket.deviceId(), bucketStart, metric.name(),
+                        accumulator.getMin(m), accumulator.getMax(m), accumulator.getSum(m), accumulator.getCount(m),
+                        accumulator.getLast(m),
+                        Timestamp.valueOf(LocalDateTime.ofInstant(Instant.ofEpochMilli(accumulator.getLastTimestamp(m)), ZoneOffset.UTC))
+                });
+            }
+        }
+        String sql = UPSERT.formatted(resolution.getTable());
+        transactionTemplate.executeWithoutResult(status -> {
+            for (int from = 0; from < rows.size(); from += MAX_ROWS_PER_BATCH) {
+                jdbcTemplate.batchUpdate(sql, rows.subList(from, Math.min(from + MAX_ROWS_PER_BATCH, rows.size())));
+            }
+        });
+    }
+
+    // Buckets starting in [from, to); callers align from to a bucket boundary to include the partial first bucket
+    public List<SensorDataAggregateDto> findRange(RollupResolution resolution, String deviceId,
+                                                  LocalDateTime from, LocalDateTime to) {
+        return jdbcTemplate.query(SELECT_RANGE.formatted(resolution.getTable()), (rs, rowNum) -> {
+            long count = rs.getLong("sample_count");
+            return new SensorDataAggregateDto(
+                    rs.getTimestamp("bucket_start").toLocalDateTime(),
+                    Metric.valueOf(rs.getString("metric")),
+                    rs.getDouble("min_value"),
+                    rs.getDouble("max_value"),
+                    count > 0 ? rs.getDouble("sum_value") / count : Double.NaN,
+                    count,
+                    rs.getDouble("last_value"));
+        }, deviceId, Timestamp.valueOf(from), Timestamp.valueOf(to));
+    }
+}
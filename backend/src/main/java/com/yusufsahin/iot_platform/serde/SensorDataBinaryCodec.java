@@ -0,0 +1,151 @@
+package com.yusufsahin.iot_platform.serde;
+
+import com.yusufsahin.iot_platform.dto.SensorDataDto;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+
+// Hand-rolled layout for SensorDataDto, big-endian:
+//
+//   byte    MAGIC (0xB1, never the first byte of a JSON document)
+//   byte    VERSION
+//   byte    presence flags, one bit per nullable field below
+//   long    timestamp, epoch millis of the zone-less wall clock read as UTC
+//   short   deviceId length, then UTF-8 bytes
+//   long    id             (if FLAG_ID)
+//   double  temperature    (if FLAG_TEMPERATURE)
+//   double  humidity       (if FLAG_HUMIDITY)
+//   double  pressure       (if FLAG_PRESSURE)
+//   int     batteryLevel   (if FLAG_BATTERY_LEVEL)
+//   short   location length, then UTF-8 bytes (if FLAG_LOCATION)
+//
+// A full reading is about 62 bytes versus ~210 for JSON. Timestamps are truncated to millis.
+public final class SensorDataBinaryCodec {
+
+    public static final byte MAGIC = (byte) 0xB1;
+    static final byte VERSION = 1;
+
+    private static final int FLAG_ID = 1;
+    private static final int FLAG_TEMPERATURE = 1 << 1;
+    private static final int FLAG_HUMIDITY = 1 << 2;
+    private static final int FLAG_PRESSURE = 1 << 3;
+    private static final int FLAG_BATTERY_LEVEL = 1 << 4;
+    private static final int FLAG_LOCATION = 1 << 5;
+
+    private static final int HEADER_BYTES = 3 + Long.BYTES + Short.BYTES;
+
+    private SensorDataBinaryCodec() {
+    }
+
+    public static boolean isBinary(byte[] data) {
+        return data != null && data.length > 0 && data[0] == MAGIC;
+    }
+
+    // deviceId and timestamp have no presence flag: a reading without them cannot be encoded
+    public static byte[] encode(SensorDataDto sensorData) {
+        if (sensorData.deviceId() == null || sensorData.timestamp() == null) {
+            throw new IllegalArgumentException("Binary sensor reading needs a deviceId and a timestamp, got deviceId="
+                    + sensorData.deviceId() + ", timestamp=" + sensorData.timestamp());
+        }
+        byte[] deviceId = utf8(sensorData.deviceId());
+        byte[] location = sensorData.location() != null ? utf8(sensorData.location()) : null;
+
+        int flags = 0;
+        int size = HEADER_BYTES + deviceId.length;
+        if (sensorData.id() != null) {
+            flags |= FLAG_ID;
+            size += Long.BYTES;
+        }
+        if (sensorData.temperature() != null) {
+            flags |= FLAG_TEMPERATURE;
+            size += Double.BYTES;
+        }
+        if (sensorData.humidity() != null) {
+            flags |= FLAG_HUMIDITY;
+            size += Double.BYTES;
+        }
+        if (sensorData.pressure() != null) {
+            flags |= FLAG_PRESSURE;
+            size += Double.BYTES;
+        }
+        if (sensorData.batteryLevel() != null) {
+            flags |= FLAG_BATTERY_LEVEL;
+            size += Integer.BYTES;
+        }
+        if (location != null) {
+            flags |= FLAG_LOCATION;
+            size += Short.BYTES + location.length;
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        buffer.put(MAGIC).put(VERSION).put((byte) flags);
+        buffer.putLong(sensorData.timestamp().toInstant(ZoneOffset.UTC).toEpochMilli());
+        buffer.putShort((short) deviceId.length).put(deviceId);
+        if ((flags & FLAG_ID) != 0) {
+            buffer.putLong(sensorData.id());
+        }
+        if ((flags & FLAG_TEMPERATURE) != 0) {
+            buffer.putDouble(sensorData.temperature());
+        }
+        if ((flags & FLAG_HUMIDITY) != 0) {
+            buffer.putDouble(sensorData.humidity());
+        }
+        if ((flags & FLAG_PRESSURE) != 0) {
+            buffer.putDouble(sensorData.pressure());
+        }
+        if ((flags & FLAG_BATTERY_LEVEL) != 0) {
+            buffer.putInt(sensorData.batteryLevel());
+        }
+        if (location != null) {
+            buffer.putShort((short) location.length).put(location);
+        }
+        return buffer.array();
+    }
+
+    public static SensorDataDto decode(byte[] data) {
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(data);
+            if (buffer.get() != MAGIC) {
+                throw new IllegalArgumentException("Not a binary sensor reading");
+            }
+            byte version = buffer.get();
+            if (version != VERSION) {
+                throw new IllegalArgumentException("Unsupported binary sensor reading version " + version);
+            }
+            int flags = buffer.get();
+            LocalDateTime timestamp = LocalDateTime.ofInstant(Instant.ofEpochMilli(buffer.getLong()), ZoneOffset.UTC);
+            String deviceId = readString(buffer);
+            Long id = (flags & FLAG_ID) != 0 ? buffer.getLong() : null;
+            Double temperature = (flags & FLAG_TEMPERATURE) != 0 ? buffer.getDouble() : null;
+            Double humidity = (flags & FLAG_HUMIDITY) != 0 ? buffer.getDouble() : null;
+            Double pressure = (flags & FLAG_PRESSURE) != 0 ? buffer.getDouble() : null;
+            Integer batteryLevel = (flags & FLAG_BATTERY_LEVEL) != 0 ? buffer.getInt() : null;
+            String location = (flags & FLAG_LOCATION) != 0 ? readString(buffer) : null;
+            return new SensorDataDto(id, deviceId, temperature, humidity, pressure, timestamp, location, batteryLevel);
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("Truncated binary sensor reading", e);
+        }
+    }
+
+    private static byte[] utf8(String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > Short.MAX_VALUE) {
+            throw new IllegalArgumentException("String field longer than " + Short.MAX_VALUE + " bytes");
+        }
+        return bytes;
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        int length = buffer.getShort();
+        if (length < 0 || length > buffer.remaining()) {
+            throw new IllegalArgumentException("Invalid string length " + length);
+        }
+        String value = new String(buffer.array(), buffer.position(), length, StandardCharsets.UTF_8);
+        buffer.position(buffer.position() + length);
+        return value;
+    }
+}
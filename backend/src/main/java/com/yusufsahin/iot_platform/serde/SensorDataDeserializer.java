@@ -0,0 +1,33 @@
+package com.yusufsahin.iot_platform.serde;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.yusufsahin.iot_platform.dto.SensorDataDto;
+import org.apache.kafka.common.errors.SerializationException;
+import org.apache.kafka.common.serialization.Deserializer;
+
+import java.io.IOException;
+
+// Reads either format, told apart by the first byte, so a topic can switch formats without draining it first
+public class SensorDataDeserializer implements Deserializer<SensorDataDto> {
+
+    private final ObjectMapper objectMapper;
+
+    public SensorDataDeserializer(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+    }
+
+    @Override
+    public SensorDataDto deserialize(String topic, byte[] data) {
+        if (data == null) {
+            return null;
+        }
+        try {
+            if (SensorDataBinaryCodec.isBinary(data)) {
+                return SensorDataBinaryCodec.decode(data);
+            }
+            return objectMapper.readValue(data, SensorDataDto.class);
+        } catch (IOException | IllegalArgumentException e) {
+            throw new SerializationException("Could not deserialize sensor data from " + topic, e);
+        }
+    }
+}
@@ -0,0 +1,9 @@
+package com.yusufsahin.iot_platform.serde;
+
+// Wire format written by SensorDataSerializer; SensorDataDeserializer reads both
+public enum SensorDataFormat {
+    // Jackson text, ISO-8601 timestamp; what producers wrote before the binary format existed
+    JSON,
+    // SensorDataBinaryCodec layout, epoch-millis timestamp
+    BINARY
+}
@@ -0,0 +1,146 @@
+package com.yusufsahin.iot_platform.serde;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.yusufsahin.iot_platform.dto.SensorDataDto;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StreamCorruptedException;
+import java.util.Arrays;
+
+// Decodes a stream of readings one record at a time, never holding more than one record:
+//   JSON    NDJSON, one SensorDataDto object per line; blank lines are ignored
+//   BINARY  repeated [int length][SensorDataBinaryCodec record], big-endian
+// A record that cannot be decoded throws IllegalArgumentException and the reader moves on to the next one.
+// A binary stream whose framing is broken (impossible length, truncated record) cannot be resynchronised
+// and ends with StreamCorruptedException.
+public final class SensorDataRecordReader {
+
+    private static final int INITIAL_BUFFER_BYTES = 512;
+    private static final int READ_BUFFER_BYTES = 64 * 1024;
+
+    private final InputStream in;
+    private final SensorDataFormat format;
+    private final ObjectMapper objectMapper;
+    private final int maxRecordBytes;
+
+    // Own read-ahead instead of a BufferedInputStream, whose read() takes a lock per byte
+    private final byte[] readBuffer = new byte[READ_BUFFER_BYTES];
+    private int readPosition;
+    private int readLimit;
+    // Current NDJSON line
+    private byte[] buffer = new byte[INITIAL_BUFFER_BYTES];
+    private long records;
+
+    public SensorDataRecordReader(InputStream in, SensorDataFormat format, ObjectMapper objectMapper, int maxRecordBytes) {
+        this.in = in;
+        this.format = format;
+        this.objectMapper = objectMapper;
+        this.maxRecordBytes = maxRecordBytes;
+    }
+
+    // Null at the end of the stream
+    public SensorDataDto next() throws IOException {
+        return format == SensorDataFormat.BINARY ? nextBinary() : nextJson();
+    }
+
+    // 1-based position of the record last returned or rejected, for error reports
+    public long recordNumber() {
+        return records;
+    }
+
+    private SensorDataDto nextJson() throws IOException {
+        while (true) {
+            int length = 0;
+            boolean tooLong = false;
+            int b;
+            while ((b = read()) != -1 && b != '\n') {
+                if (length == maxRecordBytes) {
+                    tooLong = true;
+                    continue;
+                }
+                ensureCapacity(length + 1);
+                buffer[length++] = (byte) b;
+            }
+            if (b == -1 && length == 0 && !tooLong) {
+                return null;
+            }
+            if (!tooLong && isBlank(length)) {
+                continue;
+            }
+            records++;
+            if (tooLong) {
+                throw new IllegalArgumentException("longer than " + maxRecordBytes + " bytes");
+            }
+            try {
+                return objectMapper.readValue(buffer, 0, length, SensorDataDto.class);
+            } catch (JsonProcessingException e) {
+                throw new IllegalArgumentException(e.getOriginalMessage(), e);
+            }
+        }
+    }
+
+    private SensorDataDto nextBinary() throws IOException {
+        int b0 = read();
+        if (b0 == -1) {
+            return null;
+        }
+        records++;
+        int length = (b0 << 24) | (readByte() << 16) | (readByte() << 8) | readByte();
+        if (length <= 0 || length > maxRecordBytes) {
+            throw new StreamCorruptedException("Invalid record length " + length + " at record " + records);
+        }
+        byte[] record = new byte[length];
+        for (int copied = 0; copied < length; ) {
+            if (readPosition == readLimit && !fill()) {
+                throw new StreamCorruptedException("Truncated record " + records);
+            }
+            int n = Math.min(length - copied, readLimit - readPosition);
+            System.arraycopy(readBuffer, readPosition, record, copied, n);
+            readPosition += n;
+            copied += n;
+        }
+        return SensorDataBinaryCodec.decode(record);
+    }
+
+    private int read() throws IOException {
+        if (readPosition == readLimit && !fill()) {
+            return -1;
+        }
+        return readBuffer[readPosition++] & 0xFF;
+    }
+
+    private boolean fill() throws IOException {
+        int n = in.read(readBuffer, 0, readBuffer.length);
+        if (n <= 0) {
+            return false;
+        }
+        readPosition = 0;
+        readLimit = n;
+        return true;
+    }
+
+    private int readByte() throws IOException {
+        int b = read();
+        if (b == -1) {
+            throw new StreamCorruptedException("Truncated length prefix at record " + records);
+        }
+        return b;
+    }
+
+    private boolean isBlank(int length) {
+        for (int i = 0; i < length; i++) {
+            if (!Character.isWhitespace(buffer[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void ensureCapacity(int length) {
+        if (length > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.min(Math.max(length, buffer.length * 2), maxRecordBytes));
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package com.yusufsahin.iot_platform.serde;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.yusufsahin.iot_platform.dto.SensorDataDto;
+import org.apache.kafka.common.errors.SerializationException;
+import org.apache.kafka.common.serialization.Serializer;
+
+public class SensorDataSerializer implements Serializer<SensorDataDto> {
+
+    private final SensorDataFormat format;
+    private final ObjectMapper objectMapper;
+
+    public SensorDataSerializer(SensorDataFormat format, ObjectMapper objectMapper) {
+        this.format = format;
+        this.objectMapper = objectMapper;
+    }
+
+    @Override
+    public byte[] serialize(String topic, SensorDataDto data) {
+        if (data == null) {
+            return null;
+        }
+        if (format == SensorDataFormat.BINARY) {
+            try {
+                return SensorDataBinaryCodec.encode(data);
+            } catch (IllegalArgumentException e) {
+                throw new SerializationException("Could not serialize sensor data for device " + data.deviceId(), e);
+            }
+        }
+        try {
+            return objectMapper.writeValueAsBytes(data);
+        } catch (JsonProcessingException e) {
+            throw new SerializationException("Could not serialize sensor data for device " + data.deviceId(), e);
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package com.yusufsahin.iot_platform.serde;
+
+import io.micrometer.core.instrument.Timer;
+import org.apache.kafka.common.serialization.Deserializer;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// Records the time every call of the wrapped deserializer takes, failures included
+public class TimedDeserializer<T> implements Deserializer<T> {
+
+    private final Deserializer<T> delegate;
+    private final Timer timer;
+
+    public TimedDeserializer(Deserializer<T> delegate, Timer timer) {
+        this.delegate = delegate;
+        this.timer = timer;
+    }
+
+    @Override
+    public void configure(Map<String, ?> configs, boolean isKey) {
+        delegate.configure(configs, isKey);
+    }
+
+    @Override
+    public T deserialize(String topic, byte[] data) {
+        long started = System.nanoTime();
+        try {
+            return delegate.deserialize(topic, data);
+        } finally {
+            timer.record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    @Override
+    public void close() {
+        delegate.close();
+    }
+}
@@ -0,0 +1,12 @@
+package com.yusufsahin.iot_platform.service;
+
+// What AlertPipeline does when its queue is full
+public enum AlertBackpressurePolicy {
+    // Block the submitting (ingest) thread until the writer frees up space
+    BLOCK,
+    // Discard INFO alerts first, evicting a queued INFO alert to make room for a more severe one;
+    // blocks only when the queue holds nothing but WARNING or higher
+    DROP_INFO,
+    // Append overflow to a local NDJSON file that the writer replays once the queue has drained
+    SPILL
+}
@@ -0,0 +1,422 @@
+package com.yusufsahin.iot_platform.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.yusufsahin.iot_platform.dto.AlertMessageDto;
+import com.yusufsahin.iot_platform.dto.converter.AlertMessageDtoConverter;
+import com.yusufsahin.iot_platform.model.AlertMessage;
+import com.yusufsahin.iot_platform.repository.AlertMessageBatchRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+// Decouples alert persistence, WebSocket fan-out and the alerts topic from the ingest transaction.
+// Alert writes are queued once the ingest transaction commits (so their sensor row exists), then a single
+// writer thread flushes them as one multi-row upsert, one batched update, one /topic/alert frame and one alerts
+// topic transaction per batch. The topic only gets a batch after its rows have committed, with their ids.
+// The single writer keeps FIFO order, so an update is always applied after the insert of its row.
+// Inserts and updates of a batch commit together. A batch whose write or publication fails is retried with
+// backoff for as long as the application runs, holding up the queue (and so engaging the backpressure policy)
+// meanwhile. Alert states still unwritten or unpublished at shutdown are spilled to disk and replayed on the next start. Replayed and id-less states are upserted
+// on their alert key, so none of this duplicates a row.
+@Service
+@Slf4j
+public class AlertPipeline {
+
+    private static final long MAX_RETRY_BACKOFF_MILLIS = 5000;
+
+    private final AlertMessageBatchRepository alertMessageBatchRepository;
+    private final TransactionTemplate flushTransaction;
+    private final WebSocketService webSocketService;
+    private final ClusterBroadcastPublisher clusterBroadcast;
+    private final AlertTopicPublisher alertTopicPublisher;
+
+    // row is the entity that receives the generated id; state is what gets written. Inserts have row == state.
+    private record AlertEvent(AlertMessage row, AlertMessage state) {}
+
+    // Identifies an alert row, see AlertMessageBatchRepository
+    private record AlertKey(String deviceId, AlertMessage.AlertType alertType, LocalDateTime openedAt) {
+        static AlertKey of(AlertMessage state) {
+            return new AlertKey(state.getDeviceId(), state.getAlertType(), state.getTimestamp());
+        }
+    }
+
+    private final BlockingQueue<AlertEvent> queue;
+    private final int maxBatchSize;
+    private final long flushIntervalNanos;
+    private final AlertBackpressurePolicy backpressurePolicy;
+    private final AlertSpillFile spillFile;
+
+    private final Timer flushTimer;
+    private final DistributionSummary batchSizes;
+    private final Counter droppedAlerts;
+    private final Counter spilledAlerts;
+    private final Counter failedAlerts;
+    private final Counter failedFlushes;
+
+    private final Thread writer;
+    private volatile boolean running = true;
+    // Writer thread only: set once a flush failed during shutdown, after which everything left is spilled
+    private boolean spillRemaining;
+
+    public AlertPipeline(AlertMessageBatchRepository alertMessageBatchRepository,
+                         PlatformTransactionManager transactionManager,
+                         WebSocketService webSocketService,
+                         ClusterBroadcastPublisher clusterBroadcast,
+                         AlertTopicPublisher alertTopicPublisher,
+                         ObjectMapper objectMapper,
+                         MeterRegistry meterRegistry,
+                         @Value("${iot.alerts.pipeline.capacity:10000}") int capacity,
+                         @Value("${iot.alerts.pipeline.max-batch-size:500}") int maxBatchSize,
+                         @Value("${iot.alerts.pipeline.flush-interval-ms:250}") long flushIntervalMs,
+                         @Value("${iot.alerts.pipeline.backpressure:DROP_INFO}") AlertBackpressurePolicy backpressurePolicy,
+                         @Value("${iot.alerts.pipeline.spill-directory:${java.io.tmpdir}/iot-platform/alert-spill}") String spillDirectory) throws IOException {
+        this.alertMessageBatchRepository = alertMessageBatchRepository;
+        this.flushTransaction = new TransactionTemplate(transactionManager);
+        this.webSocketService = webSocketService;
+        this.clusterBroadcast = clusterBroadcast;
+        this.alertTopicPublisher = alertTopicPublisher;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.maxBatchSize = maxBatchSize;
+        this.flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(flushIntervalMs);
+        this.backpressurePolicy = backpressurePolicy;
+        this.spillFile = new AlertSpillFile(objectMapper, Path.of(spillDirectory));
+
+        Gauge.builder("iot.alerts.pipeline.queue.depth", queue, BlockingQueue::size)
+                .description("Alerts waiting to be persisted and published")
+                .register(meterRegistry);
+        this.flushTimer = Timer.builder("iot.alerts.pipeline.flush")
+                .description("Time to persist and publish one alert batch")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.batchSizes = DistributionSummary.builder("iot.alerts.pipeline.batch.size")
+                .description("Alerts per flushed batch")
+                .register(meterRegistry);
+        this.droppedAlerts = Counter.builder("iot.alerts.pipeline.dropped")
+                .description("Alerts discarded by the DROP_INFO backpressure policy")
+                .register(meterRegistry);
+        this.spilledAlerts = Counter.builder("iot.alerts.pipeline.spilled")
+                .description("Alerts written to the spill file, on overflow (SPILL) or unwritten at shutdown")
+                .register(meterRegistry);
+        this.failedAlerts = Counter.builder("iot.alerts.pipeline.failed")
+                .description("Alerts lost because they could be neither persisted nor spilled")
+                .register(meterRegistry);
+        this.failedFlushes = Counter.builder("iot.alerts.pipeline.flush.failures")
+                .description("Alert batch writes or publications that failed; the batch is retried")
+                .register(meterRegistry);
+
+        this.writer = new Thread(this::drainLoop, "alert-pipeline-writer");
+        this.writer.setDaemon(true);
+    }
+
+    // Alerts spilled by the previous run are written and published before any new ones, and before
+    // AlertStateTracker loads the unresolved alerts; if the database or the alerts topic is not reachable yet,
+    // the writer replays them later
+    @PostConstruct
+    void start() {
+        if (spillFile.hasPending()) {
+            try {
+                spillFile.replay(maxBatchSize, alerts -> {
+                    List<AlertEvent> batch = events(alerts);
+                    persist(batch);
+                    alertTopicPublisher.publish(states(batch));
+                });
+            } catch (IOException | RuntimeException e) {
+                log.warn("Could not replay spilled alerts on startup, leaving them to the writer: {}", e.toString());
+            }
+        }
+        writer.start();
+    }
+
+    @PreDestroy
+    void stop() throws InterruptedException {
+        running = false;
+        writer.interrupt();
+        writer.join(TimeUnit.SECONDS.toMillis(10));
+    }
+
+    // Inserts a new alert row; its id is assigned on the given entity once flushed
+    public void submit(AlertMessage alert) {
+        submit(new AlertEvent(alert, alert));
+    }
+
+    // Rewrites a previously submitted row with the given state
+    public void submitUpdate(AlertMessage row, AlertMessage state) {
+        submit(new AlertEvent(row, state));
+    }
+
+    private void submit(AlertEvent event) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            enqueue(event);
+            return;
+        }
+        // Collect the alert writes of the current transaction and hand them over in afterCommit
+        @SuppressWarnings("unchecked")
+        List<AlertEvent> pending = (List<AlertEvent>) TransactionSynchronizationManager.getResource(this);
+        if (pending == null) {
+            List<AlertEvent> events = new ArrayList<>();
+            TransactionSynchronizationManager.bindResource(this, events);
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    events.forEach(AlertPipeline.this::enqueue);
+                }
+
+                @Override
+                public void afterCompletion(int status) {
+                    TransactionSynchronizationManager.unbindResourceIfPossible(AlertPipeline.this);
+                }
+            });
+            pending = events;
+        }
+        pending.add(event);
+    }
+
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    private void enqueue(AlertEvent event) {
+        // The writer is stopping and may not take it any more
+        if (!running) {
+            spill(List.of(event.state()));
+            return;
+        }
+        if (queue.offer(event)) {
+            return;
+        }
+        try {
+            switch (backpressurePolicy) {
+                case BLOCK -> queue.put(event);
+                case DROP_INFO -> enqueueDroppingInfo(event);
+                case SPILL -> spill(List.of(event.state()));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            spill(List.of(event.state()));
+            log.warn("Interrupted while queueing alert of type {}, spilled it", event.state().getAlertType());
+        }
+    }
+
+    private void enqueueDroppingInfo(AlertEvent event) throws InterruptedException {
+        if (event.state().getSeverity() == AlertMessage.AlertSeverity.INFO) {
+            droppedAlerts.increment();
+            return;
+        }
+        // Evict the oldest queued INFO alert to make room for the more severe one
+        for (Iterator<AlertEvent> it = queue.iterator(); it.hasNext(); ) {
+            if (it.next().state().getSeverity() == AlertMessage.AlertSeverity.INFO) {
+                it.remove();
+                droppedAlerts.increment();
+                if (queue.offer(event)) {
+                    return;
+                }
+                break;
+            }
+        }
+        queue.put(event);
+    }
+
+    private void spill(List<AlertMessage> alerts) {
+        try {
+            spillFile.append(alerts);
+            spilledAlerts.increment(alerts.size());
+        } catch (IOException e) {
+            failedAlerts.increment(alerts.size());
+            log.error("Could not spill {} alerts", alerts.size(), e);
+        }
+    }
+
+    private static List<AlertEvent> events(List<AlertMessage> alerts) {
+        return alerts.stream().map(alert -> new AlertEvent(alert, alert)).toList();
+    }
+
+    private void drainLoop() {
+        List<AlertEvent> batch = new ArrayList<>(maxBatchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                AlertEvent first = queue.poll(flushIntervalNanos, TimeUnit.NANOSECONDS);
+                if (first == null) {
+                    replaySpilled();
+                    continue;
+                }
+                batch.add(first);
+                // Linger up to one flush interval to fill the batch
+                long deadline = System.nanoTime() + flushIntervalNanos;
+                while (batch.size() < maxBatchSize) {
+                    queue.drainTo(batch, maxBatchSize - batch.size());
+                    long remaining = deadline - System.nanoTime();
+                    if (batch.size() >= maxBatchSize || remaining <= 0) {
+                        break;
+                    }
+                    AlertEvent next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+            } catch (InterruptedException e) {
+                // stop() interrupts the writer; drain whatever is left below
+                queue.drainTo(batch, maxBatchSize - batch.size());
+            }
+            if (!batch.isEmpty()) {
+                flush(batch);
+                batch.clear();
+            }
+        }
+    }
+
+    private void replaySpilled() {
+        if (!spillFile.hasPending() || !running) {
+            return;
+        }
+        try {
+            spillFile.replay(maxBatchSize, alerts -> flush(events(alerts)));
+        } catch (IOException e) {
+            log.error("Failed to replay spilled alerts", e);
+        }
+    }
+
+    private void flush(List<AlertEvent> batch) {
+        if (spillRemaining) {
+            spill(states(batch));
+            return;
+        }
+        long start = System.nanoTime();
+        try {
+            if (!retry("flush", batch, () -> persist(batch))) {
+                spillRemaining = true;
+                spill(states(batch));
+                return;
+            }
+            batchSizes.record(batch.size());
+            broadcast(batch);
+            // Spilled rows are upserted again on replay, which leaves them as they are and publishes them
+            if (!retry("publish", batch, () -> alertTopicPublisher.publish(states(batch)))) {
+                spillRemaining = true;
+                spill(states(batch));
+            }
+        } finally {
+            flushTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    // Retries step until it succeeds; false once it failed after stop(), without waiting for another attempt
+    private boolean retry(String step, List<AlertEvent> batch, Runnable action) {
+        long backoffMillis = 100;
+        for (int attempt = 1; ; attempt++) {
+            try {
+                action.run();
+                return true;
+            } catch (RuntimeException e) {
+                failedFlushes.increment();
+                if (!running) {
+                    log.error("Failed to {} batch of {} alerts on shutdown, spilling what is left", step, batch.size(), e);
+                    return false;
+                }
+                if (attempt == 1) {
+                    log.warn("Failed to {} batch of {} alerts, retrying until it succeeds", step, batch.size(), e);
+                } else {
+                    log.warn("Failed to {} batch of {} alerts (attempt {}), retrying in {} ms: {}",
+                            step, batch.size(), attempt, backoffMillis, e.toString());
+                }
+            }
+            try {
+                Thread.sleep(backoffMillis);
+            } catch (InterruptedException e) {
+                // stop() interrupted the backoff; the step has just failed, so spill rather than wait for it
+                log.warn("Shutting down while alert batches fail to {}, spilling what is left", step);
+                return false;
+            }
+            backoffMillis = Math.min(backoffMillis * 2, MAX_RETRY_BACKOFF_MILLIS);
+        }
+    }
+
+    // One write per alert row and batch, in one transaction: the latest state of each row, by id for rows that
+    // have one and otherwise upserted on the alert key (new rows, replayed states, updates of a row whose insert
+    // was spilled). Ids are handed to the events' rows only once the transaction has committed.
+    private void persist(List<AlertEvent> batch) {
+        Map<AlertKey, List<AlertEvent>> byRow = new LinkedHashMap<>();
+        for (AlertEvent event : batch) {
+            byRow.computeIfAbsent(AlertKey.of(event.state()), key -> new ArrayList<>()).add(event);
+        }
+        List<AlertMessage> upserts = new ArrayList<>();
+        List<AlertMessage> updates = new ArrayList<>();
+        for (List<AlertEvent> events : byRow.values()) {
+            Long id = null;
+            for (AlertEvent event : events) {
+                if (event.row().getId() != null) {
+                    id = event.row().getId();
+                }
+            }
+            AlertMessage latest = events.get(events.size() - 1).state();
+            latest.setId(id);
+            (id != null ? updates : upserts).add(latest);
+        }
+
+        try {
+            flushTransaction.executeWithoutResult(status -> {
+                alertMessageBatchRepository.upsertAll(upserts);
+                alertMessageBatchRepository.updateAll(updates);
+            });
+        } catch (RuntimeException e) {
+            // Rolled back: the ids the upserts returned may belong to rows that do not exist
+            for (AlertMessage state : upserts) {
+                state.setId(null);
+            }
+            throw e;
+        }
+        for (List<AlertEvent> events : byRow.values()) {
+            Long id = events.get(events.size() - 1).state().getId();
+            for (AlertEvent event : events) {
+                event.row().setId(id);
+                event.state().setId(id);
+            }
+        }
+        log.debug("Persisted {} upserted and {} updated alerts", upserts.size(), updates.size());
+    }
+
+    private static List<AlertMessage> states(List<AlertEvent> batch) {
+        return batch.stream().map(AlertEvent::state).toList();
+    }
+
+    // The batch is committed by now; a failed fan-out only costs the live views this frame
+    private void broadcast(List<AlertEvent> batch) {
+        try {
+            // Coalesce to the latest state per row for the WebSocket frame
+            Map<Long, AlertMessageDto> latest = new LinkedHashMap<>();
+            for (AlertEvent event : batch) {
+                latest.put(event.state().getId(), AlertMessageDtoConverter.toDto(event.state()));
+            }
+            if (clusterBroadcast.isEnabled()) {
+                clusterBroadcast.publishAlerts(new ArrayList<>(latest.values()));
+            } else {
+                webSocketService.sendAlerts(new ArrayList<>(latest.values()));
+            }
+        } catch (RuntimeException e) {
+            log.error("Failed to publish batch of {} alerts", batch.size(), e);
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package com.yusufsahin.iot_platform.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.yusufsahin.iot_platform.model.AlertMessage;
+import com.yusufsahin.iot_platform.model.SensorData;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+// Alert states that could not be queued (AlertBackpressurePolicy.SPILL) or were still unwritten at shutdown:
+// one JSON line per state, in the order they were spilled. A line holds the whole state, keyed like its row by
+// device, type and opening timestamp; replay upserts it on that key, see AlertMessageBatchRepository.
+@Slf4j
+class AlertSpillFile {
+
+    private record SpilledAlert(
+            String deviceId,
+            AlertMessage.AlertType alertType,
+            LocalDateTime timestamp,
+            Long sensorDataId,
+            String message,
+            AlertMessage.AlertSeverity severity,
+            AlertMessage.AlertStatus status,
+            int occurrences,
+            LocalDateTime lastSeenAt,
+            LocalDateTime resolvedAt
+    ) {}
+
+    private final ObjectMapper objectMapper;
+    private final Path spillFile;
+    private final Path replayFile;
+    private final Object lock = new Object();
+    private volatile boolean pending;
+
+    AlertSpillFile(ObjectMapper objectMapper, Path directory) throws IOException {
+        this.objectMapper = objectMapper;
+        Files.createDirectories(directory);
+        this.spillFile = directory.resolve("alerts.ndjson");
+        this.replayFile = directory.resolve("alerts.replay.ndjson");
+        // Leftovers of a previous run are replayed as well
+        this.pending = Files.exists(spillFile) || Files.exists(replayFile);
+    }
+
+    void append(List<AlertMessage> alerts) throws IOException {
+        StringBuilder lines = new StringBuilder();
+        for (AlertMessage alert : alerts) {
+            SpilledAlert spilled = new SpilledAlert(alert.getDeviceId(), alert.getAlertType(), alert.getTimestamp(),
+                    alert.getSensorData() != null ? alert.getSensorData().getId() : null,
+                    alert.getMessage(), alert.getSeverity(), alert.getStatus(), alert.getOccurrences(),
+                    alert.getLastSeenAt(), alert.getResolvedAt());
+            lines.append(objectMapper.writeValueAsString(spilled)).append('\n');
+        }
+        synchronized (lock) {
+            Files.writeString(spillFile, lines, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            pending = true;
+        }
+    }
+
+    boolean hasPending() {
+        return pending;
+    }
+
+    // Hands spilled alerts to the consumer in chunks; the file is removed once fully replayed. If the consumer
+    // throws, the whole file is replayed again next time, which the upserts make harmless.
+    void replay(int chunkSize, Consumer<List<AlertMessage>> consumer) throws IOException {
+        synchronized (lock) {
+            if (!Files.exists(replayFile) && Files.exists(spillFile)) {
+                Files.move(spillFile, replayFile, StandardCopyOption.ATOMIC_MOVE);
+            }
+            pending = false;
+        }
+        if (!Files.exists(replayFile)) {
+            return;
+        }
+        try {
+            List<AlertMessage> chunk = new ArrayList<>(chunkSize);
+            try (BufferedReader reader = Files.newBufferedReader(replayFile, StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (line.isBlank()) {
+                        continue;
+                    }
+                    chunk.add(toAlert(objectMapper.readValue(line, SpilledAlert.class)));
+                    if (chunk.size() == chunkSize) {
+                        consumer.accept(chunk);
+                        chunk = new ArrayList<>(chunkSize);
+                    }
+                }
+            }
+            if (!chunk.isEmpty()) {
+                consumer.accept(chunk);
+            }
+            Files.delete(replayFile);
+        } catch (IOException | RuntimeException e) {
+            pending = true;
+            throw e;
+        }
+        log.info("Replayed spilled alerts from {}", replayFile);
+    }
+
+    private static AlertMessage toAlert(SpilledAlert spilled) {
+        AlertMessage alert = new AlertMessage();
+        if (spilled.sensorDataId() != null) {
+            SensorData sensorData = new SensorData();
+            sensorData.setId(spilled.sensorDataId());
+            alert.setSensorData(sensorData);
+        }
+        alert.setDeviceId(spilled.deviceId());
+        alert.setAlertType(spilled.alertType());
+        alert.setTimestamp(spilled.timestamp());
+        alert.setMessage(spilled.message());
+        alert.setSeverity(spilled.severity());
+        alert.setStatus(spilled.status());
+        alert.setOccurrences(spilled.occurrences());
+        alert.setLastSeenAt(spilled.lastSeenAt());
+        alert.setResolvedAt(spilled.resolvedAt());
+        return alert;
+    }
+}
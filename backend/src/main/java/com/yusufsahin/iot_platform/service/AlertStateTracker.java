@@ -0,0 +1,338 @@
+package com.yusufsahin.iot_platform.service;
+
+import com.yusufsahin.iot_platform.model.AlertMessage;
+import com.yusufsahin.iot_platform.model.SensorData;
+import com.yusufsahin.iot_platform.repository.AlertMessageQueryRepository;
+import com.yusufsahin.iot_platform.service.rule.CompiledRule;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Open/ongoing/resolved state machine per (deviceId, AlertType).
+// A breach opens one alert row; while it stays breached the row is only rewritten every
+// renotify interval (or on escalation); it resolves once the value clears the rule's hysteresis band.
+// Only devices with at least one open alert are kept in the map.
+// State changes apply immediately, so later readings of the same transaction see them, and are undone in reverse
+// order if the ingest transaction rolls back: the retried readings then find the state they first met.
+// On startup the alerts left open by the previous run are loaded back, so their next breach updates the existing
+// row instead of opening a second one. Their rule is not stored: a restored alert adopts the rule of its next
+// breach, and one that is not breached again resolves on the first reading that does not breach it.
+@Slf4j
+@Service
+public class AlertStateTracker {
+
+    private static final AlertMessage.AlertType[] ALERT_TYPES = AlertMessage.AlertType.values();
+    private static final AlertMessage.AlertSeverity[] SEVERITIES = AlertMessage.AlertSeverity.values();
+
+    private static final class DeviceAlerts {
+        final ActiveAlert[] active = new ActiveAlert[ALERT_TYPES.length];
+        int openCount;
+        boolean retired;
+    }
+
+    private static final class ActiveAlert {
+        final AlertMessage row;
+        // Null for an alert restored from its row until its type breaches again
+        CompiledRule rule;
+        String message;
+        int occurrences = 1;
+        long lastNotifiedAt;
+        LocalDateTime lastSeenAt;
+
+        ActiveAlert(AlertMessage row, CompiledRule rule, long notifiedAt) {
+            this.row = row;
+            this.rule = rule;
+            this.message = row.getMessage();
+            this.lastNotifiedAt = notifiedAt;
+            this.lastSeenAt = row.getTimestamp();
+        }
+    }
+
+    private final AlertPipeline alertPipeline;
+    private final AlertMessageQueryRepository alertMessageQueryRepository;
+    private final long renotifyIntervalMillis;
+    private final ConcurrentHashMap<String, DeviceAlerts> openAlerts = new ConcurrentHashMap<>();
+
+    private final Counter openedAlerts;
+    private final Counter renotifiedAlerts;
+    private final Counter suppressedAlerts;
+    private final Counter resolvedAlerts;
+    // Opened alerts by [AlertType ordinal][AlertSeverity ordinal]
+    private final Counter[][] raisedAlerts = new Counter[ALERT_TYPES.length][SEVERITIES.length];
+
+    public AlertStateTracker(AlertPipeline alertPipeline,
+                             AlertMessageQueryRepository alertMessageQueryRepository,
+                             MeterRegistry meterRegistry,
+                             @Value("${iot.alerts.dedup.renotify-interval-ms:300000}") long renotifyIntervalMillis) {
+        this.alertPipeline = alertPipeline;
+        this.alertMessageQueryRepository = alertMessageQueryRepository;
+        this.renotifyIntervalMillis = renotifyIntervalMillis;
+
+        Gauge.builder("iot.alerts.devices.open", openAlerts, ConcurrentHashMap::size)
+                .description("Devices with at least one open alert")
+                .register(meterRegistry);
+        this.openedAlerts = transitions(meterRegistry, "opened");
+        this.renotifiedAlerts = transitions(meterRegistry, "renotified");
+        this.suppressedAlerts = transitions(meterRegistry, "suppressed");
+        this.resolvedAlerts = transitions(meterRegistry, "resolved");
+        for (AlertMessage.AlertType type : ALERT_TYPES) {
+            for (AlertMessage.AlertSeverity severity : SEVERITIES) {
+                raisedAlerts[type.ordinal()][severity.ordinal()] = Counter.builder("iot.alerts.raised")
+                        .description("Alerts opened, by type and severity")
+                        .tag("type", type.name())
+                        .tag("severity", severity.name())
+                        .register(meterRegistry);
+            }
+        }
+    }
+
+    private static Counter transitions(MeterRegistry meterRegistry, String transition) {
+        return Counter.builder("iot.alerts.transitions")
+                .description("Alert state machine transitions; suppressed breaches cause no write")
+                .tag("transition", transition)
+                .register(meterRegistry);
+    }
+
+    // Runs after AlertPipeline has replayed its spill file (it depends on the pipeline), so alerts spilled at the
+    // last shutdown are in the table, and before the listener containers start consuming
+    @PostConstruct
+    void loadUnresolved() {
+        int[] loaded = new int[1];
+        try {
+            alertMessageQueryRepository.streamUnresolved(row -> {
+                restore(row);
+                loaded[0]++;
+            });
+            log.info("Restored {} unresolved alerts", loaded[0]);
+        } catch (DataAccessException e) {
+            log.warn("Could not load unresolved alerts after {}, their devices may open them again: {}", loaded[0], e.toString());
+        }
+    }
+
+    // Rows come oldest first, so of two unresolved rows of the same alert the newer one is kept
+    void restore(AlertMessage row) {
+        DeviceAlerts device = openAlerts.computeIfAbsent(row.getDeviceId(), k -> new DeviceAlerts());
+        synchronized (device) {
+            int type = row.getAlertType().ordinal();
+            if (device.active[type] == null) {
+                device.openCount++;
+            }
+            ActiveAlert active = new ActiveAlert(row, null, System.currentTimeMillis());
+            active.occurrences = row.getOccurrences();
+            if (row.getLastSeenAt() != null) {
+                active.lastSeenAt = row.getLastSeenAt();
+            }
+            device.active[type] = active;
+        }
+    }
+
+    void apply(SensorData sensorData, RuleBreaches breaches) {
+        String deviceId = sensorData.getDeviceId();
+        if (deviceId == null) {
+            return;
+        }
+        while (true) {
+            DeviceAlerts device = breaches.isEmpty()
+                    ? openAlerts.get(deviceId)
+                    : openAlerts.computeIfAbsent(deviceId, k -> new DeviceAlerts());
+            if (device == null) {
+                return;
+            }
+            synchronized (device) {
+                // Lost a race with the last alert of this device resolving; fetch the fresh entry
+                if (device.retired) {
+                    continue;
+                }
+                update(deviceId, device, sensorData, breaches);
+                retireIfIdle(deviceId, device);
+                return;
+            }
+        }
+    }
+
+    private void update(String deviceId, DeviceAlerts device, SensorData sensorData, RuleBreaches breaches) {
+        long nowMillis = System.currentTimeMillis();
+        LocalDateTime now = LocalDateTime.now();
+        for (int type = 0; type < ALERT_TYPES.length; type++) {
+            ActiveAlert active = device.active[type];
+            if (breaches.isBreached(type)) {
+                if (active == null) {
+                    open(deviceId, device, type, breaches.rule(type), breaches.value(type), sensorData, now, nowMillis);
+                } else {
+                    ongoing(device, active, breaches.rule(type), breaches.value(type), sensorData, now, nowMillis);
+                }
+            } else if (active != null) {
+                if (active.rule == null) {
+                    resolve(deviceId, device, type, active, sensorData, now);
+                    continue;
+                }
+                double value = breaches.observed(active.rule, sensorData);
+                if (!Double.isNaN(value) && active.rule.clears(value)) {
+                    resolve(deviceId, device, type, active, sensorData, now);
+                }
+            }
+        }
+    }
+
+    private void open(String deviceId, DeviceAlerts device, int type, CompiledRule rule, double value,
+                      SensorData sensorData, LocalDateTime now, long nowMillis) {
+        AlertMessage row = new AlertMessage();
+        row.setSensorData(sensorData);
+        row.setDeviceId(deviceId);
+        row.setMessage(rule.renderMessage(sensorData, value));
+        row.setSeverity(rule.getSeverity());
+        row.setAlertType(rule.getAlertType());
+        row.setTimestamp(now);
+        row.setLastSeenAt(now);
+        row.setStatus(AlertMessage.AlertStatus.OPEN);
+
+        ActiveAlert active = new ActiveAlert(row, rule, nowMillis);
+        device.active[type] = active;
+        device.openCount++;
+        openedAlerts.increment();
+        raisedAlerts[type][rule.getSeverity().ordinal()].increment();
+        alertPipeline.submit(row);
+
+        // The row is never written; forget the state so the retry reopens it
+        onRollback(() -> discard(deviceId, device, type, active));
+    }
+
+    private void ongoing(DeviceAlerts device, ActiveAlert active, CompiledRule rule, double value,
+                         SensorData sensorData, LocalDateTime now, long nowMillis) {
+        CompiledRule previousRule = active.rule;
+        String previousMessage = active.message;
+        int previousOccurrences = active.occurrences;
+        long previousNotifiedAt = active.lastNotifiedAt;
+        LocalDateTime previousSeenAt = active.lastSeenAt;
+        onRollback(() -> {
+            synchronized (device) {
+                active.rule = previousRule;
+                active.message = previousMessage;
+                active.occurrences = previousOccurrences;
+                active.lastNotifiedAt = previousNotifiedAt;
+                active.lastSeenAt = previousSeenAt;
+            }
+        });
+
+        active.occurrences++;
+        active.lastSeenAt = now;
+        boolean escalated = rule.getSeverity().compareTo(severity(active)) > 0;
+        if (!escalated && nowMillis - active.lastNotifiedAt < renotifyIntervalMillis) {
+            if (active.rule == null) {
+                active.rule = rule;
+            }
+            suppressedAlerts.increment();
+            return;
+        }
+        active.rule = rule;
+        active.message = rule.renderMessage(sensorData, value);
+        active.lastNotifiedAt = nowMillis;
+        renotifiedAlerts.increment();
+        alertPipeline.submitUpdate(active.row, snapshot(active, sensorData, AlertMessage.AlertStatus.ONGOING, null));
+    }
+
+    private void resolve(String deviceId, DeviceAlerts device, int type, ActiveAlert active,
+                         SensorData sensorData, LocalDateTime now) {
+        device.active[type] = null;
+        device.openCount--;
+        resolvedAlerts.increment();
+        alertPipeline.submitUpdate(active.row, snapshot(active, sensorData, AlertMessage.AlertStatus.RESOLVED, now));
+
+        // The RESOLVED update is never written; keep the alert open so the retry resolves it
+        onRollback(() -> reinstate(deviceId, type, active));
+    }
+
+    // Collects the undo actions of the current transaction; they run newest first if it does not commit
+    private void onRollback(Runnable undo) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            return;
+        }
+        @SuppressWarnings("unchecked")
+        List<Runnable> undoLog = (List<Runnable>) TransactionSynchronizationManager.getResource(this);
+        if (undoLog == null) {
+            List<Runnable> actions = new ArrayList<>();
+            TransactionSynchronizationManager.bindResource(this, actions);
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    TransactionSynchronizationManager.unbindResourceIfPossible(AlertStateTracker.this);
+                    if (status != STATUS_COMMITTED) {
+                        for (int i = actions.size() - 1; i >= 0; i--) {
+                            actions.get(i).run();
+                        }
+                    }
+                }
+            });
+            undoLog = actions;
+        }
+        undoLog.add(undo);
+    }
+
+    // The device entry may have been retired when its last alert resolved; a reopened alert of the type wins
+    private void reinstate(String deviceId, int type, ActiveAlert active) {
+        while (true) {
+            DeviceAlerts device = openAlerts.computeIfAbsent(deviceId, k -> new DeviceAlerts());
+            synchronized (device) {
+                if (device.retired) {
+                    continue;
+                }
+                if (device.active[type] == null) {
+                    device.active[type] = active;
+                    device.openCount++;
+                }
+                retireIfIdle(deviceId, device);
+                return;
+            }
+        }
+    }
+
+    private void discard(String deviceId, DeviceAlerts device, int type, ActiveAlert active) {
+        synchronized (device) {
+            if (device.active[type] == active) {
+                device.active[type] = null;
+                device.openCount--;
+                retireIfIdle(deviceId, device);
+            }
+        }
+    }
+
+    private void retireIfIdle(String deviceId, DeviceAlerts device) {
+        if (device.openCount == 0 && !device.retired) {
+            device.retired = true;
+            openAlerts.remove(deviceId, device);
+        }
+    }
+
+    private static AlertMessage.AlertSeverity severity(ActiveAlert active) {
+        return active.rule != null ? active.rule.getSeverity() : active.row.getSeverity();
+    }
+
+    // Immutable copy handed to the pipeline; linked to the reading that triggered this update
+    private static AlertMessage snapshot(ActiveAlert active, SensorData sensorData,
+                                         AlertMessage.AlertStatus status, LocalDateTime resolvedAt) {
+        AlertMessage state = new AlertMessage();
+        state.setSensorData(sensorData);
+        state.setDeviceId(active.row.getDeviceId());
+        state.setMessage(active.message);
+        state.setSeverity(severity(active));
+        state.setAlertType(active.row.getAlertType());
+        state.setTimestamp(active.row.getTimestamp());
+        state.setStatus(status);
+        state.setOccurrences(active.occurrences);
+        state.setLastSeenAt(active.lastSeenAt);
+        state.setResolvedAt(resolvedAt);
+        return state;
+    }
+}
@@ -0,0 +1,80 @@
+package com.yusufsahin.iot_platform.service;
+
+import com.yusufsahin.iot_platform.config.KafkaConfig;
+import com.yusufsahin.iot_platform.dto.AlertMessageDto;
+import com.yusufsahin.iot_platform.dto.converter.AlertMessageDtoConverter;
+import com.yusufsahin.iot_platform.model.AlertMessage;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+// Pushes every alert transition (opened, ongoing, resolved) to the alerts topic, keyed by device, so notification
+// systems need not poll the REST API (iot.alerts.topic.enabled). AlertPipeline publishes the transitions of a batch
+// once their rows have committed, in one Kafka transaction, and each record carries its row id: whatever is on the
+// topic is in alert_messages and can be joined to it.
+// The sensor-data offsets are not part of these transactions. Alert rows are written by the pipeline after the
+// readings they came from have been persisted and acknowledged, so a transaction holding both could not carry
+// the row ids. A batch is published again until it succeeds, and one still unpublished at shutdown is spilled and
+// published after the next start: delivery is at-least-once. Repeats carry the same TRANSITION_KEY_HEADER (row id,
+// status, occurrences) for consumers to drop them by. Like their rows, transitions still queued in memory when the
+// process dies are lost.
+@Service
+public class AlertTopicPublisher {
+
+    public static final String TRANSITION_KEY_HEADER = "iot-alert-transition-key";
+
+    private final boolean enabled;
+    private final KafkaTemplate<String, AlertMessageDto> alertsKafkaTemplate;
+    private final Counter published;
+    private final Counter failures;
+
+    public AlertTopicPublisher(KafkaTemplate<String, AlertMessageDto> alertsKafkaTemplate,
+                               MeterRegistry meterRegistry,
+                               @Value("${iot.alerts.topic.enabled:false}") boolean enabled) {
+        this.enabled = enabled;
+        this.alertsKafkaTemplate = alertsKafkaTemplate;
+        this.published = Counter.builder("iot.alerts.topic.published")
+                .description("Alert transitions committed to the alerts topic")
+                .register(meterRegistry);
+        this.failures = Counter.builder("iot.alerts.topic.failures")
+                .description("Alerts topic transactions that were aborted or could not be started")
+                .register(meterRegistry);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    // Publishes the given persisted alert states in one transaction; throws if it was aborted
+    void publish(List<AlertMessage> states) {
+        if (!enabled || states.isEmpty()) {
+            return;
+        }
+        try {
+            alertsKafkaTemplate.executeInTransaction(operations -> {
+                for (AlertMessage state : states) {
+                    ProducerRecord<String, AlertMessageDto> record = new ProducerRecord<>(
+                            KafkaConfig.ALERTS_TOPIC, state.getDeviceId(), AlertMessageDtoConverter.toDto(state));
+                    record.headers().add(TRANSITION_KEY_HEADER, transitionKey(state).getBytes(StandardCharsets.UTF_8));
+                    operations.send(record);
+                }
+                return null;
+            });
+        } catch (RuntimeException e) {
+            failures.increment();
+            throw e;
+        }
+        published.increment(states.size());
+    }
+
+    // Every write of a row raises its occurrences or resolves it, so this names one transition of one row
+    static String transitionKey(AlertMessage state) {
+        return String.valueOf(state.getId()) + '|' + state.getStatus() + '|' + state.getOccurrences();
+    }
+}
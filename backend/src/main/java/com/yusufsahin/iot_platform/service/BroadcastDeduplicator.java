@@ -0,0 +1,59 @@
+package com.yusufsahin.iot_platform.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.yusufsahin.iot_platform.dto.AlertMessageDto;
+import com.yusufsahin.iot_platform.dto.SensorDataDto;
+import com.yusufsahin.iot_platform.model.AlertMessage;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+
+// Filters what arrives on the broadcast topics before it reaches subscribers. A reading is only delivered if it is
+// newer, by (timestamp, id), than the last one delivered for its device: redelivered sensor-data ingested by two
+// nodes around a rebalance, or a node's stale frame arriving after a newer one, are dropped. An alert is delivered
+// once per version (status, occurrences, last seen). Memory is bounded; an evicted entry only weakens the filter.
+final class BroadcastDeduplicator {
+
+    private static final Duration ALERT_VERSION_TTL = Duration.ofMinutes(10);
+
+    private final Cache<String, Delivered> lastDelivered;
+    private final Cache<AlertVersion, Boolean> deliveredAlerts;
+
+    BroadcastDeduplicator(long maxDevices, long maxAlertVersions) {
+        this.lastDelivered = Caffeine.newBuilder().maximumSize(maxDevices).build();
+        this.deliveredAlerts = Caffeine.newBuilder()
+                .maximumSize(maxAlertVersions)
+                .expireAfterWrite(ALERT_VERSION_TTL)
+                .build();
+    }
+
+    boolean isNew(SensorDataDto reading) {
+        if (reading.deviceId() == null || reading.timestamp() == null) {
+            return true;
+        }
+        Delivered candidate = new Delivered(reading.timestamp(), reading.id() != null ? reading.id() : -1L);
+        boolean[] fresh = new boolean[1];
+        lastDelivered.asMap().compute(reading.deviceId(), (deviceId, current) -> {
+            fresh[0] = current == null || candidate.isAfter(current);
+            return fresh[0] ? candidate : current;
+        });
+        return fresh[0];
+    }
+
+    boolean isNew(AlertMessageDto alert) {
+        AlertVersion version = new AlertVersion(alert.id(), alert.status(), alert.occurrences(), alert.lastSeenAt());
+        return deliveredAlerts.asMap().putIfAbsent(version, Boolean.TRUE) == null;
+    }
+
+    private record Delivered(LocalDateTime timestamp, long id) {
+
+        boolean isAfter(Delivered other) {
+            int byTime = timestamp.compareTo(other.timestamp);
+            return byTime > 0 || (byTime == 0 && id > other.id);
+        }
+    }
+
+    private record AlertVersion(Long id, AlertMessage.AlertStatus status, int occurrences, LocalDateTime lastSeenAt) {
+    }
+}
@@ -0,0 +1,168 @@
+package com.yusufsahin.iot_platform.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.yusufsahin.iot_platform.dto.BulkIngestResult;
+import com.yusufsahin.iot_platform.dto.SensorDataDto;
+import com.yusufsahin.iot_platform.serde.SensorDataFormat;
+import com.yusufsahin.iot_platform.serde.SensorDataRecordReader;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StreamCorruptedException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+// HTTP counterpart of KafkaConsumer for gateways that upload readings in bulk. The body is decoded one record at
+// a time and valid readings are appended to the write-behind buffer in chunks, so they take the same batched
+// persistence, alert and broadcast path as consumed ones, and the same backpressure: append blocks the uploading
+// thread while the buffer is full. ingest returns once every accepted reading is persisted (or handed to the
+// retry topics), so a gateway can drop what it sent on success. A request that fails midway may already have
+// persisted part of the upload; resending it is safe but stores those readings twice (at-least-once).
+@Slf4j
+@Service
+public class BulkIngestService {
+
+    private static final int MAX_REPORTED_ERRORS = 20;
+    private static final int MAX_TEXT_LENGTH = 255;
+
+    private final SensorDataWriteBehindBuffer writeBehindBuffer;
+    private final ObjectMapper objectMapper;
+    private final int chunkSize;
+    private final int maxRecordBytes;
+    private final long persistTimeoutMs;
+    private final Counter acceptedReadings;
+    private final Counter rejectedReadings;
+
+    public BulkIngestService(SensorDataWriteBehindBuffer writeBehindBuffer,
+                             ObjectMapper objectMapper,
+                             MeterRegistry meterRegistry,
+                             @Value("${iot.ingest.http.chunk-size:500}") int chunkSize,
+                             @Value("${iot.ingest.http.max-record-bytes:16384}") int maxRecordBytes,
+                             @Value("${iot.ingest.http.persist-timeout-ms:60000}") long persistTimeoutMs) {
+        this.writeBehindBuffer = writeBehindBuffer;
+        this.objectMapper = objectMapper;
+        this.chunkSize = chunkSize;
+        this.maxRecordBytes = maxRecordBytes;
+        this.persistTimeoutMs = persistTimeoutMs;
+        this.acceptedReadings = Counter.builder("iot.ingest.http.readings")
+                .description("Readings received through the bulk HTTP endpoint")
+                .tag("outcome", "accepted")
+                .register(meterRegistry);
+        this.rejectedReadings = Counter.builder("iot.ingest.http.readings")
+                .description("Readings received through the bulk HTTP endpoint")
+                .tag("outcome", "rejected")
+                .register(meterRegistry);
+    }
+
+    // TimeoutException: the accepted readings were buffered but not confirmed persisted within persist-timeout-ms
+    public BulkIngestResult ingest(InputStream body, SensorDataFormat format)
+            throws IOException, InterruptedException, TimeoutException {
+        SensorDataRecordReader reader = new SensorDataRecordReader(body, format, objectMapper, maxRecordBytes);
+        List<CompletableFuture<Void>> persisted = new ArrayList<>();
+        List<SensorDataDto> chunk = new ArrayList<>(chunkSize);
+        List<String> errors = new ArrayList<>();
+        long accepted = 0;
+        long rejected = 0;
+        try {
+            while (true) {
+                SensorDataDto reading;
+                String problem;
+                try {
+                    reading = reader.next();
+                    if (reading == null) {
+                        break;
+                    }
+                    problem = validate(reading);
+                } catch (IllegalArgumentException e) {
+                    reading = null;
+                    problem = e.getMessage();
+                }
+                if (problem != null) {
+                    rejected++;
+                    report(errors, reader.recordNumber(), problem);
+                    continue;
+                }
+                chunk.add(reading.id() == null ? reading : withoutId(reading));
+                accepted++;
+                if (chunk.size() == chunkSize) {
+                    persisted.add(append(chunk));
+                    chunk = new ArrayList<>(chunkSize);
+                }
+            }
+        } catch (StreamCorruptedException e) {
+            rejected++;
+            report(errors, reader.recordNumber(), e.getMessage() + "; the rest of the upload was ignored");
+        } finally {
+            // Whatever was accepted before a failure is still ingested
+            if (!chunk.isEmpty()) {
+                persisted.add(append(chunk));
+            }
+            acceptedReadings.increment(accepted);
+            rejectedReadings.increment(rejected);
+        }
+
+        try {
+            CompletableFuture.allOf(persisted.toArray(CompletableFuture[]::new)).get(persistTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Bulk ingest failed", e.getCause());
+        }
+        if (rejected > 0) {
+            log.warn("Bulk upload: {} readings accepted, {} rejected (first: {})", accepted, rejected, errors.get(0));
+        }
+        return new BulkIngestResult(accepted, rejected, errors);
+    }
+
+    // Null when the reading can be stored; KafkaConsumer dead-letters consumed readings that fail it
+    static String validate(SensorDataDto reading) {
+        if (reading.deviceId() == null || reading.deviceId().isBlank()) {
+            return "missing deviceId";
+        }
+        if (reading.deviceId().length() > MAX_TEXT_LENGTH) {
+            return "deviceId longer than " + MAX_TEXT_LENGTH + " characters";
+        }
+        if (reading.location() != null && reading.location().length() > MAX_TEXT_LENGTH) {
+            return "location longer than " + MAX_TEXT_LENGTH + " characters";
+        }
+        if (reading.timestamp() == null) {
+            return "missing timestamp";
+        }
+        if (!isFinite(reading.temperature()) || !isFinite(reading.humidity()) || !isFinite(reading.pressure())) {
+            return "non-finite measurement";
+        }
+        if (reading.batteryLevel() != null && (reading.batteryLevel() < 0 || reading.batteryLevel() > 100)) {
+            return "batteryLevel outside 0-100";
+        }
+        return null;
+    }
+
+    private CompletableFuture<Void> append(List<SensorDataDto> chunk) throws InterruptedException {
+        CompletableFuture<Void> persisted = new CompletableFuture<>();
+        writeBehindBuffer.append(chunk, () -> persisted.complete(null));
+        return persisted;
+    }
+
+    private static boolean isFinite(Double value) {
+        return value == null || Double.isFinite(value);
+    }
+
+    // Ids are assigned by the database
+    private static SensorDataDto withoutId(SensorDataDto reading) {
+        return new SensorDataDto(null, reading.deviceId(), reading.temperature(), reading.humidity(), reading.pressure(),
+                reading.timestamp(), reading.location(), reading.batteryLevel());
+    }
+
+    private static void report(List<String> errors, long recordNumber, String problem) {
+        if (errors.size() < MAX_REPORTED_ERRORS) {
+            errors.add("record " + recordNumber + ": " + problem);
+        }
+    }
+}
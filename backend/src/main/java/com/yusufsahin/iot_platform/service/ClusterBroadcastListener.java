@@ -0,0 +1,111 @@
+package com.yusufsahin.iot_platform.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.yusufsahin.iot_platform.config.KafkaConfig;
+import com.yusufsahin.iot_platform.dto.AlertMessageDto;
+import com.yusufsahin.iot_platform.dto.SensorDataDto;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+// Receiving side of the cluster fan-out, see ClusterBroadcastPublisher. Only started in cluster mode. Each process
+// uses a consumer group of its own, so every node sees every frame, and delivers what BroadcastDeduplicator lets
+// through to its local /topic/sensor-data* and /topic/alert subscribers.
+@Slf4j
+@Service
+public class ClusterBroadcastListener {
+
+    private static final TypeReference<List<SensorDataDto>> READINGS = new TypeReference<>() {
+    };
+    private static final TypeReference<List<AlertMessageDto>> ALERTS = new TypeReference<>() {
+    };
+    private static final long MAX_ALERT_VERSIONS = 100_000;
+
+    private final SensorDataBroadcaster sensorDataBroadcaster;
+    private final WebSocketService webSocketService;
+    private final ObjectMapper objectMapper;
+    private final BroadcastDeduplicator deduplicator;
+    // Unique per process; nothing is committed under it, so an abandoned group leaves nothing behind
+    private final String groupId = "iot-platform-broadcast-" + UUID.randomUUID();
+
+    private final Counter duplicateReadings;
+    private final Counter duplicateAlerts;
+
+    public ClusterBroadcastListener(SensorDataBroadcaster sensorDataBroadcaster,
+                                    WebSocketService webSocketService,
+                                    ObjectMapper objectMapper,
+                                    MeterRegistry meterRegistry,
+                                    @Value("${iot.devices.cache.max-size:250000}") long maxDevices) {
+        this.sensorDataBroadcaster = sensorDataBroadcaster;
+        this.webSocketService = webSocketService;
+        this.objectMapper = objectMapper;
+        this.deduplicator = new BroadcastDeduplicator(maxDevices, MAX_ALERT_VERSIONS);
+        this.duplicateReadings = Counter.builder("iot.websocket.cluster.dropped")
+                .description("Broadcast entries not delivered because they were already delivered or superseded")
+                .tag("type", "sensor-data")
+                .register(meterRegistry);
+        this.duplicateAlerts = Counter.builder("iot.websocket.cluster.dropped")
+                .description("Broadcast entries not delivered because they were already delivered or superseded")
+                .tag("type", "alert")
+                .register(meterRegistry);
+    }
+
+    public String getGroupId() {
+        return groupId;
+    }
+
+    @KafkaListener(topics = KafkaConfig.SENSOR_DATA_BROADCAST_TOPIC, groupId = "#{__listener.groupId}",
+            containerFactory = "broadcastListenerContainerFactory", autoStartup = "${iot.websocket.cluster.enabled:false}")
+    public void onSensorData(List<String> frames) {
+        List<SensorDataDto> fresh = new ArrayList<>();
+        for (String frame : frames) {
+            for (SensorDataDto reading : parse(frame, READINGS)) {
+                if (deduplicator.isNew(reading)) {
+                    fresh.add(reading);
+                } else {
+                    duplicateReadings.increment();
+                }
+            }
+        }
+        if (!fresh.isEmpty()) {
+            sensorDataBroadcaster.deliver(fresh);
+        }
+    }
+
+    @KafkaListener(topics = KafkaConfig.ALERT_BROADCAST_TOPIC, groupId = "#{__listener.groupId}",
+            containerFactory = "broadcastListenerContainerFactory", autoStartup = "${iot.websocket.cluster.enabled:false}")
+    public void onAlerts(List<String> frames) {
+        List<AlertMessageDto> fresh = new ArrayList<>();
+        for (String frame : frames) {
+            for (AlertMessageDto alert : parse(frame, ALERTS)) {
+                if (deduplicator.isNew(alert)) {
+                    fresh.add(alert);
+                } else {
+                    duplicateAlerts.increment();
+                }
+            }
+        }
+        if (!fresh.isEmpty()) {
+            webSocketService.sendAlerts(fresh);
+        }
+    }
+
+    // A frame that cannot be read is skipped rather than redelivered: the feed moves on
+    private <T> List<T> parse(String frame, TypeReference<List<T>> type) {
+        try {
+            return frame != null ? objectMapper.readValue(frame, type) : List.of();
+        } catch (JsonProcessingException e) {
+            log.warn("Skipping unreadable broadcast frame: {}", e.getOriginalMessage());
+            return List.of();
+        }
+    }
+}
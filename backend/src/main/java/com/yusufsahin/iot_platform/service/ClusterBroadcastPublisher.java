@@ -0,0 +1,74 @@
+package com.yusufsahin.iot_platform.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.yusufsahin.iot_platform.config.KafkaConfig;
+import com.yusufsahin.iot_platform.dto.AlertMessageDto;
+import com.yusufsahin.iot_platform.dto.SensorDataDto;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+
+// Scale-out mode of the WebSocket feeds (iot.websocket.cluster.enabled). Ingest is spread over the instances by
+// partition, so instead of serving only its own subscribers each node publishes its conflated sensor-data frames
+// and alert batches to the broadcast topics, and every node's ClusterBroadcastListener serves its subscribers from
+// there. Ingest nodes and WebSocket nodes can then be scaled independently. Publishing is fire-and-forget, like
+// a local frame: a lost sensor-data frame is superseded by the next one.
+@Slf4j
+@Service
+public class ClusterBroadcastPublisher {
+
+    private final boolean enabled;
+    private final KafkaTemplate<String, String> kafkaTemplate;
+    private final ObjectMapper objectMapper;
+    private final LogSampler failureLogSampler;
+    private final Counter failures;
+
+    public ClusterBroadcastPublisher(KafkaTemplate<String, String> kafkaTemplate,
+                                     ObjectMapper objectMapper,
+                                     MeterRegistry meterRegistry,
+                                     @Value("${iot.websocket.cluster.enabled:false}") boolean enabled,
+                                     @Value("${iot.logging.sample-every:100}") long logSampleEvery) {
+        this.enabled = enabled;
+        this.kafkaTemplate = kafkaTemplate;
+        this.objectMapper = objectMapper;
+        this.failureLogSampler = new LogSampler(logSampleEvery);
+        this.failures = Counter.builder("iot.websocket.cluster.publish-failures")
+                .description("Broadcast frames that could not be published to Kafka")
+                .register(meterRegistry);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void publishSensorData(List<SensorDataDto> readings) {
+        send(KafkaConfig.SENSOR_DATA_BROADCAST_TOPIC, readings);
+    }
+
+    public void publishAlerts(List<AlertMessageDto> alerts) {
+        send(KafkaConfig.ALERT_BROADCAST_TOPIC, alerts);
+    }
+
+    private void send(String topic, List<?> frame) {
+        String json;
+        try {
+            json = objectMapper.writeValueAsString(frame);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Could not serialize " + topic + " frame", e);
+        }
+        kafkaTemplate.send(topic, json).whenComplete((result, e) -> {
+            if (e != null) {
+                failures.increment();
+                if (failureLogSampler.sample()) {
+                    log.warn("Could not publish {} frame of {} entries (sampled): {}", topic, frame.size(), e.getMessage());
+                }
+            }
+        });
+    }
+}
@@ -0,0 +1,143 @@
+package com.yusufsahin.iot_platform.service;
+
+import com.yusufsahin.iot_platform.config.KafkaConfig;
+import com.yusufsahin.iot_platform.dto.DeadLetterReplayResult;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.header.Header;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.kafka.core.ConsumerFactory;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.KafkaHeaders;
+import org.springframework.kafka.support.SendResult;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+// Moves dead letters back onto sensor-data, e.g. after the cause of a database outage or a decoding bug is fixed.
+// Reads the DLT with its own consumer group and commits a poll's offsets only once its records have been
+// republished, so an interrupted replay resumes where it stopped and never loses a record (it may resend some).
+// Values are republished byte for byte without the failure headers; whatever fails again is dead-lettered again.
+@Slf4j
+@Service
+public class DeadLetterReplayService {
+
+    private static final String REPLAY_GROUP_ID = "iot-platform-dlt-replay";
+    private static final Duration POLL_TIMEOUT = Duration.ofSeconds(1);
+    // Gives up if the broker returns nothing this many times in a row although records are left
+    private static final int MAX_EMPTY_POLLS = 5;
+    private static final String DLT_HEADER_PREFIX = KafkaHeaders.PREFIX + "dlt-";
+
+    private final ConsumerFactory<String, byte[]> deadLetterConsumerFactory;
+    private final KafkaTemplate<String, Object> deadLetterKafkaTemplate;
+    private final long sendTimeoutMs;
+
+    public DeadLetterReplayService(ConsumerFactory<String, byte[]> deadLetterConsumerFactory,
+                                   KafkaTemplate<String, Object> deadLetterKafkaTemplate,
+                                   @Value("${iot.kafka.retry.send-timeout-ms:30000}") long sendTimeoutMs) {
+        this.deadLetterConsumerFactory = deadLetterConsumerFactory;
+        this.deadLetterKafkaTemplate = deadLetterKafkaTemplate;
+        this.sendTimeoutMs = sendTimeoutMs;
+    }
+
+    // One replay at a time: concurrent ones would share the consumer group's offsets
+    public synchronized DeadLetterReplayResult replay(int maxRecords) {
+        long started = System.nanoTime();
+        try (Consumer<String, byte[]> consumer = deadLetterConsumerFactory.createConsumer(REPLAY_GROUP_ID, "dlt-replay", null)) {
+            List<TopicPartition> partitions = consumer.partitionsFor(KafkaConfig.SENSOR_DATA_DLT).stream()
+                    .map(info -> new TopicPartition(info.topic(), info.partition()))
+                    .toList();
+            if (partitions.isEmpty()) {
+                return new DeadLetterReplayResult(0, 0);
+            }
+            consumer.assign(partitions);
+            // Only what is in the DLT now: records that fail again are dead-lettered behind this mark
+            Map<TopicPartition, Long> replayEnd = consumer.endOffsets(partitions);
+
+            long replayed = 0;
+            int emptyPolls = 0;
+            while (replayed < maxRecords && behind(consumer, replayEnd) > 0) {
+                ConsumerRecords<String, byte[]> records = consumer.poll(POLL_TIMEOUT);
+                if (records.isEmpty()) {
+                    if (++emptyPolls == MAX_EMPTY_POLLS) {
+                        break;
+                    }
+                    continue;
+                }
+                emptyPolls = 0;
+                List<CompletableFuture<SendResult<String, Object>>> sends = new ArrayList<>(records.count());
+                Map<TopicPartition, OffsetAndMetadata> processed = new HashMap<>();
+                for (ConsumerRecord<String, byte[]> record : records) {
+                    TopicPartition partition = new TopicPartition(record.topic(), record.partition());
+                    if (replayed == maxRecords || record.offset() >= replayEnd.get(partition)) {
+                        continue;
+                    }
+                    if (record.value() != null) {
+                        sends.add(deadLetterKafkaTemplate.send(toSensorData(record)));
+                        replayed++;
+                    }
+                    processed.put(partition, new OffsetAndMetadata(record.offset() + 1));
+                }
+                awaitSends(sends);
+                consumer.commitSync(processed);
+                // Records past the cut-off were fetched but not replayed; the next poll must not skip them
+                processed.forEach((partition, offset) -> consumer.seek(partition, offset.offset()));
+                for (TopicPartition partition : records.partitions()) {
+                    if (!processed.containsKey(partition)) {
+                        consumer.seek(partition, records.records(partition).get(0).offset());
+                    }
+                }
+            }
+
+            long remaining = behind(consumer, consumer.endOffsets(partitions));
+            log.info("Replayed {} dead letters to {} in {} ms, {} remaining", replayed, KafkaConfig.SENSOR_DATA_TOPIC,
+                    (System.nanoTime() - started) / 1_000_000, remaining);
+            return new DeadLetterReplayResult(replayed, remaining);
+        }
+    }
+
+    private static long behind(Consumer<String, byte[]> consumer, Map<TopicPartition, Long> endOffsets) {
+        long behind = 0;
+        for (Map.Entry<TopicPartition, Long> end : endOffsets.entrySet()) {
+            behind += Math.max(0, end.getValue() - consumer.position(end.getKey()));
+        }
+        return behind;
+    }
+
+    private static ProducerRecord<String, Object> toSensorData(ConsumerRecord<String, byte[]> record) {
+        ProducerRecord<String, Object> replay = new ProducerRecord<>(KafkaConfig.SENSOR_DATA_TOPIC, record.key(), record.value());
+        for (Header header : record.headers()) {
+            String key = header.key();
+            if (!key.startsWith(DLT_HEADER_PREFIX)
+                    && !key.equals(SensorDataRecoveryPublisher.FAILURE_FQCN_HEADER)
+                    && !key.equals(SensorDataRecoveryPublisher.FAILURE_MESSAGE_HEADER)) {
+                replay.headers().add(header);
+            }
+        }
+        return replay;
+    }
+
+    private void awaitSends(List<CompletableFuture<SendResult<String, Object>>> sends) {
+        try {
+            CompletableFuture.allOf(sends.toArray(CompletableFuture[]::new)).get(sendTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while replaying dead letters", e);
+        } catch (ExecutionException | TimeoutException e) {
+            throw new IllegalStateException("Could not republish dead letters to " + KafkaConfig.SENSOR_DATA_TOPIC, e);
+        }
+    }
+}
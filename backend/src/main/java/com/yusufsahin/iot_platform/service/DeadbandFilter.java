@@ -0,0 +1,167 @@
+package com.yusufsahin.iot_platform.service;
+
+import com.yusufsahin.iot_platform.model.Metric;
+import com.yusufsahin.iot_platform.model.SensorData;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Change-based downsampling at ingest. A reading is stored only if, compared with its device's last stored reading,
+// a metric moved beyond its deadband (absolute, or "n%" of the stored value), a metric appeared or disappeared, or
+// max-silence-ms has passed. Comparing against the last stored value rather than the previous reading keeps slow
+// drifts from going unnoticed. Readings older than the last stored one are always stored.
+// Only the insert is skipped: alert evaluation, rollups, the latest-reading cache and the WebSocket broadcast
+// still get every reading.
+@Slf4j
+@Service
+public class DeadbandFilter {
+
+    private final boolean enabled;
+    private final long maxSilenceMillis;
+    private final double[] tolerances = new double[Metric.VALUES.length];
+    private final boolean[] percent = new boolean[Metric.VALUES.length];
+
+    // Last stored reading per device key, updated once the storing transaction commits
+    private final ConcurrentHashMap<Integer, StoredReading> lastStored = new ConcurrentHashMap<>();
+
+    private final Counter storedReadings;
+    private final Counter suppressedReadings;
+
+    public DeadbandFilter(MeterRegistry meterRegistry,
+                          @Value("${iot.ingest.deadband.enabled:false}") boolean enabled,
+                          @Value("${iot.ingest.deadband.max-silence-ms:300000}") long maxSilenceMillis,
+                          @Value("${iot.ingest.deadband.temperature:0.1}") String temperature,
+                          @Value("${iot.ingest.deadband.humidity:0.5}") String humidity,
+                          @Value("${iot.ingest.deadband.pressure:0.1}") String pressure,
+                          @Value("${iot.ingest.deadband.battery-level:0}") String batteryLevel) {
+        this.enabled = enabled;
+        this.maxSilenceMillis = maxSilenceMillis;
+        setTolerance(Metric.TEMPERATURE, temperature);
+        setTolerance(Metric.HUMIDITY, humidity);
+        setTolerance(Metric.PRESSURE, pressure);
+        setTolerance(Metric.BATTERY_LEVEL, batteryLevel);
+
+        this.storedReadings = Counter.builder("iot.ingest.deadband.readings")
+                .description("Readings seen by the deadband filter")
+                .tag("outcome", "stored")
+                .register(meterRegistry);
+        this.suppressedReadings = Counter.builder("iot.ingest.deadband.readings")
+                .description("Readings seen by the deadband filter")
+                .tag("outcome", "suppressed")
+                .register(meterRegistry);
+        Gauge.builder("iot.ingest.deadband.savings", this, DeadbandFilter::savings)
+                .description("Share of readings not stored since startup")
+                .baseUnit("ratio")
+                .register(meterRegistry);
+        if (enabled) {
+            log.info("Deadband filter enabled: tolerances {} {} {} {}, max silence {} ms",
+                    temperature, humidity, pressure, batteryLevel, maxSilenceMillis);
+        }
+    }
+
+    private void setTolerance(Metric metric, String tolerance) {
+        String value = tolerance.trim();
+        boolean isPercent = value.endsWith("%");
+        double parsed = Double.parseDouble(isPercent ? value.substring(0, value.length() - 1).trim() : value);
+        if (!(parsed >= 0)) {
+            throw new IllegalArgumentException("iot.ingest.deadband." + metric.name().toLowerCase(Locale.ROOT).replace('_', '-')
+                    + " must not be negative, got " + tolerance);
+        }
+        tolerances[metric.ordinal()] = isPercent ? parsed / 100 : parsed;
+        percent[metric.ordinal()] = isPercent;
+    }
+
+    // The readings to persist, in order; needs device keys assigned. Called from the ingest transaction:
+    // a rolled-back batch leaves the per-device state untouched, so its retry makes the same decisions.
+    public List<SensorData> select(List<SensorData> readings) {
+        if (!enabled) {
+            return readings;
+        }
+        List<SensorData> stored = new ArrayList<>(readings.size());
+        Map<Integer, StoredReading> storedNow = new HashMap<>();
+        for (SensorData reading : readings) {
+            Integer deviceKey = reading.getDeviceKey();
+            if (deviceKey == null || reading.getTimestamp() == null) {
+                stored.add(reading);
+                continue;
+            }
+            StoredReading previous = storedNow.get(deviceKey);
+            if (previous == null) {
+                previous = lastStored.get(deviceKey);
+            }
+            StoredReading current = StoredReading.of(reading);
+            if (previous != null && current.timestampMillis < previous.timestampMillis) {
+                stored.add(reading);
+            } else if (previous == null || current.timestampMillis - previous.timestampMillis >= maxSilenceMillis
+                    || changed(previous.values, current.values)) {
+                stored.add(reading);
+                storedNow.put(deviceKey, current);
+            }
+        }
+        int suppressed = readings.size() - stored.size();
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    commit(storedNow, stored.size(), suppressed);
+                }
+            });
+        } else {
+            commit(storedNow, stored.size(), suppressed);
+        }
+        return stored;
+    }
+
+    private void commit(Map<Integer, StoredReading> storedNow, int stored, int suppressed) {
+        storedNow.forEach((deviceKey, reading) -> lastStored.merge(deviceKey, reading,
+                (current, candidate) -> candidate.timestampMillis >= current.timestampMillis ? candidate : current));
+        storedReadings.increment(stored);
+        suppressedReadings.increment(suppressed);
+    }
+
+    private boolean changed(double[] stored, double[] current) {
+        for (int m = 0; m < current.length; m++) {
+            boolean storedMissing = Double.isNaN(stored[m]);
+            if (storedMissing != Double.isNaN(current[m])) {
+                return true;
+            }
+            if (!storedMissing) {
+                double tolerance = percent[m] ? Math.abs(stored[m]) * tolerances[m] : tolerances[m];
+                if (Math.abs(current[m] - stored[m]) > tolerance) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private double savings() {
+        double suppressed = suppressedReadings.count();
+        double total = suppressed + storedReadings.count();
+        return total == 0 ? 0 : suppressed / total;
+    }
+
+    private record StoredReading(long timestampMillis, double[] values) {
+
+        static StoredReading of(SensorData reading) {
+            double[] values = new double[Metric.VALUES.length];
+            for (Metric metric : Metric.VALUES) {
+                values[metric.ordinal()] = metric.read(reading);
+            }
+            return new StoredReading(reading.getTimestamp().toInstant(ZoneOffset.UTC).toEpochMilli(), values);
+        }
+    }
+}
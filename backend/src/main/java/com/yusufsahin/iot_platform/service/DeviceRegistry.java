@@ -0,0 +1,172 @@
+package com.yusufsahin.iot_platform.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.yusufsahin.iot_platform.model.Device;
+import com.yusufsahin.iot_platform.model.SensorData;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+// deviceId <-> deviceKey mapping for iot_platform.devices, cached in-process in both directions (LRU-like
+// eviction at max-size entries). Ingest resolves each reading's deviceId once through the cache; only unseen
+// devices and location changes reach the database, as one upsert per batch. Read paths turn the device_key
+// of each row back into deviceId with a cache hit instead of storing or joining the string. Readings keep their
+// own location: the registry only records where each device was last seen.
+@Slf4j
+@Service
+public class DeviceRegistry {
+
+    private static final RowMapper<Device> DEVICE_ROW_MAPPER = (rs, rowNum) -> new Device(
+            rs.getInt("device_key"),
+            rs.getString("device_id"),
+            rs.getString("location"),
+            rs.getTimestamp("created_at").toLocalDateTime()
+    );
+
+    // Upserts stay under the driver's 32767 bind parameter limit
+    private static final int MAX_ROWS_PER_STATEMENT = 1000;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate registrationTransaction;
+    private final int maxSize;
+    private final Cache<String, Device> byDeviceId;
+    private final Cache<Integer, Device> byDeviceKey;
+
+    public DeviceRegistry(JdbcTemplate jdbcTemplate,
+                          PlatformTransactionManager transactionManager,
+                          MeterRegistry meterRegistry,
+                          @Value("${iot.devices.cache.max-size:250000}") int maxSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        // New devices are committed on their own, before the readings that reference them, so a rolled back
+        // ingest batch can never leave a cached key without its row
+        this.registrationTransaction = new TransactionTemplate(transactionManager);
+        this.maxSize = maxSize;
+        this.byDeviceId = Caffeine.newBuilder().maximumSize(maxSize).recordStats().build();
+        this.byDeviceKey = Caffeine.newBuilder().maximumSize(maxSize).recordStats().build();
+        CaffeineCacheMetrics.monitor(meterRegistry, byDeviceId, "devices.by-id");
+        CaffeineCacheMetrics.monitor(meterRegistry, byDeviceKey, "devices.by-key");
+    }
+
+    // Before LatestReadingCache warms up, so its rows resolve from memory
+    @EventListener(ApplicationReadyEvent.class)
+    @Order(Ordered.HIGHEST_PRECEDENCE)
+    public void warmUp() {
+        long started = System.nanoTime();
+        int[] loaded = new int[1];
+        jdbcTemplate.query("SELECT device_key, device_id, location, created_at FROM iot_platform.devices " +
+                "ORDER BY device_key DESC LIMIT ?", rs -> {
+            cache(DEVICE_ROW_MAPPER.mapRow(rs, 0));
+            loaded[0]++;
+        }, maxSize);
+        log.info("Warmed device registry with {} devices in {} ms", loaded[0], (System.nanoTime() - started) / 1_000_000);
+    }
+
+    // Sets deviceKey on every reading, registering unseen devices and recording location changes first.
+    // Must run before the ingest transaction: suspending it here would hold a second pooled connection per worker.
+    public void assignKeys(List<SensorData> readings) {
+        if (TransactionSynchronizationManager.isActualTransactionActive()) {
+            throw new IllegalStateException("Devices must be registered outside the ingest transaction");
+        }
+        Map<String, SensorData> toRegister = null;
+        for (SensorData reading : readings) {
+            Device device = byDeviceId.getIfPresent(reading.getDeviceId());
+            if (device != null && (reading.getLocation() == null || reading.getLocation().equals(device.getLocation()))) {
+                reading.setDeviceKey(device.getDeviceKey());
+                continue;
+            }
+            if (toRegister == null) {
+                toRegister = new LinkedHashMap<>();
+            }
+            // Later readings of the same device win, so the registry ends up with the newest location
+            toRegister.put(reading.getDeviceId(), reading);
+        }
+        if (toRegister == null) {
+            return;
+        }
+
+        List<SensorData> pending = new ArrayList<>(toRegister.values());
+        registrationTransaction.executeWithoutResult(status -> {
+            for (int from = 0; from < pending.size(); from += MAX_ROWS_PER_STATEMENT) {
+                upsert(pending.subList(from, Math.min(from + MAX_ROWS_PER_STATEMENT, pending.size()))).forEach(this::cache);
+            }
+        });
+        for (SensorData reading : readings) {
+            if (reading.getDeviceKey() == null) {
+                Device device = Objects.requireNonNull(byDeviceId.getIfPresent(reading.getDeviceId()),
+                        () -> "Device " + reading.getDeviceId() + " was registered but is not cached");
+                reading.setDeviceKey(device.getDeviceKey());
+            }
+        }
+    }
+
+    // Read paths: null for a device that has never sent a reading
+    public Integer findKey(String deviceId) {
+        Device device = byDeviceId.getIfPresent(deviceId);
+        if (device == null) {
+            device = load("device_id = ?", deviceId);
+        }
+        return device != null ? device.getDeviceKey() : null;
+    }
+
+    public Device get(int deviceKey) {
+        Device device = byDeviceKey.getIfPresent(deviceKey);
+        return device != null ? device : load("device_key = ?", deviceKey);
+    }
+
+    // Fills the transient deviceId of a reading loaded by device_key
+    public SensorData describe(SensorData reading) {
+        Device device = get(reading.getDeviceKey());
+        if (device != null) {
+            reading.setDeviceId(device.getDeviceId());
+        }
+        return reading;
+    }
+
+    private List<Device> upsert(List<SensorData> chunk) {
+        StringBuilder sql = new StringBuilder("INSERT INTO iot_platform.devices (device_id, location) VALUES ");
+        Object[] args = new Object[chunk.size() * 2];
+        for (int i = 0; i < chunk.size(); i++) {
+            sql.append(i == 0 ? "(?, ?)" : ", (?, ?)");
+            args[2 * i] = chunk.get(i).getDeviceId();
+            args[2 * i + 1] = chunk.get(i).getLocation();
+        }
+        // A reading without a location keeps the registered one
+        sql.append(" ON CONFLICT (device_id) DO UPDATE SET location = COALESCE(EXCLUDED.location, devices.location)")
+                .append(" RETURNING device_key, device_id, location, created_at");
+        return jdbcTemplate.query(sql.toString(), DEVICE_ROW_MAPPER, args);
+    }
+
+    private Device load(String condition, Object value) {
+        List<Device> devices = jdbcTemplate.query("SELECT device_key, device_id, location, created_at " +
+                "FROM iot_platform.devices WHERE " + condition, DEVICE_ROW_MAPPER, value);
+        if (devices.isEmpty()) {
+            return null;
+        }
+        Device device = devices.get(0);
+        cache(device);
+        return device;
+    }
+
+    private void cache(Device device) {
+        byDeviceId.put(device.getDeviceId(), device);
+        byDeviceKey.put(device.getDeviceKey(), device);
+    }
+}
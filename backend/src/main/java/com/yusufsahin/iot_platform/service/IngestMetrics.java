@@ -0,0 +1,69 @@
+package com.yusufsahin.iot_platform.service;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.EnumMap;
+import java.util.Map;
+
+// Meters shared by the stages of the sensor ingest path, exported through Actuator (/actuator/prometheus)
+@Component
+public class IngestMetrics {
+
+    public enum Stage {
+        DESERIALIZE("deserialize"),
+        PERSIST("persist"),
+        ALERT_EVALUATE("alert-evaluate"),
+        WEBSOCKET_PUBLISH("websocket-publish");
+
+        private final String tag;
+
+        Stage(String tag) {
+            this.tag = tag;
+        }
+    }
+
+    private final Map<Stage, Timer> stageTimers = new EnumMap<>(Stage.class);
+    private final DistributionSummary batchSizes;
+    private final Timer endToEndLatency;
+
+    public IngestMetrics(MeterRegistry meterRegistry) {
+        for (Stage stage : Stage.values()) {
+            stageTimers.put(stage, Timer.builder("iot.ingest.stage")
+                    .description("Time spent per ingest stage; deserialize is per record, the others per batch or frame")
+                    .tag("stage", stage.tag)
+                    .publishPercentileHistogram()
+                    .register(meterRegistry));
+        }
+        this.batchSizes = DistributionSummary.builder("iot.ingest.batch.size")
+                .description("Records per polled Kafka batch")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.endToEndLatency = Timer.builder("iot.ingest.end-to-end.latency")
+                .description("From the reading's own timestamp to its WebSocket broadcast")
+                .publishPercentileHistogram()
+                .minimumExpectedValue(Duration.ofMillis(1))
+                .maximumExpectedValue(Duration.ofMinutes(5))
+                .register(meterRegistry);
+    }
+
+    public Timer stage(Stage stage) {
+        return stageTimers.get(stage);
+    }
+
+    public void recordBatchSize(int records) {
+        batchSizes.record(records);
+    }
+
+    // Readings carry a zone-less timestamp produced on the same clock as LocalDateTime.now(); skew shows up as negative and is dropped
+    public void recordEndToEnd(LocalDateTime readingTimestamp, LocalDateTime publishedAt) {
+        Duration latency = Duration.between(readingTimestamp, publishedAt);
+        if (!latency.isNegative()) {
+            endToEndLatency.record(latency);
+        }
+    }
+}
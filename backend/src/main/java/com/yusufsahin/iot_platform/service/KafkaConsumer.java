@@ -1,55 +1,87 @@
 package com.yusufsahin.iot_platform.service;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.SerializationFeature;
-import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.yusufsahin.iot_platform.config.KafkaConfig;
 import com.yusufsahin.iot_platform.dto.SensorDataDto;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.support.Acknowledgment;
+import org.springframework.kafka.support.serializer.DeserializationException;
+import org.springframework.kafka.support.serializer.SerializationUtils;
 import org.springframework.stereotype.Service;
 
+import java.util.ArrayList;
+import java.util.List;
+
 @Service
 @Slf4j
 public class KafkaConsumer {
 
     private static final String TOPIC = "sensor-data";
     private static final String GROUP_ID = "iot-platform-group";
+    // Container id, used by the write-behind buffer to pause and resume consumption
+    static final String LISTENER_ID = "sensor-data-ingest";
+    private static final String RETRY_GROUP_ID = "iot-platform-retry";
 
-    private final ObjectMapper objectMapper;
-    private final WebSocketService webSocketService;
-    private final SensorDataService sensorDataService;
-
-    public KafkaConsumer(ObjectMapper objectMapper, WebSocketService webSocketService, SensorDataService sensorDataService) {
-        this.objectMapper = objectMapper;
-        this.webSocketService = webSocketService;
-        this.sensorDataService = sensorDataService;
-        // Module to deserialize LocalDateTime correctly
-        this.objectMapper.registerModule(new JavaTimeModule());
-        this.objectMapper.disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
-    }
-
-    @KafkaListener(topics = TOPIC, groupId = GROUP_ID)
-    public void consumeSensorData(String message) {
-        log.info("Received message from Kafka topic {}: {}", TOPIC, message);
-        try {
-            SensorDataDto sensorDataDto = objectMapper.readValue(message, SensorDataDto.class);
-            //log.info("Deserialized SensorDataDto: {}", sensorDataDto);
+    private final SensorDataWriteBehindBuffer writeBehindBuffer;
+    private final SensorDataRecoveryPublisher recoveryPublisher;
+    private final IngestMetrics ingestMetrics;
+    private final LogSampler logSampler;
 
-            // DB
-            sensorDataService.processAndSaveSensorData(sensorDataDto);
-            //log.debug("Processed sensor data: {}", sensorDataDto);
+    public KafkaConsumer(SensorDataWriteBehindBuffer writeBehindBuffer,
+                         SensorDataRecoveryPublisher recoveryPublisher,
+                         IngestMetrics ingestMetrics,
+                         @Value("${iot.logging.sample-every:100}") long logSampleEvery) {
+        this.writeBehindBuffer = writeBehindBuffer;
+        this.recoveryPublisher = recoveryPublisher;
+        this.ingestMetrics = ingestMetrics;
+        this.logSampler = new LogSampler(logSampleEvery);
+    }
 
-            webSocketService.sendSensorData(sensorDataDto);
-            log.info("Sent sensor data to WebSocket: {}", sensorDataDto);
+    // Batch listener: hands each poll to the write-behind buffer and goes back to polling. The poll's offsets are
+    // committed (MANUAL ack) only once the buffer has persisted it, see SensorDataWriteBehindBuffer.
+    // Undecodable records and readings that cannot be stored (without deviceId or timestamp, say) are dead-lettered
+    // before the poll is buffered, so its ack never skips one and they never fail the flush of a whole stripe.
+    @KafkaListener(id = LISTENER_ID, idIsGroup = false, topics = TOPIC, groupId = GROUP_ID)
+    public void consumeSensorData(List<ConsumerRecord<String, SensorDataDto>> records,
+                                  Acknowledgment acknowledgment) throws InterruptedException {
+        ingestMetrics.recordBatchSize(records.size());
+        List<SensorDataDto> batch = new ArrayList<>(records.size());
+        for (ConsumerRecord<String, SensorDataDto> record : records) {
+            SensorDataDto reading = record.value();
+            if (reading != null) {
+                String problem = BulkIngestService.validate(reading);
+                if (problem == null) {
+                    batch.add(reading);
+                } else {
+                    recoveryPublisher.deadLetter(record, new IllegalArgumentException("Invalid sensor reading: " + problem));
+                }
+                continue;
+            }
+            DeserializationException error = SerializationUtils.getExceptionFromHeader(
+                    record, SerializationUtils.VALUE_DESERIALIZER_EXCEPTION_HEADER, null);
+            if (error != null) {
+                recoveryPublisher.deadLetter(record, error);
+            } else {
+                log.warn("Skipping sensor-data record without a value (partition {}, offset {})",
+                        record.partition(), record.offset());
+            }
+        }
 
-            System.out.println("Consumed and deserialized: " + sensorDataDto.toString());
+        writeBehindBuffer.append(batch, acknowledgment);
 
-        } catch (JsonProcessingException e) {
-            log.error("Error deserializing sensor data from Kafka: {}", message, e);
-        } catch (Exception e) {
-            log.error("Error processing message from Kafka: {}", message, e);
+        if (log.isDebugEnabled() && logSampler.sample()) {
+            log.debug("Buffered {} sensor readings from {} Kafka records (sampled)", batch.size(), records.size());
         }
     }
 
+    // Readings diverted by the write-behind buffer, one record at a time. A failure moves the record on to the
+    // next retry topic (or the dead-letter topic) without holding up this partition, see KafkaConfig.
+    @KafkaListener(topics = KafkaConfig.SENSOR_DATA_FAILED_TOPIC, groupId = RETRY_GROUP_ID,
+            containerFactory = "sensorDataRetryListenerContainerFactory")
+    public void consumeFailedSensorData(SensorDataDto reading) {
+        writeBehindBuffer.persistNow(List.of(reading));
+    }
+
 }
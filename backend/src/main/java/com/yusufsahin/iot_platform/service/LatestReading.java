@@ -0,0 +1,90 @@
+package com.yusufsahin.iot_platform.service;
+
+import com.yusufsahin.iot_platform.dto.SensorDataDto;
+import com.yusufsahin.iot_platform.model.SensorData;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+
+// Immutable snapshot of a device's newest reading. Metrics are unboxed: NaN marks a missing
+// double and NO_BATTERY_LEVEL a missing battery level, so an entry is one small object per device.
+public final class LatestReading {
+
+    static final int NO_BATTERY_LEVEL = Integer.MIN_VALUE;
+
+    private final long id;
+    private final String deviceId;
+    private final double temperature;
+    private final double humidity;
+    private final double pressure;
+    private final long timestampMillis;
+    private final String location;
+    private final int batteryLevel;
+
+    private LatestReading(long id, String deviceId, double temperature, double humidity, double pressure,
+                          long timestampMillis, String location, int batteryLevel) {
+        this.id = id;
+        this.deviceId = deviceId;
+        this.temperature = temperature;
+        this.humidity = humidity;
+        this.pressure = pressure;
+        this.timestampMillis = timestampMillis;
+        this.location = location;
+        this.batteryLevel = batteryLevel;
+    }
+
+    static LatestReading of(SensorData sensorData) {
+        return new LatestReading(
+                sensorData.getId() != null ? sensorData.getId() : 0L,
+                sensorData.getDeviceId(),
+                unbox(sensorData.getTemperature()),
+                unbox(sensorData.getHumidity()),
+                unbox(sensorData.getPressure()),
+                sensorData.getTimestamp().toInstant(ZoneOffset.UTC).toEpochMilli(),
+                sensorData.getLocation(),
+                sensorData.getBatteryLevel() != null ? sensorData.getBatteryLevel() : NO_BATTERY_LEVEL);
+    }
+
+    static LatestReading of(SensorDataDto sensorData) {
+        return new LatestReading(
+                sensorData.id() != null ? sensorData.id() : 0L,
+                sensorData.deviceId(),
+                unbox(sensorData.temperature()),
+                unbox(sensorData.humidity()),
+                unbox(sensorData.pressure()),
+                sensorData.timestamp().toInstant(ZoneOffset.UTC).toEpochMilli(),
+                sensorData.location(),
+                sensorData.batteryLevel() != null ? sensorData.batteryLevel() : NO_BATTERY_LEVEL);
+    }
+
+    // Newer by timestamp, ties broken by id so replays of the same reading are idempotent
+    boolean isNewerThan(LatestReading other) {
+        return timestampMillis > other.timestampMillis
+                || (timestampMillis == other.timestampMillis && id >= other.id);
+    }
+
+    public SensorDataDto toDto() {
+        return new SensorDataDto(
+                id,
+                deviceId,
+                Double.isNaN(temperature) ? null : temperature,
+                Double.isNaN(humidity) ? null : humidity,
+                Double.isNaN(pressure) ? null : pressure,
+                LocalDateTime.ofInstant(Instant.ofEpochMilli(timestampMillis), ZoneOffset.UTC),
+                location,
+                batteryLevel == NO_BATTERY_LEVEL ? null : batteryLevel);
+    }
+
+    public String getDeviceId() {
+        return deviceId;
+    }
+
+    public long getTimestampMillis() {
+        return timestampMillis;
+    }
+
+    private static double unbox(Double value) {
+        return value != null ? value : Double.NaN;
+    }
+}
@@ -0,0 +1,81 @@
+package com.yusufsahin.iot_platform.service;
+
+import com.yusufsahin.iot_platform.dto.SensorDataDto;
+import com.yusufsahin.iot_platform.model.SensorData;
+import com.yusufsahin.iot_platform.repository.SensorDataQueryRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Newest reading per device, updated by the ingest path and warmed from the database at startup,
+// so "current state" lookups never touch the sensors table.
+@Slf4j
+@Service
+public class LatestReadingCache {
+
+    private final SensorDataQueryRepository sensorDataQueryRepository;
+    private final ConcurrentHashMap<String, LatestReading> latestByDevice = new ConcurrentHashMap<>();
+
+    public LatestReadingCache(SensorDataQueryRepository sensorDataQueryRepository) {
+        this.sensorDataQueryRepository = sensorDataQueryRepository;
+    }
+
+    // Runs after migrations and after DeviceRegistry has warmed up; readings ingested meanwhile win over
+    // the warm-up rows when they are newer
+    @EventListener(ApplicationReadyEvent.class)
+    @Order
+    public void warmUp() {
+        long started = System.nanoTime();
+        sensorDataQueryRepository.streamLatestPerDevice(row -> put(LatestReading.of(row)));
+        log.info("Warmed latest-reading cache with {} devices in {} ms",
+                latestByDevice.size(), (System.nanoTime() - started) / 1_000_000);
+    }
+
+    // Called from the ingest transaction; entries are only replaced once it commits
+    public void record(List<SensorData> readings) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    recordNow(readings);
+                }
+            });
+        } else {
+            recordNow(readings);
+        }
+    }
+
+    private void recordNow(List<SensorData> readings) {
+        for (SensorData reading : readings) {
+            put(LatestReading.of(reading));
+        }
+    }
+
+    private void put(LatestReading reading) {
+        latestByDevice.merge(reading.getDeviceId(), reading,
+                (current, candidate) -> candidate.isNewerThan(current) ? candidate : current);
+    }
+
+    public SensorDataDto getLatest(String deviceId) {
+        LatestReading reading = latestByDevice.get(deviceId);
+        return reading != null ? reading.toDto() : null;
+    }
+
+    public List<SensorDataDto> getAllLatest() {
+        List<SensorDataDto> latest = new ArrayList<>(latestByDevice.size());
+        for (LatestReading reading : latestByDevice.values()) {
+            latest.add(reading.toDto());
+        }
+        latest.sort(Comparator.comparing(SensorDataDto::deviceId));
+        return latest;
+    }
+}
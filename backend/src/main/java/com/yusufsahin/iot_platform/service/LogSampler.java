@@ -0,0 +1,18 @@
+package com.yusufsahin.iot_platform.service;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+// Lets one in every N events through, for DEBUG lines on paths that run per batch or per record
+public final class LogSampler {
+
+    private final long every;
+    private final AtomicLong events = new AtomicLong();
+
+    public LogSampler(long every) {
+        this.every = Math.max(1, every);
+    }
+
+    public boolean sample() {
+        return events.getAndIncrement() % every == 0;
+    }
+}
@@ -0,0 +1,118 @@
+package com.yusufsahin.iot_platform.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.sql.Date;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// Keeps the day partitions of sensors and alert_messages rolling in the partitioned storage mode:
+// creates the next premake-days partitions and removes whole partitions past the retention window,
+// so expiring data never goes through DELETE and leaves nothing behind for autovacuum.
+@Slf4j
+@Service
+@ConditionalOnProperty(name = "iot.storage.partitioned", havingValue = "true")
+public class PartitionMaintenance {
+
+    public enum RetentionMode {
+        DROP,
+        // Detached partitions are moved to ARCHIVE_SCHEMA, ready to be dumped and dropped by hand
+        DETACH
+    }
+
+    private static final String SCHEMA = "iot_platform";
+    private static final String ARCHIVE_SCHEMA = "iot_platform_archive";
+    private static final Pattern DAILY_PARTITION = Pattern.compile("^(.+)_p(\\d{8})$");
+    private static final DateTimeFormatter PARTITION_DAY = DateTimeFormatter.BASIC_ISO_DATE;
+
+    private static final String LIST_PARTITIONS = "SELECT c.relname FROM pg_inherits i " +
+            "JOIN pg_class c ON c.oid = i.inhrelid " +
+            "JOIN pg_class p ON p.oid = i.inhparent " +
+            "JOIN pg_namespace n ON n.oid = p.relnamespace " +
+            "WHERE n.nspname = ? AND p.relname = ?";
+
+    private record PartitionedTable(String name, int retentionDays) {}
+
+    private final JdbcTemplate jdbcTemplate;
+    private final List<PartitionedTable> tables;
+    private final int premakeDays;
+    private final RetentionMode retentionMode;
+
+    public PartitionMaintenance(JdbcTemplate jdbcTemplate,
+                                @Value("${iot.storage.partitions.premake-days:7}") int premakeDays,
+                                @Value("${iot.storage.retention.sensor-days:30}") int sensorRetentionDays,
+                                @Value("${iot.storage.retention.alert-days:90}") int alertRetentionDays,
+                                @Value("${iot.storage.retention.mode:DROP}") RetentionMode retentionMode) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.premakeDays = premakeDays;
+        this.retentionMode = retentionMode;
+        this.tables = List.of(
+                new PartitionedTable("sensors", sensorRetentionDays),
+                new PartitionedTable("alert_messages", alertRetentionDays));
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onStartup() {
+        maintain();
+    }
+
+    @Scheduled(cron = "${iot.storage.partitions.maintenance-cron:0 5 0 * * *}")
+    public void maintain() {
+        LocalDate today = LocalDate.now();
+        for (PartitionedTable table : tables) {
+            createAhead(table, today);
+            expire(table, today);
+        }
+    }
+
+    private void createAhead(PartitionedTable table, LocalDate today) {
+        for (int day = 0; day <= premakeDays; day++) {
+            try {
+                jdbcTemplate.queryForList("SELECT iot_platform.ensure_daily_partition(?, ?)",
+                        table.name(), Date.valueOf(today.plusDays(day)));
+            } catch (DataAccessException e) {
+                // Typically rows for that day already sit in the default partition; they must be moved by hand
+                log.error("Could not create {} partition for {}", table.name(), today.plusDays(day), e);
+            }
+        }
+    }
+
+    // A partition expires once its whole day is older than the retention window
+    private void expire(PartitionedTable table, LocalDate today) {
+        LocalDate oldestKept = today.minusDays(table.retentionDays());
+        List<String> partitions = jdbcTemplate.queryForList(LIST_PARTITIONS, String.class, SCHEMA, table.name());
+        for (String partition : partitions) {
+            Matcher matcher = DAILY_PARTITION.matcher(partition);
+            if (!matcher.matches() || !matcher.group(1).equals(table.name())) {
+                continue;
+            }
+            LocalDate day = LocalDate.parse(matcher.group(2), PARTITION_DAY);
+            if (!day.isBefore(oldestKept)) {
+                continue;
+            }
+            try {
+                if (retentionMode == RetentionMode.DROP) {
+                    jdbcTemplate.execute("DROP TABLE " + SCHEMA + "." + partition);
+                } else {
+                    jdbcTemplate.execute("CREATE SCHEMA IF NOT EXISTS " + ARCHIVE_SCHEMA);
+                    jdbcTemplate.execute("ALTER TABLE " + SCHEMA + "." + table.name() + " DETACH PARTITION " + SCHEMA + "." + partition);
+                    jdbcTemplate.execute("ALTER TABLE " + SCHEMA + "." + partition + " SET SCHEMA " + ARCHIVE_SCHEMA);
+                }
+                log.info("Retention: {} partition {} ({} days kept)", retentionMode, partition, table.retentionDays());
+            } catch (DataAccessException e) {
+                log.error("Retention failed for partition {}", partition, e);
+            }
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package com.yusufsahin.iot_platform.service;
+
+import com.yusufsahin.iot_platform.model.AlertMessage;
+import com.yusufsahin.iot_platform.model.Metric;
+import com.yusufsahin.iot_platform.model.SensorData;
+import com.yusufsahin.iot_platform.service.anomaly.AnomalyHandler;
+import com.yusufsahin.iot_platform.service.rule.CompiledRule;
+
+// Per-thread scratch collecting the rules one reading breaches, indexed by AlertType ordinal.
+// When several rules of the same type fire, the most severe one wins.
+// Anomaly rules are tested against a score rather than the raw metric, so their scores are kept as well.
+final class RuleBreaches implements AnomalyHandler {
+
+    private static final int ALERT_TYPES = AlertMessage.AlertType.values().length;
+    private static final int METRICS = Metric.VALUES.length;
+
+    private final CompiledRule[] rules = new CompiledRule[ALERT_TYPES];
+    private final double[] values = new double[ALERT_TYPES];
+    private long mask;
+
+    // [AlertType ordinal * METRICS + Metric ordinal], valid where the bit in scoreMask is set
+    private final double[] scores = new double[ALERT_TYPES * METRICS];
+    private long scoreMask;
+
+    @Override
+    public void onMatch(CompiledRule rule, SensorData sensorData, double value) {
+        int type = rule.getAlertType().ordinal();
+        long bit = 1L << type;
+        if ((mask & bit) == 0 || rule.getSeverity().compareTo(rules[type].getSeverity()) > 0) {
+            rules[type] = rule;
+            values[type] = value;
+            mask |= bit;
+        }
+    }
+
+    @Override
+    public void onScore(CompiledRule rule, double score) {
+        int index = rule.getAlertType().ordinal() * METRICS + rule.getMetric().ordinal();
+        scores[index] = score;
+        scoreMask |= 1L << index;
+    }
+
+    void reset() {
+        mask = 0L;
+        scoreMask = 0L;
+    }
+
+    boolean isEmpty() {
+        return mask == 0L;
+    }
+
+    boolean isBreached(int type) {
+        return (mask & (1L << type)) != 0;
+    }
+
+    CompiledRule rule(int type) {
+        return rules[type];
+    }
+
+    double value(int type) {
+        return values[type];
+    }
+
+    // What an open alert of this rule is re-tested against when the reading does not breach it; NaN if unknown
+    double observed(CompiledRule rule, SensorData sensorData) {
+        return switch (rule.getAlertType()) {
+            case ZSCORE_ANOMALY, SUDDEN_JUMP -> {
+                int index = rule.getAlertType().ordinal() * METRICS + rule.getMetric().ordinal();
+                yield (scoreMask & (1L << index)) != 0 ? scores[index] : Double.NaN;
+            }
+            default -> rule.getMetric().read(sensorData);
+        };
+    }
+}
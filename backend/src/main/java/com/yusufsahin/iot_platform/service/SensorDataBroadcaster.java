@@ -0,0 +1,157 @@
+package com.yusufsahin.iot_platform.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.yusufsahin.iot_platform.dto.SensorDataDto;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// Conflates the live sensor stream: only the newest reading per device is kept between ticks, and each tick
+// publishes one JSON array per destination, serialized once and shared by every session subscribed to it.
+// Destinations: /topic/sensor-data (all devices), /topic/sensor-data/device/{deviceId} and
+// /topic/sensor-data/location/{location}. Frames are only built for destinations that have subscribers.
+// In cluster mode a tick goes to the broadcast topic instead and comes back through deliver on every node.
+@Slf4j
+@Service
+public class SensorDataBroadcaster {
+
+    private final WebSocketService webSocketService;
+    private final SensorDataSubscriptions subscriptions;
+    private final ObjectMapper objectMapper;
+    private final IngestMetrics ingestMetrics;
+    private final ClusterBroadcastPublisher clusterBroadcast;
+    private final long tickMs;
+
+    private final ConcurrentHashMap<String, SensorDataDto> pending = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService ticker;
+
+    private final Counter conflatedReadings;
+    private final Counter publishedFrames;
+
+    public SensorDataBroadcaster(WebSocketService webSocketService,
+                                 SensorDataSubscriptions subscriptions,
+                                 ObjectMapper objectMapper,
+                                 MeterRegistry meterRegistry,
+                                 IngestMetrics ingestMetrics,
+                                 ClusterBroadcastPublisher clusterBroadcast,
+                                 @Value("${iot.websocket.sensor-data.tick-ms:250}") long tickMs) {
+        this.webSocketService = webSocketService;
+        this.subscriptions = subscriptions;
+        this.objectMapper = objectMapper;
+        this.ingestMetrics = ingestMetrics;
+        this.clusterBroadcast = clusterBroadcast;
+        this.tickMs = tickMs;
+        this.ticker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "sensor-data-broadcaster");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.conflatedReadings = Counter.builder("iot.websocket.sensor-data.conflated")
+                .description("Readings superseded by a newer reading of the same device before being published")
+                .register(meterRegistry);
+        this.publishedFrames = Counter.builder("iot.websocket.sensor-data.frames")
+                .description("Batched sensor data frames published to the broker")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    void start() {
+        ticker.scheduleAtFixedRate(this::tick, tickMs, tickMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    void stop() {
+        ticker.shutdownNow();
+    }
+
+    public void offer(SensorDataDto sensorData) {
+        pending.merge(sensorData.deviceId(), sensorData, (current, candidate) -> {
+            conflatedReadings.increment();
+            return candidate.timestamp().isBefore(current.timestamp()) ? current : candidate;
+        });
+    }
+
+    void tick() {
+        try {
+            if (pending.isEmpty()) {
+                return;
+            }
+            List<SensorDataDto> batch = new ArrayList<>(pending.size());
+            for (String deviceId : pending.keySet()) {
+                SensorDataDto reading = pending.remove(deviceId);
+                if (reading != null) {
+                    batch.add(reading);
+                }
+            }
+            if (clusterBroadcast.isEnabled()) {
+                clusterBroadcast.publishSensorData(batch);
+            } else {
+                deliver(batch);
+            }
+        } catch (RuntimeException e) {
+            // Keep ticking; a lost frame is superseded by the next one
+            log.error("Failed to publish sensor data frame", e);
+        }
+    }
+
+    // Sends readings to this node's subscribers: its own conflated tick, or in cluster mode the frames of all nodes
+    public void deliver(List<SensorDataDto> batch) {
+        try {
+            publish(batch);
+        } catch (RuntimeException e) {
+            log.error("Failed to publish sensor data frame", e);
+            return;
+        }
+        LocalDateTime publishedAt = LocalDateTime.now();
+        for (SensorDataDto reading : batch) {
+            ingestMetrics.recordEndToEnd(reading.timestamp(), publishedAt);
+        }
+    }
+
+    private void publish(List<SensorDataDto> batch) {
+        if (subscriptions.hasSubscribers(SensorDataSubscriptions.FIREHOSE)) {
+            send(SensorDataSubscriptions.FIREHOSE, batch);
+        }
+
+        Map<String, List<SensorDataDto>> byLocation = new HashMap<>();
+        for (SensorDataDto reading : batch) {
+            String deviceDestination = SensorDataSubscriptions.DEVICE_PREFIX + reading.deviceId();
+            if (subscriptions.hasSubscribers(deviceDestination)) {
+                send(deviceDestination, List.of(reading));
+            }
+            if (reading.location() != null) {
+                String locationDestination = SensorDataSubscriptions.LOCATION_PREFIX + reading.location();
+                if (subscriptions.hasSubscribers(locationDestination)) {
+                    byLocation.computeIfAbsent(locationDestination, d -> new ArrayList<>()).add(reading);
+                }
+            }
+        }
+        byLocation.forEach(this::send);
+    }
+
+    private void send(String destination, List<SensorDataDto> readings) {
+        byte[] json;
+        try {
+            json = objectMapper.writeValueAsBytes(readings);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Could not serialize sensor data frame", e);
+        }
+        ingestMetrics.stage(IngestMetrics.Stage.WEBSOCKET_PUBLISH).record(() -> webSocketService.sendJson(destination, json));
+        publishedFrames.increment();
+    }
+}
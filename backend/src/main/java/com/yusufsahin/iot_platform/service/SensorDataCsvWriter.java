@@ -0,0 +1,78 @@
+package com.yusufsahin.iot_platform.service;
+
+import com.yusufsahin.iot_platform.model.SensorData;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.format.DateTimeFormatter;
+
+// RFC 4180 CSV of readings, written one row at a time through a fixed-size buffer; empty fields are nulls
+final class SensorDataCsvWriter {
+
+    static final String HEADER = "id,device_id,timestamp,temperature,humidity,pressure,battery_level,location";
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final Writer writer;
+
+    SensorDataCsvWriter(OutputStream out) {
+        this.writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), BUFFER_SIZE);
+    }
+
+    void writeHeader() throws IOException {
+        writer.write(HEADER);
+        writer.write("\r\n");
+    }
+
+    void write(SensorData reading) throws IOException {
+        writer.write(Long.toString(reading.getId()));
+        writer.write(',');
+        writeText(reading.getDeviceId());
+        writer.write(',');
+        writer.write(DateTimeFormatter.ISO_LOCAL_DATE_TIME.format(reading.getTimestamp()));
+        writer.write(',');
+        writeNumber(reading.getTemperature());
+        writer.write(',');
+        writeNumber(reading.getHumidity());
+        writer.write(',');
+        writeNumber(reading.getPressure());
+        writer.write(',');
+        writeNumber(reading.getBatteryLevel());
+        writer.write(',');
+        writeText(reading.getLocation());
+        writer.write("\r\n");
+    }
+
+    // Leaves the response stream open for the container
+    void flush() throws IOException {
+        writer.flush();
+    }
+
+    private void writeNumber(Number value) throws IOException {
+        if (value != null) {
+            writer.write(value.toString());
+        }
+    }
+
+    private void writeText(String value) throws IOException {
+        if (value == null) {
+            return;
+        }
+        boolean quote = false;
+        for (int i = 0; i < value.length() && !quote; i++) {
+            char c = value.charAt(i);
+            quote = c == ',' || c == '"' || c == '\r' || c == '\n';
+        }
+        if (!quote) {
+            writer.write(value);
+            return;
+        }
+        writer.write('"');
+        writer.write(value.replace("\"", "\"\""));
+        writer.write('"');
+    }
+}
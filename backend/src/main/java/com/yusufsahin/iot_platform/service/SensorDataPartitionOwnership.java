@@ -0,0 +1,71 @@
+package com.yusufsahin.iot_platform.service;
+
+import com.yusufsahin.iot_platform.config.KafkaConfig;
+import com.yusufsahin.iot_platform.service.hot.SensorDataHotTier;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.common.TopicPartition;
+import org.springframework.kafka.listener.ConsumerAwareRebalanceListener;
+import org.springframework.stereotype.Service;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+
+// Tracks the sensor-data partitions held by this node's listener containers (one consumer each, all sharing this
+// listener) and tells the hot tier whether it holds all of them, i.e. whether this node is the only one ingesting.
+@Slf4j
+@Service
+public class SensorDataPartitionOwnership implements ConsumerAwareRebalanceListener {
+
+    private final SensorDataHotTier hotTier;
+
+    // Guarded by this
+    private final Set<TopicPartition> held = new HashSet<>();
+    private int partitionCount;
+
+    public SensorDataPartitionOwnership(SensorDataHotTier hotTier) {
+        this.hotTier = hotTier;
+    }
+
+    @Override
+    public void onPartitionsAssigned(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+        if (partitions.isEmpty()) {
+            return;
+        }
+        // Read on the consumer thread, from metadata the assignment has just refreshed
+        int count = consumer.partitionsFor(KafkaConfig.SENSOR_DATA_TOPIC).size();
+        synchronized (this) {
+            partitionCount = count;
+            held.addAll(partitions);
+            changed();
+        }
+    }
+
+    @Override
+    public void onPartitionsRevokedBeforeCommit(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+        release(partitions);
+    }
+
+    @Override
+    public void onPartitionsLost(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+        release(partitions);
+    }
+
+    private void release(Collection<TopicPartition> partitions) {
+        if (partitions.isEmpty()) {
+            return;
+        }
+        synchronized (this) {
+            held.removeAll(partitions);
+            changed();
+        }
+    }
+
+    private void changed() {
+        boolean sole = partitionCount > 0 && held.size() >= partitionCount;
+        log.info("Holding {} of {} sensor-data partitions, hot tier {}", held.size(), partitionCount,
+                sole ? "answering from the next reading of each device" : "bypassed");
+        hotTier.resetCoverage(sole);
+    }
+}
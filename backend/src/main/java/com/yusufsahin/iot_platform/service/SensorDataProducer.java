@@ -1,108 +1,237 @@
 package com.yusufsahin.iot_platform.service;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.SerializationFeature;
-import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
 import com.yusufsahin.iot_platform.dto.SensorDataDto;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.distribution.HistogramSnapshot;
+import io.micrometer.core.instrument.distribution.ValueAtPercentile;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.kafka.core.KafkaTemplate;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
 import java.time.LocalDateTime;
-import java.util.Map;
-import java.util.Random;
-import java.util.concurrent.ConcurrentHashMap;
-
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+// Simulated device fleet used for demos and capacity tests.
+// Device state lives in primitive arrays indexed by device number; generator thread t owns devices
+// t, t + threads, t + 2*threads, ... so state is never shared and each thread has its own SplittableRandom.
+// Threads pace themselves to an aggregate target rate and send asynchronously; the producer batches and compresses.
 @Service
 @Slf4j
 public class SensorDataProducer {
 
     private static final String TOPIC = "sensor-data";
-    private final KafkaTemplate<String, String> kafkaTemplate;
-    private final ObjectMapper objectMapper;
-    private final Random random = new Random();
-
-    private final Map<String, DeviceState> deviceStates = new ConcurrentHashMap<>();
-
-    private record DeviceState(
-            String deviceId,
-            String location,
-            double currentTemperature,
-            double currentHumidity,
-            double currentPressure,
-            double batteryLevel
-    ) {}
-
-    public SensorDataProducer(KafkaTemplate<String, String> kafkaTemplate, ObjectMapper objectMapper) {
+
+    private final KafkaTemplate<String, SensorDataDto> kafkaTemplate;
+    private final boolean enabled;
+    private final int threads;
+    private final double ratePerThread;
+    private final boolean replaceDeadBatteries;
+
+    private final String[] deviceIds;
+    private final String[] locations;
+    private final double[] temperature;
+    private final double[] humidity;
+    private final double[] pressure;
+    private final double[] batteryLevel;
+
+    private final Counter sentCounter;
+    private final Counter failedCounter;
+    private final Counter deadBatteryCounter;
+    private final Counter batteryReplacementCounter;
+    private final Timer sendLatency;
+
+    private final List<Thread> generators = new ArrayList<>();
+    private volatile boolean running;
+
+    private long lastReportNanos = System.nanoTime();
+    private double lastReportSent;
+
+    public SensorDataProducer(KafkaTemplate<String, SensorDataDto> kafkaTemplate,
+                              MeterRegistry meterRegistry,
+                              @Value("${iot.simulator.enabled:true}") boolean enabled,
+                              @Value("${iot.simulator.devices:5}") int devices,
+                              @Value("${iot.simulator.locations:5}") int locationCount,
+                              @Value("${iot.simulator.messages-per-second:1}") double messagesPerSecond,
+                              @Value("${iot.simulator.threads:1}") int threads,
+                              @Value("${iot.simulator.seed:42}") long seed,
+                              @Value("${iot.simulator.replace-dead-batteries:true}") boolean replaceDeadBatteries) {
         this.kafkaTemplate = kafkaTemplate;
-        this.objectMapper = objectMapper;
-        objectMapper.registerModule(new JavaTimeModule());
-        objectMapper.disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+        this.enabled = enabled;
+        this.threads = Math.max(1, Math.min(threads, devices));
+        this.ratePerThread = messagesPerSecond / this.threads;
+        this.replaceDeadBatteries = replaceDeadBatteries;
+
+        this.deviceIds = new String[devices];
+        this.locations = new String[devices];
+        this.temperature = new double[devices];
+        this.humidity = new double[devices];
+        this.pressure = new double[devices];
+        this.batteryLevel = new double[devices];
+        initializeDeviceStates(new SplittableRandom(seed), locationCount);
+
+        this.sentCounter = Counter.builder("iot.simulator.sent")
+                .description("Simulated readings acknowledged by Kafka")
+                .register(meterRegistry);
+        this.failedCounter = Counter.builder("iot.simulator.failed")
+                .description("Simulated readings Kafka failed to accept")
+                .register(meterRegistry);
+        this.deadBatteryCounter = Counter.builder("iot.simulator.dead-battery")
+                .description("Readings skipped because the simulated device's battery is empty")
+                .register(meterRegistry);
+        this.batteryReplacementCounter = Counter.builder("iot.simulator.battery-replacements")
+                .description("Empty simulated batteries replaced with full ones")
+                .register(meterRegistry);
+        this.sendLatency = Timer.builder("iot.simulator.send.latency")
+                .description("Time from send to broker acknowledgement")
+                .publishPercentiles(0.5, 0.95, 0.99, 0.999)
+                .register(meterRegistry);
+    }
 
-        initializeDeviceStates();
+    private void initializeDeviceStates(SplittableRandom random, int locationCount) {
+        for (int i = 0; i < deviceIds.length; i++) {
+            deviceIds[i] = String.format("device-%03d", i + 1);
+            int location = i % Math.max(1, locationCount);
+            locations[i] = locationCount <= 26 ? String.valueOf((char) ('A' + location)) : "L" + (location + 1);
+            temperature[i] = 4.0 + random.nextDouble(24.0);
+            humidity[i] = 35.0 + random.nextDouble(40.0);
+            pressure[i] = 1005.0 + random.nextDouble(15.0);
+            batteryLevel[i] = 100.0;
+        }
     }
 
-    private void initializeDeviceStates() {
-        deviceStates.put("device-001", new DeviceState("device-001", "A", 28.0,
-                35.0, 1015.0, 100.0));
-        deviceStates.put("device-002", new DeviceState("device-002", "B", 22.0,
-                75.0, 1010.0, 100.0));
-        deviceStates.put("device-003", new DeviceState("device-003", "C", 15.0,
-                60.0, 1005.0, 100.0));
-        deviceStates.put("device-004", new DeviceState("device-004", "D", 4.0,
-                50.0, 1020.0, 100.0));
-        deviceStates.put("device-005", new DeviceState("device-005", "E", 24.0,
-                55.0, 1012.0, 100.0));
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (!enabled || deviceIds.length == 0) {
+            return;
+        }
+        running = true;
+        SplittableRandom master = new SplittableRandom(System.nanoTime());
+        for (int t = 0; t < threads; t++) {
+            SplittableRandom random = master.split();
+            int first = t;
+            Thread generator = new Thread(() -> generate(first, random), "sensor-simulator-" + t);
+            generator.setDaemon(true);
+            generators.add(generator);
+            generator.start();
+        }
+        log.info("Simulating {} devices at {} msg/s on {} threads", deviceIds.length, ratePerThread * threads, threads);
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        for (Thread generator : generators) {
+            generator.join(TimeUnit.SECONDS.toMillis(5));
+        }
+        kafkaTemplate.flush();
     }
 
-    @Scheduled(fixedRate = 5000) // Every 5 seconds
-    public void generateAndSendSensorData() {
-        deviceStates.forEach((deviceId, currentState) -> {
-            if (currentState.batteryLevel() <= 0) {
-                log.warn("Device {} has a dead battery. Skipping data generation.", deviceId);
-                return;
+    // Sends whatever is due at the target rate since the thread started, so late wake-ups are caught up in bursts
+    private void generate(int first, SplittableRandom random) {
+        long start = System.nanoTime();
+        long sent = 0;
+        int device = first;
+        while (running) {
+            long due = (long) ((System.nanoTime() - start) * ratePerThread / 1_000_000_000.0);
+            if (sent >= due) {
+                LockSupport.parkNanos(Math.max(50_000L, Math.min(100_000_000L, (long) (1_000_000_000.0 / ratePerThread))));
+                continue;
             }
+            LocalDateTime now = LocalDateTime.now();
+            while (sent < due && running) {
+                SensorDataDto reading = nextReading(device, random, now);
+                if (reading != null) {
+                    send(reading);
+                } else {
+                    deadBatteryCounter.increment();
+                }
+                sent++;
+                device += threads;
+                if (device >= deviceIds.length) {
+                    device = first;
+                }
+            }
+        }
+    }
 
-            double newTemp = currentState.currentTemperature() + (random.nextDouble() - 0.5);
-            double newHumidity = currentState.currentHumidity() + (random.nextDouble() * 2.0 - 1.0);
-            double newPressure = currentState.currentPressure() + (random.nextDouble() * 0.4 - 0.2);
-            double newBattery = Math.max(0, currentState.batteryLevel() - (0.1 + random.nextDouble() * 0.2));
-
-            DeviceState newState = new DeviceState(
-                    deviceId,
-                    currentState.location(),
-                    newTemp,
-                    newHumidity,
-                    newPressure,
-                    newBattery
-            );
-
-            deviceStates.put(deviceId, newState);
-
-            SensorDataDto sensorDataDto = new SensorDataDto(
-                    null,
-                    newState.deviceId(),
-                    newState.currentTemperature(),
-                    newState.currentHumidity(),
-                    newState.currentPressure(),
-                    LocalDateTime.now(),
-                    newState.location(),
-                    (int) newState.batteryLevel()
-            );
-
-            sendSensorData(sensorDataDto);
-        });
+    private SensorDataDto nextReading(int device, SplittableRandom random, LocalDateTime now) {
+        if (batteryLevel[device] <= 0) {
+            if (!replaceDeadBatteries) {
+                return null;
+            }
+            // A device drains in about 500 readings; without a fresh battery a long run would fall silent
+            batteryLevel[device] = 100.0;
+            batteryReplacementCounter.increment();
+        }
+        temperature[device] += random.nextDouble() - 0.5;
+        humidity[device] += random.nextDouble() * 2.0 - 1.0;
+        pressure[device] += random.nextDouble() * 0.4 - 0.2;
+        batteryLevel[device] = Math.max(0, batteryLevel[device] - (0.1 + random.nextDouble() * 0.2));
+
+        return new SensorDataDto(
+                null,
+                deviceIds[device],
+                temperature[device],
+                humidity[device],
+                pressure[device],
+                now,
+                locations[device],
+                (int) batteryLevel[device]
+        );
     }
 
-    private void sendSensorData(SensorDataDto data) {
+    // Serialized by the topic's SensorDataSerializer, see iot.kafka.topic.sensor-data.format
+    private void send(SensorDataDto data) {
+        long started = System.nanoTime();
         try {
-            String jsonData = objectMapper.writeValueAsString(data);
-            kafkaTemplate.send(TOPIC, data.deviceId(), jsonData);
-            log.info("Sent realistic sensor data to Kafka for device: {}", data.deviceId());
-        } catch (JsonProcessingException e) {
-            log.error("Error serializing sensor data for device {}: ", data.deviceId(), e);
+            kafkaTemplate.send(TOPIC, data.deviceId(), data).whenComplete((result, error) -> {
+                if (error != null) {
+                    failedCounter.increment();
+                    log.debug("Failed to send simulated reading for device {}", data.deviceId(), error);
+                    return;
+                }
+                sendLatency.record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+                sentCounter.increment();
+            });
+        } catch (RuntimeException e) {
+            // e.g. the producer buffer stayed full for max.block.ms
+            failedCounter.increment();
+            log.debug("Could not enqueue simulated reading for device {}", data.deviceId(), e);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${iot.simulator.report-interval-ms:10000}")
+    public void report() {
+        if (!running) {
+            return;
+        }
+        long now = System.nanoTime();
+        double sent = sentCounter.count();
+        double seconds = (now - lastReportNanos) / 1_000_000_000.0;
+        double throughput = (sent - lastReportSent) / seconds;
+        lastReportNanos = now;
+        lastReportSent = sent;
+
+        HistogramSnapshot snapshot = sendLatency.takeSnapshot();
+        StringBuilder percentiles = new StringBuilder();
+        for (ValueAtPercentile value : snapshot.percentileValues()) {
+            percentiles.append(String.format(" p%s=%.2fms", value.percentile() * 100, value.value(TimeUnit.MILLISECONDS)));
         }
+        log.info("Simulator: {} msg/s acknowledged (target {}), failed={}, dead-battery skips={}, battery replacements={}, "
+                        + "send latency{}",
+                String.format("%.0f", throughput), String.format("%.0f", ratePerThread * threads),
+                (long) failedCounter.count(), (long) deadBatteryCounter.count(), (long) batteryReplacementCounter.count(),
+                percentiles);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,92 @@
+package com.yusufsahin.iot_platform.service;
+
+import com.yusufsahin.iot_platform.config.KafkaConfig;
+import com.yusufsahin.iot_platform.dto.SensorDataDto;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.listener.DeadLetterPublishingRecoverer;
+import org.springframework.kafka.support.SendResult;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+// Hands sensor-data that the main ingest path cannot handle to the recovery topics instead of dropping it:
+// readings whose flush keeps failing go to sensor-data-failed for non-blocking retries, records that cannot
+// be decoded go straight to the dead-letter topic with their original bytes. Both wait for the broker, so
+// the caller only acknowledges what Kafka has durably taken over.
+@Slf4j
+@Service
+public class SensorDataRecoveryPublisher {
+
+    // Cause of the failed flush, kept on the record through the retry topics
+    public static final String FAILURE_FQCN_HEADER = "iot-ingest-failure-fqcn";
+    public static final String FAILURE_MESSAGE_HEADER = "iot-ingest-failure-message";
+
+    private final KafkaTemplate<String, Object> deadLetterKafkaTemplate;
+    private final DeadLetterPublishingRecoverer deadLetterRecoverer;
+    private final Duration sendTimeout;
+    private final Counter diverted;
+    private final Counter deadLettered;
+
+    public SensorDataRecoveryPublisher(KafkaTemplate<String, Object> deadLetterKafkaTemplate,
+                                       MeterRegistry meterRegistry,
+                                       @Value("${iot.kafka.retry.send-timeout-ms:30000}") long sendTimeoutMs) {
+        this.deadLetterKafkaTemplate = deadLetterKafkaTemplate;
+        this.sendTimeout = Duration.ofMillis(sendTimeoutMs);
+        // Partition -1 leaves the choice to the producer; the DLT need not have as many partitions as the source
+        this.deadLetterRecoverer = new DeadLetterPublishingRecoverer(deadLetterKafkaTemplate,
+                (record, exception) -> new TopicPartition(KafkaConfig.SENSOR_DATA_DLT, -1));
+        this.deadLetterRecoverer.setWaitForSendResultTimeout(this.sendTimeout);
+        this.diverted = Counter.builder("iot.ingest.recovery.diverted")
+                .description("Readings moved to the retry topics after repeated flush failures")
+                .register(meterRegistry);
+        this.deadLettered = Counter.builder("iot.ingest.recovery.dead-lettered")
+                .description("Undecodable or invalid sensor-data records published to the dead-letter topic")
+                .register(meterRegistry);
+    }
+
+    // Throws if any reading could not be published; the caller keeps them and tries again
+    public void divert(List<SensorDataDto> readings, Exception cause) {
+        byte[] fqcn = cause.getClass().getName().getBytes(StandardCharsets.UTF_8);
+        byte[] message = String.valueOf(cause.getMessage()).getBytes(StandardCharsets.UTF_8);
+        List<CompletableFuture<SendResult<String, Object>>> sends = new ArrayList<>(readings.size());
+        for (SensorDataDto reading : readings) {
+            ProducerRecord<String, Object> record =
+                    new ProducerRecord<>(KafkaConfig.SENSOR_DATA_FAILED_TOPIC, reading.deviceId(), reading);
+            record.headers().add(FAILURE_FQCN_HEADER, fqcn);
+            record.headers().add(FAILURE_MESSAGE_HEADER, message);
+            sends.add(deadLetterKafkaTemplate.send(record));
+        }
+        try {
+            CompletableFuture.allOf(sends.toArray(CompletableFuture[]::new))
+                    .get(sendTimeout.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while publishing readings to " + KafkaConfig.SENSOR_DATA_FAILED_TOPIC, e);
+        } catch (ExecutionException | TimeoutException e) {
+            throw new IllegalStateException("Could not publish readings to " + KafkaConfig.SENSOR_DATA_FAILED_TOPIC, e);
+        }
+        diverted.increment(readings.size());
+    }
+
+    // Adds the kafka_dlt-* headers and, for a deserialization failure, sends the undecoded bytes as the value
+    public void deadLetter(ConsumerRecord<?, ?> record, Exception cause) {
+        deadLetterRecoverer.accept(record, cause);
+        deadLettered.increment();
+        log.warn("Dead-lettered sensor-data record (partition {}, offset {}): {}",
+                record.partition(), record.offset(), cause.getMessage());
+    }
+}
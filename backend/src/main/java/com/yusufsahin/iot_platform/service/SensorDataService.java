@@ -1,46 +1,211 @@
 package com.yusufsahin.iot_platform.service;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.yusufsahin.iot_platform.dto.KeysetCursor;
 import com.yusufsahin.iot_platform.dto.SensorDataDto;
 import com.yusufsahin.iot_platform.dto.converter.SensorDataDtoConverter;
 import com.yusufsahin.iot_platform.model.SensorData;
+import com.yusufsahin.iot_platform.repository.SensorDataBatchRepository;
+import com.yusufsahin.iot_platform.repository.SensorDataQueryRepository;
 import com.yusufsahin.iot_platform.repository.SensorDataRepository;
+import com.yusufsahin.iot_platform.service.hot.SensorDataHotTier;
+import com.yusufsahin.iot_platform.service.rollup.SensorDataRollupService;
+import io.micrometer.core.instrument.Timer;
+import jakarta.persistence.EntityManager;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.stream.Stream;
 
 @Slf4j
 @Service
 public class SensorDataService {
 
     private final SensorDataRepository sensorDataRepository;
+    private final SensorDataBatchRepository sensorDataBatchRepository;
+    private final SensorDataQueryRepository sensorDataQueryRepository;
     private final AlertService alertService;
+    private final SensorDataRollupService rollupService;
+    private final LatestReadingCache latestReadingCache;
+    private final ObjectMapper objectMapper;
+    private final TransactionTemplate ingestTransaction;
+    private final TransactionTemplate readOnlyTransaction;
+    private final IngestMetrics ingestMetrics;
+    private final DeviceRegistry deviceRegistry;
+    private final EntityManager entityManager;
+    private final SensorDataHotTier hotTier;
+    private final DeadbandFilter deadbandFilter;
 
-    public SensorDataService(SensorDataRepository sensorDataRepository, AlertService alertService) {
+    public SensorDataService(SensorDataRepository sensorDataRepository,
+                             SensorDataBatchRepository sensorDataBatchRepository,
+                             SensorDataQueryRepository sensorDataQueryRepository,
+                             AlertService alertService,
+                             SensorDataRollupService rollupService,
+                             LatestReadingCache latestReadingCache,
+                             ObjectMapper objectMapper,
+                             PlatformTransactionManager transactionManager,
+                             IngestMetrics ingestMetrics,
+                             DeviceRegistry deviceRegistry,
+                             EntityManager entityManager,
+                             SensorDataHotTier hotTier,
+                             DeadbandFilter deadbandFilter) {
         this.sensorDataRepository = sensorDataRepository;
+        this.sensorDataBatchRepository = sensorDataBatchRepository;
+        this.sensorDataQueryRepository = sensorDataQueryRepository;
         this.alertService = alertService;
+        this.rollupService = rollupService;
+        this.latestReadingCache = latestReadingCache;
+        this.objectMapper = objectMapper;
+        this.ingestTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+        this.ingestMetrics = ingestMetrics;
+        this.deviceRegistry = deviceRegistry;
+        this.entityManager = entityManager;
+        this.hotTier = hotTier;
+        this.deadbandFilter = deadbandFilter;
     }
 
-    @Transactional
+    // Devices are registered before the ingest transaction starts, so a worker never holds two connections
     public SensorDataDto processAndSaveSensorData(SensorDataDto sensorDataDto) {
 
         SensorData sensorDataEntity = SensorDataDtoConverter.toEntity(sensorDataDto);
-        SensorData savedSensorData = sensorDataRepository.save(sensorDataEntity);
+        deviceRegistry.assignKeys(List.of(sensorDataEntity));
+        return ingestTransaction.execute(status -> {
+            // A reading inside the deadband is processed like any other but not stored, so it keeps a null id
+            boolean store = !deadbandFilter.select(List.of(sensorDataEntity)).isEmpty();
+            SensorData savedSensorData = store ? sensorDataRepository.save(sensorDataEntity) : sensorDataEntity;
 
-        alertService.checkForAndProcessAlerts(savedSensorData);
+            alertService.checkForAndProcessAlerts(savedSensorData);
+            rollupService.record(List.of(savedSensorData));
+            latestReadingCache.record(List.of(savedSensorData));
+            if (store) {
+                hotTier.record(List.of(savedSensorData));
+            }
 
-        return SensorDataDtoConverter.toDto(savedSensorData);
+            return SensorDataDtoConverter.toDto(savedSensorData);
+        });
 
     }
 
-    public List<SensorDataDto> getAllSensorData() {
-        return sensorDataRepository.findAll().stream().map(SensorDataDtoConverter::toDto).toList();
+    // Persists a whole poll with a single multi-row insert and evaluates alerts in the same transaction.
+    // Unseen devices are registered first, in a transaction of their own that has committed before this one begins.
+    public List<SensorDataDto> processAndSaveSensorDataBatch(List<SensorDataDto> sensorDataDtos) {
+        List<SensorData> entities = new ArrayList<>(sensorDataDtos.size());
+        for (SensorDataDto dto : sensorDataDtos) {
+            entities.add(SensorDataDtoConverter.toEntity(dto));
+        }
+        deviceRegistry.assignKeys(entities);
+        return ingestTransaction.execute(status -> {
+            // Readings inside the deadband skip only the insert (their DTOs keep a null id)
+            List<SensorData> stored = deadbandFilter.select(entities);
+
+            ingestMetrics.stage(IngestMetrics.Stage.PERSIST).record(() -> sensorDataBatchRepository.insertAll(stored));
+            rollupService.record(entities);
+            latestReadingCache.record(entities);
+            hotTier.record(stored);
+
+            List<SensorDataDto> saved = new ArrayList<>(entities.size());
+            Timer.Sample alertEvaluation = Timer.start();
+            for (SensorData entity : entities) {
+                alertService.checkForAndProcessAlerts(entity);
+                saved.add(SensorDataDtoConverter.toDto(entity));
+            }
+            alertEvaluation.stop(ingestMetrics.stage(IngestMetrics.Stage.ALERT_EVALUATE));
+            return saved;
+        });
     }
 
-    public List<SensorDataDto> getSensorDataByDeviceId(String deviceId) {
-        return sensorDataRepository.findByDeviceId(deviceId).stream().map(SensorDataDtoConverter::toDto).toList();
+    public List<SensorDataDto> getSensorData(LocalDateTime from, LocalDateTime to) {
+        return toDtos(sensorDataRepository.findInRange(from, to));
     }
 
-}
+    // Recent ranges are usually held by the hot tier; anything it does not fully cover is read from the database
+    public List<SensorDataDto> getSensorDataByDeviceId(String deviceId, LocalDateTime from, LocalDateTime to) {
+        Integer deviceKey = deviceRegistry.findKey(deviceId);
+        if (deviceKey == null) {
+            return List.of();
+        }
+        List<SensorDataDto> hot = hotTier.find(deviceKey, deviceId, from, to);
+        return hot != null ? hot : toDtos(sensorDataRepository.findByDeviceKeyInRange(deviceKey, from, to));
+    }
+
+    private List<SensorDataDto> toDtos(List<SensorData> readings) {
+        return readings.stream().map(deviceRegistry::describe).map(SensorDataDtoConverter::toDto).toList();
+    }
+
+    // Writes one keyset page as {"items":[...],"nextCursor":...} straight from the result set.
+    // One extra row is fetched to tell whether another page exists; it is never written.
+    public void writeSensorDataPage(String deviceId, LocalDateTime from, LocalDateTime to,
+                                    KeysetCursor after, int limit, OutputStream out) throws IOException {
+        try (JsonGenerator generator = objectMapper.createGenerator(out)) {
+            generator.writeStartObject();
+            generator.writeArrayFieldStart("items");
 
+            SensorDataDto[] last = new SensorDataDto[1];
+            int[] written = new int[1];
+            boolean[] hasMore = new boolean[1];
+            readOnlyTransaction.executeWithoutResult(status ->
+                    sensorDataQueryRepository.streamByDevice(deviceId, from, to, after, limit + 1, row -> {
+                        if (written[0] == limit) {
+                            hasMore[0] = true;
+                            return;
+                        }
+                        try {
+                            objectMapper.writeValue(generator, row);
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                        last[0] = row;
+                        written[0]++;
+                    }));
+
+            generator.writeEndArray();
+            generator.writeStringField("nextCursor", hasMore[0] ? KeysetCursor.of(last[0]).encode() : null);
+            generator.writeEndObject();
+        }
+    }
+
+    // Streams every reading in [from, to) as CSV: one device in (timestamp, id) order, or all devices in storage
+    // order when deviceId is null. Rows go from a forward-only cursor straight to out and are detached as soon as
+    // they are written, so heap use does not depend on the size of the export.
+    public long exportCsv(String deviceId, LocalDateTime from, LocalDateTime to, OutputStream out) throws IOException {
+        long started = System.nanoTime();
+        SensorDataCsvWriter csv = new SensorDataCsvWriter(out);
+        csv.writeHeader();
+
+        long[] written = new long[1];
+        Integer deviceKey = deviceId == null ? null : deviceRegistry.findKey(deviceId);
+        if (deviceId == null || deviceKey != null) {
+            readOnlyTransaction.executeWithoutResult(status -> {
+                try (Stream<SensorData> readings = deviceKey == null
+                        ? sensorDataRepository.streamInRange(from, to)
+                        : sensorDataRepository.streamByDeviceKeyInRange(deviceKey, from, to)) {
+                    readings.forEach(reading -> {
+                        entityManager.detach(reading);
+                        try {
+                            csv.write(deviceRegistry.describe(reading));
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                        written[0]++;
+                    });
+                }
+            });
+        }
+        csv.flush();
+        log.info("Exported {} readings of {} in [{}, {}) in {} ms", written[0], deviceId == null ? "all devices" : deviceId,
+                from, to, (System.nanoTime() - started) / 1_000_000);
+        return written[0];
+    }
+
+}
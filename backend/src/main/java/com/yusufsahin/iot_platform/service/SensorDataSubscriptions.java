@@ -0,0 +1,76 @@
+package com.yusufsahin.iot_platform.service;
+
+import org.springframework.context.event.EventListener;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+import org.springframework.web.socket.messaging.SessionSubscribeEvent;
+import org.springframework.web.socket.messaging.SessionUnsubscribeEvent;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Counts live STOMP subscriptions per /topic/sensor-data* destination so the broadcaster only
+// builds frames somebody will receive. Sessions are anonymous, so SimpUserRegistry cannot be used.
+@Component
+public class SensorDataSubscriptions {
+
+    static final String FIREHOSE = "/topic/sensor-data";
+    static final String DEVICE_PREFIX = FIREHOSE + "/device/";
+    static final String LOCATION_PREFIX = FIREHOSE + "/location/";
+
+    // sessionId -> subscriptionId -> destination
+    private final Map<String, Map<String, String>> sessions = new ConcurrentHashMap<>();
+    private final Map<String, AtomicInteger> subscribers = new ConcurrentHashMap<>();
+
+    @EventListener
+    public void onSubscribe(SessionSubscribeEvent event) {
+        SimpMessageHeaderAccessor headers = SimpMessageHeaderAccessor.wrap(event.getMessage());
+        String destination = headers.getDestination();
+        if (destination == null || !destination.startsWith(FIREHOSE) || headers.getSessionId() == null) {
+            return;
+        }
+        String previous = sessions.computeIfAbsent(headers.getSessionId(), id -> new ConcurrentHashMap<>())
+                .put(headers.getSubscriptionId(), destination);
+        if (previous != null) {
+            release(previous);
+        }
+        // Incremented inside the mapping function, like release decrements: incrementing a counter returned by
+        // computeIfAbsent could race with a release that removes it at zero, losing this subscription
+        subscribers.compute(destination, (d, count) -> {
+            count = count == null ? new AtomicInteger() : count;
+            count.incrementAndGet();
+            return count;
+        });
+    }
+
+    @EventListener
+    public void onUnsubscribe(SessionUnsubscribeEvent event) {
+        SimpMessageHeaderAccessor headers = SimpMessageHeaderAccessor.wrap(event.getMessage());
+        Map<String, String> subscriptions = headers.getSessionId() != null ? sessions.get(headers.getSessionId()) : null;
+        if (subscriptions == null || headers.getSubscriptionId() == null) {
+            return;
+        }
+        String destination = subscriptions.remove(headers.getSubscriptionId());
+        if (destination != null) {
+            release(destination);
+        }
+    }
+
+    @EventListener
+    public void onDisconnect(SessionDisconnectEvent event) {
+        Map<String, String> subscriptions = sessions.remove(event.getSessionId());
+        if (subscriptions != null) {
+            subscriptions.values().forEach(this::release);
+        }
+    }
+
+    private void release(String destination) {
+        subscribers.computeIfPresent(destination, (d, count) -> count.decrementAndGet() <= 0 ? null : count);
+    }
+
+    boolean hasSubscribers(String destination) {
+        return subscribers.containsKey(destination);
+    }
+}
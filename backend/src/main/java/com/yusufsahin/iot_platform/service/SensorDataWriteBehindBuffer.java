@@ -0,0 +1,335 @@
+package com.yusufsahin.iot_platform.service;
+
+import com.yusufsahin.iot_platform.dto.SensorDataDto;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.kafka.config.KafkaListenerEndpointRegistry;
+import org.springframework.kafka.listener.MessageListenerContainer;
+import org.springframework.kafka.support.Acknowledgment;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Write-behind stage between the Kafka listener and the database.
+// Listener threads append each polled batch together with its Acknowledgment and return to poll right away;
+// a single writer thread flushes once flush-size readings are buffered or the oldest one has waited flush-interval-ms.
+// A poll is acknowledged only after every reading of it has been persisted, and polls are flushed in arrival order,
+// so committed offsets never run ahead of the database (at-least-once). A failed flush keeps its polls buffered and
+// retries, with backoff, only the device stripes that failed; once they have been failing for max-outage-ms their
+// readings are handed to the retry topics instead (SensorDataRecoveryPublisher), so one bad reading or a longer
+// outage does not stall every partition.
+// When the buffer reaches high-watermark readings the listener container is paused, and it is resumed once
+// the writer has drained it to low-watermark.
+@Service
+@Slf4j
+public class SensorDataWriteBehindBuffer {
+
+    private record Poll(List<SensorDataDto> readings, Acknowledgment acknowledgment, long bufferedAt) {}
+
+    private final SensorDataService sensorDataService;
+    private final SensorDataBroadcaster sensorDataBroadcaster;
+    private final StripedIngestExecutor stripedIngestExecutor;
+    private final SensorDataRecoveryPublisher recoveryPublisher;
+    private final KafkaListenerEndpointRegistry listenerRegistry;
+
+    private final int capacity;
+    private final int flushSize;
+    private final long flushIntervalNanos;
+    private final int highWatermark;
+    private final int lowWatermark;
+    private final long maxRetryBackoffMillis;
+    private final long maxOutageNanos;
+
+    // FIFO of polls (a circular array); size counts the buffered readings, which is what the capacity bounds
+    private final ArrayDeque<Poll> polls = new ArrayDeque<>();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition notFull = lock.newCondition();
+    private int size;
+    private boolean paused;
+
+    private final Counter pauses;
+    private final Counter failedFlushes;
+    private final DistributionSummary flushSizes;
+
+    private final Thread writer;
+    private volatile boolean running = true;
+
+    public SensorDataWriteBehindBuffer(SensorDataService sensorDataService,
+                                       SensorDataBroadcaster sensorDataBroadcaster,
+                                       StripedIngestExecutor stripedIngestExecutor,
+                                       SensorDataRecoveryPublisher recoveryPublisher,
+                                       KafkaListenerEndpointRegistry listenerRegistry,
+                                       MeterRegistry meterRegistry,
+                                       @Value("${iot.ingest.buffer.capacity:50000}") int capacity,
+                                       @Value("${iot.ingest.buffer.flush-size:2000}") int flushSize,
+                                       @Value("${iot.ingest.buffer.flush-interval-ms:100}") long flushIntervalMs,
+                                       @Value("${iot.ingest.buffer.high-watermark:0.8}") double highWatermark,
+                                       @Value("${iot.ingest.buffer.low-watermark:0.5}") double lowWatermark,
+                                       @Value("${iot.ingest.buffer.max-retry-backoff-ms:5000}") long maxRetryBackoffMillis,
+                                       @Value("${iot.ingest.buffer.max-outage-ms:30000}") long maxOutageMillis) {
+        if (flushSize < 1 || capacity < flushSize) {
+            throw new IllegalArgumentException("iot.ingest.buffer.capacity (" + capacity
+                    + ") must be at least iot.ingest.buffer.flush-size (" + flushSize + ")");
+        }
+        if (lowWatermark < 0 || lowWatermark >= highWatermark || highWatermark > 1) {
+            throw new IllegalArgumentException("Expected 0 <= iot.ingest.buffer.low-watermark < high-watermark <= 1, got "
+                    + lowWatermark + " and " + highWatermark);
+        }
+        this.sensorDataService = sensorDataService;
+        this.sensorDataBroadcaster = sensorDataBroadcaster;
+        this.stripedIngestExecutor = stripedIngestExecutor;
+        this.recoveryPublisher = recoveryPublisher;
+        this.listenerRegistry = listenerRegistry;
+        this.capacity = capacity;
+        this.flushSize = flushSize;
+        this.flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(flushIntervalMs);
+        this.highWatermark = (int) (capacity * highWatermark);
+        this.lowWatermark = (int) (capacity * lowWatermark);
+        this.maxRetryBackoffMillis = maxRetryBackoffMillis;
+        this.maxOutageNanos = TimeUnit.MILLISECONDS.toNanos(maxOutageMillis);
+
+        Gauge.builder("iot.ingest.buffer.size", this, SensorDataWriteBehindBuffer::getSize)
+                .description("Readings consumed from Kafka and not yet persisted")
+                .register(meterRegistry);
+        this.pauses = Counter.builder("iot.ingest.buffer.pauses")
+                .description("Times the sensor-data listener was paused because the write-behind buffer was full")
+                .register(meterRegistry);
+        this.failedFlushes = Counter.builder("iot.ingest.buffer.flush.failures")
+                .description("Write-behind flush attempts that failed")
+                .register(meterRegistry);
+        this.flushSizes = DistributionSummary.builder("iot.ingest.buffer.flush.size")
+                .description("Readings per write-behind flush")
+                .register(meterRegistry);
+
+        this.writer = new Thread(this::drainLoop, "sensor-data-writer");
+        this.writer.setDaemon(true);
+    }
+
+    @PostConstruct
+    void start() {
+        writer.start();
+    }
+
+    // Listener containers are stopped before this runs, so nothing is appended any more; what is still
+    // buffered is flushed, but its acknowledgments no longer reach the broker and the polls are redelivered
+    @PreDestroy
+    void stop() throws InterruptedException {
+        running = false;
+        writer.interrupt();
+        writer.join(TimeUnit.SECONDS.toMillis(30));
+    }
+
+    public int getSize() {
+        lock.lock();
+        try {
+            return size;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Called on the listener thread. Blocks only if a poll arrives while the buffer is already at capacity,
+    // i.e. one that was fetched before the pause took effect.
+    // A poll without readings (all records failed to deserialize) is still queued, so that its
+    // acknowledgment cannot commit past earlier polls of the same partition that are not yet persisted.
+    public void append(List<SensorDataDto> readings, Acknowledgment acknowledgment) throws InterruptedException {
+        boolean pause;
+        int buffered;
+        lock.lock();
+        try {
+            // A poll larger than the whole buffer is let through on its own rather than blocking forever
+            while (size > 0 && size + readings.size() > capacity) {
+                notFull.await();
+            }
+            polls.addLast(new Poll(readings, acknowledgment, System.nanoTime()));
+            size += readings.size();
+            buffered = size;
+            pause = !paused && size >= highWatermark;
+            if (pause) {
+                paused = true;
+            }
+            notEmpty.signal();
+        } finally {
+            lock.unlock();
+        }
+        if (pause) {
+            pauses.increment();
+            log.warn("Write-behind buffer holds {} of {} readings, pausing sensor-data consumption", buffered, capacity);
+            setListenerPaused(true);
+        }
+    }
+
+    private void drainLoop() {
+        List<Poll> batch = new ArrayList<>();
+        while (running || getSize() > 0) {
+            try {
+                if (!awaitFlush()) {
+                    continue;
+                }
+            } catch (InterruptedException e) {
+                // stop() interrupts the writer; flush whatever is left below
+            }
+            int readings = peekBatch(batch);
+            if (!batch.isEmpty()) {
+                flushWithRetry(batch, readings);
+                batch.clear();
+            }
+        }
+    }
+
+    // Waits until flush-size readings are buffered or the oldest one is flush-interval old
+    private boolean awaitFlush() throws InterruptedException {
+        lock.lock();
+        try {
+            while (polls.isEmpty()) {
+                if (!running) {
+                    return false;
+                }
+                notEmpty.await(flushIntervalNanos, TimeUnit.NANOSECONDS);
+            }
+            long remaining;
+            while (running && size < flushSize
+                    && (remaining = polls.getFirst().bufferedAt() + flushIntervalNanos - System.nanoTime()) > 0) {
+                notEmpty.awaitNanos(remaining);
+            }
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Polls stay in the buffer while they are being written, so a failing database keeps the backpressure on
+    private int peekBatch(List<Poll> batch) {
+        lock.lock();
+        try {
+            int readings = 0;
+            for (Iterator<Poll> it = polls.iterator(); it.hasNext() && readings < flushSize; ) {
+                Poll poll = it.next();
+                batch.add(poll);
+                readings += poll.readings().size();
+            }
+            return readings;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void flushWithRetry(List<Poll> batch, int readings) {
+        List<SensorDataDto> pending = new ArrayList<>(readings);
+        for (Poll poll : batch) {
+            pending.addAll(poll.readings());
+        }
+        long backoffMillis = 100;
+        long failingSince = System.nanoTime();
+        while (!pending.isEmpty()) {
+            // With several workers each device stripe is persisted in its own transaction; only the stripes
+            // that failed are written again, and each device stays on one stripe, so its order holds
+            List<StripedIngestExecutor.StripeFailure<SensorDataDto>> failures =
+                    stripedIngestExecutor.executeEach(pending, SensorDataDto::deviceId, this::persistAndBroadcast);
+            if (failures.isEmpty()) {
+                break;
+            }
+            failedFlushes.increment();
+            pending = new ArrayList<>();
+            for (StripedIngestExecutor.StripeFailure<SensorDataDto> failure : failures) {
+                pending.addAll(failure.items());
+            }
+            RuntimeException cause = failures.get(0).cause();
+            if (System.nanoTime() - failingSince >= maxOutageNanos && divert(pending, cause)) {
+                break;
+            }
+            log.error("Failed to persist {} of {} buffered readings, retrying in {} ms", pending.size(), readings, backoffMillis, cause);
+            try {
+                Thread.sleep(backoffMillis);
+            } catch (InterruptedException interrupted) {
+                // Shutting down: leave the polls unacknowledged so they are redelivered
+                log.warn("Dropping {} unpersisted readings on shutdown; they will be redelivered by Kafka", pending.size());
+                clear(batch, readings);
+                return;
+            }
+            backoffMillis = Math.min(backoffMillis * 2, maxRetryBackoffMillis);
+        }
+        if (readings > 0) {
+            flushSizes.record(readings);
+        }
+        clear(batch, readings);
+        for (Poll poll : batch) {
+            poll.acknowledgment().acknowledge();
+        }
+    }
+
+    // Bypasses the buffer: persists on the ingest stripes (keeping per-device ordering) and returns when done.
+    // Used by the flush itself and by the retry-topic listener.
+    public void persistNow(List<SensorDataDto> readings) {
+        stripedIngestExecutor.execute(readings, SensorDataDto::deviceId, this::persistAndBroadcast);
+    }
+
+    private boolean divert(List<SensorDataDto> readings, RuntimeException cause) {
+        try {
+            recoveryPublisher.divert(readings, cause);
+            log.error("Failed to persist {} buffered readings for {} ms, moved them to the retry topics",
+                    readings.size(), TimeUnit.NANOSECONDS.toMillis(maxOutageNanos), cause);
+            return true;
+        } catch (RuntimeException e) {
+            log.error("Could not move {} unpersisted readings to the retry topics either", readings.size(), e);
+            return false;
+        }
+    }
+
+    private void clear(List<Poll> batch, int readings) {
+        boolean resume;
+        int buffered;
+        lock.lock();
+        try {
+            for (int i = 0; i < batch.size(); i++) {
+                polls.removeFirst();
+            }
+            size -= readings;
+            buffered = size;
+            resume = paused && size <= lowWatermark;
+            if (resume) {
+                paused = false;
+            }
+            notFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        if (resume) {
+            log.info("Write-behind buffer drained to {} readings, resuming sensor-data consumption", buffered);
+            setListenerPaused(false);
+        }
+    }
+
+    private void persistAndBroadcast(List<SensorDataDto> readings) {
+        List<SensorDataDto> saved = sensorDataService.processAndSaveSensorDataBatch(readings);
+        for (SensorDataDto sensorDataDto : saved) {
+            sensorDataBroadcaster.offer(sensorDataDto);
+        }
+    }
+
+    // Container pause/resume only set a flag; each consumer thread applies it before its next poll
+    private void setListenerPaused(boolean pause) {
+        MessageListenerContainer container = listenerRegistry.getListenerContainer(KafkaConsumer.LISTENER_ID);
+        if (container == null) {
+            return;
+        }
+        if (pause) {
+            container.pause();
+        } else {
+            container.resume();
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package com.yusufsahin.iot_platform.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+// Fans one write-behind flush out to a fixed set of single-threaded stripes chosen by key hash.
+// All items with the same key land on the same stripe in their original order, so per-device ordering
+// holds across polls and partitions. execute() returns only when every stripe has finished its share,
+// which keeps the write-behind acks correct: a poll is acknowledged after all of it, whatever order it ran in.
+@Slf4j
+@Service
+public class StripedIngestExecutor implements AutoCloseable {
+
+    private final int workers;
+    private final ExecutorService[] stripes;
+
+    public StripedIngestExecutor(@Value("${iot.kafka.consumer.workers:1}") int workers) {
+        if (workers < 1) {
+            throw new IllegalArgumentException("iot.kafka.consumer.workers must be at least 1, got " + workers);
+        }
+        this.workers = workers;
+        // One worker runs on the calling thread, no pool needed
+        this.stripes = new ExecutorService[workers == 1 ? 0 : workers];
+        for (int i = 0; i < stripes.length; i++) {
+            String name = "ingest-worker-" + i;
+            stripes[i] = Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(runnable, name);
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    public int getWorkers() {
+        return workers;
+    }
+
+    // The share of one stripe that failed, and why
+    public record StripeFailure<T>(List<T> items, RuntimeException cause) {}
+
+    // Runs task once per non-empty stripe and waits for all of them. The first failure is rethrown
+    // (others attached as suppressed) only after every stripe is done, so a retry never overlaps a running stripe.
+    public <T> void execute(List<T> items, Function<T, String> keyOf, Consumer<List<T>> task) {
+        List<StripeFailure<T>> failures = executeEach(items, keyOf, task);
+        if (failures.isEmpty()) {
+            return;
+        }
+        RuntimeException failure = failures.get(0).cause();
+        for (int i = 1; i < failures.size(); i++) {
+            failure.addSuppressed(failures.get(i).cause());
+        }
+        throw failure;
+    }
+
+    // Like execute, but returns the shares of the stripes that failed (in stripe order) instead of throwing,
+    // so that a caller can retry just those: the other stripes have committed
+    public <T> List<StripeFailure<T>> executeEach(List<T> items, Function<T, String> keyOf, Consumer<List<T>> task) {
+        if (stripes.length == 0 || items.size() < 2) {
+            try {
+                task.accept(items);
+                return List.of();
+            } catch (RuntimeException e) {
+                return List.of(new StripeFailure<>(items, e));
+            }
+        }
+
+        List<List<T>> shares = new ArrayList<>(workers);
+        for (int i = 0; i < workers; i++) {
+            shares.add(new ArrayList<>(items.size() / workers + 1));
+        }
+        for (T item : items) {
+            shares.get(stripeOf(keyOf.apply(item))).add(item);
+        }
+
+        List<List<T>> submitted = new ArrayList<>(workers);
+        List<Future<?>> futures = new ArrayList<>(workers);
+        for (int i = 0; i < workers; i++) {
+            List<T> share = shares.get(i);
+            if (!share.isEmpty()) {
+                submitted.add(share);
+                futures.add(stripes[i].submit(() -> task.accept(share)));
+            }
+        }
+
+        List<StripeFailure<T>> failures = new ArrayList<>();
+        for (int i = 0; i < futures.size(); i++) {
+            try {
+                futures.get(i).get();
+            } catch (ExecutionException e) {
+                RuntimeException cause = e.getCause() instanceof RuntimeException runtime
+                        ? runtime
+                        : new IllegalStateException("Ingest worker failed", e.getCause());
+                failures.add(new StripeFailure<>(submitted.get(i), cause));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for ingest workers", e);
+            }
+        }
+        return failures;
+    }
+
+    private int stripeOf(String key) {
+        int hash = key != null ? key.hashCode() : 0;
+        return Math.floorMod(hash ^ (hash >>> 16), workers);
+    }
+
+    @Override
+    public void close() throws InterruptedException {
+        for (ExecutorService stripe : stripes) {
+            stripe.shutdown();
+        }
+        for (ExecutorService stripe : stripes) {
+            if (!stripe.awaitTermination(10, TimeUnit.SECONDS)) {
+                log.warn("Ingest worker did not finish within 10s");
+            }
+        }
+    }
+}
@@ -1,9 +1,13 @@
 package com.yusufsahin.iot_platform.service;
 
 import com.yusufsahin.iot_platform.dto.AlertMessageDto;
-import com.yusufsahin.iot_platform.dto.SensorDataDto;
+import org.springframework.messaging.MessageHeaders;
 import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.support.MessageBuilder;
 import org.springframework.stereotype.Service;
+import org.springframework.util.MimeTypeUtils;
+
+import java.util.List;
 
 @Service
 public class WebSocketService {
@@ -14,11 +18,15 @@ public class WebSocketService {
         this.simpMessagingTemplate = simpMessagingTemplate;
     }
 
-    public void sendSensorData(SensorDataDto sensorData) {
-        simpMessagingTemplate.convertAndSend("/topic/sensor-data", sensorData);
+    // Sends an already serialized JSON payload as is, so one serialization can serve several destinations
+    public void sendJson(String destination, byte[] json) {
+        simpMessagingTemplate.send(destination, MessageBuilder.withPayload(json)
+                .setHeader(MessageHeaders.CONTENT_TYPE, MimeTypeUtils.APPLICATION_JSON)
+                .build());
     }
 
-    public void sendAlert(AlertMessageDto alertMessage) {
-        simpMessagingTemplate.convertAndSend("/topic/alert", alertMessage);
+    // One frame carrying a JSON array, serialized once for all subscribers
+    public void sendAlerts(List<AlertMessageDto> alertMessages) {
+        simpMessagingTemplate.convertAndSend("/topic/alert", alertMessages);
     }
 }
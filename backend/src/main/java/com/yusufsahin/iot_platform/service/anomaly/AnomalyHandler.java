@@ -0,0 +1,11 @@
+package com.yusufsahin.iot_platform.service.anomaly;
+
+import com.yusufsahin.iot_platform.service.rule.CompiledRule;
+import com.yusufsahin.iot_platform.service.rule.RuleMatchHandler;
+
+// onScore is called for every anomaly rule that could be scored for the reading (breached or not),
+// so an open anomaly alert can be resolved against its current score; onMatch only for breaches
+public interface AnomalyHandler extends RuleMatchHandler {
+
+    void onScore(CompiledRule rule, double score);
+}
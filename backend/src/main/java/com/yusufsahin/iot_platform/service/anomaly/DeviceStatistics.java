@@ -0,0 +1,125 @@
+package com.yusufsahin.iot_platform.service.anomaly;
+
+import com.yusufsahin.iot_platform.model.Metric;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Rolling per-device, per-metric statistics in paged primitive arrays (struct-of-arrays, no object per device).
+// A device gets a dense slot on first sight; slot * METRICS + metric indexes the per-metric columns.
+//
+// Memory per tracked device, independent of how many readings it sends:
+//   per metric  mean, variance, last value, mean |rate| as float (16 B) + warm-up count as byte (1 B)
+//   per device  last timestamp as long (8 B)
+//   => 4 metrics x 17 B + 8 B = 76 B of array data, plus ~110 B for the deviceId -> slot map entry
+//      (node, boxed Integer and the retained id String), i.e. ~190 B per device or ~190 MB for 1M devices.
+// Pages of PAGE_SIZE devices are allocated as slots are handed out and never freed; once max-devices
+// slots are taken, new devices are not tracked.
+final class DeviceStatistics {
+
+    static final int METRICS = Metric.VALUES.length;
+
+    private static final int PAGE_SHIFT = 12;
+    static final int PAGE_SIZE = 1 << PAGE_SHIFT;
+    private static final int PAGE_MASK = PAGE_SIZE - 1;
+
+    private final int maxDevices;
+    private final ConcurrentHashMap<String, Integer> slots = new ConcurrentHashMap<>();
+    private final AtomicInteger nextSlot = new AtomicInteger();
+
+    // [page][slot-in-page * METRICS + metric]
+    private final float[][] mean;
+    private final float[][] variance;
+    private final float[][] last;
+    private final float[][] meanAbsRate;
+    private final byte[][] count;
+    // [page][slot-in-page]
+    private final long[][] lastAt;
+
+    DeviceStatistics(int maxDevices) {
+        this.maxDevices = maxDevices;
+        int pages = (maxDevices + PAGE_SIZE - 1) >>> PAGE_SHIFT;
+        this.mean = new float[pages][];
+        this.variance = new float[pages][];
+        this.last = new float[pages][];
+        this.meanAbsRate = new float[pages][];
+        this.count = new byte[pages][];
+        this.lastAt = new long[pages][];
+    }
+
+    // -1 once max-devices is reached
+    int slot(String deviceId) {
+        Integer slot = slots.get(deviceId);
+        if (slot != null) {
+            return slot;
+        }
+        if (nextSlot.get() >= maxDevices) {
+            return -1;
+        }
+        // Returning null leaves no mapping behind, so untracked devices do not grow the map
+        slot = slots.computeIfAbsent(deviceId, k -> {
+            int assigned = nextSlot.getAndIncrement();
+            if (assigned >= maxDevices) {
+                return null;
+            }
+            ensurePage(assigned >>> PAGE_SHIFT);
+            return assigned;
+        });
+        return slot != null ? slot : -1;
+    }
+
+    int trackedDevices() {
+        return Math.min(nextSlot.get(), maxDevices);
+    }
+
+    // Runs inside computeIfAbsent; the lock also publishes the new page to threads that get a slot on it later
+    private synchronized void ensurePage(int page) {
+        if (mean[page] != null) {
+            return;
+        }
+        int columns = PAGE_SIZE * METRICS;
+        variance[page] = new float[columns];
+        last[page] = new float[columns];
+        meanAbsRate[page] = new float[columns];
+        count[page] = new byte[columns];
+        lastAt[page] = new long[PAGE_SIZE];
+        // Written last: a non-null mean page means the whole page exists
+        mean[page] = new float[columns];
+    }
+
+    static int page(int slot) {
+        return slot >>> PAGE_SHIFT;
+    }
+
+    static int column(int slot, int metric) {
+        return (slot & PAGE_MASK) * METRICS + metric;
+    }
+
+    static int offset(int slot) {
+        return slot & PAGE_MASK;
+    }
+
+    float[] mean(int page) {
+        return mean[page];
+    }
+
+    float[] variance(int page) {
+        return variance[page];
+    }
+
+    float[] last(int page) {
+        return last[page];
+    }
+
+    float[] meanAbsRate(int page) {
+        return meanAbsRate[page];
+    }
+
+    byte[] count(int page) {
+        return count[page];
+    }
+
+    long[] lastAt(int page) {
+        return lastAt[page];
+    }
+}
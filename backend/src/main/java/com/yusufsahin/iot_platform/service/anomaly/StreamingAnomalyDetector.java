@@ -0,0 +1,179 @@
+package com.yusufsahin.iot_platform.service.anomaly;
+
+import com.yusufsahin.iot_platform.model.AlertMessage;
+import com.yusufsahin.iot_platform.model.Metric;
+import com.yusufsahin.iot_platform.model.SensorData;
+import com.yusufsahin.iot_platform.service.rule.AlertRuleDefinition;
+import com.yusufsahin.iot_platform.service.rule.CompiledRule;
+import com.yusufsahin.iot_platform.service.rule.RuleOperator;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Locale;
+
+// Incremental per-device, per-metric anomaly scoring over the ingest stream, O(1) time and memory per reading.
+// Keeps an exponentially weighted mean and variance of each metric (weight alpha, i.e. roughly the last 2/alpha
+// readings) and an EWMA of the absolute rate of change per second. A reading is scored against the statistics
+// of the readings before it:
+//   ZSCORE_ANOMALY  |value - mean| / std              (drift or a spike that stays inside the static thresholds)
+//   SUDDEN_JUMP     |rate of change| / mean |rate|    (a step far steeper than the device's usual movement)
+// std and mean |rate| are floored at min-deviation so flat signals do not turn every change into an anomaly,
+// and nothing is scored until a device/metric has seen warmup-samples readings.
+// Updates for one device are expected from one thread at a time, which the striped ingest guarantees.
+// Memory is bounded by max-devices, see DeviceStatistics.
+@Service
+public class StreamingAnomalyDetector {
+
+    private static final Metric[] METRICS = Metric.VALUES;
+    private static final int METRIC_COUNT = DeviceStatistics.METRICS;
+    // Counts saturate here; only "at least warmup-samples" matters
+    private static final int MAX_COUNT = Byte.MAX_VALUE;
+
+    private final boolean enabled;
+    private final float alpha;
+    private final int warmupSamples;
+    private final float minDeviation;
+    private final DeviceStatistics statistics;
+
+    // By Metric ordinal
+    private final CompiledRule[] zScoreRules = new CompiledRule[METRIC_COUNT];
+    private final CompiledRule[] jumpRules = new CompiledRule[METRIC_COUNT];
+
+    private final Counter untrackedReadings;
+
+    public StreamingAnomalyDetector(MeterRegistry meterRegistry,
+                                    @Value("${iot.alerts.anomaly.enabled:true}") boolean enabled,
+                                    @Value("${iot.alerts.anomaly.alpha:0.05}") double alpha,
+                                    @Value("${iot.alerts.anomaly.warmup-samples:30}") int warmupSamples,
+                                    @Value("${iot.alerts.anomaly.min-deviation:0.5}") double minDeviation,
+                                    @Value("${iot.alerts.anomaly.zscore.threshold:4.0}") double zScoreThreshold,
+                                    @Value("${iot.alerts.anomaly.zscore.clear:2.0}") double zScoreClear,
+                                    @Value("${iot.alerts.anomaly.jump.threshold:10.0}") double jumpThreshold,
+                                    @Value("${iot.alerts.anomaly.jump.clear:3.0}") double jumpClear,
+                                    @Value("${iot.alerts.anomaly.severity:WARNING}") AlertMessage.AlertSeverity severity,
+                                    @Value("${iot.alerts.anomaly.max-devices:1000000}") int maxDevices) {
+        if (alpha <= 0 || alpha >= 1) {
+            throw new IllegalArgumentException("iot.alerts.anomaly.alpha must be in (0, 1), got " + alpha);
+        }
+        if (warmupSamples < 2 || warmupSamples > MAX_COUNT) {
+            throw new IllegalArgumentException("iot.alerts.anomaly.warmup-samples must be in [2, " + MAX_COUNT + "], got " + warmupSamples);
+        }
+        if (zScoreClear > zScoreThreshold || jumpClear > jumpThreshold) {
+            throw new IllegalArgumentException("iot.alerts.anomaly clear levels must not exceed their thresholds");
+        }
+        this.enabled = enabled;
+        this.alpha = (float) alpha;
+        this.warmupSamples = warmupSamples;
+        this.minDeviation = (float) minDeviation;
+        this.statistics = new DeviceStatistics(maxDevices);
+
+        for (Metric metric : METRICS) {
+            String name = metric.name().toLowerCase(Locale.ROOT).replace('_', ' ');
+            String id = metric.name().toLowerCase(Locale.ROOT).replace('_', '-');
+            zScoreRules[metric.ordinal()] = CompiledRule.compile(new AlertRuleDefinition(
+                    "anomaly-zscore-" + id, metric, RuleOperator.GT, zScoreThreshold, zScoreThreshold - zScoreClear,
+                    severity, AlertMessage.AlertType.ZSCORE_ANOMALY,
+                    "Unusual " + name + " for device '{deviceId}': {value:%.1f} standard deviations from its recent mean"
+                            + " (Threshold: {threshold:%.1f})",
+                    null, null));
+            jumpRules[metric.ordinal()] = CompiledRule.compile(new AlertRuleDefinition(
+                    "anomaly-jump-" + id, metric, RuleOperator.GT, jumpThreshold, jumpThreshold - jumpClear,
+                    severity, AlertMessage.AlertType.SUDDEN_JUMP,
+                    "Sudden " + name + " change for device '{deviceId}': {value:%.1f}x its usual rate of change"
+                            + " (Threshold: {threshold:%.1f}x)",
+                    null, null));
+        }
+
+        Gauge.builder("iot.alerts.anomaly.devices", statistics, DeviceStatistics::trackedDevices)
+                .description("Devices with rolling statistics held by the anomaly detector")
+                .register(meterRegistry);
+        this.untrackedReadings = Counter.builder("iot.alerts.anomaly.untracked")
+                .description("Readings not scored because max-devices devices are already tracked")
+                .register(meterRegistry);
+    }
+
+    public void evaluate(SensorData sensorData, AnomalyHandler handler) {
+        if (!enabled || sensorData.getDeviceId() == null) {
+            return;
+        }
+        int slot = statistics.slot(sensorData.getDeviceId());
+        if (slot < 0) {
+            untrackedReadings.increment();
+            return;
+        }
+        int page = DeviceStatistics.page(slot);
+        float[] mean = statistics.mean(page);
+        float[] variance = statistics.variance(page);
+        float[] last = statistics.last(page);
+        float[] meanAbsRate = statistics.meanAbsRate(page);
+        byte[] count = statistics.count(page);
+        long[] lastAt = statistics.lastAt(page);
+
+        int offset = DeviceStatistics.offset(slot);
+        long at = epochMillis(sensorData.getTimestamp());
+        // Out-of-order or duplicate timestamps give no usable rate; the value statistics are still updated
+        double elapsedSeconds = at != Long.MIN_VALUE && lastAt[offset] != 0 && at > lastAt[offset]
+                ? (at - lastAt[offset]) / 1000.0
+                : Double.NaN;
+
+        for (int m = 0; m < METRIC_COUNT; m++) {
+            double value = METRICS[m].read(sensorData);
+            if (Double.isNaN(value)) {
+                continue;
+            }
+            int c = DeviceStatistics.column(slot, m);
+            int n = count[c];
+            if (n == 0) {
+                mean[c] = (float) value;
+                variance[c] = 0f;
+                last[c] = (float) value;
+                meanAbsRate[c] = 0f;
+                count[c] = 1;
+                continue;
+            }
+
+            double rate = Double.isNaN(elapsedSeconds) ? Double.NaN : Math.abs(value - last[c]) / elapsedSeconds;
+            if (n >= warmupSamples) {
+                double std = Math.max(Math.sqrt(variance[c]), minDeviation);
+                score(zScoreRules[m], sensorData, Math.abs(value - mean[c]) / std, handler);
+                if (!Double.isNaN(rate)) {
+                    score(jumpRules[m], sensorData, rate / Math.max(meanAbsRate[c], minDeviation), handler);
+                }
+            }
+
+            double delta = value - mean[c];
+            mean[c] += (float) (alpha * delta);
+            variance[c] = (float) ((1 - alpha) * (variance[c] + alpha * delta * delta));
+            if (!Double.isNaN(rate)) {
+                meanAbsRate[c] = n == 1 ? (float) rate : meanAbsRate[c] + (float) (alpha * (rate - meanAbsRate[c]));
+            }
+            last[c] = (float) value;
+            if (n < MAX_COUNT) {
+                count[c] = (byte) (n + 1);
+            }
+        }
+        if (at != Long.MIN_VALUE && at > lastAt[offset]) {
+            lastAt[offset] = at;
+        }
+    }
+
+    private static void score(CompiledRule rule, SensorData sensorData, double score, AnomalyHandler handler) {
+        handler.onScore(rule, score);
+        if (rule.matches(score)) {
+            handler.onMatch(rule, sensorData, score);
+        }
+    }
+
+    // Only differences are used, so the offset does not matter as long as it is fixed
+    private static long epochMillis(LocalDateTime timestamp) {
+        if (timestamp == null) {
+            return Long.MIN_VALUE;
+        }
+        return timestamp.toEpochSecond(ZoneOffset.UTC) * 1000 + timestamp.getNano() / 1_000_000;
+    }
+}
@@ -0,0 +1,294 @@
+package com.yusufsahin.iot_platform.service.hot;
+
+import com.yusufsahin.iot_platform.dto.SensorDataDto;
+import com.yusufsahin.iot_platform.model.Metric;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.List;
+
+// Append-only block of consecutive readings of one device, compressed as in Facebook's Gorilla:
+//   timestamp  delta-of-delta in microseconds (PostgreSQL's precision): '0' for a regular interval,
+//              otherwise a 2-4 bit prefix and 14/20/32/64 bits
+//   id         delta-of-delta as well; a device's ids grow in near-constant steps
+//   metrics    XOR with the metric's previous value: '0' when unchanged, else the meaningful bits, reusing the
+//              previous leading/trailing-zero window when they fit; a missing metric is NaN
+// Columns are interleaved reading by reading in a single bit stream backed by a long[]. Not thread-safe.
+final class GorillaChunk {
+
+    // Object headers, fields and the per-metric state arrays
+    static final int OVERHEAD_BYTES = 160;
+
+    private static final int METRICS = Metric.VALUES.length;
+    private static final int INITIAL_WORDS = 8;
+    private static final int MICROS_PER_SECOND = 1_000_000;
+
+    private final int capacity;
+
+    private long[] words = new long[INITIAL_WORDS];
+    private long bitLength;
+    private int count;
+    private long firstMicros;
+    private long lastMicros;
+
+    private final Encoder encoder = new Encoder();
+    // Set once the chunk has been dropped from its series
+    private volatile boolean evicted;
+
+    GorillaChunk(int capacity) {
+        this.capacity = capacity;
+    }
+
+    boolean isFull() {
+        return count == capacity;
+    }
+
+    int count() {
+        return count;
+    }
+
+    long firstMicros() {
+        return firstMicros;
+    }
+
+    long lastMicros() {
+        return lastMicros;
+    }
+
+    long sizeBytes() {
+        return OVERHEAD_BYTES + words.length * (long) Long.BYTES;
+    }
+
+    boolean isEvicted() {
+        return evicted;
+    }
+
+    void markEvicted() {
+        evicted = true;
+    }
+
+    // Timestamps must not decrease; values holds one entry per Metric, NaN when missing
+    void append(long micros, long id, double[] values) {
+        if (count == 0) {
+            firstMicros = micros;
+        }
+        encoder.timestamps.write(micros);
+        encoder.ids.write(id);
+        for (int m = 0; m < METRICS; m++) {
+            encoder.values[m].write(values[m]);
+        }
+        lastMicros = micros;
+        count++;
+    }
+
+    // Drops the unused tail of the buffer once no more readings will be appended
+    void trim() {
+        int used = (int) ((bitLength + 63) >>> 6);
+        if (used < words.length) {
+            words = Arrays.copyOf(words, Math.max(used, 1));
+        }
+    }
+
+    // Adds the readings in [fromMicros, toMicros) in append order
+    void decode(long fromMicros, long toMicros, String deviceId, String location, List<SensorDataDto> out) {
+        if (count == 0 || lastMicros < fromMicros || firstMicros >= toMicros) {
+            return;
+        }
+        Decoder decoder = new Decoder();
+        for (int i = 0; i < count; i++) {
+            long micros = decoder.timestamps.read();
+            long id = decoder.ids.read();
+            double temperature = decoder.values[Metric.TEMPERATURE.ordinal()].read();
+            double humidity = decoder.values[Metric.HUMIDITY.ordinal()].read();
+            double pressure = decoder.values[Metric.PRESSURE.ordinal()].read();
+            double batteryLevel = decoder.values[Metric.BATTERY_LEVEL.ordinal()].read();
+            if (micros >= toMicros) {
+                return;
+            }
+            if (micros >= fromMicros) {
+                out.add(new SensorDataDto(id, deviceId, boxed(temperature), boxed(humidity), boxed(pressure),
+                        toTimestamp(micros), location, Double.isNaN(batteryLevel) ? null : (int) batteryLevel));
+            }
+        }
+    }
+
+    // Rounded to the microsecond like PostgreSQL timestamps, so results match what the database returns
+    static long toMicros(LocalDateTime timestamp) {
+        return timestamp.toEpochSecond(ZoneOffset.UTC) * MICROS_PER_SECOND + (timestamp.getNano() + 500) / 1000;
+    }
+
+    static LocalDateTime toTimestamp(long micros) {
+        return LocalDateTime.ofEpochSecond(Math.floorDiv(micros, MICROS_PER_SECOND),
+                (int) Math.floorMod(micros, MICROS_PER_SECOND) * 1000, ZoneOffset.UTC);
+    }
+
+    private static Double boxed(double value) {
+        return Double.isNaN(value) ? null : value;
+    }
+
+    private void writeBits(long value, int bits) {
+        long end = bitLength + bits;
+        if (end > (long) words.length * Long.SIZE) {
+            words = Arrays.copyOf(words, words.length * 2);
+        }
+        int word = (int) (bitLength >>> 6);
+        int free = Long.SIZE - (int) (bitLength & 63);
+        if (bits < Long.SIZE) {
+            value &= (1L << bits) - 1;
+        }
+        if (bits <= free) {
+            words[word] |= value << (free - bits);
+        } else {
+            words[word] |= value >>> (bits - free);
+            words[word + 1] |= value << (Long.SIZE - (bits - free));
+        }
+        bitLength = end;
+    }
+
+    private static boolean fits(long value, int bits) {
+        return value >= -(1L << (bits - 1)) && value < (1L << (bits - 1));
+    }
+
+    private final class Encoder {
+        final DeltaOfDeltaWriter timestamps = new DeltaOfDeltaWriter();
+        final DeltaOfDeltaWriter ids = new DeltaOfDeltaWriter();
+        final XorWriter[] values = new XorWriter[METRICS];
+
+        Encoder() {
+            for (int m = 0; m < METRICS; m++) {
+                values[m] = new XorWriter();
+            }
+        }
+    }
+
+    private final class DeltaOfDeltaWriter {
+        private long previous;
+        private long previousDelta;
+
+        // The first value is encoded against 0 and lands in the 64-bit case
+        void write(long value) {
+            long delta = value - previous;
+            long deltaOfDelta = delta - previousDelta;
+            previous = value;
+            previousDelta = delta;
+            if (deltaOfDelta == 0) {
+                writeBits(0b0, 1);
+            } else if (fits(deltaOfDelta, 14)) {
+                writeBits(0b10, 2);
+                writeBits(deltaOfDelta, 14);
+            } else if (fits(deltaOfDelta, 20)) {
+                writeBits(0b110, 3);
+                writeBits(deltaOfDelta, 20);
+            } else if (fits(deltaOfDelta, 32)) {
+                writeBits(0b1110, 4);
+                writeBits(deltaOfDelta, 32);
+            } else {
+                writeBits(0b1111, 4);
+                writeBits(deltaOfDelta, 64);
+            }
+        }
+    }
+
+    private final class XorWriter {
+        private long previousBits;
+        private int leading = -1;
+        private int trailing;
+
+        void write(double value) {
+            long bits = Double.doubleToLongBits(value);
+            long xor = bits ^ previousBits;
+            previousBits = bits;
+            if (xor == 0) {
+                writeBits(0b0, 1);
+                return;
+            }
+            int valueLeading = Math.min(Long.numberOfLeadingZeros(xor), 31);
+            int valueTrailing = Long.numberOfTrailingZeros(xor);
+            if (leading >= 0 && valueLeading >= leading && valueTrailing >= trailing) {
+                writeBits(0b10, 2);
+                writeBits(xor >>> trailing, Long.SIZE - leading - trailing);
+                return;
+            }
+            int significant = Long.SIZE - valueLeading - valueTrailing;
+            writeBits(0b11, 2);
+            writeBits(valueLeading, 5);
+            writeBits(significant - 1, 6);
+            writeBits(xor >>> valueTrailing, significant);
+            leading = valueLeading;
+            trailing = valueTrailing;
+        }
+    }
+
+    private final class Decoder {
+        private long position;
+        final DeltaOfDeltaReader timestamps = new DeltaOfDeltaReader();
+        final DeltaOfDeltaReader ids = new DeltaOfDeltaReader();
+        final XorReader[] values = new XorReader[METRICS];
+
+        Decoder() {
+            for (int m = 0; m < METRICS; m++) {
+                values[m] = new XorReader();
+            }
+        }
+
+        long readBits(int bits) {
+            int word = (int) (position >>> 6);
+            int free = Long.SIZE - (int) (position & 63);
+            long value;
+            if (bits <= free) {
+                value = words[word] >>> (free - bits);
+            } else {
+                int rest = bits - free;
+                value = (words[word] << rest) | (words[word + 1] >>> (Long.SIZE - rest));
+            }
+            position += bits;
+            return bits == Long.SIZE ? value : value & ((1L << bits) - 1);
+        }
+
+        long readSigned(int bits) {
+            long value = readBits(bits);
+            return bits == Long.SIZE ? value : (value << (Long.SIZE - bits)) >> (Long.SIZE - bits);
+        }
+
+        private final class DeltaOfDeltaReader {
+            private long previous;
+            private long previousDelta;
+
+            long read() {
+                long deltaOfDelta;
+                if (readBits(1) == 0) {
+                    deltaOfDelta = 0;
+                } else if (readBits(1) == 0) {
+                    deltaOfDelta = readSigned(14);
+                } else if (readBits(1) == 0) {
+                    deltaOfDelta = readSigned(20);
+                } else if (readBits(1) == 0) {
+                    deltaOfDelta = readSigned(32);
+                } else {
+                    deltaOfDelta = readSigned(64);
+                }
+                previousDelta += deltaOfDelta;
+                previous += previousDelta;
+                return previous;
+            }
+        }
+
+        private final class XorReader {
+            private long previousBits;
+            private int leading;
+            private int trailing;
+
+            double read() {
+                if (readBits(1) == 1) {
+                    if (readBits(1) == 1) {
+                        leading = (int) readBits(5);
+                        trailing = Long.SIZE - leading - ((int) readBits(6) + 1);
+                    }
+                    previousBits ^= readBits(Long.SIZE - leading - trailing) << trailing;
+                }
+                return Double.longBitsToDouble(previousBits);
+            }
+        }
+    }
+}
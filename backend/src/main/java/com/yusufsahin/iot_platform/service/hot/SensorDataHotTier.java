@@ -0,0 +1,330 @@
+package com.yusufsahin.iot_platform.service.hot;
+
+import com.yusufsahin.iot_platform.dto.SensorDataDto;
+import com.yusufsahin.iot_platform.model.Metric;
+import com.yusufsahin.iot_platform.model.SensorData;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+// The last retention-hours of readings per device, held in memory as GorillaChunks so that the recent ranges
+// dashboards keep asking for are answered without Postgres.
+// Each device's series holds every reading ingested here from its coverage start on. The start is the first reading
+// seen after startup and only moves forward: past a late reading (the encoding is append-only), past evicted
+// chunks and to the first reading taken at a new location (chunks do not store a location per reading, a series
+// holds only readings of its device's current location). Ranges starting earlier go to the database.
+// Like LatestReadingCache this is fed by this node's ingest only, so it only answers while this node is the only one
+// ingesting, i.e. while its listeners hold every sensor-data partition (see SensorDataPartitionOwnership). Any change
+// of assignment restarts every series' coverage at its next reading: readings of the devices that moved, or that were
+// posted to another instance meanwhile, may be missing from what is held. This relies on every instance that accepts
+// HTTP ingest also consuming sensor-data; with more than one instance the hot tier is effectively bypassed.
+// Memory is bounded by memory-budget-mb: when it is exceeded the oldest sealed chunks across all devices go first.
+@Slf4j
+@Service
+public class SensorDataHotTier {
+
+    // Series object, its chunk deque and the map entry
+    private static final int SERIES_OVERHEAD_BYTES = 160;
+    // Coverage start of a series that has not seen a reading since it was created or reset
+    private static final long UNCOVERED = Long.MAX_VALUE;
+
+    private final boolean enabled;
+    private final long retentionHours;
+    private final long maxBytes;
+    private final int chunkReadings;
+
+    private final ConcurrentHashMap<Integer, Series> seriesByDevice = new ConcurrentHashMap<>();
+    // Sealed chunks in sealing order; a series' chunks are sealed oldest first, so the head is the oldest data
+    private final ConcurrentLinkedQueue<SealedChunk> evictionOrder = new ConcurrentLinkedQueue<>();
+    private final ReentrantLock evictionLock = new ReentrantLock();
+    private final AtomicLong usedBytes = new AtomicLong();
+    private final AtomicLong heldReadings = new AtomicLong();
+    // Set once this node's listeners hold every sensor-data partition
+    private volatile boolean soleIngester;
+
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter lateReadings;
+    private final Counter budgetEvictions;
+    private final Counter retentionEvictions;
+
+    public SensorDataHotTier(MeterRegistry meterRegistry,
+                             @Value("${iot.hot-tier.enabled:true}") boolean enabled,
+                             @Value("${iot.hot-tier.retention-hours:6}") long retentionHours,
+                             @Value("${iot.hot-tier.memory-budget-mb:256}") long memoryBudgetMb,
+                             @Value("${iot.hot-tier.chunk-readings:512}") int chunkReadings) {
+        if (chunkReadings < 1) {
+            throw new IllegalArgumentException("iot.hot-tier.chunk-readings must be positive, got " + chunkReadings);
+        }
+        this.enabled = enabled;
+        this.retentionHours = retentionHours;
+        this.maxBytes = memoryBudgetMb * 1024 * 1024;
+        this.chunkReadings = chunkReadings;
+
+        Gauge.builder("iot.hot-tier.bytes", usedBytes, AtomicLong::get)
+                .description("Estimated heap held by the hot tier")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        Gauge.builder("iot.hot-tier.readings", heldReadings, AtomicLong::get)
+                .description("Readings held by the hot tier")
+                .register(meterRegistry);
+        Gauge.builder("iot.hot-tier.devices", seriesByDevice, ConcurrentHashMap::size)
+                .description("Devices with a series in the hot tier")
+                .register(meterRegistry);
+        this.hits = Counter.builder("iot.hot-tier.queries")
+                .description("Range queries on the hot tier")
+                .tag("result", "hit")
+                .register(meterRegistry);
+        this.misses = Counter.builder("iot.hot-tier.queries")
+                .description("Range queries on the hot tier")
+                .tag("result", "miss")
+                .register(meterRegistry);
+        this.lateReadings = Counter.builder("iot.hot-tier.late-readings")
+                .description("Readings older than their device's newest held one, not held")
+                .register(meterRegistry);
+        this.budgetEvictions = Counter.builder("iot.hot-tier.evicted-chunks")
+                .description("Chunks dropped from the hot tier")
+                .tag("reason", "budget")
+                .register(meterRegistry);
+        this.retentionEvictions = Counter.builder("iot.hot-tier.evicted-chunks")
+                .description("Chunks dropped from the hot tier")
+                .tag("reason", "retention")
+                .register(meterRegistry);
+    }
+
+    // Called from the ingest transaction with device keys assigned; readings are only held once it commits
+    public void record(List<SensorData> readings) {
+        if (!enabled) {
+            return;
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    recordNow(readings);
+                }
+            });
+        } else {
+            recordNow(readings);
+        }
+    }
+
+    private void recordNow(List<SensorData> readings) {
+        double[] values = new double[Metric.VALUES.length];
+        for (SensorData reading : readings) {
+            if (reading.getDeviceKey() == null || reading.getTimestamp() == null || reading.getId() == null) {
+                continue;
+            }
+            for (Metric metric : Metric.VALUES) {
+                values[metric.ordinal()] = metric.read(reading);
+            }
+            Series series = seriesByDevice.computeIfAbsent(reading.getDeviceKey(), key -> {
+                usedBytes.addAndGet(SERIES_OVERHEAD_BYTES);
+                return new Series();
+            });
+            append(series, GorillaChunk.toMicros(reading.getTimestamp()), reading.getId(), reading.getLocation(), values);
+        }
+        if (usedBytes.get() > maxBytes) {
+            evictOverBudget();
+        }
+    }
+
+    private void append(Series series, long micros, long id, String location, double[] values) {
+        synchronized (series) {
+            if (series.lastMicros != Long.MIN_VALUE && micros < series.lastMicros) {
+                series.coveredFromMicros = Math.max(series.coveredFromMicros, micros + 1);
+                lateReadings.increment();
+                return;
+            }
+            if (series.coveredFromMicros == UNCOVERED || !Objects.equals(location, series.location)) {
+                series.coveredFromMicros = micros;
+                series.location = location;
+            }
+            GorillaChunk open = series.open;
+            if (open != null && open.isFull()) {
+                seal(series);
+                open = null;
+            }
+            if (open == null) {
+                open = new GorillaChunk(chunkReadings);
+                series.open = open;
+                usedBytes.addAndGet(open.sizeBytes());
+            }
+            long before = open.sizeBytes();
+            open.append(micros, id, values);
+            usedBytes.addAndGet(open.sizeBytes() - before);
+            heldReadings.incrementAndGet();
+            series.lastMicros = micros;
+        }
+    }
+
+    // Caller holds the series lock
+    private void seal(Series series) {
+        GorillaChunk chunk = series.open;
+        long before = chunk.sizeBytes();
+        chunk.trim();
+        usedBytes.addAndGet(chunk.sizeBytes() - before);
+        series.sealed.addLast(chunk);
+        series.open = null;
+        evictionOrder.add(new SealedChunk(series, chunk));
+    }
+
+    // Readings of the device in [from, to) in timestamp order, or null when they are not all held here
+    public List<SensorDataDto> find(int deviceKey, String deviceId, LocalDateTime from, LocalDateTime to) {
+        if (!enabled) {
+            return null;
+        }
+        if (!soleIngester) {
+            misses.increment();
+            return null;
+        }
+        Series series = seriesByDevice.get(deviceKey);
+        long fromMicros = GorillaChunk.toMicros(from);
+        long toMicros = GorillaChunk.toMicros(to);
+        List<SensorDataDto> readings = new ArrayList<>();
+        if (series != null) {
+            synchronized (series) {
+                if (series.lastMicros != Long.MIN_VALUE && fromMicros >= series.coveredFromMicros) {
+                    for (GorillaChunk chunk : series.sealed) {
+                        chunk.decode(fromMicros, toMicros, deviceId, series.location, readings);
+                    }
+                    if (series.open != null) {
+                        series.open.decode(fromMicros, toMicros, deviceId, series.location, readings);
+                    }
+                    hits.increment();
+                    return readings;
+                }
+            }
+        }
+        misses.increment();
+        return null;
+    }
+
+    // Called when the sensor-data partitions held by this node change. What is held stays (it ages out as usual),
+    // but no series answers for anything before its next in-order reading.
+    public void resetCoverage(boolean soleIngester) {
+        this.soleIngester = soleIngester;
+        for (Series series : seriesByDevice.values()) {
+            synchronized (series) {
+                series.coveredFromMicros = UNCOVERED;
+            }
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${iot.hot-tier.sweep-interval-ms:60000}")
+    public void evictExpired() {
+        if (!enabled) {
+            return;
+        }
+        long cutoffMicros = GorillaChunk.toMicros(LocalDateTime.now().minusHours(retentionHours));
+        long evicted = 0;
+        for (Series series : seriesByDevice.values()) {
+            synchronized (series) {
+                while (!series.sealed.isEmpty() && series.sealed.peekFirst().lastMicros() < cutoffMicros) {
+                    drop(series, series.sealed.pollFirst());
+                    evicted++;
+                }
+                if (series.sealed.isEmpty() && series.open != null && series.open.lastMicros() < cutoffMicros) {
+                    drop(series, series.open);
+                    series.open = null;
+                    evicted++;
+                }
+            }
+        }
+        evictionOrder.removeIf(sealed -> sealed.chunk().isEvicted());
+        if (evicted > 0) {
+            retentionEvictions.increment(evicted);
+            log.debug("Evicted {} hot-tier chunks older than {} hours, {} bytes held", evicted, retentionHours, usedBytes.get());
+        }
+    }
+
+    // One thread evicts at a time; the others carry on appending
+    private void evictOverBudget() {
+        if (!evictionLock.tryLock()) {
+            return;
+        }
+        try {
+            while (usedBytes.get() > maxBytes) {
+                SealedChunk oldest = evictionOrder.poll();
+                if (oldest == null) {
+                    // Only open chunks left, i.e. many devices with little history each: seal them, oldest first
+                    if (!sealOpenChunks()) {
+                        return;
+                    }
+                    continue;
+                }
+                synchronized (oldest.series()) {
+                    // Otherwise the retention sweep dropped it already
+                    if (oldest.series().sealed.peekFirst() == oldest.chunk()) {
+                        drop(oldest.series(), oldest.series().sealed.pollFirst());
+                        budgetEvictions.increment();
+                    }
+                }
+            }
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    private boolean sealOpenChunks() {
+        List<Series> withOpenChunk = new ArrayList<>();
+        for (Series series : seriesByDevice.values()) {
+            synchronized (series) {
+                if (series.open != null) {
+                    withOpenChunk.add(series);
+                }
+            }
+        }
+        withOpenChunk.sort(Comparator.comparingLong(series -> series.lastMicros));
+        boolean sealed = false;
+        for (Series series : withOpenChunk) {
+            synchronized (series) {
+                if (series.open != null) {
+                    seal(series);
+                    sealed = true;
+                }
+            }
+        }
+        return sealed;
+    }
+
+    // Caller holds the series lock; ranges reaching into the dropped chunk are no longer held
+    private void drop(Series series, GorillaChunk chunk) {
+        series.coveredFromMicros = Math.max(series.coveredFromMicros, chunk.lastMicros() + 1);
+        chunk.markEvicted();
+        usedBytes.addAndGet(-chunk.sizeBytes());
+        heldReadings.addAndGet(-chunk.count());
+    }
+
+    // Guarded by its own monitor
+    private static final class Series {
+        final ArrayDeque<GorillaChunk> sealed = new ArrayDeque<>();
+        GorillaChunk open;
+        // Every reading of the device at or after this instant is held
+        long coveredFromMicros = UNCOVERED;
+        // Newest reading appended, kept after its chunk is evicted so late readings are still recognised
+        long lastMicros = Long.MIN_VALUE;
+        // Location of every covered reading
+        String location;
+    }
+
+    private record SealedChunk(Series series, GorillaChunk chunk) {
+    }
+}
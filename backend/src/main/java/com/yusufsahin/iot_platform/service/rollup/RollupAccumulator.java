@@ -0,0 +1,86 @@
+package com.yusufsahin.iot_platform.service.rollup;
+
+import com.yusufsahin.iot_platform.model.Metric;
+
+import java.util.Arrays;
+
+// Per (device, bucket) partial aggregate of every metric, indexed by Metric ordinal.
+// Holds only what arrived since the last flush; the table upsert merges it with what is already stored.
+// Guarded by its own monitor; once drained by a flush, writers must start a fresh accumulator.
+public final class RollupAccumulator {
+
+    private static final int METRICS = Metric.VALUES.length;
+
+    final double[] min = new double[METRICS];
+    final double[] max = new double[METRICS];
+    final double[] sum = new double[METRICS];
+    final long[] count = new long[METRICS];
+    final double[] last = new double[METRICS];
+    final long[] lastTimestamp = new long[METRICS];
+
+    boolean drained;
+
+    RollupAccumulator() {
+        Arrays.fill(min, Double.POSITIVE_INFINITY);
+        Arrays.fill(max, Double.NEGATIVE_INFINITY);
+        Arrays.fill(lastTimestamp, Long.MIN_VALUE);
+    }
+
+    // values is indexed by Metric ordinal, NaN for metrics the reading does not carry
+    void add(double[] values, long timestampMillis) {
+        for (int metric = 0; metric < METRICS; metric++) {
+            double value = values[metric];
+            if (Double.isNaN(value)) {
+                continue;
+            }
+            min[metric] = Math.min(min[metric], value);
+            max[metric] = Math.max(max[metric], value);
+            sum[metric] += value;
+            count[metric]++;
+            if (timestampMillis >= lastTimestamp[metric]) {
+                last[metric] = value;
+                lastTimestamp[metric] = timestampMillis;
+            }
+        }
+    }
+
+    void merge(RollupAccumulator other) {
+        for (int metric = 0; metric < METRICS; metric++) {
+            if (other.count[metric] == 0) {
+                continue;
+            }
+            min[metric] = Math.min(min[metric], other.min[metric]);
+            max[metric] = Math.max(max[metric], other.max[metric]);
+            sum[metric] += other.sum[metric];
+            count[metric] += other.count[metric];
+            if (other.lastTimestamp[metric] >= lastTimestamp[metric]) {
+                last[metric] = other.last[metric];
+                lastTimestamp[metric] = other.lastTimestamp[metric];
+            }
+        }
+    }
+
+    public double getMin(int metric) {
+        return min[metric];
+    }
+
+    public double getMax(int metric) {
+        return max[metric];
+    }
+
+    public double getSum(int metric) {
+        return sum[metric];
+    }
+
+    public long getCount(int metric) {
+        return count[metric];
+    }
+
+    public double getLast(int metric) {
+        return last[metric];
+    }
+
+    public long getLastTimestamp(int metric) {
+        return lastTimestamp[metric];
+    }
+}
@@ -0,0 +1,5 @@
+package com.yusufsahin.iot_platform.service.rollup;
+
+// bucketStart is in epoch seconds of the zone-less wall clock, see RollupResolution.bucketStart
+public record RollupBucket(String deviceId, long bucketStart) {
+}
@@ -0,0 +1,54 @@
+package com.yusufsahin.iot_platform.service.rollup;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+
+// Bucket widths kept by SensorDataRollupService, finest first. Each one is flushed to its own table.
+public enum RollupResolution {
+    MINUTE(60, "sensor_rollups_1m"),
+    HOUR(3_600, "sensor_rollups_1h"),
+    DAY(86_400, "sensor_rollups_1d");
+
+    public static final RollupResolution[] VALUES = values();
+
+    private final long bucketSeconds;
+    private final String table;
+
+    RollupResolution(long bucketSeconds, String table) {
+        this.bucketSeconds = bucketSeconds;
+        this.table = table;
+    }
+
+    public long getBucketSeconds() {
+        return bucketSeconds;
+    }
+
+    public String getTable() {
+        return table;
+    }
+
+    // Timestamps are zone-less, so bucket boundaries are computed on the wall clock as if it were UTC
+    public long bucketStart(long epochSecond) {
+        return Math.floorDiv(epochSecond, bucketSeconds) * bucketSeconds;
+    }
+
+    public LocalDateTime bucketStart(LocalDateTime timestamp) {
+        return LocalDateTime.ofEpochSecond(bucketStart(timestamp.toEpochSecond(ZoneOffset.UTC)), 0, ZoneOffset.UTC);
+    }
+
+    public long bucketCount(LocalDateTime from, LocalDateTime to) {
+        long first = bucketStart(from.toEpochSecond(ZoneOffset.UTC));
+        long end = to.toEpochSecond(ZoneOffset.UTC);
+        return Math.max(0, (end - first + bucketSeconds - 1) / bucketSeconds);
+    }
+
+    // Finest resolution that answers [from, to) in at most maxBuckets buckets, DAY when none does
+    public static RollupResolution choose(LocalDateTime from, LocalDateTime to, long maxBuckets) {
+        for (RollupResolution resolution : VALUES) {
+            if (resolution.bucketCount(from, to) <= maxBuckets) {
+                return resolution;
+            }
+        }
+        return DAY;
+    }
+}
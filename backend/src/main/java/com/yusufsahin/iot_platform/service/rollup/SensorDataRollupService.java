@@ -0,0 +1,139 @@
+package com.yusufsahin.iot_platform.service.rollup;
+
+import com.yusufsahin.iot_platform.dto.SensorDataAggregates;
+import com.yusufsahin.iot_platform.model.Metric;
+import com.yusufsahin.iot_platform.model.SensorData;
+import com.yusufsahin.iot_platform.repository.SensorDataRollupRepository;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Incremental min/max/avg/count/last per device and metric in 1m/1h/1d buckets.
+// Readings are folded into in-memory partial buckets once their ingest transaction commits, and the partials
+// are periodically upserted into the rollup tables, so dashboards read a few rows per bucket instead of raw readings.
+// Memory holds only buckets touched since the last flush: devices x resolutions in the steady state.
+@Slf4j
+@Service
+public class SensorDataRollupService {
+
+    private final SensorDataRollupRepository rollupRepository;
+    private final long maxBuckets;
+
+    @SuppressWarnings("unchecked")
+    private final ConcurrentHashMap<RollupBucket, RollupAccumulator>[] pending =
+            new ConcurrentHashMap[RollupResolution.VALUES.length];
+
+    public SensorDataRollupService(SensorDataRollupRepository rollupRepository,
+                                   @Value("${iot.rollups.max-buckets:1500}") long maxBuckets) {
+        this.rollupRepository = rollupRepository;
+        this.maxBuckets = maxBuckets;
+        for (int i = 0; i < pending.length; i++) {
+            pending[i] = new ConcurrentHashMap<>();
+        }
+    }
+
+    // Called from the ingest transaction; the readings only count once it commits, so a redelivered batch is not added twice
+    public void record(List<SensorData> readings) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    recordNow(readings);
+                }
+            });
+        } else {
+            recordNow(readings);
+        }
+    }
+
+    private void recordNow(List<SensorData> readings) {
+        double[] values = new double[Metric.VALUES.length];
+        for (SensorData reading : readings) {
+            for (Metric metric : Metric.VALUES) {
+                values[metric.ordinal()] = metric.read(reading);
+            }
+            long timestampMillis = reading.getTimestamp().toInstant(ZoneOffset.UTC).toEpochMilli();
+            long epochSecond = Math.floorDiv(timestampMillis, 1000L);
+            for (RollupResolution resolution : RollupResolution.VALUES) {
+                add(pending[resolution.ordinal()], new RollupBucket(reading.getDeviceId(), resolution.bucketStart(epochSecond)),
+                        values, timestampMillis);
+            }
+        }
+    }
+
+    private static void add(ConcurrentHashMap<RollupBucket, RollupAccumulator> buckets, RollupBucket bucket,
+                            double[] values, long timestampMillis) {
+        while (true) {
+            RollupAccumulator accumulator = buckets.computeIfAbsent(bucket, b -> new RollupAccumulator());
+            synchronized (accumulator) {
+                // Lost the race with a flush that already took this accumulator; retry on a fresh one
+                if (!accumulator.drained) {
+                    accumulator.add(values, timestampMillis);
+                    return;
+                }
+            }
+        }
+    }
+
+    private static void mergeBack(ConcurrentHashMap<RollupBucket, RollupAccumulator> buckets, RollupBucket bucket,
+                                  RollupAccumulator partial) {
+        while (true) {
+            RollupAccumulator accumulator = buckets.computeIfAbsent(bucket, b -> new RollupAccumulator());
+            synchronized (accumulator) {
+                if (!accumulator.drained) {
+                    accumulator.merge(partial);
+                    return;
+                }
+            }
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${iot.rollups.flush-interval-ms:10000}")
+    @PreDestroy
+    public synchronized void flush() {
+        for (RollupResolution resolution : RollupResolution.VALUES) {
+            ConcurrentHashMap<RollupBucket, RollupAccumulator> buckets = pending[resolution.ordinal()];
+            if (buckets.isEmpty()) {
+                continue;
+            }
+            Map<RollupBucket, RollupAccumulator> drained = new HashMap<>(buckets.size() * 2);
+            for (RollupBucket bucket : buckets.keySet()) {
+                RollupAccumulator accumulator = buckets.remove(bucket);
+                if (accumulator != null) {
+                    synchronized (accumulator) {
+                        accumulator.drained = true;
+                    }
+                    drained.put(bucket, accumulator);
+                }
+            }
+            try {
+                rollupRepository.upsertAll(resolution, drained);
+                log.debug("Flushed {} {} rollup buckets", drained.size(), resolution);
+            } catch (RuntimeException e) {
+                // Keep the partials so the next flush retries them together with newer readings
+                log.error("Failed to flush {} {} rollup buckets, will retry", drained.size(), resolution, e);
+                drained.forEach((bucket, accumulator) -> mergeBack(buckets, bucket, accumulator));
+            }
+        }
+    }
+
+    // Uses the requested resolution, or the finest one that covers [from, to) within iot.rollups.max-buckets.
+    // Buckets still waiting for the next flush are not included.
+    public SensorDataAggregates getAggregates(String deviceId, LocalDateTime from, LocalDateTime to,
+                                              RollupResolution requested) {
+        RollupResolution resolution = requested != null ? requested : RollupResolution.choose(from, to, maxBuckets);
+        return new SensorDataAggregates(deviceId, resolution, from, to,
+                rollupRepository.findRange(resolution, deviceId, resolution.bucketStart(from), to));
+    }
+}
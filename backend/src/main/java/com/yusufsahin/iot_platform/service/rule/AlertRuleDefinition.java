@@ -0,0 +1,20 @@
+package com.yusufsahin.iot_platform.service.rule;
+
+import com.yusufsahin.iot_platform.model.AlertMessage;
+import com.yusufsahin.iot_platform.model.Metric;
+
+// deviceId / location are optional scopes; a rule without either applies to every device.
+// hysteresis is the band the value has to move back past the threshold before an open alert resolves.
+public record AlertRuleDefinition(
+        String id,
+        Metric metric,
+        RuleOperator operator,
+        double threshold,
+        Double hysteresis,
+        AlertMessage.AlertSeverity severity,
+        AlertMessage.AlertType alertType,
+        String messageTemplate,
+        String deviceId,
+        String location
+) {
+}
@@ -0,0 +1,85 @@
+package com.yusufsahin.iot_platform.service.rule;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.yusufsahin.iot_platform.model.SensorData;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.ResourceLoader;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+@Service
+@Slf4j
+public class AlertRuleEngine {
+
+    private static final TypeReference<List<AlertRuleDefinition>> RULE_LIST = new TypeReference<>() {};
+
+    private final ObjectMapper objectMapper;
+    private final Resource rulesResource;
+
+    // Ingest threads only ever read this reference; a reload compiles a new set and swaps it in
+    private final AtomicReference<CompiledRuleSet> ruleSet = new AtomicReference<>();
+    private volatile long loadedLastModified;
+
+    public AlertRuleEngine(ObjectMapper objectMapper,
+                           ResourceLoader resourceLoader,
+                           @Value("${iot.alerts.rules-location:classpath:alert-rules.json}") String rulesLocation) {
+        this.objectMapper = objectMapper;
+        this.rulesResource = resourceLoader.getResource(rulesLocation);
+        try {
+            reload();
+        } catch (IOException | IllegalArgumentException e) {
+            throw new IllegalStateException("Unable to load alert rules from " + rulesLocation, e);
+        }
+    }
+
+    public void evaluate(SensorData sensorData, RuleMatchHandler handler) {
+        ruleSet.get().evaluate(sensorData, handler);
+    }
+
+    public List<AlertRuleDefinition> getRules() {
+        return ruleSet.get().getDefinitions();
+    }
+
+    public synchronized CompiledRuleSet reload() throws IOException {
+        long lastModified = lastModified();
+        List<AlertRuleDefinition> definitions;
+        try (InputStream in = rulesResource.getInputStream()) {
+            definitions = objectMapper.readValue(in, RULE_LIST);
+        }
+        CompiledRuleSet compiled = CompiledRuleSet.compile(definitions);
+        ruleSet.set(compiled);
+        loadedLastModified = lastModified;
+        log.info("Loaded {} alert rules from {}", compiled.size(), rulesResource.getDescription());
+        return compiled;
+    }
+
+    // Picks up edits to an external rules file without a redeploy; a broken file keeps the previous rules active
+    @Scheduled(fixedDelayString = "${iot.alerts.rules-reload-interval-ms:30000}")
+    public void reloadIfModified() {
+        long lastModified = lastModified();
+        if (lastModified <= 0 || lastModified == loadedLastModified) {
+            return;
+        }
+        try {
+            reload();
+        } catch (IOException | IllegalArgumentException e) {
+            log.error("Failed to reload alert rules from {}, keeping previous rules", rulesResource.getDescription(), e);
+        }
+    }
+
+    private long lastModified() {
+        try {
+            return rulesResource.isFile() ? rulesResource.lastModified() : 0L;
+        } catch (IOException e) {
+            return 0L;
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package com.yusufsahin.iot_platform.service.rule;
+
+import com.yusufsahin.iot_platform.model.AlertMessage;
+import com.yusufsahin.iot_platform.model.Metric;
+import com.yusufsahin.iot_platform.model.SensorData;
+
+public final class CompiledRule {
+
+    private final AlertRuleDefinition definition;
+    private final Metric metric;
+    private final RuleOperator operator;
+    private final double threshold;
+    private final double clearThreshold;
+    private final MessageTemplate messageTemplate;
+
+    CompiledRule(AlertRuleDefinition definition) {
+        this.definition = definition;
+        this.metric = definition.metric();
+        this.operator = definition.operator();
+        this.threshold = definition.threshold();
+        double hysteresis = definition.hysteresis() != null ? definition.hysteresis() : 0.0;
+        this.clearThreshold = switch (operator) {
+            case GT, GTE -> threshold - hysteresis;
+            case LT, LTE -> threshold + hysteresis;
+        };
+        this.messageTemplate = MessageTemplate.parse(definition.messageTemplate());
+    }
+
+    // For rules that are not part of a rule file (e.g. the anomaly detector's), validated the same way
+    public static CompiledRule compile(AlertRuleDefinition definition) {
+        CompiledRuleSet.validate(definition);
+        return new CompiledRule(definition);
+    }
+
+    public boolean matches(double value) {
+        return operator.test(value, threshold);
+    }
+
+    // True once the value is back on the safe side of the threshold by at least the hysteresis band
+    public boolean clears(double value) {
+        return !operator.test(value, clearThreshold);
+    }
+
+    // Only called once the rule has fired, so formatting cost stays off the evaluation path
+    public String renderMessage(SensorData sensorData, double value) {
+        return messageTemplate.render(sensorData, value, threshold);
+    }
+
+    public AlertRuleDefinition getDefinition() {
+        return definition;
+    }
+
+    public Metric getMetric() {
+        return metric;
+    }
+
+    public RuleOperator getOperator() {
+        return operator;
+    }
+
+    public double getThreshold() {
+        return threshold;
+    }
+
+    public AlertMessage.AlertSeverity getSeverity() {
+        return definition.severity();
+    }
+
+    public AlertMessage.AlertType getAlertType() {
+        return definition.alertType();
+    }
+}
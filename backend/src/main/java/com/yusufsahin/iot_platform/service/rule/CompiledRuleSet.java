@@ -0,0 +1,144 @@
+package com.yusufsahin.iot_platform.service.rule;
+
+import com.yusufsahin.iot_platform.model.AlertMessage;
+import com.yusufsahin.iot_platform.model.Metric;
+import com.yusufsahin.iot_platform.model.SensorData;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// Immutable, flat view of the rule definitions: rules[metric.ordinal()] -> rules to test for that metric.
+// Scoped rules replace the less specific rules of the same AlertType: device > location > global.
+public final class CompiledRuleSet {
+
+    private static final Metric[] METRICS = Metric.VALUES;
+
+    private final List<AlertRuleDefinition> definitions;
+    private final CompiledRule[][] globalRules;
+    private final Map<String, CompiledRule[][]> locationRules;
+    private final Map<String, CompiledRule[][]> deviceRules;
+
+    private CompiledRuleSet(List<AlertRuleDefinition> definitions,
+                            CompiledRule[][] globalRules,
+                            Map<String, CompiledRule[][]> locationRules,
+                            Map<String, CompiledRule[][]> deviceRules) {
+        this.definitions = definitions;
+        this.globalRules = globalRules;
+        this.locationRules = locationRules;
+        this.deviceRules = deviceRules;
+    }
+
+    public static CompiledRuleSet compile(List<AlertRuleDefinition> definitions) {
+        List<CompiledRule> global = new ArrayList<>();
+        Map<String, List<CompiledRule>> byLocation = new LinkedHashMap<>();
+        Map<String, List<CompiledRule>> byDevice = new LinkedHashMap<>();
+
+        for (AlertRuleDefinition definition : definitions) {
+            validate(definition);
+            CompiledRule rule = new CompiledRule(definition);
+            if (definition.deviceId() != null) {
+                byDevice.computeIfAbsent(definition.deviceId(), k -> new ArrayList<>()).add(rule);
+            } else if (definition.location() != null) {
+                byLocation.computeIfAbsent(definition.location(), k -> new ArrayList<>()).add(rule);
+            } else {
+                global.add(rule);
+            }
+        }
+
+        Map<String, CompiledRule[][]> locationRules = new HashMap<>();
+        byLocation.forEach((location, rules) -> locationRules.put(location, index(override(global, rules))));
+        Map<String, CompiledRule[][]> deviceRules = new HashMap<>();
+        byDevice.forEach((deviceId, rules) -> deviceRules.put(deviceId, index(override(global, rules))));
+
+        return new CompiledRuleSet(List.copyOf(definitions), index(global), locationRules, deviceRules);
+    }
+
+    public void evaluate(SensorData sensorData, RuleMatchHandler handler) {
+        CompiledRule[][] rules = resolve(sensorData.getDeviceId(), sensorData.getLocation());
+        for (int m = 0; m < METRICS.length; m++) {
+            CompiledRule[] metricRules = rules[m];
+            if (metricRules.length == 0) {
+                continue;
+            }
+            double value = METRICS[m].read(sensorData);
+            if (Double.isNaN(value)) {
+                continue;
+            }
+            for (CompiledRule rule : metricRules) {
+                if (rule.matches(value)) {
+                    handler.onMatch(rule, sensorData, value);
+                }
+            }
+        }
+    }
+
+    public List<AlertRuleDefinition> getDefinitions() {
+        return definitions;
+    }
+
+    public int size() {
+        return definitions.size();
+    }
+
+    private CompiledRule[][] resolve(String deviceId, String location) {
+        if (deviceId != null && !deviceRules.isEmpty()) {
+            CompiledRule[][] rules = deviceRules.get(deviceId);
+            if (rules != null) {
+                return rules;
+            }
+        }
+        if (location != null && !locationRules.isEmpty()) {
+            CompiledRule[][] rules = locationRules.get(location);
+            if (rules != null) {
+                return rules;
+            }
+        }
+        return globalRules;
+    }
+
+    private static List<CompiledRule> override(List<CompiledRule> base, List<CompiledRule> scoped) {
+        Set<AlertMessage.AlertType> overridden = EnumSet.noneOf(AlertMessage.AlertType.class);
+        for (CompiledRule rule : scoped) {
+            overridden.add(rule.getAlertType());
+        }
+        List<CompiledRule> merged = new ArrayList<>(scoped);
+        for (CompiledRule rule : base) {
+            if (!overridden.contains(rule.getAlertType())) {
+                merged.add(rule);
+            }
+        }
+        return merged;
+    }
+
+    private static CompiledRule[][] index(List<CompiledRule> rules) {
+        CompiledRule[][] byMetric = new CompiledRule[METRICS.length][];
+        for (Metric metric : METRICS) {
+            byMetric[metric.ordinal()] = rules.stream()
+                    .filter(rule -> rule.getMetric() == metric)
+                    .toArray(CompiledRule[]::new);
+        }
+        return byMetric;
+    }
+
+    static void validate(AlertRuleDefinition definition) {
+        String id = definition.id() != null ? definition.id() : "<unnamed>";
+        if (definition.metric() == null || definition.operator() == null
+                || definition.severity() == null || definition.alertType() == null) {
+            throw new IllegalArgumentException("Alert rule " + id + " must define metric, operator, severity and alertType");
+        }
+        if (definition.messageTemplate() == null || definition.messageTemplate().isBlank()) {
+            throw new IllegalArgumentException("Alert rule " + id + " must define a messageTemplate");
+        }
+        if (definition.hysteresis() != null && (definition.hysteresis() < 0 || definition.hysteresis().isNaN())) {
+            throw new IllegalArgumentException("Alert rule " + id + " must not have a negative hysteresis");
+        }
+        if (definition.deviceId() != null && definition.location() != null) {
+            throw new IllegalArgumentException("Alert rule " + id + " can be scoped to a device or a location, not both");
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package com.yusufsahin.iot_platform.service.rule;
+
+import com.yusufsahin.iot_platform.model.SensorData;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// Pre-parsed message template. Supported placeholders: {deviceId}, {location}, {value[:format]}, {threshold[:format]}
+final class MessageTemplate {
+
+    private static final String DEFAULT_VALUE_FORMAT = "%.2f";
+    private static final String DEFAULT_THRESHOLD_FORMAT = "%.1f";
+
+    // "%.Nf" is rendered through BigDecimal (same HALF_UP output, a fraction of the Formatter cost)
+    private static final Pattern FIXED_POINT_FORMAT = Pattern.compile("%\\.(\\d)f");
+
+    private enum Kind { LITERAL, DEVICE_ID, LOCATION, VALUE, THRESHOLD }
+
+    // text is the literal for LITERAL segments and the java.util.Formatter pattern for numbers;
+    // scale >= 0 marks a number placeholder that uses the fixed-point fast path instead
+    private record Segment(Kind kind, String text, int scale) {}
+
+    private final Segment[] segments;
+    private final int sizeHint;
+
+    private MessageTemplate(Segment[] segments, int sizeHint) {
+        this.segments = segments;
+        this.sizeHint = sizeHint;
+    }
+
+    static MessageTemplate parse(String template) {
+        List<Segment> segments = new ArrayList<>();
+        int pos = 0;
+        while (pos < template.length()) {
+            int open = template.indexOf('{', pos);
+            if (open < 0) {
+                segments.add(new Segment(Kind.LITERAL, template.substring(pos), -1));
+                break;
+            }
+            int close = template.indexOf('}', open);
+            if (close < 0) {
+                throw new IllegalArgumentException("Unterminated placeholder in message template: " + template);
+            }
+            if (open > pos) {
+                segments.add(new Segment(Kind.LITERAL, template.substring(pos, open), -1));
+            }
+            segments.add(placeholder(template.substring(open + 1, close), template));
+            pos = close + 1;
+        }
+        return new MessageTemplate(segments.toArray(new Segment[0]), template.length() + 32);
+    }
+
+    private static Segment placeholder(String body, String template) {
+        int colon = body.indexOf(':');
+        String name = colon < 0 ? body : body.substring(0, colon);
+        String format = colon < 0 ? null : body.substring(colon + 1);
+        return switch (name) {
+            case "deviceId" -> new Segment(Kind.DEVICE_ID, null, -1);
+            case "location" -> new Segment(Kind.LOCATION, null, -1);
+            case "value" -> number(Kind.VALUE, format != null ? format : DEFAULT_VALUE_FORMAT);
+            case "threshold" -> number(Kind.THRESHOLD, format != null ? format : DEFAULT_THRESHOLD_FORMAT);
+            default -> throw new IllegalArgumentException("Unknown placeholder {" + body + "} in message template: " + template);
+        };
+    }
+
+    private static Segment number(Kind kind, String format) {
+        Matcher fixedPoint = FIXED_POINT_FORMAT.matcher(format);
+        if (fixedPoint.matches()) {
+            return new Segment(kind, format, Integer.parseInt(fixedPoint.group(1)));
+        }
+        // Fail on load rather than when the rule first fires
+        String.format(format, 0.0);
+        return new Segment(kind, format, -1);
+    }
+
+    String render(SensorData sensorData, double value, double threshold) {
+        StringBuilder message = new StringBuilder(sizeHint);
+        for (Segment segment : segments) {
+            switch (segment.kind()) {
+                case LITERAL -> message.append(segment.text());
+                case DEVICE_ID -> message.append(sensorData.getDeviceId());
+                case LOCATION -> message.append(sensorData.getLocation());
+                case VALUE -> appendNumber(message, segment, value);
+                case THRESHOLD -> appendNumber(message, segment, threshold);
+            }
+        }
+        return message.toString();
+    }
+
+    private static void appendNumber(StringBuilder message, Segment segment, double number) {
+        if (segment.scale() >= 0 && Double.isFinite(number)) {
+            message.append(BigDecimal.valueOf(number).setScale(segment.scale(), RoundingMode.HALF_UP).toPlainString());
+        } else {
+            message.append(String.format(segment.text(), number));
+        }
+    }
+}
@@ -0,0 +1,9 @@
+package com.yusufsahin.iot_platform.service.rule;
+
+import com.yusufsahin.iot_platform.model.SensorData;
+
+@FunctionalInterface
+public interface RuleMatchHandler {
+
+    void onMatch(CompiledRule rule, SensorData sensorData, double value);
+}
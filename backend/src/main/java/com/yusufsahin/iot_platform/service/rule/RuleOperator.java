@@ -0,0 +1,14 @@
+package com.yusufsahin.iot_platform.service.rule;
+
+public enum RuleOperator {
+    GT, GTE, LT, LTE;
+
+    public boolean test(double value, double threshold) {
+        return switch (this) {
+            case GT -> value > threshold;
+            case GTE -> value >= threshold;
+            case LT -> value < threshold;
+            case LTE -> value <= threshold;
+        };
+    }
+}
@@ -0,0 +1,25 @@
+-- Baseline schema, previously generated by Hibernate (ddl-auto=create-drop)
+
+CREATE TABLE IF NOT EXISTS iot_platform.sensors (
+    id            BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    device_id     VARCHAR(255)     NOT NULL,
+    temperature   DOUBLE PRECISION,
+    humidity      DOUBLE PRECISION,
+    pressure      DOUBLE PRECISION,
+    timestamp     TIMESTAMP(6)     NOT NULL,
+    location      VARCHAR(255),
+    battery_level INTEGER
+);
+
+CREATE TABLE IF NOT EXISTS iot_platform.alert_messages (
+    id             BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    message        VARCHAR(1024) NOT NULL,
+    severity       VARCHAR(32) CHECK (severity IN ('INFO', 'WARNING', 'ERROR', 'CRITICAL')),
+    alert_type     VARCHAR(64),
+    timestamp      TIMESTAMP(6)  NOT NULL,
+    sensor_data_id BIGINT REFERENCES iot_platform.sensors (id),
+    status         VARCHAR(32) CHECK (status IN ('OPEN', 'ONGOING', 'RESOLVED')),
+    occurrences    INTEGER       NOT NULL DEFAULT 1,
+    last_seen_at   TIMESTAMP(6),
+    resolved_at    TIMESTAMP(6)
+);
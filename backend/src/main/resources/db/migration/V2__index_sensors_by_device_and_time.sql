@@ -0,0 +1,3 @@
+-- Serves per-device time range and keyset queries (WHERE device_id = ? ORDER BY timestamp, id)
+CREATE INDEX IF NOT EXISTS idx_sensors_device_timestamp
+    ON iot_platform.sensors (device_id, timestamp);
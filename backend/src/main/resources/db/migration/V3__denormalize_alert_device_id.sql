@@ -0,0 +1,11 @@
+-- Carry the device of the triggering reading on each alert so device/time queries need no join
+ALTER TABLE iot_platform.alert_messages ADD COLUMN device_id VARCHAR(255);
+
+UPDATE iot_platform.alert_messages a
+SET device_id = s.device_id
+FROM iot_platform.sensors s
+WHERE a.sensor_data_id = s.id;
+
+-- Serves keyset pages of a device's alerts, newest first
+CREATE INDEX IF NOT EXISTS idx_alert_messages_device_timestamp
+    ON iot_platform.alert_messages (device_id, timestamp, id);
@@ -0,0 +1,18 @@
+-- Pre-aggregated readings per device, metric and bucket, maintained by SensorDataRollupService.
+-- sum_value/sample_count are stored instead of the average so partial buckets can be merged on upsert.
+CREATE TABLE IF NOT EXISTS iot_platform.sensor_rollups_1m (
+    device_id      VARCHAR(255)     NOT NULL,
+    bucket_start   TIMESTAMP(6)     NOT NULL,
+    metric         VARCHAR(32)      NOT NULL,
+    min_value      DOUBLE PRECISION NOT NULL,
+    max_value      DOUBLE PRECISION NOT NULL,
+    sum_value      DOUBLE PRECISION NOT NULL,
+    sample_count   BIGINT           NOT NULL,
+    last_value     DOUBLE PRECISION NOT NULL,
+    last_timestamp TIMESTAMP(6)     NOT NULL,
+    PRIMARY KEY (device_id, bucket_start, metric)
+);
+
+CREATE TABLE IF NOT EXISTS iot_platform.sensor_rollups_1h (LIKE iot_platform.sensor_rollups_1m INCLUDING ALL);
+
+CREATE TABLE IF NOT EXISTS iot_platform.sensor_rollups_1d (LIKE iot_platform.sensor_rollups_1m INCLUDING ALL);
@@ -0,0 +1,33 @@
+-- Device registry: each device is stored once and readings reference it by a 4-byte key
+-- instead of repeating device_id as a string on every row. location stays on the reading: devices move, and
+-- history must keep showing where each reading was taken.
+-- Works on both storage modes; on the partitioned schema the column and index changes cascade to every partition.
+
+CREATE TABLE IF NOT EXISTS iot_platform.devices (
+    device_key INTEGER GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    device_id  VARCHAR(255) NOT NULL UNIQUE,
+    -- Location of the device's most recent reading; each reading keeps its own in sensors.location
+    location   VARCHAR(255),
+    created_at TIMESTAMP(6) NOT NULL DEFAULT LOCALTIMESTAMP
+);
+
+INSERT INTO iot_platform.devices (device_id, location)
+SELECT DISTINCT ON (device_id) device_id, location
+FROM iot_platform.sensors
+ORDER BY device_id, timestamp DESC, id DESC;
+
+ALTER TABLE iot_platform.sensors ADD COLUMN device_key INTEGER;
+
+UPDATE iot_platform.sensors s
+SET device_key = d.device_key
+FROM iot_platform.devices d
+WHERE d.device_id = s.device_id;
+
+ALTER TABLE iot_platform.sensors ALTER COLUMN device_key SET NOT NULL;
+
+DROP INDEX iot_platform.idx_sensors_device_timestamp;
+ALTER TABLE iot_platform.sensors DROP COLUMN device_id;
+
+-- Same access path as before on a 4-byte key. There is deliberately no foreign key: the registry commits a
+-- device before it hands out its key, and a per-row FK lookup would be paid on every ingest insert.
+CREATE INDEX idx_sensors_device_timestamp ON iot_platform.sensors (device_key, timestamp);
@@ -0,0 +1,5 @@
+-- An alert row is identified by its device, type and opening timestamp. AlertPipeline upserts on this key, so an
+-- alert state that was spilled to disk or retried after a failed batch updates its row instead of adding a second one.
+-- On the partitioned schema the key contains the partition column, as every unique index there must.
+CREATE UNIQUE INDEX IF NOT EXISTS uq_alert_messages_alert_key
+    ON iot_platform.alert_messages (device_id, alert_type, timestamp);
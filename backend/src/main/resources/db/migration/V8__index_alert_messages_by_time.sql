@@ -0,0 +1,3 @@
+-- Serves the newest alerts of all devices (GET /api/v1/alert-messages) without sorting the whole table
+CREATE INDEX IF NOT EXISTS idx_alert_messages_timestamp
+    ON iot_platform.alert_messages (timestamp, id);
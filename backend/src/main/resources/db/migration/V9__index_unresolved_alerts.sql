@@ -0,0 +1,4 @@
+-- Serves AlertStateTracker's startup load of the alerts left open; only unresolved rows are indexed
+CREATE INDEX IF NOT EXISTS idx_alert_messages_unresolved
+    ON iot_platform.alert_messages (timestamp, id)
+    WHERE status IN ('OPEN', 'ONGOING');
@@ -0,0 +1,138 @@
+-- Opt-in storage mode (Spring profile "partitioned"): sensors and alert_messages become tables range-partitioned
+-- by day on timestamp. PartitionMaintenance creates partitions ahead of time and drops or detaches expired ones.
+-- Existing rows are copied into daily partitions, which rewrites both tables once.
+--
+-- Differences from the plain schema:
+--   * primary keys become (id, timestamp), as the partition key must be part of every unique constraint
+--   * alert_messages.sensor_data_id loses its foreign key, which cannot point at a partitioned table's id alone
+--   * ids come from plain sequences instead of identity columns
+--
+-- sensors is recreated with the columns it has when this runs, so the mode can also be enabled out of order on a
+-- database already past V6 (device_key instead of device_id). On a new database V6 applies to the partitioned table.
+
+CREATE OR REPLACE FUNCTION iot_platform.ensure_daily_partition(parent TEXT, day DATE) RETURNS VOID AS $$
+BEGIN
+    EXECUTE format('CREATE TABLE IF NOT EXISTS iot_platform.%I PARTITION OF iot_platform.%I FOR VALUES FROM (%L) TO (%L)',
+                   parent || '_p' || to_char(day, 'YYYYMMDD'), parent, day::timestamp, (day + 1)::timestamp);
+END;
+$$ LANGUAGE plpgsql;
+
+ALTER TABLE iot_platform.alert_messages DROP CONSTRAINT IF EXISTS alert_messages_sensor_data_id_fkey;
+
+-- sensors
+
+ALTER TABLE iot_platform.sensors RENAME TO sensors_unpartitioned;
+ALTER TABLE iot_platform.sensors_unpartitioned RENAME CONSTRAINT sensors_pkey TO sensors_unpartitioned_pkey;
+ALTER INDEX iot_platform.idx_sensors_device_timestamp RENAME TO idx_sensors_unpartitioned_device_timestamp;
+
+CREATE SEQUENCE iot_platform.sensor_reading_id_seq;
+SELECT setval('iot_platform.sensor_reading_id_seq',
+              COALESCE((SELECT MAX(id) FROM iot_platform.sensors_unpartitioned), 0) + 1, false);
+
+CREATE TABLE iot_platform.sensors (LIKE iot_platform.sensors_unpartitioned INCLUDING DEFAULTS)
+    PARTITION BY RANGE (timestamp);
+
+ALTER TABLE iot_platform.sensors
+    ALTER COLUMN id SET DEFAULT nextval('iot_platform.sensor_reading_id_seq'),
+    ADD PRIMARY KEY (id, timestamp);
+
+ALTER SEQUENCE iot_platform.sensor_reading_id_seq OWNED BY iot_platform.sensors.id;
+
+DO $$
+BEGIN
+    IF EXISTS (SELECT 1 FROM information_schema.columns
+               WHERE table_schema = 'iot_platform' AND table_name = 'sensors' AND column_name = 'device_key') THEN
+        CREATE INDEX idx_sensors_device_timestamp ON iot_platform.sensors (device_key, timestamp);
+    ELSE
+        CREATE INDEX idx_sensors_device_timestamp ON iot_platform.sensors (device_id, timestamp);
+    END IF;
+END
+$$;
+
+-- Catches readings outside the pre-created range (clock skew, late backfills) instead of failing the batch
+CREATE TABLE iot_platform.sensors_default PARTITION OF iot_platform.sensors DEFAULT;
+
+DO $$
+DECLARE
+    day DATE;
+BEGIN
+    FOR day IN
+        SELECT generate_series(
+                   LEAST(COALESCE((SELECT MIN(timestamp)::date FROM iot_platform.sensors_unpartitioned), CURRENT_DATE), CURRENT_DATE),
+                   GREATEST(COALESCE((SELECT MAX(timestamp)::date FROM iot_platform.sensors_unpartitioned), CURRENT_DATE), CURRENT_DATE + 7),
+                   INTERVAL '1 day')::date
+    LOOP
+        PERFORM iot_platform.ensure_daily_partition('sensors', day);
+    END LOOP;
+END
+$$;
+
+-- Same columns in the same order
+INSERT INTO iot_platform.sensors
+SELECT * FROM iot_platform.sensors_unpartitioned;
+
+DROP TABLE iot_platform.sensors_unpartitioned;
+
+-- alert_messages
+
+ALTER TABLE iot_platform.alert_messages RENAME TO alert_messages_unpartitioned;
+ALTER TABLE iot_platform.alert_messages_unpartitioned RENAME CONSTRAINT alert_messages_pkey TO alert_messages_unpartitioned_pkey;
+ALTER INDEX iot_platform.idx_alert_messages_device_timestamp RENAME TO idx_alert_messages_unpartitioned_device_timestamp;
+-- Only present when this runs out of order, past V7 (V8, V9)
+ALTER INDEX IF EXISTS iot_platform.uq_alert_messages_alert_key RENAME TO uq_alert_messages_unpartitioned_alert_key;
+ALTER INDEX IF EXISTS iot_platform.idx_alert_messages_timestamp RENAME TO idx_alert_messages_unpartitioned_timestamp;
+ALTER INDEX IF EXISTS iot_platform.idx_alert_messages_unresolved RENAME TO idx_alert_messages_unpartitioned_unresolved;
+
+CREATE SEQUENCE iot_platform.alert_message_id_seq;
+SELECT setval('iot_platform.alert_message_id_seq',
+              COALESCE((SELECT MAX(id) FROM iot_platform.alert_messages_unpartitioned), 0) + 1, false);
+
+CREATE TABLE iot_platform.alert_messages (
+    id             BIGINT        NOT NULL DEFAULT nextval('iot_platform.alert_message_id_seq'),
+    message        VARCHAR(1024) NOT NULL,
+    severity       VARCHAR(32) CHECK (severity IN ('INFO', 'WARNING', 'ERROR', 'CRITICAL')),
+    alert_type     VARCHAR(64),
+    timestamp      TIMESTAMP(6)  NOT NULL,
+    device_id      VARCHAR(255),
+    sensor_data_id BIGINT,
+    status         VARCHAR(32) CHECK (status IN ('OPEN', 'ONGOING', 'RESOLVED')),
+    occurrences    INTEGER       NOT NULL DEFAULT 1,
+    last_seen_at   TIMESTAMP(6),
+    resolved_at    TIMESTAMP(6),
+    PRIMARY KEY (id, timestamp)
+) PARTITION BY RANGE (timestamp);
+
+ALTER SEQUENCE iot_platform.alert_message_id_seq OWNED BY iot_platform.alert_messages.id;
+
+CREATE INDEX idx_alert_messages_device_timestamp ON iot_platform.alert_messages (device_id, timestamp, id);
+-- See V7__unique_alert_key.sql, which skips it on a new database
+CREATE UNIQUE INDEX uq_alert_messages_alert_key ON iot_platform.alert_messages (device_id, alert_type, timestamp);
+-- See V8__index_alert_messages_by_time.sql
+CREATE INDEX idx_alert_messages_timestamp ON iot_platform.alert_messages (timestamp, id);
+-- See V9__index_unresolved_alerts.sql
+CREATE INDEX idx_alert_messages_unresolved ON iot_platform.alert_messages (timestamp, id) WHERE status IN ('OPEN', 'ONGOING');
+
+CREATE TABLE iot_platform.alert_messages_default PARTITION OF iot_platform.alert_messages DEFAULT;
+
+DO $$
+DECLARE
+    day DATE;
+BEGIN
+    FOR day IN
+        SELECT generate_series(
+                   LEAST(COALESCE((SELECT MIN(timestamp)::date FROM iot_platform.alert_messages_unpartitioned), CURRENT_DATE), CURRENT_DATE),
+                   GREATEST(COALESCE((SELECT MAX(timestamp)::date FROM iot_platform.alert_messages_unpartitioned), CURRENT_DATE), CURRENT_DATE + 7),
+                   INTERVAL '1 day')::date
+    LOOP
+        PERFORM iot_platform.ensure_daily_partition('alert_messages', day);
+    END LOOP;
+END
+$$;
+
+INSERT INTO iot_platform.alert_messages (id, message, severity, alert_type, timestamp, device_id, sensor_data_id,
+                                         status, occurrences, last_seen_at, resolved_at)
+SELECT id, message, severity, alert_type, timestamp, device_id, sensor_data_id,
+       status, occurrences, last_seen_at, resolved_at
+FROM iot_platform.alert_messages_unpartitioned;
+
+DROP TABLE iot_platform.alert_messages_unpartitioned;
@@ -0,0 +1,49 @@
+package com.yusufsahin.iot_platform;
+
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+import org.flywaydb.core.Flyway;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+// One embedded PostgreSQL per test JVM, migrated like the default profile. Tests share it, so each one
+// works on device ids of its own instead of relying on empty tables.
+public final class TestDatabase {
+
+    private static DataSource dataSource;
+
+    private TestDatabase() {
+    }
+
+    public static synchronized DataSource dataSource() {
+        if (dataSource == null) {
+            try {
+                EmbeddedPostgres postgres = EmbeddedPostgres.builder().start();
+                Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                    try {
+                        postgres.close();
+                    } catch (IOException ignored) {
+                        // The JVM is exiting anyway
+                    }
+                }));
+                dataSource = postgres.getPostgresDatabase();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            Flyway.configure()
+                    .dataSource(dataSource)
+                    .schemas("iot_platform")
+                    .defaultSchema("iot_platform")
+                    .locations("classpath:db/migration")
+                    .load()
+                    .migrate();
+        }
+        return dataSource;
+    }
+
+    public static JdbcTemplate jdbcTemplate() {
+        return new JdbcTemplate(dataSource());
+    }
+}
@@ -0,0 +1,98 @@
+package com.yusufsahin.iot_platform.config;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.core.env.MapPropertySource;
+import org.springframework.core.env.StandardEnvironment;
+import org.springframework.core.io.support.ResourcePropertySource;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.TransientDataAccessResourceException;
+import org.springframework.kafka.listener.ListenerExecutionFailedException;
+import org.springframework.kafka.retrytopic.DestinationTopic;
+import org.springframework.kafka.retrytopic.RetryTopicConfiguration;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class KafkaConfigTest {
+
+    // The defaults of application.properties
+    private static KafkaConfig kafkaConfig(long retryMaxIntervalMs) {
+        KafkaConfig kafkaConfig = new KafkaConfig();
+        ReflectionTestUtils.setField(kafkaConfig, "sensorDataPartitions", 6);
+        ReflectionTestUtils.setField(kafkaConfig, "replicationFactor", (short) 1);
+        ReflectionTestUtils.setField(kafkaConfig, "retryAttempts", 5);
+        ReflectionTestUtils.setField(kafkaConfig, "retryInitialIntervalMs", 1000L);
+        ReflectionTestUtils.setField(kafkaConfig, "retryMultiplier", 4.0);
+        ReflectionTestUtils.setField(kafkaConfig, "retryMaxIntervalMs", retryMaxIntervalMs);
+        return kafkaConfig;
+    }
+
+    private static RetryTopicConfiguration retryTopicConfiguration(long retryMaxIntervalMs) {
+        KafkaConfig kafkaConfig = kafkaConfig(retryMaxIntervalMs);
+        return kafkaConfig.sensorDataRetryTopicConfiguration(null,
+                kafkaConfig.sensorDataRetryListenerContainerFactory(null));
+    }
+
+    private static DestinationTopic destination(DestinationTopic.Properties properties) {
+        return new DestinationTopic(KafkaConfig.SENSOR_DATA_FAILED_TOPIC + properties.suffix(), properties);
+    }
+
+    @Test
+    void retriesFailedReadingsThroughIndexedTopicsWithExponentialBackoffThenTheDlt() {
+        RetryTopicConfiguration configuration = retryTopicConfiguration(300_000);
+
+        assertTrue(configuration.hasConfigurationForTopics(new String[]{KafkaConfig.SENSOR_DATA_FAILED_TOPIC}));
+        assertFalse(configuration.hasConfigurationForTopics(new String[]{KafkaConfig.SENSOR_DATA_TOPIC}));
+
+        List<DestinationTopic.Properties> destinations = configuration.getDestinationTopicProperties();
+        assertEquals(List.of("", "-retry-0", "-retry-1", "-retry-2", "-retry-3", "-dlt"),
+                destinations.stream().map(DestinationTopic.Properties::suffix).toList());
+        assertEquals(List.of(0L, 1000L, 4000L, 16000L, 64000L, 0L),
+                destinations.stream().map(DestinationTopic.Properties::delay).toList());
+        assertEquals(KafkaConfig.SENSOR_DATA_DLT, destination(destinations.get(5)).getDestinationName());
+        assertTrue(destinations.get(5).isDltTopic());
+        // Dead letters stay on the DLT until replayed
+        assertFalse(destinations.get(5).autoStartDltHandler());
+        assertTrue(destinations.stream().allMatch(destination -> destination.numPartitions() == 6));
+    }
+
+    @Test
+    void backoffIsCappedAtTheMaxInterval() {
+        List<DestinationTopic.Properties> destinations = retryTopicConfiguration(5_000).getDestinationTopicProperties();
+
+        assertEquals(List.of(0L, 1000L, 4000L, 5000L, 5000L, 0L),
+                destinations.stream().map(DestinationTopic.Properties::delay).toList());
+    }
+
+    @Test
+    void onlyTransientFailuresAreRetried() {
+        DestinationTopic firstRetry = destination(retryTopicConfiguration(300_000).getDestinationTopicProperties().get(1));
+
+        assertTrue(firstRetry.shouldRetryOn(1, new TransientDataAccessResourceException("connection lost")));
+        assertFalse(firstRetry.shouldRetryOn(1, new DataIntegrityViolationException("constraint")));
+        // Listener failures arrive wrapped; the cause decides
+        assertFalse(firstRetry.shouldRetryOn(1, new ListenerExecutionFailedException("listener failed",
+                new DataIntegrityViolationException("constraint"))));
+    }
+
+    @Test
+    void retryListenerConsumesOneRecordAtATime() {
+        assertFalse(Boolean.TRUE.equals(kafkaConfig(300_000).sensorDataRetryListenerContainerFactory(null).isBatchListener()));
+    }
+
+    @Test
+    void listenerConcurrencyDefaultsToThePartitionCount() throws IOException {
+        StandardEnvironment environment = new StandardEnvironment();
+        environment.getPropertySources().addFirst(new ResourcePropertySource("classpath:application.properties"));
+        assertEquals("6", environment.resolvePlaceholders("${iot.kafka.consumer.concurrency}"));
+
+        environment.getPropertySources().addFirst(new MapPropertySource("env", Map.of("IOT_KAFKA_SENSOR_DATA_PARTITIONS", "12")));
+        assertEquals("12", environment.resolvePlaceholders("${iot.kafka.consumer.concurrency}"));
+    }
+}
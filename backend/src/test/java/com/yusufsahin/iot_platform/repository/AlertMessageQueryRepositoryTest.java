@@ -0,0 +1,106 @@
+package com.yusufsahin.iot_platform.repository;
+
+import com.yusufsahin.iot_platform.TestDatabase;
+import com.yusufsahin.iot_platform.dto.AlertMessageDto;
+import com.yusufsahin.iot_platform.dto.KeysetCursor;
+import com.yusufsahin.iot_platform.model.AlertMessage;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class AlertMessageQueryRepositoryTest {
+
+    // Later than the alerts of any other test, so findLatest sees these first
+    private static final LocalDateTime START = LocalDateTime.of(2099, 1, 1, 12, 0);
+
+    private static final AlertMessageQueryRepository repository = new AlertMessageQueryRepository(TestDatabase.jdbcTemplate());
+    // Ids of the alert-query-device alerts, newest first; three of them share START + 1s
+    private static final List<Long> ids = new ArrayList<>();
+    private static long otherDeviceId;
+
+    @BeforeAll
+    static void insertAlerts() {
+        insert("alert-query-device", AlertMessage.AlertType.TEMPERATURE_HIGH, AlertMessage.AlertSeverity.WARNING, START);
+        insert("alert-query-device", AlertMessage.AlertType.TEMPERATURE_HIGH, AlertMessage.AlertSeverity.WARNING, START.plusSeconds(1));
+        insert("alert-query-device", AlertMessage.AlertType.HUMIDITY_HIGH, AlertMessage.AlertSeverity.CRITICAL, START.plusSeconds(1));
+        insert("alert-query-device", AlertMessage.AlertType.BATTERY_LOW, AlertMessage.AlertSeverity.WARNING, START.plusSeconds(1));
+        insert("alert-query-device", AlertMessage.AlertType.TEMPERATURE_HIGH, AlertMessage.AlertSeverity.CRITICAL, START.plusSeconds(2));
+        otherDeviceId = TestDatabase.jdbcTemplate().queryForObject("INSERT INTO iot_platform.alert_messages " +
+                "(message, severity, alert_type, timestamp, device_id, status) VALUES ('m', 'INFO', 'TEMPERATURE_HIGH', ?, " +
+                "'alert-query-other', 'OPEN') RETURNING id", Long.class, Timestamp.valueOf(START.plusSeconds(3)));
+        TestDatabase.jdbcTemplate().update("INSERT INTO iot_platform.alert_messages (message, severity, alert_type, " +
+                "timestamp, device_id, status, resolved_at) VALUES ('m', 'INFO', 'TEMPERATURE_HIGH', ?, " +
+                "'alert-query-resolved', 'RESOLVED', ?)", Timestamp.valueOf(START), Timestamp.valueOf(START));
+    }
+
+    private static void insert(String deviceId, AlertMessage.AlertType type, AlertMessage.AlertSeverity severity,
+                               LocalDateTime timestamp) {
+        ids.add(0, TestDatabase.jdbcTemplate().queryForObject("INSERT INTO iot_platform.alert_messages " +
+                "(message, severity, alert_type, timestamp, device_id, status) VALUES ('m', ?, ?, ?, ?, 'OPEN') RETURNING id",
+                Long.class, severity.name(), type.name(), Timestamp.valueOf(timestamp), deviceId));
+    }
+
+    private static List<AlertMessageDto> page(LocalDateTime from, LocalDateTime to, AlertMessage.AlertSeverity severity,
+                                              AlertMessage.AlertType alertType, KeysetCursor before, int limit) {
+        return repository.findByDevice("alert-query-device", from, to, severity, alertType, before, limit);
+    }
+
+    private static List<Long> ids(List<AlertMessageDto> alerts) {
+        return alerts.stream().map(AlertMessageDto::id).toList();
+    }
+
+    @Test
+    void pagesThroughEveryAlertOfTheDeviceOnceNewestFirst() {
+        List<AlertMessageDto> all = new ArrayList<>();
+        KeysetCursor cursor = null;
+        for (List<AlertMessageDto> page = page(null, null, null, null, null, 2); !page.isEmpty();
+             page = page(null, null, null, null, cursor, 2)) {
+            all.addAll(page);
+            cursor = KeysetCursor.of(page.get(page.size() - 1));
+        }
+
+        assertEquals(ids, ids(all));
+    }
+
+    @Test
+    void cursorInsideATimestampTieContinuesWithTheNextLowerId() {
+        KeysetCursor beforeFirstTie = new KeysetCursor(START.plusSeconds(1), ids.get(1));
+
+        assertEquals(ids.subList(2, 5), ids(page(null, null, null, null, beforeFirstTie, 10)));
+    }
+
+    @Test
+    void appliesTheRangeAndTheOptionalFilters() {
+        assertEquals(ids.subList(1, 4), ids(page(START.plusSeconds(1), START.plusSeconds(2), null, null, null, 10)));
+        assertEquals(List.of(ids.get(0), ids.get(2)), ids(page(null, null, AlertMessage.AlertSeverity.CRITICAL, null, null, 10)));
+        assertEquals(List.of(ids.get(0), ids.get(3), ids.get(4)),
+                ids(page(null, null, null, AlertMessage.AlertType.TEMPERATURE_HIGH, null, 10)));
+    }
+
+    @Test
+    void findLatestReturnsTheNewestAlertsOfAllDevices() {
+        assertEquals(List.of(otherDeviceId, ids.get(0), ids.get(1), ids.get(2)), ids(repository.findLatest(4)));
+    }
+
+    @Test
+    void streamsTheUnresolvedAlertsOldestFirst() {
+        List<AlertMessage> unresolved = new ArrayList<>();
+        repository.streamUnresolved(alert -> {
+            if (alert.getDeviceId().startsWith("alert-query-")) {
+                unresolved.add(alert);
+            }
+        });
+
+        List<Long> expected = new ArrayList<>(ids.reversed());
+        expected.add(otherDeviceId);
+        assertEquals(expected, unresolved.stream().map(AlertMessage::getId).toList());
+        assertEquals(AlertMessage.AlertType.HUMIDITY_HIGH, unresolved.get(2).getAlertType());
+        assertEquals(START.plusSeconds(1), unresolved.get(2).getTimestamp());
+    }
+}
@@ -0,0 +1,98 @@
+package com.yusufsahin.iot_platform.repository;
+
+import com.yusufsahin.iot_platform.TestDatabase;
+import com.yusufsahin.iot_platform.model.SensorData;
+import com.yusufsahin.iot_platform.service.DeviceRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class SensorDataBatchRepositoryTest {
+
+    private static final LocalDateTime START = LocalDateTime.of(2024, 3, 11, 12, 0);
+
+    private final SensorDataBatchRepository repository = new SensorDataBatchRepository(TestDatabase.jdbcTemplate());
+    private final DeviceRegistry deviceRegistry = new DeviceRegistry(TestDatabase.jdbcTemplate(),
+            new DataSourceTransactionManager(TestDatabase.dataSource()), new SimpleMeterRegistry(), 100);
+
+    // Each reading carries its index as temperature, so a row can be traced back to the entity it came from
+    private List<SensorData> readings(String deviceId, int count) {
+        List<SensorData> readings = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            SensorData reading = new SensorData();
+            reading.setDeviceId(deviceId);
+            reading.setTemperature((double) i);
+            reading.setTimestamp(START.plusSeconds(i));
+            readings.add(reading);
+        }
+        deviceRegistry.assignKeys(readings);
+        return readings;
+    }
+
+    private static void assertIdsMapBackToTheirRows(List<SensorData> readings) {
+        Map<Long, Double> temperatures = new HashMap<>();
+        TestDatabase.jdbcTemplate().query("SELECT id, temperature FROM iot_platform.sensors WHERE device_key = ?",
+                rs -> {
+                    temperatures.put(rs.getLong(1), rs.getDouble(2));
+                }, readings.get(0).getDeviceKey());
+
+        assertEquals(readings.size(), temperatures.size());
+        for (SensorData reading : readings) {
+            assertEquals(reading.getTemperature(), temperatures.get(reading.getId()));
+        }
+    }
+
+    private static Map<String, Object> row(long id) {
+        return TestDatabase.jdbcTemplate().queryForMap(
+                "SELECT temperature, humidity, location, battery_level FROM iot_platform.sensors WHERE id = ?", id);
+    }
+
+    @Test
+    void writesTheGeneratedIdsBackOntoTheirEntities() {
+        List<SensorData> readings = readings("batch-ids", 3);
+        readings.get(1).setTemperature(null);
+        readings.get(1).setHumidity(40.0);
+        readings.get(2).setLocation("hall");
+        readings.get(2).setBatteryLevel(80);
+
+        repository.insertAll(readings);
+
+        assertEquals(3, new HashSet<>(readings.stream().map(SensorData::getId).toList()).size());
+        Map<String, Object> nullable = row(readings.get(1).getId());
+        assertNull(nullable.get("temperature"));
+        assertEquals(40.0, nullable.get("humidity"));
+        Map<String, Object> full = row(readings.get(2).getId());
+        assertEquals(2.0, full.get("temperature"));
+        assertEquals("hall", full.get("location"));
+        assertEquals(80, full.get("battery_level"));
+    }
+
+    @Test
+    void splitsLargeBatchesIntoStatementsBelowTheParameterLimit() {
+        // A full chunk, a second full chunk and a single row left over
+        List<SensorData> readings = readings("batch-chunks", 2 * SensorDataBatchRepository.MAX_ROWS_PER_STATEMENT + 1);
+
+        repository.insertAll(readings);
+
+        assertIdsMapBackToTheirRows(readings);
+    }
+
+    @Test
+    void insertsABatchOfExactlyOneChunk() {
+        List<SensorData> readings = readings("batch-one-chunk", SensorDataBatchRepository.MAX_ROWS_PER_STATEMENT);
+
+        repository.insertAll(readings);
+
+        assertIdsMapBackToTheirRows(readings);
+    }
+}
@@ -0,0 +1,93 @@
+package com.yusufsahin.iot_platform.repository;
+
+import com.yusufsahin.iot_platform.TestDatabase;
+import com.yusufsahin.iot_platform.dto.KeysetCursor;
+import com.yusufsahin.iot_platform.dto.SensorDataDto;
+import com.yusufsahin.iot_platform.model.SensorData;
+import com.yusufsahin.iot_platform.service.DeviceRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SensorDataQueryRepositoryTest {
+
+    private static final LocalDateTime START = LocalDateTime.of(2024, 3, 10, 12, 0);
+
+    private static SensorDataQueryRepository repository;
+    // Ids of the keyset-device readings in (timestamp, id) order; three of them share START + 1s
+    private static final List<Long> ids = new ArrayList<>();
+
+    @BeforeAll
+    static void insertReadings() {
+        DeviceRegistry deviceRegistry = new DeviceRegistry(TestDatabase.jdbcTemplate(),
+                new DataSourceTransactionManager(TestDatabase.dataSource()), new SimpleMeterRegistry(), 100);
+        repository = new SensorDataQueryRepository(TestDatabase.dataSource(), deviceRegistry);
+        int device = register(deviceRegistry, "keyset-device");
+        int other = register(deviceRegistry, "keyset-other");
+
+        for (int second : new int[]{0, 1, 1, 1, 2}) {
+            ids.add(insert(device, START.plusSeconds(second)));
+        }
+        insert(other, START.plusSeconds(1));
+    }
+
+    private static int register(DeviceRegistry deviceRegistry, String deviceId) {
+        SensorData reading = new SensorData();
+        reading.setDeviceId(deviceId);
+        deviceRegistry.assignKeys(List.of(reading));
+        return reading.getDeviceKey();
+    }
+
+    private static long insert(int deviceKey, LocalDateTime timestamp) {
+        return TestDatabase.jdbcTemplate().queryForObject(
+                "INSERT INTO iot_platform.sensors (device_key, temperature, timestamp) VALUES (?, 20.0, ?) RETURNING id",
+                Long.class, deviceKey, Timestamp.valueOf(timestamp));
+    }
+
+    private static List<SensorDataDto> page(LocalDateTime from, LocalDateTime to, KeysetCursor after, int limit) {
+        List<SensorDataDto> page = new ArrayList<>();
+        repository.streamByDevice("keyset-device", from, to, after, limit, page::add);
+        return page;
+    }
+
+    private static List<Long> ids(List<SensorDataDto> readings) {
+        return readings.stream().map(SensorDataDto::id).toList();
+    }
+
+    @Test
+    void pagesThroughEveryReadingOfTheDeviceOnceInTimestampAndIdOrder() {
+        List<SensorDataDto> all = new ArrayList<>();
+        KeysetCursor cursor = null;
+        for (List<SensorDataDto> page = page(null, null, null, 2); !page.isEmpty(); page = page(null, null, cursor, 2)) {
+            assertTrue(page.size() <= 2);
+            all.addAll(page);
+            cursor = KeysetCursor.of(page.get(page.size() - 1));
+        }
+
+        assertEquals(ids, ids(all));
+        assertTrue(all.stream().allMatch(reading -> reading.deviceId().equals("keyset-device")));
+    }
+
+    @Test
+    void cursorInsideATimestampTieContinuesWithTheNextId() {
+        KeysetCursor afterFirstTie = new KeysetCursor(START.plusSeconds(1), ids.get(1));
+
+        assertEquals(ids.subList(2, 5), ids(page(null, null, afterFirstTie, 10)));
+    }
+
+    @Test
+    void rangeIncludesFromAndExcludesTo() {
+        assertEquals(ids.subList(1, 4), ids(page(START.plusSeconds(1), START.plusSeconds(2), null, 10)));
+        assertEquals(ids.subList(3, 4), ids(page(START.plusSeconds(1), START.plusSeconds(2),
+                new KeysetCursor(START.plusSeconds(1), ids.get(2)), 10)));
+    }
+}
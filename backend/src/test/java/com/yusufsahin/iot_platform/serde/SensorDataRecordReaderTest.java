@@ -0,0 +1,58 @@
+package com.yusufsahin.iot_platform.serde;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.yusufsahin.iot_platform.dto.SensorDataDto;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class SensorDataRecordReaderTest {
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper().registerModule(new JavaTimeModule());
+
+    private static final SensorDataDto READING = new SensorDataDto(null, "device-001", 21.5, null, 1013.0,
+            LocalDateTime.of(2024, 3, 10, 12, 0), "Lab", 80);
+
+    private static SensorDataRecordReader reader(byte[] body, SensorDataFormat format) {
+        return new SensorDataRecordReader(new ByteArrayInputStream(body), format, OBJECT_MAPPER, 1024);
+    }
+
+    @Test
+    void readsNdjsonSkippingBlankLinesAndRejectingBadRecords() throws IOException {
+        String json = OBJECT_MAPPER.writeValueAsString(READING);
+        SensorDataRecordReader reader = reader((json + "\n\n{broken\n" + json).getBytes(StandardCharsets.UTF_8),
+                SensorDataFormat.JSON);
+
+        assertEquals(READING, reader.next());
+        assertThrows(IllegalArgumentException.class, reader::next);
+        assertEquals(2, reader.recordNumber());
+        assertEquals(READING, reader.next());
+        assertNull(reader.next());
+    }
+
+    @Test
+    void readsLengthPrefixedBinaryAndStopsAtTruncatedRecord() throws IOException {
+        byte[] record = SensorDataBinaryCodec.encode(READING);
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(body);
+        out.writeInt(record.length);
+        out.write(record);
+        out.writeInt(record.length);
+        out.write(record, 0, record.length - 1);
+        SensorDataRecordReader reader = reader(body.toByteArray(), SensorDataFormat.BINARY);
+
+        assertEquals(READING, reader.next());
+        assertThrows(StreamCorruptedException.class, reader::next);
+    }
+}
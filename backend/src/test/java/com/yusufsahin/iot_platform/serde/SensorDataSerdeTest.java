@@ -0,0 +1,63 @@
+package com.yusufsahin.iot_platform.serde;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.yusufsahin.iot_platform.dto.SensorDataDto;
+import org.apache.kafka.common.errors.SerializationException;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SensorDataSerdeTest {
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper()
+            .registerModule(new JavaTimeModule())
+            .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+
+    private static final SensorDataDto READING = new SensorDataDto(null, "device-001", 28.25, 35.5, 1015.0,
+            LocalDateTime.of(2024, 3, 10, 14, 37, 12, 123_000_000), "A", 87);
+
+    private final SensorDataDeserializer deserializer = new SensorDataDeserializer(OBJECT_MAPPER);
+
+    @Test
+    void binaryRoundTripsAndIsSmallerThanJson() {
+        byte[] binary = new SensorDataSerializer(SensorDataFormat.BINARY, OBJECT_MAPPER).serialize("sensor-data", READING);
+        byte[] json = new SensorDataSerializer(SensorDataFormat.JSON, OBJECT_MAPPER).serialize("sensor-data", READING);
+
+        assertEquals(READING, deserializer.deserialize("sensor-data", binary));
+        assertEquals(READING, deserializer.deserialize("sensor-data", json));
+        assertTrue(binary.length * 2 < json.length, binary.length + " vs " + json.length);
+    }
+
+    @Test
+    void keepsMissingFieldsNull() {
+        SensorDataDto sparse = new SensorDataDto(42L, "device-002", null, 60.0, null,
+                LocalDateTime.of(2024, 3, 10, 0, 0), null, null);
+
+        assertEquals(sparse, SensorDataBinaryCodec.decode(SensorDataBinaryCodec.encode(sparse)));
+    }
+
+    @Test
+    void rejectsTruncatedPayload() {
+        byte[] binary = SensorDataBinaryCodec.encode(READING);
+        byte[] truncated = Arrays.copyOf(binary, binary.length - 3);
+
+        assertThrows(SerializationException.class, () -> deserializer.deserialize("sensor-data", truncated));
+    }
+
+    @Test
+    void rejectsReadingWithoutDeviceIdOrTimestamp() {
+        SensorDataSerializer serializer = new SensorDataSerializer(SensorDataFormat.BINARY, OBJECT_MAPPER);
+        SensorDataDto noDevice = new SensorDataDto(null, null, 20.0, null, null, READING.timestamp(), null, null);
+        SensorDataDto noTimestamp = new SensorDataDto(null, "device-003", 20.0, null, null, null, null, null);
+
+        assertThrows(SerializationException.class, () -> serializer.serialize("sensor-data", noDevice));
+        assertThrows(SerializationException.class, () -> serializer.serialize("sensor-data", noTimestamp));
+    }
+}
@@ -0,0 +1,301 @@
+package com.yusufsahin.iot_platform.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.yusufsahin.iot_platform.TestDatabase;
+import com.yusufsahin.iot_platform.dto.AlertMessageDto;
+import com.yusufsahin.iot_platform.model.AlertMessage;
+import com.yusufsahin.iot_platform.repository.AlertMessageBatchRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.dao.TransientDataAccessResourceException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ParameterizedPreparedStatementSetter;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AlertPipelineTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final ObjectMapper objectMapper = new ObjectMapper().registerModule(new JavaTimeModule());
+    private final List<AlertMessageDto> sent = Collections.synchronizedList(new ArrayList<>());
+    private final WebSocketService webSocketService = new WebSocketService(null) {
+        @Override
+        public void sendAlerts(List<AlertMessageDto> alertMessages) {
+            sent.addAll(alertMessages);
+        }
+    };
+    private AlertPipeline pipeline;
+
+    @TempDir
+    Path spillDirectory;
+
+    private AlertPipeline pipeline(AlertMessageBatchRepository repository, int capacity, AlertBackpressurePolicy policy)
+            throws IOException {
+        return pipeline(repository, new AlertTopicPublisher(null, meterRegistry, false), capacity, policy);
+    }
+
+    private AlertPipeline pipeline(AlertMessageBatchRepository repository, AlertTopicPublisher alertTopicPublisher,
+                                   int capacity, AlertBackpressurePolicy policy) throws IOException {
+        pipeline = new AlertPipeline(repository, new DataSourceTransactionManager(TestDatabase.dataSource()), webSocketService,
+                new ClusterBroadcastPublisher(null, objectMapper, meterRegistry, false, 100),
+                alertTopicPublisher, objectMapper, meterRegistry, capacity, 500, 10, policy, spillDirectory.toString());
+        return pipeline;
+    }
+
+    @AfterEach
+    void stopWriter() throws InterruptedException {
+        pipeline.stop();
+    }
+
+    private static AlertMessage alert(String deviceId, AlertMessage.AlertType type, AlertMessage.AlertSeverity severity) {
+        AlertMessage alert = new AlertMessage();
+        alert.setDeviceId(deviceId);
+        alert.setMessage(severity + " alert");
+        alert.setSeverity(severity);
+        alert.setAlertType(type);
+        alert.setTimestamp(LocalDateTime.of(2024, 3, 10, 12, 0));
+        alert.setLastSeenAt(alert.getTimestamp());
+        alert.setStatus(AlertMessage.AlertStatus.OPEN);
+        return alert;
+    }
+
+    private static AlertMessage alert(String deviceId, AlertMessage.AlertSeverity severity) {
+        return alert(deviceId, AlertMessage.AlertType.TEMPERATURE_HIGH, severity);
+    }
+
+    private static AlertMessage state(AlertMessage row, AlertMessage.AlertStatus status, int occurrences) {
+        AlertMessage state = alert(row.getDeviceId(), row.getAlertType(), row.getSeverity());
+        state.setStatus(status);
+        state.setOccurrences(occurrences);
+        state.setLastSeenAt(row.getTimestamp().plusMinutes(occurrences));
+        if (status == AlertMessage.AlertStatus.RESOLVED) {
+            state.setResolvedAt(state.getLastSeenAt());
+        }
+        return state;
+    }
+
+    private static List<Map<String, Object>> rows(String deviceId) {
+        return TestDatabase.jdbcTemplate().queryForList(
+                "SELECT id, status, occurrences FROM iot_platform.alert_messages WHERE device_id = ? ORDER BY id", deviceId);
+    }
+
+    private double count(String meter) {
+        return meterRegistry.get(meter).counter().count();
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + 10_000_000_000L;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.nanoTime() < deadline, "Timed out");
+            Thread.sleep(5);
+        }
+    }
+
+    @Test
+    void batchFailingAfterItsUpsertsIsRetriedWithoutDuplicatingThem() throws Exception {
+        AlertMessage opened = alert("pipeline-retry", AlertMessage.AlertSeverity.WARNING);
+        new AlertMessageBatchRepository(TestDatabase.jdbcTemplate()).upsertAll(List.of(opened));
+        AtomicInteger updateBatches = new AtomicInteger();
+        // The updates of the first attempt fail once its upserts have gone through
+        JdbcTemplate failingOnce = new JdbcTemplate(TestDatabase.dataSource()) {
+            @Override
+            public <T> int[][] batchUpdate(String sql, Collection<T> batchArgs, int batchSize,
+                                           ParameterizedPreparedStatementSetter<T> pss) {
+                if (updateBatches.incrementAndGet() == 1) {
+                    throw new TransientDataAccessResourceException("connection reset");
+                }
+                return super.batchUpdate(sql, batchArgs, batchSize, pss);
+            }
+        };
+        pipeline(new AlertMessageBatchRepository(failingOnce), 100, AlertBackpressurePolicy.DROP_INFO);
+        AlertMessage other = alert("pipeline-retry", AlertMessage.AlertType.HUMIDITY_HIGH, AlertMessage.AlertSeverity.CRITICAL);
+        pipeline.submitUpdate(opened, state(opened, AlertMessage.AlertStatus.ONGOING, 2));
+        pipeline.submit(other);
+
+        pipeline.start();
+        await(() -> sent.size() == 2);
+
+        assertEquals(2, updateBatches.get());
+        List<Map<String, Object>> rows = rows("pipeline-retry");
+        assertEquals(2, rows.size());
+        assertEquals(opened.getId(), ((Number) rows.get(0).get("id")).longValue());
+        assertEquals("ONGOING", rows.get(0).get("status"));
+        assertEquals(2, rows.get(0).get("occurrences"));
+        assertEquals(other.getId(), ((Number) rows.get(1).get("id")).longValue());
+        assertEquals(1, count("iot.alerts.pipeline.flush.failures"));
+    }
+
+    @Test
+    void keepsRetryingWhileTheDatabaseIsDownAndSpillsInsertsAndUpdatesOnShutdown() throws Exception {
+        AlertMessageBatchRepository down = new AlertMessageBatchRepository(null) {
+            @Override
+            public void upsertAll(List<AlertMessage> alerts) {
+                throw new TransientDataAccessResourceException("connection refused");
+            }
+        };
+        pipeline(down, 100, AlertBackpressurePolicy.BLOCK);
+        AlertMessage opened = alert("pipeline-outage", AlertMessage.AlertSeverity.WARNING);
+        pipeline.submit(opened);
+        pipeline.submitUpdate(opened, state(opened, AlertMessage.AlertStatus.ONGOING, 2));
+        pipeline.submitUpdate(opened, state(opened, AlertMessage.AlertStatus.RESOLVED, 2));
+
+        pipeline.start();
+        await(() -> count("iot.alerts.pipeline.flush.failures") >= 4);
+        pipeline.stop();
+
+        assertEquals(3, count("iot.alerts.pipeline.spilled"));
+        assertEquals(0, count("iot.alerts.pipeline.failed"));
+        assertTrue(sent.isEmpty());
+
+        // The next start writes the spilled states before anything else, as one resolved row
+        pipeline(new AlertMessageBatchRepository(TestDatabase.jdbcTemplate()), 100, AlertBackpressurePolicy.BLOCK);
+        pipeline.start();
+        List<Map<String, Object>> rows = rows("pipeline-outage");
+        assertEquals(1, rows.size());
+        assertEquals("RESOLVED", rows.get(0).get("status"));
+        assertEquals(2, rows.get(0).get("occurrences"));
+        assertFalse(Files.exists(spillDirectory.resolve("alerts.replay.ndjson")));
+    }
+
+    @Test
+    void updateOfASpilledInsertAndItsReplayEndUpInOneRow() throws Exception {
+        pipeline(new AlertMessageBatchRepository(TestDatabase.jdbcTemplate()), 1, AlertBackpressurePolicy.SPILL);
+        AlertMessage queued = alert("pipeline-spill-queued", AlertMessage.AlertSeverity.INFO);
+        AlertMessage spilled = alert("pipeline-spill", AlertMessage.AlertSeverity.WARNING);
+        pipeline.submit(queued);
+        pipeline.submit(spilled);
+        assertEquals(1, count("iot.alerts.pipeline.spilled"));
+
+        // The spilled insert is replayed on start, and the update of its row then finds the row by its alert key
+        pipeline.start();
+        await(() -> queued.getId() != null);
+        pipeline.submitUpdate(spilled, state(spilled, AlertMessage.AlertStatus.ONGOING, 3));
+        await(() -> spilled.getId() != null);
+        await(() -> !Files.exists(spillDirectory.resolve("alerts.ndjson"))
+                && !Files.exists(spillDirectory.resolve("alerts.replay.ndjson")));
+
+        List<Map<String, Object>> rows = rows("pipeline-spill");
+        assertEquals(1, rows.size());
+        assertEquals(spilled.getId(), ((Number) rows.get(0).get("id")).longValue());
+        assertEquals("ONGOING", rows.get(0).get("status"));
+        assertEquals(3, rows.get(0).get("occurrences"));
+    }
+
+    @Test
+    void publishesTransitionsOnceTheirRowsHaveCommittedAndRetriesTheTopic() throws Exception {
+        List<String> published = Collections.synchronizedList(new ArrayList<>());
+        AtomicInteger transactions = new AtomicInteger();
+        AlertTopicPublisher topic = new AlertTopicPublisher(null, meterRegistry, true) {
+            @Override
+            void publish(List<AlertMessage> states) {
+                if (transactions.incrementAndGet() == 1) {
+                    throw new IllegalStateException("broker unavailable");
+                }
+                for (AlertMessage state : states) {
+                    // Only rows that exist by now may be published
+                    assertEquals(1, TestDatabase.jdbcTemplate().queryForObject(
+                            "SELECT count(*) FROM iot_platform.alert_messages WHERE id = ?", Integer.class, state.getId()));
+                    published.add(transitionKey(state));
+                }
+            }
+        };
+        pipeline(new AlertMessageBatchRepository(TestDatabase.jdbcTemplate()), topic, 100, AlertBackpressurePolicy.BLOCK);
+        AlertMessage opened = alert("pipeline-topic", AlertMessage.AlertSeverity.WARNING);
+        pipeline.submit(opened);
+        pipeline.submitUpdate(opened, state(opened, AlertMessage.AlertStatus.ONGOING, 2));
+
+        pipeline.start();
+        await(() -> published.size() == 2);
+
+        assertEquals(2, transactions.get());
+        assertEquals(List.of(opened.getId() + "|OPEN|1", opened.getId() + "|ONGOING|2"), published);
+        assertEquals(1, count("iot.alerts.pipeline.flush.failures"));
+    }
+
+    @Test
+    void dropInfoEvictsQueuedInfoForMoreSevereAlertsAndDropsNewInfoWhenFull() throws IOException {
+        pipeline(null, 2, AlertBackpressurePolicy.DROP_INFO);
+        pipeline.submit(alert("d", AlertMessage.AlertSeverity.INFO));
+        pipeline.submit(alert("d", AlertMessage.AlertSeverity.WARNING));
+
+        pipeline.submit(alert("d", AlertMessage.AlertSeverity.CRITICAL));
+        pipeline.submit(alert("d", AlertMessage.AlertSeverity.INFO));
+
+        assertEquals(2, pipeline.getQueueDepth());
+        assertEquals(2, count("iot.alerts.pipeline.dropped"));
+    }
+
+    @Test
+    void spillWritesOverflowingAlertsToDiskAndReplaysThem() throws Exception {
+        List<AlertMessage> inserted = Collections.synchronizedList(new ArrayList<>());
+        AlertMessageBatchRepository repository = new AlertMessageBatchRepository(null) {
+            @Override
+            public void upsertAll(List<AlertMessage> alerts) {
+                for (AlertMessage alert : alerts) {
+                    alert.setId((long) inserted.size() + 1);
+                    inserted.add(alert);
+                }
+            }
+
+            @Override
+            public void updateAll(List<AlertMessage> alerts) {
+            }
+        };
+        pipeline(repository, 1, AlertBackpressurePolicy.SPILL);
+        pipeline.submit(alert("queued", AlertMessage.AlertSeverity.INFO));
+        pipeline.submit(alert("spilled", AlertMessage.AlertSeverity.INFO));
+
+        assertEquals(1, pipeline.getQueueDepth());
+        assertEquals(1, count("iot.alerts.pipeline.spilled"));
+        assertTrue(Files.exists(spillDirectory.resolve("alerts.ndjson")));
+
+        pipeline.start();
+        await(() -> inserted.size() == 2);
+        assertEquals(Set.of("queued", "spilled"), inserted.stream().map(AlertMessage::getDeviceId).collect(Collectors.toSet()));
+    }
+
+    @Test
+    void blockHoldsTheSubmitterUntilTheWriterMakesRoom() throws Exception {
+        AlertMessageBatchRepository repository = new AlertMessageBatchRepository(null) {
+            @Override
+            public void upsertAll(List<AlertMessage> alerts) {
+            }
+
+            @Override
+            public void updateAll(List<AlertMessage> alerts) {
+            }
+        };
+        pipeline(repository, 1, AlertBackpressurePolicy.BLOCK);
+        pipeline.submit(alert("d", AlertMessage.AlertSeverity.INFO));
+        Thread submitter = new Thread(() -> pipeline.submit(alert("d", AlertMessage.AlertSeverity.INFO)));
+        submitter.start();
+
+        submitter.join(100);
+        assertTrue(submitter.isAlive());
+
+        pipeline.start();
+        submitter.join(10_000);
+        assertFalse(submitter.isAlive());
+        assertEquals(0, count("iot.alerts.pipeline.dropped"));
+    }
+}
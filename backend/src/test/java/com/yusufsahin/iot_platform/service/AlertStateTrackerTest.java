@@ -0,0 +1,186 @@
+package com.yusufsahin.iot_platform.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.yusufsahin.iot_platform.model.AlertMessage;
+import com.yusufsahin.iot_platform.model.SensorData;
+import com.yusufsahin.iot_platform.service.rule.AlertRuleEngine;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.DefaultResourceLoader;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class AlertStateTrackerTest {
+
+    private final AlertRuleEngine ruleEngine =
+            new AlertRuleEngine(new ObjectMapper(), new DefaultResourceLoader(), "classpath:alert-rules.json");
+    private final RuleBreaches breaches = new RuleBreaches();
+    // What reached the pipeline: inserts are the row itself, updates the state written to it
+    private final List<AlertMessage> submitted = new ArrayList<>();
+    private final AlertStateTracker tracker;
+
+    AlertStateTrackerTest() throws IOException {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        AlertPipeline pipeline = new AlertPipeline(null, null, null, null, null, new ObjectMapper(), meterRegistry,
+                1, 1, 1, AlertBackpressurePolicy.DROP_INFO,
+                Files.createTempDirectory("alert-spill").toString()) {
+            @Override
+            public void submit(AlertMessage alert) {
+                submitted.add(alert);
+            }
+
+            @Override
+            public void submitUpdate(AlertMessage row, AlertMessage state) {
+                submitted.add(state);
+            }
+        };
+        // Every ongoing breach is written, so each occurrence shows up in the pipeline
+        tracker = new AlertStateTracker(pipeline, null, meterRegistry, 0);
+    }
+
+    @AfterEach
+    void clearTransaction() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    private void ingest(double temperature) {
+        SensorData reading = new SensorData();
+        reading.setDeviceId("device-1");
+        reading.setTemperature(temperature);
+        breaches.reset();
+        ruleEngine.evaluate(reading, breaches);
+        tracker.apply(reading, breaches);
+    }
+
+    private void inRolledBackTransaction(Runnable work) {
+        TransactionSynchronizationManager.initSynchronization();
+        work.run();
+        List<TransactionSynchronization> synchronizations = TransactionSynchronizationManager.getSynchronizations();
+        TransactionSynchronizationManager.clearSynchronization();
+        synchronizations.forEach(s -> s.afterCompletion(TransactionSynchronization.STATUS_ROLLED_BACK));
+    }
+
+    private AlertMessage last() {
+        return submitted.get(submitted.size() - 1);
+    }
+
+    @Test
+    void opensOnceThenCountsOccurrencesUntilTheValueClearsTheHysteresisBand() {
+        ingest(31);
+        ingest(32);
+        ingest(29.8);
+        ingest(29.4);
+        ingest(29.0);
+
+        assertEquals(List.of(AlertMessage.AlertStatus.OPEN, AlertMessage.AlertStatus.ONGOING, AlertMessage.AlertStatus.RESOLVED),
+                submitted.stream().map(AlertMessage::getStatus).toList());
+        assertEquals(2, submitted.get(1).getOccurrences());
+        assertEquals(AlertMessage.AlertType.TEMPERATURE_HIGH, last().getAlertType());
+    }
+
+    @Test
+    void rolledBackOpenIsOpenedAgainByTheRetry() {
+        inRolledBackTransaction(() -> ingest(31));
+        ingest(31);
+
+        assertEquals(2, submitted.size());
+        assertEquals(AlertMessage.AlertStatus.OPEN, last().getStatus());
+    }
+
+    @Test
+    void rolledBackOngoingDoesNotCountTheOccurrence() {
+        ingest(31);
+        inRolledBackTransaction(() -> {
+            ingest(32);
+            ingest(33);
+        });
+        ingest(32);
+
+        assertEquals(AlertMessage.AlertStatus.ONGOING, last().getStatus());
+        assertEquals(2, last().getOccurrences());
+    }
+
+    @Test
+    void rolledBackResolveLeavesTheAlertOpenForTheRetry() {
+        ingest(31);
+        AlertMessage row = submitted.get(0);
+        inRolledBackTransaction(() -> ingest(20));
+        ingest(20);
+
+        assertEquals(AlertMessage.AlertStatus.RESOLVED, last().getStatus());
+        assertSame(row.getTimestamp(), last().getTimestamp());
+        // Resolved for good: nothing left to resolve
+        ingest(20);
+        assertEquals(3, submitted.size());
+    }
+
+    @Test
+    void rolledBackTransactionIsUndoneNewestFirst() {
+        ingest(31);
+        inRolledBackTransaction(() -> {
+            ingest(32);
+            ingest(20);
+            ingest(33);
+        });
+        ingest(32);
+
+        assertEquals(AlertMessage.AlertStatus.ONGOING, last().getStatus());
+        assertEquals(2, last().getOccurrences());
+        assertSame(submitted.get(0).getTimestamp(), last().getTimestamp());
+    }
+
+    private static AlertMessage unresolvedRow() {
+        AlertMessage row = new AlertMessage();
+        row.setId(42L);
+        row.setDeviceId("device-1");
+        row.setMessage("High temperature");
+        row.setSeverity(AlertMessage.AlertSeverity.CRITICAL);
+        row.setAlertType(AlertMessage.AlertType.TEMPERATURE_HIGH);
+        row.setTimestamp(LocalDateTime.of(2024, 3, 10, 12, 0));
+        row.setStatus(AlertMessage.AlertStatus.ONGOING);
+        row.setOccurrences(3);
+        return row;
+    }
+
+    @Test
+    void restoredAlertIsContinuedInsteadOfOpenedAgain() {
+        AlertMessage row = unresolvedRow();
+        tracker.restore(row);
+
+        ingest(31);
+        // Within the hysteresis band of the rule the alert adopted from that breach
+        ingest(29.8);
+        ingest(29.0);
+
+        assertEquals(List.of(AlertMessage.AlertStatus.ONGOING, AlertMessage.AlertStatus.RESOLVED),
+                submitted.stream().map(AlertMessage::getStatus).toList());
+        assertEquals(4, submitted.get(0).getOccurrences());
+        assertSame(row.getTimestamp(), last().getTimestamp());
+    }
+
+    @Test
+    void restoredAlertThatIsNotBreachedAgainResolvesOnTheNextReading() {
+        AlertMessage row = unresolvedRow();
+        tracker.restore(row);
+
+        ingest(29.8);
+
+        assertEquals(1, submitted.size());
+        assertEquals(AlertMessage.AlertStatus.RESOLVED, last().getStatus());
+        assertEquals(3, last().getOccurrences());
+        assertEquals(AlertMessage.AlertSeverity.CRITICAL, last().getSeverity());
+        assertSame(row.getTimestamp(), last().getTimestamp());
+    }
+}
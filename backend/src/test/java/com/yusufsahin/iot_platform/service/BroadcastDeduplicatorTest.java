@@ -0,0 +1,45 @@
+package com.yusufsahin.iot_platform.service;
+
+import com.yusufsahin.iot_platform.dto.AlertMessageDto;
+import com.yusufsahin.iot_platform.dto.SensorDataDto;
+import com.yusufsahin.iot_platform.model.AlertMessage;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BroadcastDeduplicatorTest {
+
+    private static final LocalDateTime START = LocalDateTime.of(2024, 3, 10, 12, 0);
+
+    private final BroadcastDeduplicator deduplicator = new BroadcastDeduplicator(1000, 1000);
+
+    private static SensorDataDto reading(String deviceId, Long id, int second) {
+        return new SensorDataDto(id, deviceId, 21.0, null, null, START.plusSeconds(second), null, null);
+    }
+
+    private static AlertMessageDto alert(AlertMessage.AlertStatus status, int occurrences) {
+        return new AlertMessageDto(7L, "High temperature", AlertMessage.AlertSeverity.WARNING,
+                AlertMessage.AlertType.TEMPERATURE_HIGH, START, "d1", 1L, status, occurrences, START.plusMinutes(occurrences), null);
+    }
+
+    @Test
+    void deliversEachDeviceReadingOnceAndNeverAnOlderOne() {
+        assertTrue(deduplicator.isNew(reading("d1", 10L, 5)));
+        assertFalse(deduplicator.isNew(reading("d1", 10L, 5)));
+        assertFalse(deduplicator.isNew(reading("d1", 9L, 4)));
+        assertTrue(deduplicator.isNew(reading("d1", 11L, 5)));
+        assertTrue(deduplicator.isNew(reading("d2", 3L, 1)));
+        assertTrue(deduplicator.isNew(reading("d1", null, 6)));
+    }
+
+    @Test
+    void deliversEachAlertVersionOnce() {
+        assertTrue(deduplicator.isNew(alert(AlertMessage.AlertStatus.ONGOING, 1)));
+        assertFalse(deduplicator.isNew(alert(AlertMessage.AlertStatus.ONGOING, 1)));
+        assertTrue(deduplicator.isNew(alert(AlertMessage.AlertStatus.ONGOING, 2)));
+        assertTrue(deduplicator.isNew(alert(AlertMessage.AlertStatus.RESOLVED, 2)));
+    }
+}
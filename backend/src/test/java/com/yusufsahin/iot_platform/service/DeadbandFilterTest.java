@@ -0,0 +1,52 @@
+package com.yusufsahin.iot_platform.service;
+
+import com.yusufsahin.iot_platform.model.SensorData;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class DeadbandFilterTest {
+
+    private static final LocalDateTime START = LocalDateTime.of(2024, 3, 10, 12, 0);
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final DeadbandFilter filter = new DeadbandFilter(meterRegistry, true, 60_000, "0.5", "1%", "0.1", "0");
+
+    private static SensorData reading(int second, Double temperature, double humidity) {
+        SensorData reading = new SensorData();
+        reading.setDeviceKey(1);
+        reading.setTimestamp(START.plusSeconds(second));
+        reading.setTemperature(temperature);
+        reading.setHumidity(humidity);
+        return reading;
+    }
+
+    @Test
+    void storesOnlyReadingsBeyondTheDeadbandOfTheLastStoredOne() {
+        SensorData first = reading(0, 20.0, 50.0);
+        SensorData drift1 = reading(1, 20.3, 50.2);
+        SensorData drift2 = reading(2, 20.6, 50.2);
+        SensorData humidityJump = reading(3, 20.6, 50.9);
+        SensorData steady = reading(4, 20.6, 50.9);
+
+        assertEquals(List.of(first, drift2, humidityJump), filter.select(List.of(first, drift1, drift2, humidityJump, steady)));
+        assertEquals(0.4, meterRegistry.get("iot.ingest.deadband.savings").gauge().value(), 1e-9);
+    }
+
+    @Test
+    void storesMissingMetricsLateReadingsAndAfterMaxSilence() {
+        filter.select(List.of(reading(10, 20.0, 50.0)));
+
+        SensorData missingTemperature = reading(11, null, 50.0);
+        SensorData late = reading(5, 20.0, 50.0);
+        SensorData silent = reading(71, null, 50.0);
+
+        assertEquals(List.of(missingTemperature), filter.select(List.of(missingTemperature, reading(12, null, 50.0))));
+        assertEquals(List.of(late), filter.select(List.of(late)));
+        assertEquals(List.of(silent), filter.select(List.of(reading(70, null, 50.0), silent)));
+    }
+}
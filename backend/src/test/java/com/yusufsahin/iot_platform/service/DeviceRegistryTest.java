@@ -0,0 +1,124 @@
+package com.yusufsahin.iot_platform.service;
+
+import com.yusufsahin.iot_platform.TestDatabase;
+import com.yusufsahin.iot_platform.model.SensorData;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class DeviceRegistryTest {
+
+    // Counts the statements that reach the database
+    private final AtomicInteger queries = new AtomicInteger();
+    private final JdbcTemplate jdbcTemplate = new JdbcTemplate(TestDatabase.dataSource()) {
+        @Override
+        public <T> List<T> query(String sql, RowMapper<T> rowMapper, Object... args) {
+            queries.incrementAndGet();
+            return super.query(sql, rowMapper, args);
+        }
+    };
+
+    private DeviceRegistry registry() {
+        return new DeviceRegistry(jdbcTemplate, new DataSourceTransactionManager(TestDatabase.dataSource()),
+                new SimpleMeterRegistry(), 100);
+    }
+
+    private static SensorData reading(String deviceId, String location) {
+        SensorData reading = new SensorData();
+        reading.setDeviceId(deviceId);
+        reading.setLocation(location);
+        return reading;
+    }
+
+    private static String registeredLocation(String deviceId) {
+        return TestDatabase.jdbcTemplate().queryForObject(
+                "SELECT location FROM iot_platform.devices WHERE device_id = ?", String.class, deviceId);
+    }
+
+    @Test
+    void assignsOneKeyPerDeviceAndRecordsItsNewestLocation() {
+        DeviceRegistry registry = registry();
+        List<SensorData> readings = List.of(reading("registry-a", "hall"), reading("registry-b", null),
+                reading("registry-a", "lab"));
+
+        registry.assignKeys(readings);
+
+        assertEquals(readings.get(0).getDeviceKey(), readings.get(2).getDeviceKey());
+        assertNotEquals(readings.get(0).getDeviceKey(), readings.get(1).getDeviceKey());
+        assertEquals("lab", registeredLocation("registry-a"));
+        assertNull(registeredLocation("registry-b"));
+        // A registry without the devices cached reads the same keys back from the table
+        assertEquals(readings.get(0).getDeviceKey(), registry().findKey("registry-a"));
+        assertEquals("registry-b", registry().get(readings.get(1).getDeviceKey()).getDeviceId());
+    }
+
+    @Test
+    void knownDevicesAreResolvedFromTheCache() {
+        DeviceRegistry registry = registry();
+        registry.assignKeys(List.of(reading("registry-cached", "hall")));
+        int registered = queries.get();
+
+        SensorData sameLocation = reading("registry-cached", "hall");
+        SensorData noLocation = reading("registry-cached", null);
+        registry.assignKeys(List.of(sameLocation, noLocation));
+        registry.findKey("registry-cached");
+        registry.get(sameLocation.getDeviceKey());
+
+        assertEquals(registered, queries.get());
+        assertEquals(sameLocation.getDeviceKey(), noLocation.getDeviceKey());
+
+        // A location change is written through
+        registry.assignKeys(List.of(reading("registry-cached", "lab")));
+        assertEquals(registered + 1, queries.get());
+        assertEquals("lab", registeredLocation("registry-cached"));
+    }
+
+    @Test
+    void concurrentFirstSightOfADeviceRegistersItOnce() throws Exception {
+        // Separate registries stand in for separate nodes, so none of them sees the others' cache
+        int threads = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        Set<Integer> keys = ConcurrentHashMap.newKeySet();
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                DeviceRegistry registry = registry();
+                futures.add(executor.submit(() -> {
+                    SensorData reading = reading("registry-concurrent", null);
+                    start.await();
+                    registry.assignKeys(List.of(reading));
+                    keys.add(reading.getDeviceKey());
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get(10, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(1, keys.size());
+        assertEquals(1, TestDatabase.jdbcTemplate().queryForObject(
+                "SELECT count(*) FROM iot_platform.devices WHERE device_id = 'registry-concurrent'", Integer.class));
+    }
+}
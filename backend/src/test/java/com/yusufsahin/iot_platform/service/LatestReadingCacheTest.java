@@ -0,0 +1,113 @@
+package com.yusufsahin.iot_platform.service;
+
+import com.yusufsahin.iot_platform.TestDatabase;
+import com.yusufsahin.iot_platform.model.SensorData;
+import com.yusufsahin.iot_platform.repository.SensorDataQueryRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class LatestReadingCacheTest {
+
+    private static final LocalDateTime START = LocalDateTime.of(2024, 3, 12, 12, 0);
+
+    private final DeviceRegistry deviceRegistry = new DeviceRegistry(TestDatabase.jdbcTemplate(),
+            new DataSourceTransactionManager(TestDatabase.dataSource()), new SimpleMeterRegistry(), 100);
+    private final LatestReadingCache cache = new LatestReadingCache(
+            new SensorDataQueryRepository(TestDatabase.dataSource(), deviceRegistry));
+    private final TransactionTemplate transactionTemplate =
+            new TransactionTemplate(new DataSourceTransactionManager(TestDatabase.dataSource()));
+
+    private static SensorData reading(String deviceId, long id, double temperature, LocalDateTime timestamp) {
+        SensorData reading = new SensorData();
+        reading.setId(id);
+        reading.setDeviceId(deviceId);
+        reading.setTemperature(temperature);
+        reading.setTimestamp(timestamp);
+        return reading;
+    }
+
+    private void insert(String deviceId, double temperature, LocalDateTime timestamp) {
+        SensorData reading = reading(deviceId, 0, temperature, timestamp);
+        deviceRegistry.assignKeys(List.of(reading));
+        TestDatabase.jdbcTemplate().update(
+                "INSERT INTO iot_platform.sensors (device_key, temperature, timestamp) VALUES (?, ?, ?)",
+                reading.getDeviceKey(), temperature, Timestamp.valueOf(timestamp));
+    }
+
+    @Test
+    void warmUpLoadsTheNewestReadingOfEachDevice() {
+        insert("latest-warm-a", 20.0, START.plusSeconds(1));
+        insert("latest-warm-a", 21.0, START.plusSeconds(2));
+        insert("latest-warm-a", 19.0, START);
+        insert("latest-warm-b", 30.0, START);
+
+        cache.warmUp();
+
+        assertEquals(21.0, cache.getLatest("latest-warm-a").temperature());
+        assertEquals(START.plusSeconds(2), cache.getLatest("latest-warm-a").timestamp());
+        assertEquals(30.0, cache.getLatest("latest-warm-b").temperature());
+        assertNull(cache.getLatest("latest-warm-missing"));
+    }
+
+    @Test
+    void readingsIngestedBeforeTheWarmUpWinWhenTheyAreNewer() {
+        insert("latest-warm-race", 20.0, START);
+        cache.record(List.of(reading("latest-warm-race", Long.MAX_VALUE, 25.0, START.plusSeconds(5))));
+
+        cache.warmUp();
+
+        assertEquals(25.0, cache.getLatest("latest-warm-race").temperature());
+    }
+
+    @Test
+    void keepsTheNewestReadingWhateverTheOrderTheyArriveIn() {
+        cache.record(List.of(reading("latest-order", 2, 22.0, START.plusSeconds(2)),
+                reading("latest-order", 3, 21.0, START.plusSeconds(1))));
+        assertEquals(22.0, cache.getLatest("latest-order").temperature());
+
+        // Same timestamp: the higher id wins, and a replay of the current reading is a no-op
+        cache.record(List.of(reading("latest-order", 4, 23.0, START.plusSeconds(2))));
+        cache.record(List.of(reading("latest-order", 1, 20.0, START.plusSeconds(2))));
+        cache.record(List.of(reading("latest-order", 4, 23.0, START.plusSeconds(2))));
+
+        assertEquals(23.0, cache.getLatest("latest-order").temperature());
+        assertEquals(4L, cache.getLatest("latest-order").id());
+    }
+
+    @Test
+    void readingsRecordedInATransactionOnlyShowOnceItCommits() {
+        transactionTemplate.executeWithoutResult(status -> {
+            cache.record(List.of(reading("latest-tx", 1, 20.0, START)));
+            assertNull(cache.getLatest("latest-tx"));
+        });
+        assertEquals(20.0, cache.getLatest("latest-tx").temperature());
+
+        transactionTemplate.executeWithoutResult(status -> {
+            cache.record(List.of(reading("latest-tx", 2, 21.0, START.plusSeconds(1))));
+            status.setRollbackOnly();
+        });
+        assertEquals(20.0, cache.getLatest("latest-tx").temperature());
+    }
+
+    @Test
+    void missingMetricsStayMissing() {
+        SensorData reading = reading("latest-missing-metrics", 1, 20.0, START);
+        reading.setTemperature(null);
+        reading.setBatteryLevel(0);
+
+        cache.record(List.of(reading));
+
+        assertNull(cache.getLatest("latest-missing-metrics").temperature());
+        assertNull(cache.getLatest("latest-missing-metrics").humidity());
+        assertEquals(0, cache.getLatest("latest-missing-metrics").batteryLevel());
+    }
+}
@@ -0,0 +1,134 @@
+package com.yusufsahin.iot_platform.service;
+
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+import org.flywaydb.core.Flyway;
+import org.flywaydb.core.api.configuration.FluentConfiguration;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.MethodOrderer;
+import org.junit.jupiter.api.Order;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestMethodOrder;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Runs on a database of its own: the partitioned storage mode replaces the tables TestDatabase's other users share.
+// The tests run in order, as each maintenance run expires partitions the earlier tests look at.
+@TestMethodOrder(MethodOrderer.OrderAnnotation.class)
+class PartitionMaintenanceTest {
+
+    private static final LocalDate TODAY = LocalDate.now();
+
+    private static EmbeddedPostgres postgres;
+    private static JdbcTemplate jdbcTemplate;
+    private static long oldSensorId;
+
+    @BeforeAll
+    static void migrateAnExistingDatabaseToPartitionedStorage() throws IOException {
+        postgres = EmbeddedPostgres.builder().start();
+        DataSource dataSource = postgres.getPostgresDatabase();
+        jdbcTemplate = new JdbcTemplate(dataSource);
+
+        // Rows written in the plain mode, before the partitioned one is enabled
+        flyway(dataSource).target("4").load().migrate();
+        oldSensorId = jdbcTemplate.queryForObject("INSERT INTO iot_platform.sensors (device_id, temperature, timestamp) " +
+                "VALUES ('partition-device', 20.0, ?) RETURNING id", Long.class, noonOf(TODAY.minusDays(40)));
+        jdbcTemplate.update("INSERT INTO iot_platform.sensors (device_id, temperature, timestamp) " +
+                "VALUES ('partition-device', 21.0, ?)", noonOf(TODAY));
+        insertAlert(TODAY.minusDays(100));
+        insertAlert(TODAY.minusDays(50));
+
+        flyway(dataSource).load().migrate();
+    }
+
+    @AfterAll
+    static void stop() throws IOException {
+        postgres.close();
+    }
+
+    private static FluentConfiguration flyway(DataSource dataSource) {
+        return Flyway.configure()
+                .dataSource(dataSource)
+                .schemas("iot_platform")
+                .defaultSchema("iot_platform")
+                .locations("classpath:db/migration", "classpath:db/partitioned")
+                .outOfOrder(true);
+    }
+
+    private static Timestamp noonOf(LocalDate day) {
+        return Timestamp.valueOf(day.atTime(12, 0));
+    }
+
+    private static void insertAlert(LocalDate day) {
+        jdbcTemplate.update("INSERT INTO iot_platform.alert_messages (message, severity, alert_type, timestamp, " +
+                "device_id, status) VALUES ('m', 'WARNING', 'TEMPERATURE_HIGH', ?, 'partition-device', 'OPEN')", noonOf(day));
+    }
+
+    private static String partition(String table, LocalDate day) {
+        return table + "_p" + day.format(DateTimeFormatter.BASIC_ISO_DATE);
+    }
+
+    private static List<String> partitions(String schema) {
+        return jdbcTemplate.queryForList("SELECT c.relname FROM pg_class c JOIN pg_namespace n ON n.oid = c.relnamespace " +
+                "WHERE n.nspname = ? AND c.relkind = 'r'", String.class, schema);
+    }
+
+    @Test
+    @Order(1)
+    void migrationMovesExistingRowsIntoDayPartitionsAndKeepsTheirIds() {
+        assertEquals(partition("sensors", TODAY.minusDays(40)), jdbcTemplate.queryForObject("SELECT c.relname " +
+                "FROM iot_platform.sensors s JOIN pg_class c ON c.oid = s.tableoid WHERE s.id = ?", String.class, oldSensorId));
+        assertEquals("partition-device", jdbcTemplate.queryForObject("SELECT d.device_id FROM iot_platform.sensors s " +
+                "JOIN iot_platform.devices d USING (device_key) WHERE s.id = ?", String.class, oldSensorId));
+        assertEquals(2, jdbcTemplate.queryForObject(
+                "SELECT count(*) FROM iot_platform.alert_messages WHERE device_id = 'partition-device'", Integer.class));
+
+        // New rows continue the old id sequence, and alert rows keep their upsert key
+        long newSensorId = jdbcTemplate.queryForObject("INSERT INTO iot_platform.sensors (device_key, temperature, timestamp) " +
+                "SELECT device_key, 22.0, ? FROM iot_platform.devices WHERE device_id = 'partition-device' RETURNING id",
+                Long.class, noonOf(TODAY));
+        assertTrue(newSensorId > oldSensorId + 1);
+        assertEquals(2, jdbcTemplate.queryForObject("INSERT INTO iot_platform.alert_messages AS a (message, alert_type, " +
+                "timestamp, device_id) VALUES ('m', 'TEMPERATURE_HIGH', ?, 'partition-device') " +
+                "ON CONFLICT (device_id, alert_type, timestamp) DO UPDATE SET occurrences = a.occurrences + 1 " +
+                "RETURNING occurrences", Integer.class, noonOf(TODAY.minusDays(50))));
+    }
+
+    @Test
+    @Order(2)
+    void createsPartitionsAheadAndDropsTheExpiredOnes() {
+        new PartitionMaintenance(jdbcTemplate, 10, 30, 90, PartitionMaintenance.RetentionMode.DROP).maintain();
+
+        List<String> partitions = partitions("iot_platform");
+        assertTrue(partitions.contains(partition("sensors", TODAY.plusDays(10))));
+        assertTrue(partitions.contains(partition("alert_messages", TODAY.plusDays(10))));
+        assertFalse(partitions.contains(partition("sensors", TODAY.minusDays(40))));
+        assertFalse(partitions.contains(partition("alert_messages", TODAY.minusDays(100))));
+        assertTrue(partitions.contains(partition("sensors", TODAY)));
+        assertTrue(partitions.contains(partition("alert_messages", TODAY.minusDays(50))));
+        assertEquals(0, jdbcTemplate.queryForObject("SELECT count(*) FROM iot_platform.sensors WHERE id = ?",
+                Integer.class, oldSensorId));
+    }
+
+    @Test
+    @Order(3)
+    void detachedPartitionsKeepTheirRowsInTheArchiveSchema() {
+        new PartitionMaintenance(jdbcTemplate, 0, 3650, 30, PartitionMaintenance.RetentionMode.DETACH).maintain();
+
+        String detached = partition("alert_messages", TODAY.minusDays(50));
+        assertFalse(partitions("iot_platform").contains(detached));
+        assertEquals(1, jdbcTemplate.queryForObject("SELECT count(*) FROM iot_platform_archive." + detached, Integer.class));
+        assertEquals(0, jdbcTemplate.queryForObject("SELECT count(*) FROM iot_platform.alert_messages WHERE timestamp = ?",
+                Integer.class, noonOf(TODAY.minusDays(50))));
+    }
+}
@@ -0,0 +1,49 @@
+package com.yusufsahin.iot_platform.service;
+
+import com.yusufsahin.iot_platform.model.SensorData;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class SensorDataCsvWriterTest {
+
+    private static String write(SensorData reading) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        SensorDataCsvWriter csv = new SensorDataCsvWriter(out);
+        csv.writeHeader();
+        csv.write(reading);
+        csv.flush();
+        return out.toString(StandardCharsets.UTF_8);
+    }
+
+    private static SensorData reading(String deviceId, String location) {
+        SensorData reading = new SensorData();
+        reading.setId(42L);
+        reading.setDeviceId(deviceId);
+        reading.setLocation(location);
+        reading.setTimestamp(LocalDateTime.of(2024, 3, 10, 12, 0, 5));
+        reading.setTemperature(21.5);
+        reading.setPressure(1013.25);
+        reading.setBatteryLevel(87);
+        return reading;
+    }
+
+    @Test
+    void writesHeaderAndRowWithEmptyNulls() throws IOException {
+        assertEquals(SensorDataCsvWriter.HEADER + "\r\n" + "42,d1,2024-03-10T12:00:05,21.5,,1013.25,87,Lab\r\n",
+                write(reading("d1", "Lab")));
+    }
+
+    @Test
+    void quotesFieldsWithSeparatorsAndQuotes() throws IOException {
+        String csv = write(reading("d,1", "Hall \"B\""));
+
+        assertEquals("42,\"d,1\",2024-03-10T12:00:05,21.5,,1013.25,87,\"Hall \"\"B\"\"\"\r\n",
+                csv.substring(csv.indexOf("\r\n") + 2));
+    }
+}
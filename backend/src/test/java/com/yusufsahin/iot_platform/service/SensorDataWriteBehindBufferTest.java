@@ -0,0 +1,196 @@
+package com.yusufsahin.iot_platform.service;
+
+import com.yusufsahin.iot_platform.dto.SensorDataDto;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.kafka.config.KafkaListenerEndpointRegistry;
+import org.springframework.kafka.core.DefaultKafkaConsumerFactory;
+import org.springframework.kafka.core.DefaultKafkaProducerFactory;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.listener.ConcurrentMessageListenerContainer;
+import org.springframework.kafka.listener.ContainerProperties;
+import org.springframework.kafka.listener.MessageListenerContainer;
+import org.springframework.kafka.support.Acknowledgment;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SensorDataWriteBehindBufferTest {
+
+    private static final LocalDateTime START = LocalDateTime.of(2024, 3, 10, 12, 0);
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    // Each flush takes one permit before it persists, so a test decides when the writer makes progress
+    private final Semaphore flushPermits = new Semaphore(0);
+    private final Set<SensorDataDto> persisted = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger persistAttempts = new AtomicInteger();
+    private volatile boolean databaseDown;
+    private volatile String failingDevice;
+    private final List<SensorDataDto> diverted = Collections.synchronizedList(new ArrayList<>());
+    private final ConcurrentMessageListenerContainer<String, String> container = new ConcurrentMessageListenerContainer<>(
+            new DefaultKafkaConsumerFactory<>(Map.of()), new ContainerProperties("sensor-data"));
+    private SensorDataWriteBehindBuffer buffer;
+
+    private final SensorDataService sensorDataService = new SensorDataService(null, null, null, null, null, null, null,
+            null, null, null, null, null, null) {
+        @Override
+        public List<SensorDataDto> processAndSaveSensorDataBatch(List<SensorDataDto> readings) {
+            flushPermits.acquireUninterruptibly();
+            persistAttempts.incrementAndGet();
+            if (databaseDown || readings.stream().anyMatch(reading -> reading.deviceId().equals(failingDevice))) {
+                throw new IllegalStateException("database down");
+            }
+            persisted.addAll(readings);
+            return readings;
+        }
+    };
+
+    private SensorDataWriteBehindBuffer buffer(int capacity, int flushSize, long maxOutageMillis) {
+        return buffer(capacity, flushSize, maxOutageMillis, 1);
+    }
+
+    private SensorDataWriteBehindBuffer buffer(int capacity, int flushSize, long maxOutageMillis, int workers) {
+        SensorDataBroadcaster broadcaster = new SensorDataBroadcaster(null, null, null, meterRegistry, null, null, 250) {
+            @Override
+            public void offer(SensorDataDto sensorData) {
+            }
+        };
+        SensorDataRecoveryPublisher recoveryPublisher = new SensorDataRecoveryPublisher(
+                new KafkaTemplate<>(new DefaultKafkaProducerFactory<>(Map.of())), meterRegistry, 1000) {
+            @Override
+            public void divert(List<SensorDataDto> readings, Exception cause) {
+                diverted.addAll(readings);
+            }
+        };
+        KafkaListenerEndpointRegistry listenerRegistry = new KafkaListenerEndpointRegistry() {
+            @Override
+            public MessageListenerContainer getListenerContainer(String id) {
+                return container;
+            }
+        };
+        buffer = new SensorDataWriteBehindBuffer(sensorDataService, broadcaster, new StripedIngestExecutor(workers),
+                recoveryPublisher, listenerRegistry,
+                meterRegistry, capacity, flushSize, 10, 0.8, 0.5, 1, maxOutageMillis);
+        buffer.start();
+        return buffer;
+    }
+
+    @AfterEach
+    void stopWriter() throws InterruptedException {
+        flushPermits.release(1000);
+        buffer.stop();
+    }
+
+    private static List<SensorDataDto> poll(int first, int count) {
+        List<SensorDataDto> readings = new ArrayList<>(count);
+        for (int i = first; i < first + count; i++) {
+            readings.add(new SensorDataDto(null, "device-" + i % 3, 20.0, null, null, START.plusSeconds(i), null, null));
+        }
+        return readings;
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.nanoTime() < deadline, "Timed out");
+            Thread.sleep(5);
+        }
+    }
+
+    @Test
+    void acknowledgesEachPollAfterItsReadingsArePersistedAndInArrivalOrder() throws InterruptedException {
+        buffer(100, 2, 1000);
+        List<Integer> acknowledged = Collections.synchronizedList(new ArrayList<>());
+        List<List<SensorDataDto>> polls = List.of(poll(0, 2), poll(2, 1), poll(3, 3), poll(6, 2));
+        for (int i = 0; i < polls.size(); i++) {
+            int index = i;
+            List<SensorDataDto> readings = polls.get(i);
+            Acknowledgment acknowledgment = () -> {
+                assertTrue(persisted.containsAll(readings), "Poll " + index + " acknowledged before it was persisted");
+                acknowledged.add(index);
+            };
+            buffer.append(readings, acknowledgment);
+        }
+
+        Thread.sleep(50);
+        assertTrue(acknowledged.isEmpty());
+
+        flushPermits.release(polls.size());
+        await(() -> acknowledged.size() == polls.size());
+        assertEquals(List.of(0, 1, 2, 3), acknowledged);
+        assertEquals(0, buffer.getSize());
+    }
+
+    @Test
+    void pausesTheListenerAtTheHighWatermarkAndResumesAtTheLowOne() throws InterruptedException {
+        // Watermarks at 8 and 5 readings; every poll of 2 readings is flushed on its own
+        buffer(10, 2, 1000);
+        for (int i = 0; i < 3; i++) {
+            buffer.append(poll(2 * i, 2), () -> { });
+        }
+        assertFalse(container.isPauseRequested());
+        buffer.append(poll(6, 2), () -> { });
+        assertTrue(container.isPauseRequested());
+
+        flushPermits.release();
+        await(() -> buffer.getSize() == 6);
+        assertTrue(container.isPauseRequested());
+
+        // The listener is resumed just after the size has dropped
+        flushPermits.release();
+        await(() -> !container.isPauseRequested());
+        assertEquals(4, buffer.getSize());
+    }
+
+    @Test
+    void divertsReadingsToTheRetryTopicsOnceTheOutageOutlastsMaxOutage() throws InterruptedException {
+        buffer(100, 10, 50);
+        databaseDown = true;
+        flushPermits.release(1000);
+        AtomicInteger acknowledgments = new AtomicInteger();
+        List<SensorDataDto> readings = poll(0, 4);
+
+        buffer.append(readings, acknowledgments::incrementAndGet);
+
+        await(() -> acknowledgments.get() == 1);
+        assertTrue(persistAttempts.get() > 1);
+        assertEquals(readings, diverted);
+        assertTrue(persisted.isEmpty());
+        assertEquals(0, buffer.getSize());
+    }
+
+    @Test
+    void retriesAndDivertsOnlyTheStripesThatFailed() throws InterruptedException {
+        // device-0 and device-1 hash to different stripes of two
+        buffer(100, 10, 50, 2);
+        failingDevice = "device-0";
+        flushPermits.release(1000);
+        AtomicInteger acknowledgments = new AtomicInteger();
+        List<SensorDataDto> readings = poll(0, 6);
+
+        buffer.append(readings, acknowledgments::incrementAndGet);
+
+        await(() -> acknowledgments.get() == 1);
+        assertTrue(diverted.stream().anyMatch(reading -> reading.deviceId().equals("device-0")));
+        assertTrue(persisted.stream().anyMatch(reading -> reading.deviceId().equals("device-1")));
+        assertTrue(diverted.stream().noneMatch(persisted::contains));
+        assertEquals(readings.size(), diverted.size() + persisted.size());
+        // The stripe that committed was written once, the failing one until it was diverted
+        assertTrue(persistAttempts.get() > 2);
+        assertEquals(persistAttempts.get(), (int) meterRegistry.get("iot.ingest.buffer.flush.failures").counter().count() + 1);
+    }
+}
@@ -0,0 +1,127 @@
+package com.yusufsahin.iot_platform.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class StripedIngestExecutorTest {
+
+    // "device-<n>:<sequence>"
+    private static List<String> readings(int devices, int perDevice) {
+        List<String> readings = new ArrayList<>(devices * perDevice);
+        for (int sequence = 0; sequence < perDevice; sequence++) {
+            for (int device = 0; device < devices; device++) {
+                readings.add("device-" + device + ":" + sequence);
+            }
+        }
+        return readings;
+    }
+
+    private static String deviceOf(String reading) {
+        return reading.substring(0, reading.indexOf(':'));
+    }
+
+    @Test
+    void keepsEveryKeyOnOneStripeInItsOriginalOrder() throws InterruptedException {
+        try (StripedIngestExecutor executor = new StripedIngestExecutor(4)) {
+            Map<String, String> threadOfDevice = new ConcurrentHashMap<>();
+            Map<String, List<String>> seen = new ConcurrentHashMap<>();
+            for (int poll = 0; poll < 5; poll++) {
+                executor.execute(readings(20, 10), StripedIngestExecutorTest::deviceOf, share -> {
+                    for (String reading : share) {
+                        String device = deviceOf(reading);
+                        assertEquals(Thread.currentThread().getName(),
+                                threadOfDevice.computeIfAbsent(device, d -> Thread.currentThread().getName()));
+                        seen.computeIfAbsent(device, d -> Collections.synchronizedList(new ArrayList<>())).add(reading);
+                    }
+                });
+            }
+
+            assertEquals(20, seen.size());
+            assertTrue(threadOfDevice.values().stream().distinct().count() > 1, "Expected more than one stripe in use");
+            for (List<String> history : seen.values()) {
+                assertEquals(50, history.size());
+                for (int i = 0; i < history.size(); i++) {
+                    assertTrue(history.get(i).endsWith(":" + i % 10), history.toString());
+                }
+            }
+        }
+    }
+
+    @Test
+    void rethrowsTheFirstFailureOnlyOnceEveryStripeHasFinished() throws InterruptedException {
+        try (StripedIngestExecutor executor = new StripedIngestExecutor(4)) {
+            RuntimeException failure = new IllegalStateException("stripe failed");
+            AtomicInteger finished = new AtomicInteger();
+            AtomicInteger stripes = new AtomicInteger();
+            CountDownLatch failed = new CountDownLatch(1);
+
+            RuntimeException thrown = assertThrows(RuntimeException.class, () ->
+                    executor.execute(readings(20, 1), StripedIngestExecutorTest::deviceOf, share -> {
+                        if (stripes.getAndIncrement() == 0) {
+                            failed.countDown();
+                            throw failure;
+                        }
+                        // The other stripes are still running when the first one fails
+                        try {
+                            assertTrue(failed.await(5, TimeUnit.SECONDS));
+                            Thread.sleep(50);
+                        } catch (InterruptedException e) {
+                            throw new IllegalStateException(e);
+                        }
+                        finished.incrementAndGet();
+                    }));
+
+            assertSame(failure, thrown);
+            assertEquals(stripes.get() - 1, finished.get());
+        }
+    }
+
+    @Test
+    void executeEachReturnsTheSharesOfTheFailedStripesOnly() throws InterruptedException {
+        try (StripedIngestExecutor executor = new StripedIngestExecutor(4)) {
+            RuntimeException failure = new IllegalStateException("stripe failed");
+            List<String> readings = readings(20, 3);
+            Set<String> committed = ConcurrentHashMap.newKeySet();
+
+            List<StripedIngestExecutor.StripeFailure<String>> failures = executor.executeEach(readings,
+                    StripedIngestExecutorTest::deviceOf, share -> {
+                        if (share.contains("device-0:0")) {
+                            throw failure;
+                        }
+                        committed.addAll(share);
+                    });
+
+            assertEquals(1, failures.size());
+            assertSame(failure, failures.get(0).cause());
+            List<String> failed = failures.get(0).items();
+            assertTrue(failed.containsAll(List.of("device-0:0", "device-0:1", "device-0:2")));
+            assertEquals(readings.size(), failed.size() + committed.size());
+            assertTrue(failed.stream().noneMatch(committed::contains));
+        }
+    }
+
+    @Test
+    void singleWorkerRunsOnTheCallingThread() throws InterruptedException {
+        try (StripedIngestExecutor executor = new StripedIngestExecutor(1)) {
+            List<String> threads = new ArrayList<>();
+            executor.execute(readings(5, 2), StripedIngestExecutorTest::deviceOf,
+                    share -> threads.add(Thread.currentThread().getName()));
+
+            assertEquals(List.of(Thread.currentThread().getName()), threads);
+        }
+    }
+}
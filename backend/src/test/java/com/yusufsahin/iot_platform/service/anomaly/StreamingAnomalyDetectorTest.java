@@ -0,0 +1,110 @@
+package com.yusufsahin.iot_platform.service.anomaly;
+
+import com.yusufsahin.iot_platform.model.AlertMessage;
+import com.yusufsahin.iot_platform.model.SensorData;
+import com.yusufsahin.iot_platform.service.rule.CompiledRule;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class StreamingAnomalyDetectorTest {
+
+    private static final LocalDateTime START = LocalDateTime.of(2024, 3, 10, 12, 0);
+
+    private static final class Recorder implements AnomalyHandler {
+        final List<AlertMessage.AlertType> matches = new ArrayList<>();
+        int scores;
+
+        @Override
+        public void onScore(CompiledRule rule, double score) {
+            scores++;
+        }
+
+        @Override
+        public void onMatch(CompiledRule rule, SensorData sensorData, double value) {
+            matches.add(rule.getAlertType());
+        }
+    }
+
+    private static StreamingAnomalyDetector detector(int maxDevices) {
+        return new StreamingAnomalyDetector(new SimpleMeterRegistry(), true, 0.05, 30, 0.5,
+                4.0, 2.0, 10.0, 3.0, AlertMessage.AlertSeverity.WARNING, maxDevices);
+    }
+
+    private static SensorData reading(String deviceId, int second, double temperature) {
+        SensorData sensorData = new SensorData();
+        sensorData.setDeviceId(deviceId);
+        sensorData.setTemperature(temperature);
+        sensorData.setTimestamp(START.plusSeconds(second));
+        return sensorData;
+    }
+
+    // Small oscillation around 20 degrees, one reading per second
+    private static void feedSteady(StreamingAnomalyDetector detector, String deviceId, int readings, Recorder recorder) {
+        for (int i = 0; i < readings; i++) {
+            detector.evaluate(reading(deviceId, i, 20.0 + (i % 2 == 0 ? 0.2 : -0.2)), recorder);
+        }
+    }
+
+    @Test
+    void doesNotScoreDuringWarmup() {
+        StreamingAnomalyDetector detector = detector(10);
+        Recorder recorder = new Recorder();
+        feedSteady(detector, "d1", 29, recorder);
+        detector.evaluate(reading("d1", 29, 80.0), recorder);
+
+        assertEquals(0, recorder.scores);
+        assertTrue(recorder.matches.isEmpty());
+    }
+
+    @Test
+    void steadySignalRaisesNothing() {
+        StreamingAnomalyDetector detector = detector(10);
+        Recorder recorder = new Recorder();
+        feedSteady(detector, "d1", 500, recorder);
+
+        assertTrue(recorder.scores > 0);
+        assertTrue(recorder.matches.isEmpty());
+    }
+
+    @Test
+    void spikeRaisesZScoreAndJump() {
+        StreamingAnomalyDetector detector = detector(10);
+        Recorder recorder = new Recorder();
+        feedSteady(detector, "d1", 100, recorder);
+        detector.evaluate(reading("d1", 100, 27.0), recorder);
+
+        assertEquals(List.of(AlertMessage.AlertType.ZSCORE_ANOMALY, AlertMessage.AlertType.SUDDEN_JUMP), recorder.matches);
+    }
+
+    @Test
+    void devicesKeepSeparateStatistics() {
+        StreamingAnomalyDetector detector = detector(10);
+        Recorder recorder = new Recorder();
+        feedSteady(detector, "d1", 100, recorder);
+        for (int i = 0; i < 100; i++) {
+            detector.evaluate(reading("d2", i, 60.0 + (i % 2 == 0 ? 0.2 : -0.2)), recorder);
+        }
+
+        assertTrue(recorder.matches.isEmpty());
+    }
+
+    @Test
+    void ignoresDevicesBeyondCapacity() {
+        StreamingAnomalyDetector detector = detector(1);
+        Recorder recorder = new Recorder();
+        feedSteady(detector, "d1", 100, recorder);
+        feedSteady(detector, "d2", 100, recorder);
+        int scored = recorder.scores;
+        detector.evaluate(reading("d2", 100, 90.0), recorder);
+
+        assertEquals(scored, recorder.scores);
+        assertTrue(recorder.matches.isEmpty());
+    }
+}
@@ -0,0 +1,65 @@
+package com.yusufsahin.iot_platform.service.hot;
+
+import com.yusufsahin.iot_platform.dto.SensorDataDto;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class GorillaChunkTest {
+
+    private static final LocalDateTime START = LocalDateTime.of(2024, 3, 10, 12, 0);
+
+    private static List<SensorDataDto> decode(GorillaChunk chunk, LocalDateTime from, LocalDateTime to) {
+        List<SensorDataDto> out = new ArrayList<>();
+        chunk.decode(GorillaChunk.toMicros(from), GorillaChunk.toMicros(to), "d1", "Lab", out);
+        return out;
+    }
+
+    @Test
+    void roundTripsIrregularReadingsWithMissingMetrics() {
+        Random random = new Random(7);
+        GorillaChunk chunk = new GorillaChunk(1000);
+        List<SensorDataDto> expected = new ArrayList<>();
+        LocalDateTime timestamp = START;
+        long id = 100;
+        for (int i = 0; i < 1000; i++) {
+            timestamp = timestamp.plusNanos(random.nextInt(3) == 0 ? 1_000_000_000L : random.nextLong(1, 90_000_000_000L) / 1000 * 1000);
+            id += random.nextInt(3) == 0 ? 7 : random.nextInt(1, 5000);
+            Double temperature = random.nextInt(10) == 0 ? null : Math.round(random.nextGaussian() * 100) / 10.0;
+            Double humidity = i % 3 == 0 ? 55.5 : random.nextDouble() * 100;
+            Double pressure = random.nextInt(20) == 0 ? null : -1013.25 + i;
+            Integer batteryLevel = i % 7 == 0 ? null : 100 - i % 100;
+            expected.add(new SensorDataDto(id, "d1", temperature, humidity, pressure, timestamp, "Lab", batteryLevel));
+            chunk.append(GorillaChunk.toMicros(timestamp), id, new double[]{
+                    temperature == null ? Double.NaN : temperature,
+                    humidity,
+                    pressure == null ? Double.NaN : pressure,
+                    batteryLevel == null ? Double.NaN : batteryLevel});
+        }
+
+        assertEquals(expected, decode(chunk, START, timestamp.plusSeconds(1)));
+        chunk.trim();
+        assertEquals(expected, decode(chunk, START, timestamp.plusSeconds(1)));
+    }
+
+    @Test
+    void regularReadingsCompressWellAndDecodeByWindow() {
+        GorillaChunk chunk = new GorillaChunk(600);
+        for (int i = 0; i < 600; i++) {
+            chunk.append(GorillaChunk.toMicros(START.plusSeconds(i)), 1000L + 5 * i, new double[]{21.5, 40.0 + (i / 60), 1013.0, 90});
+        }
+        chunk.trim();
+
+        // ~3 bytes per reading against 48 raw
+        assertTrue(chunk.sizeBytes() - GorillaChunk.OVERHEAD_BYTES < 600 * 3, "bytes: " + chunk.sizeBytes());
+        List<SensorDataDto> window = decode(chunk, START.plusSeconds(100), START.plusSeconds(110));
+        assertEquals(10, window.size());
+        assertEquals(new SensorDataDto(1500L, "d1", 21.5, 41.0, 1013.0, START.plusSeconds(100), "Lab", 90), window.get(0));
+    }
+}
@@ -0,0 +1,116 @@
+package com.yusufsahin.iot_platform.service.hot;
+
+import com.yusufsahin.iot_platform.dto.SensorDataDto;
+import com.yusufsahin.iot_platform.model.SensorData;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class SensorDataHotTierTest {
+
+    private static final LocalDateTime START = LocalDateTime.now().withNano(0).minusHours(1);
+
+    private long nextId = 1;
+
+    private SensorData reading(int deviceKey, int second) {
+        SensorData reading = new SensorData();
+        reading.setId(nextId++);
+        reading.setDeviceKey(deviceKey);
+        reading.setTimestamp(START.plusSeconds(second));
+        reading.setTemperature(20.0 + second % 5);
+        return reading;
+    }
+
+    private List<SensorDataDto> find(SensorDataHotTier hotTier, int deviceKey, int fromSecond, int toSecond) {
+        return hotTier.find(deviceKey, "d" + deviceKey, START.plusSeconds(fromSecond), START.plusSeconds(toSecond));
+    }
+
+    @Test
+    void servesRangesFromFirstReadingOnAndStepsPastLateReadings() {
+        SensorDataHotTier hotTier = new SensorDataHotTier(new SimpleMeterRegistry(), true, 6, 256, 16);
+        hotTier.resetCoverage(true);
+        List<SensorData> readings = new ArrayList<>();
+        for (int second = 10; second < 100; second++) {
+            readings.add(reading(1, second));
+        }
+        hotTier.record(readings);
+
+        assertNull(find(hotTier, 1, 0, 50));
+        assertNull(find(hotTier, 2, 10, 50));
+        List<SensorDataDto> held = find(hotTier, 1, 10, 50);
+        assertNotNull(held);
+        assertEquals(40, held.size());
+        assertEquals(START.plusSeconds(10), held.get(0).timestamp());
+
+        hotTier.record(List.of(reading(1, 60)));
+
+        assertNull(find(hotTier, 1, 50, 70));
+        assertEquals(39, find(hotTier, 1, 61, 200).size());
+    }
+
+    @Test
+    void evictsOldestChunksBeyondBudget() {
+        SensorDataHotTier hotTier = new SensorDataHotTier(new SimpleMeterRegistry(), true, 6, 1, 64);
+        hotTier.resetCoverage(true);
+        for (int batch = 0; batch < 400; batch++) {
+            List<SensorData> readings = new ArrayList<>();
+            for (int second = batch * 64; second < (batch + 1) * 64; second++) {
+                for (int device = 0; device < 10; device++) {
+                    readings.add(reading(device, second));
+                }
+            }
+            hotTier.record(readings);
+        }
+
+        assertNull(find(hotTier, 3, 0, 64));
+        assertEquals(64, find(hotTier, 3, 399 * 64, 400 * 64).size());
+    }
+
+    @Test
+    void answersOnlyAsSoleIngesterAndFromTheFirstReadingAfterAReassignment() {
+        SensorDataHotTier hotTier = new SensorDataHotTier(new SimpleMeterRegistry(), true, 6, 256, 16);
+        List<SensorData> readings = new ArrayList<>();
+        for (int second = 0; second < 30; second++) {
+            readings.add(reading(1, second));
+        }
+        hotTier.record(readings);
+        assertNull(find(hotTier, 1, 0, 30));
+
+        hotTier.resetCoverage(true);
+        assertNull(find(hotTier, 1, 0, 30));
+
+        // Readings 30..39 went to another instance while the partition was away
+        hotTier.record(List.of(reading(1, 40), reading(1, 41)));
+        assertNull(find(hotTier, 1, 31, 42));
+        assertEquals(2, find(hotTier, 1, 40, 42).size());
+
+        hotTier.resetCoverage(false);
+        assertNull(find(hotTier, 1, 40, 42));
+    }
+
+    @Test
+    void movedDeviceIsOnlyServedFromItsFirstReadingAtTheNewLocation() {
+        SensorDataHotTier hotTier = new SensorDataHotTier(new SimpleMeterRegistry(), true, 6, 256, 16);
+        hotTier.resetCoverage(true);
+        List<SensorData> readings = new ArrayList<>();
+        for (int second = 0; second < 40; second++) {
+            SensorData reading = reading(1, second);
+            reading.setLocation(second < 20 ? "A" : "B");
+            readings.add(reading);
+        }
+        hotTier.record(readings);
+
+        assertNull(find(hotTier, 1, 0, 10));
+        assertNull(find(hotTier, 1, 10, 30));
+        List<SensorDataDto> moved = find(hotTier, 1, 20, 40);
+        assertEquals(20, moved.size());
+        assertEquals(List.of("B"), moved.stream().map(SensorDataDto::location).distinct().toList());
+    }
+}
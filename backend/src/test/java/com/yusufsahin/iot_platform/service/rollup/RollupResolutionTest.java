@@ -0,0 +1,46 @@
+package com.yusufsahin.iot_platform.service.rollup;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class RollupResolutionTest {
+
+    private static final LocalDateTime NOW = LocalDateTime.of(2024, 3, 10, 14, 37, 12);
+
+    @Test
+    void alignsBucketStartsToResolution() {
+        assertEquals(LocalDateTime.of(2024, 3, 10, 14, 37), RollupResolution.MINUTE.bucketStart(NOW));
+        assertEquals(LocalDateTime.of(2024, 3, 10, 14, 0), RollupResolution.HOUR.bucketStart(NOW));
+        assertEquals(LocalDateTime.of(2024, 3, 10, 0, 0), RollupResolution.DAY.bucketStart(NOW));
+    }
+
+    @Test
+    void choosesFinestResolutionWithinBucketBudget() {
+        assertEquals(RollupResolution.MINUTE, RollupResolution.choose(NOW.minusHours(6), NOW, 1500));
+        assertEquals(RollupResolution.HOUR, RollupResolution.choose(NOW.minusDays(30), NOW, 1500));
+        assertEquals(RollupResolution.DAY, RollupResolution.choose(NOW.minusDays(365), NOW, 1500));
+        assertEquals(RollupResolution.DAY, RollupResolution.choose(NOW.minusYears(10), NOW, 1500));
+    }
+
+    @Test
+    void mergesPartialBuckets() {
+        RollupAccumulator first = new RollupAccumulator();
+        first.add(new double[]{20.0, Double.NaN, 1000.0, 80}, 1_000);
+        first.add(new double[]{24.0, Double.NaN, 1002.0, 79}, 2_000);
+        RollupAccumulator second = new RollupAccumulator();
+        second.add(new double[]{18.0, 40.0, 1001.0, 78}, 3_000);
+
+        first.merge(second);
+
+        assertEquals(18.0, first.getMin(0));
+        assertEquals(24.0, first.getMax(0));
+        assertEquals(62.0, first.getSum(0));
+        assertEquals(3, first.getCount(0));
+        assertEquals(18.0, first.getLast(0));
+        assertEquals(1, first.getCount(1));
+        assertEquals(78, first.getLast(3));
+    }
+}
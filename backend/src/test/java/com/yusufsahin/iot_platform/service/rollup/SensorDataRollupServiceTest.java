@@ -0,0 +1,67 @@
+package com.yusufsahin.iot_platform.service.rollup;
+
+import com.yusufsahin.iot_platform.TestDatabase;
+import com.yusufsahin.iot_platform.model.SensorData;
+import com.yusufsahin.iot_platform.repository.SensorDataRollupRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.TransientDataAccessResourceException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+
+import javax.sql.DataSource;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class SensorDataRollupServiceTest {
+
+    private static final LocalDateTime START = LocalDateTime.of(2024, 3, 10, 12, 0, 30);
+    // Four metrics each: 1200 rows per resolution, i.e. two batches of at most 1000
+    private static final int DEVICES = 300;
+
+    @Test
+    void flushFailingAfterItsFirstBatchDoesNotCountThatBatchTwice() {
+        DataSource dataSource = TestDatabase.dataSource();
+        AtomicInteger batches = new AtomicInteger();
+        // Fails the second batch of the first flush, after the first one went through
+        JdbcTemplate failingOnce = new JdbcTemplate(dataSource) {
+            @Override
+            public int[] batchUpdate(String sql, List<Object[]> batchArgs) {
+                if (batches.incrementAndGet() == 2) {
+                    throw new TransientDataAccessResourceException("connection reset");
+                }
+                return super.batchUpdate(sql, batchArgs);
+            }
+        };
+        SensorDataRollupService service = new SensorDataRollupService(
+                new SensorDataRollupRepository(failingOnce, new DataSourceTransactionManager(dataSource)), 1500);
+
+        List<SensorData> readings = new ArrayList<>(DEVICES);
+        for (int i = 0; i < DEVICES; i++) {
+            SensorData reading = new SensorData();
+            reading.setDeviceId("rollup-retry-" + i);
+            reading.setTimestamp(START);
+            reading.setTemperature(20.0 + i);
+            reading.setHumidity(50.0);
+            reading.setPressure(1013.0);
+            reading.setBatteryLevel(90);
+            readings.add(reading);
+        }
+        service.record(readings);
+
+        service.flush();
+        service.flush();
+
+        JdbcTemplate jdbcTemplate = TestDatabase.jdbcTemplate();
+        for (RollupResolution resolution : RollupResolution.VALUES) {
+            String table = "iot_platform." + resolution.getTable();
+            assertEquals(DEVICES * 4, jdbcTemplate.queryForObject(
+                    "SELECT count(*) FROM " + table + " WHERE device_id LIKE 'rollup-retry-%'", Integer.class));
+            assertEquals(DEVICES * 4, jdbcTemplate.queryForObject(
+                    "SELECT sum(sample_count) FROM " + table + " WHERE device_id LIKE 'rollup-retry-%'", Integer.class));
+        }
+    }
+}
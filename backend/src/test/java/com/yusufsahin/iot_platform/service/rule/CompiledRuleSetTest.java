@@ -0,0 +1,83 @@
+package com.yusufsahin.iot_platform.service.rule;
+
+import com.yusufsahin.iot_platform.model.AlertMessage.AlertSeverity;
+import com.yusufsahin.iot_platform.model.AlertMessage.AlertType;
+import com.yusufsahin.iot_platform.model.Metric;
+import com.yusufsahin.iot_platform.model.SensorData;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CompiledRuleSetTest {
+
+    private static final AlertRuleDefinition HIGH_TEMPERATURE = new AlertRuleDefinition("temperature-high",
+            Metric.TEMPERATURE, RuleOperator.GT, 30.0, 0.5, AlertSeverity.CRITICAL, AlertType.TEMPERATURE_HIGH,
+            "High temperature detected for device '{deviceId}': {value:%.2f}°C (Threshold: {threshold:%.1f}°C)",
+            null, null);
+
+    private static final AlertRuleDefinition LOW_BATTERY = new AlertRuleDefinition("battery-low",
+            Metric.BATTERY_LEVEL, RuleOperator.LT, 20, 2.0, AlertSeverity.WARNING, AlertType.BATTERY_LOW,
+            "Low battery level for device '{deviceId}': {value:%.0f}% (Threshold: {threshold:%.0f}%)",
+            null, null);
+
+    @Test
+    void firesMatchingRulesAndRendersMessage() {
+        CompiledRuleSet ruleSet = CompiledRuleSet.compile(List.of(HIGH_TEMPERATURE, LOW_BATTERY));
+        List<String> messages = new ArrayList<>();
+
+        ruleSet.evaluate(reading("device-001", "A", 31.5, 15), (rule, data, value) ->
+                messages.add(rule.renderMessage(data, value)));
+
+        assertEquals(List.of(
+                String.format("High temperature detected for device 'device-001': %.2f°C (Threshold: %.1f°C)", 31.5, 30.0),
+                "Low battery level for device 'device-001': 15% (Threshold: 20%)"), messages);
+    }
+
+    @Test
+    void skipsMissingMetrics() {
+        CompiledRuleSet ruleSet = CompiledRuleSet.compile(List.of(HIGH_TEMPERATURE, LOW_BATTERY));
+        List<AlertType> fired = new ArrayList<>();
+
+        ruleSet.evaluate(reading("device-001", "A", null, null), (rule, data, value) -> fired.add(rule.getAlertType()));
+
+        assertTrue(fired.isEmpty());
+    }
+
+    @Test
+    void deviceRuleOverridesGlobalRuleOfSameType() {
+        AlertRuleDefinition deviceHighTemperature = new AlertRuleDefinition("device-002-temperature-high",
+                Metric.TEMPERATURE, RuleOperator.GT, 40.0, null, AlertSeverity.WARNING, AlertType.TEMPERATURE_HIGH,
+                "Oven '{deviceId}' too hot: {value}", "device-002", null);
+        CompiledRuleSet ruleSet = CompiledRuleSet.compile(List.of(HIGH_TEMPERATURE, LOW_BATTERY, deviceHighTemperature));
+        List<String> fired = new ArrayList<>();
+
+        ruleSet.evaluate(reading("device-002", "A", 35.0, 10), (rule, data, value) -> fired.add(rule.getDefinition().id()));
+        ruleSet.evaluate(reading("device-001", "A", 35.0, 50), (rule, data, value) -> fired.add(rule.getDefinition().id()));
+
+        assertEquals(List.of("battery-low", "temperature-high"), fired);
+    }
+
+    @Test
+    void rejectsUnknownPlaceholder() {
+        AlertRuleDefinition broken = new AlertRuleDefinition("broken", Metric.HUMIDITY, RuleOperator.GT, 70.0, null,
+                AlertSeverity.INFO, AlertType.HUMIDITY_HIGH, "Humidity {humidity}", null, null);
+
+        assertThrows(IllegalArgumentException.class, () -> CompiledRuleSet.compile(List.of(broken)));
+    }
+
+    private static SensorData reading(String deviceId, String location, Double temperature, Integer batteryLevel) {
+        SensorData sensorData = new SensorData();
+        sensorData.setDeviceId(deviceId);
+        sensorData.setLocation(location);
+        sensorData.setTemperature(temperature);
+        sensorData.setBatteryLevel(batteryLevel);
+        sensorData.setTimestamp(LocalDateTime.now());
+        return sensorData;
+    }
+}
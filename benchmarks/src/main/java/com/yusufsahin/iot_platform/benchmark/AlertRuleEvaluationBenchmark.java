@@ -0,0 +1,131 @@
+package com.yusufsahin.iot_platform.benchmark;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.yusufsahin.iot_platform.model.AlertMessage;
+import com.yusufsahin.iot_platform.model.SensorData;
+import com.yusufsahin.iot_platform.service.rule.AlertRuleDefinition;
+import com.yusufsahin.iot_platform.service.rule.CompiledRuleSet;
+import com.yusufsahin.iot_platform.service.rule.RuleMatchHandler;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+// Compiled rule set vs the hardcoded if-chain AlertService used before the rule engine.
+// Both sides do the same work: test every threshold and render the message of each rule that fires.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class AlertRuleEvaluationBenchmark {
+
+    private static final int READINGS = 1024;
+
+    // Share of readings that breach at least one threshold
+    @Param({"0.01", "0.2"})
+    public double breachRatio;
+
+    private SensorData[] readings;
+    private CompiledRuleSet ruleSet;
+    private int cursor;
+
+    private Blackhole blackhole;
+    private RuleMatchHandler handler;
+
+    @Setup
+    public void setUp(Blackhole blackhole) throws IOException {
+        try (InputStream in = getClass().getResourceAsStream("/alert-rules.json")) {
+            List<AlertRuleDefinition> definitions = new ObjectMapper().readValue(in, new TypeReference<>() {});
+            ruleSet = CompiledRuleSet.compile(definitions);
+        }
+        SplittableRandom random = new SplittableRandom(42);
+        readings = new SensorData[READINGS];
+        for (int i = 0; i < READINGS; i++) {
+            boolean breach = random.nextDouble() < breachRatio;
+            SensorData sensorData = new SensorData();
+            sensorData.setDeviceId("device-" + (i % 100));
+            sensorData.setLocation("A");
+            sensorData.setTemperature(breach ? 31.0 + random.nextDouble() : 10.0 + random.nextDouble(15.0));
+            sensorData.setHumidity(35.0 + random.nextDouble(30.0));
+            sensorData.setPressure(990.0 + random.nextDouble(30.0));
+            sensorData.setBatteryLevel(25 + random.nextInt(75));
+            sensorData.setTimestamp(LocalDateTime.now());
+            readings[i] = sensorData;
+        }
+        this.blackhole = blackhole;
+        this.handler = (rule, data, value) -> this.blackhole.consume(rule.renderMessage(data, value));
+    }
+
+    private SensorData next() {
+        SensorData sensorData = readings[cursor];
+        cursor = (cursor + 1) & (READINGS - 1);
+        return sensorData;
+    }
+
+    @Benchmark
+    public void compiledRuleSet() {
+        ruleSet.evaluate(next(), handler);
+    }
+
+    @Benchmark
+    public void legacyIfChain(Blackhole bh) {
+        LegacyIfChain.check(next(), bh);
+    }
+
+    // Verbatim threshold chain from the former AlertService.checkForAndProcessAlerts, minus persistence
+    static final class LegacyIfChain {
+
+        private static final double HIGH_TEMPERATURE_THRESHOLD = 30.0;
+        private static final double LOW_TEMPERATURE_THRESHOLD = 5.0;
+        private static final int LOW_BATTERY_THRESHOLD = 20;
+        private static final double HIGH_HUMIDITY_THRESHOLD = 70.0;
+        private static final double LOW_HUMIDITY_THRESHOLD = 30.0;
+        private static final double HIGH_PRESSURE_THRESHOLD = 1030.0;
+        private static final double LOW_PRESSURE_THRESHOLD = 980.0;
+
+        static void check(SensorData sensorData, Blackhole bh) {
+            String deviceId = sensorData.getDeviceId();
+            if (sensorData.getTemperature() != null && sensorData.getTemperature() > HIGH_TEMPERATURE_THRESHOLD) {
+                fire(bh, String.format("High temperature detected for device '%s': %.2f°C (Threshold: %.1f°C)",
+                        deviceId, sensorData.getTemperature(), HIGH_TEMPERATURE_THRESHOLD), AlertMessage.AlertType.TEMPERATURE_HIGH);
+            }
+            if (sensorData.getTemperature() != null && sensorData.getTemperature() < LOW_TEMPERATURE_THRESHOLD) {
+                fire(bh, String.format("Low temperature detected for device '%s': %.2f°C (Threshold: %.1f°C)",
+                        deviceId, sensorData.getTemperature(), LOW_TEMPERATURE_THRESHOLD), AlertMessage.AlertType.TEMPERATURE_LOW);
+            }
+            if (sensorData.getBatteryLevel() != null && sensorData.getBatteryLevel() < LOW_BATTERY_THRESHOLD) {
+                fire(bh, String.format("Low battery level for device '%s': %d%% (Threshold: %d%%)",
+                        deviceId, sensorData.getBatteryLevel(), LOW_BATTERY_THRESHOLD), AlertMessage.AlertType.BATTERY_LOW);
+            }
+            if (sensorData.getHumidity() != null && sensorData.getHumidity() > HIGH_HUMIDITY_THRESHOLD) {
+                fire(bh, String.format("High humidity detected for device '%s': %.2f%% (Threshold: %.1f%%)",
+                        deviceId, sensorData.getHumidity(), HIGH_HUMIDITY_THRESHOLD), AlertMessage.AlertType.HUMIDITY_HIGH);
+            }
+            if (sensorData.getHumidity() != null && sensorData.getHumidity() < LOW_HUMIDITY_THRESHOLD) {
+                fire(bh, String.format("Low humidity detected for device '%s': %.2f%% (Threshold: %.1f%%)",
+                        deviceId, sensorData.getHumidity(), LOW_HUMIDITY_THRESHOLD), AlertMessage.AlertType.HUMIDITY_LOW);
+            }
+            if (sensorData.getPressure() != null && sensorData.getPressure() > HIGH_PRESSURE_THRESHOLD) {
+                fire(bh, String.format("High pressure detected for device '%s': %.2f hPa (Threshold: %.1f hPa)",
+                        deviceId, sensorData.getPressure(), HIGH_PRESSURE_THRESHOLD), AlertMessage.AlertType.PRESSURE_HIGH);
+            }
+            if (sensorData.getPressure() != null && sensorData.getPressure() < LOW_PRESSURE_THRESHOLD) {
+                fire(bh, String.format("Low pressure detected for device '%s': %.2f hPa (Threshold: %.1f hPa)",
+                        deviceId, sensorData.getPressure(), LOW_PRESSURE_THRESHOLD), AlertMessage.AlertType.PRESSURE_LOW);
+            }
+        }
+
+        private static void fire(Blackhole bh, String message, AlertMessage.AlertType alertType) {
+            bh.consume(message);
+            bh.consume(alertType);
+        }
+    }
+}
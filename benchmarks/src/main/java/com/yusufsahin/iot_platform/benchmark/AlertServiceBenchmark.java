@@ -0,0 +1,90 @@
+package com.yusufsahin.iot_platform.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.yusufsahin.iot_platform.model.AlertMessage;
+import com.yusufsahin.iot_platform.model.SensorData;
+import com.yusufsahin.iot_platform.service.AlertBackpressurePolicy;
+import com.yusufsahin.iot_platform.service.AlertPipeline;
+import com.yusufsahin.iot_platform.service.AlertService;
+import com.yusufsahin.iot_platform.service.AlertStateTracker;
+import com.yusufsahin.iot_platform.service.anomaly.StreamingAnomalyDetector;
+import com.yusufsahin.iot_platform.service.rule.AlertRuleEngine;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.core.io.DefaultResourceLoader;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.time.LocalDateTime;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+// AlertService.checkForAndProcessAlerts as called per reading on ingest: rule evaluation, anomaly scoring
+// and the open/ongoing/resolved state machine. The pipeline only swallows the alert writes, so persistence is not measured.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class AlertServiceBenchmark {
+
+    private static final int READINGS = 4096;
+    private static final int DEVICES = 256;
+
+    // Share of readings that breach at least one threshold
+    @Param({"0.01", "0.2"})
+    public double breachRatio;
+
+    private AlertService alertService;
+    private SensorData[] readings;
+    private int cursor;
+
+    @Setup
+    public void setUp(Blackhole blackhole) throws IOException {
+        ObjectMapper objectMapper = new ObjectMapper();
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        AlertPipeline pipeline = new AlertPipeline(null, null, null, null, null, objectMapper, meterRegistry,
+                1, 1, 1, AlertBackpressurePolicy.DROP_INFO,
+                Files.createTempDirectory("alert-spill").toString()) {
+            @Override
+            public void submit(AlertMessage alert) {
+                blackhole.consume(alert);
+            }
+
+            @Override
+            public void submitUpdate(AlertMessage row, AlertMessage state) {
+                blackhole.consume(state);
+            }
+        };
+        AlertStateTracker tracker = new AlertStateTracker(pipeline, null, meterRegistry, 300_000);
+        AlertRuleEngine ruleEngine = new AlertRuleEngine(objectMapper, new DefaultResourceLoader(), "classpath:alert-rules.json");
+        StreamingAnomalyDetector anomalyDetector = new StreamingAnomalyDetector(meterRegistry, true, 0.05, 30, 0.5,
+                4.0, 2.0, 10.0, 3.0, AlertMessage.AlertSeverity.WARNING, 1_000_000);
+        alertService = new AlertService(null, ruleEngine, anomalyDetector, tracker);
+
+        SplittableRandom random = new SplittableRandom(42);
+        readings = new SensorData[READINGS];
+        for (int i = 0; i < READINGS; i++) {
+            boolean breach = random.nextDouble() < breachRatio;
+            SensorData sensorData = new SensorData();
+            sensorData.setId((long) i);
+            sensorData.setDeviceId("device-" + (i % DEVICES));
+            sensorData.setLocation("A");
+            sensorData.setTemperature(breach ? 31.0 + random.nextDouble() : 10.0 + random.nextDouble(15.0));
+            sensorData.setHumidity(35.0 + random.nextDouble(30.0));
+            sensorData.setPressure(990.0 + random.nextDouble(30.0));
+            sensorData.setBatteryLevel(25 + random.nextInt(75));
+            sensorData.setTimestamp(LocalDateTime.now());
+            readings[i] = sensorData;
+        }
+    }
+
+    @Benchmark
+    public void checkForAndProcessAlerts() {
+        SensorData sensorData = readings[cursor];
+        cursor = (cursor + 1) & (READINGS - 1);
+        alertService.checkForAndProcessAlerts(sensorData);
+    }
+}
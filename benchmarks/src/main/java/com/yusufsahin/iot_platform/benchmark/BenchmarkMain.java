@@ -0,0 +1,31 @@
+package com.yusufsahin.iot_platform.benchmark;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// Entry point of benchmarks.jar: plain JMH, but unless -rf/-rff are given the results are also written as JSON
+// to target/jmh-result.json (relative to the working directory), so runs on different commits can be diffed.
+public final class BenchmarkMain {
+
+    private static final String DEFAULT_RESULT_FILE = "target/jmh-result.json";
+
+    private BenchmarkMain() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        List<String> jmhArgs = new ArrayList<>(Arrays.asList(args));
+        if (!jmhArgs.contains("-rf")) {
+            jmhArgs.add("-rf");
+            jmhArgs.add("json");
+        }
+        if (!jmhArgs.contains("-rff")) {
+            jmhArgs.add("-rff");
+            jmhArgs.add(DEFAULT_RESULT_FILE);
+            Files.createDirectories(Path.of(DEFAULT_RESULT_FILE).getParent());
+        }
+        org.openjdk.jmh.Main.main(jmhArgs.toArray(String[]::new));
+    }
+}
@@ -0,0 +1,124 @@
+package com.yusufsahin.iot_platform.benchmark;
+
+import com.yusufsahin.iot_platform.IotPlatformApplication;
+import com.yusufsahin.iot_platform.dto.SensorDataDto;
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.test.EmbeddedKafkaBroker;
+import org.springframework.kafka.test.EmbeddedKafkaKraftBroker;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+// Full ingest path: producer -> embedded Kafka broker -> batch listener -> striped workers -> embedded Postgres.
+// One invocation publishes a burst of readings and returns once all of them are committed, so the score
+// is the sustained end-to-end ingest rate in readings per second. The simulator is disabled.
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class EndToEndIngestBenchmark {
+
+    private static final String TOPIC = "sensor-data";
+    private static final int BURST = 2000;
+    private static final long TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(60);
+
+    @Param({"1000"})
+    public int devices;
+
+    @Param({"BINARY"})
+    public String format;
+
+    private EmbeddedPostgres postgres;
+    private EmbeddedKafkaBroker broker;
+    private ConfigurableApplicationContext context;
+    private KafkaTemplate<String, SensorDataDto> kafkaTemplate;
+    private JdbcTemplate jdbcTemplate;
+
+    private SensorDataDto[] readings;
+    private long lastId;
+
+    @Setup(Level.Trial)
+    @SuppressWarnings("unchecked")
+    public void setUp() throws IOException {
+        postgres = EmbeddedPostgres.builder().start();
+        broker = new EmbeddedKafkaKraftBroker(1, 6);
+        broker.afterPropertiesSet();
+
+        // Command line arguments, so they take precedence over application.properties
+        context = new SpringApplicationBuilder(IotPlatformApplication.class).run(
+                "--spring.datasource.url=" + postgres.getJdbcUrl("postgres", "postgres") + "&currentSchema=iot_platform",
+                "--spring.datasource.username=postgres",
+                "--spring.datasource.password=",
+                "--spring.kafka.bootstrap-servers=" + broker.getBrokersAsString(),
+                "--iot.kafka.topic.sensor-data.format=" + format,
+                "--iot.simulator.enabled=false",
+                "--server.port=0",
+                "--logging.level.root=WARN");
+        kafkaTemplate = context.getBean("sensorDataKafkaTemplate", KafkaTemplate.class);
+        jdbcTemplate = context.getBean(JdbcTemplate.class);
+
+        SplittableRandom random = new SplittableRandom(42);
+        LocalDateTime now = LocalDateTime.now();
+        readings = new SensorDataDto[BURST];
+        for (int i = 0; i < BURST; i++) {
+            readings[i] = new SensorDataDto(null, "device-" + String.format("%06d", random.nextInt(devices)),
+                    10.0 + random.nextDouble(25.0), 30.0 + random.nextDouble(50.0), 990.0 + random.nextDouble(40.0),
+                    now, "ZONE-" + (char) ('A' + i % 26), 25 + random.nextInt(75));
+        }
+        lastId = maxId();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        if (context != null) {
+            context.close();
+        }
+        if (broker != null) {
+            broker.destroy();
+        }
+        if (postgres != null) {
+            postgres.close();
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BURST)
+    public void ingestBurst() throws InterruptedException, TimeoutException {
+        for (SensorDataDto reading : readings) {
+            kafkaTemplate.send(TOPIC, reading.deviceId(), reading);
+        }
+        kafkaTemplate.flush();
+
+        // Readings are inserted with increasing ids, so the burst is done once BURST rows exist past the last one
+        long target = lastId;
+        long deadline = System.nanoTime() + TIMEOUT_NANOS;
+        long persisted;
+        while ((persisted = countAfter(target)) < BURST) {
+            if (System.nanoTime() > deadline) {
+                throw new TimeoutException("Only " + persisted + " of " + BURST + " readings persisted");
+            }
+            Thread.sleep(1);
+        }
+        lastId = maxId();
+    }
+
+    private long countAfter(long id) {
+        Long count = jdbcTemplate.queryForObject("SELECT count(*) FROM iot_platform.sensors WHERE id > ?", Long.class, id);
+        return count != null ? count : 0;
+    }
+
+    private long maxId() {
+        Long id = jdbcTemplate.queryForObject("SELECT coalesce(max(id), 0) FROM iot_platform.sensors", Long.class);
+        return id != null ? id : 0;
+    }
+}
@@ -0,0 +1,54 @@
+package com.yusufsahin.iot_platform.benchmark;
+
+import com.yusufsahin.iot_platform.dto.SensorDataDto;
+import com.yusufsahin.iot_platform.dto.converter.SensorDataDtoConverter;
+import com.yusufsahin.iot_platform.model.SensorData;
+import org.openjdk.jmh.annotations.*;
+
+import java.time.LocalDateTime;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+// DTO <-> entity mapping done once per reading on ingest (toEntity) and on every read endpoint (toDto)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class SensorDataConverterBenchmark {
+
+    private static final int READINGS = 1024;
+
+    private SensorDataDto[] dtos;
+    private SensorData[] entities;
+    private int cursor;
+
+    @Setup
+    public void setUp() {
+        SplittableRandom random = new SplittableRandom(42);
+        LocalDateTime now = LocalDateTime.now();
+        dtos = new SensorDataDto[READINGS];
+        entities = new SensorData[READINGS];
+        for (int i = 0; i < READINGS; i++) {
+            dtos[i] = new SensorDataDto((long) i, "device-" + String.format("%06d", random.nextInt(100_000)),
+                    10.0 + random.nextDouble(25.0), 30.0 + random.nextDouble(50.0), 990.0 + random.nextDouble(40.0),
+                    now.plusSeconds(i), "ZONE-" + (char) ('A' + i % 26), random.nextInt(101));
+            entities[i] = SensorDataDtoConverter.toEntity(dtos[i]);
+        }
+    }
+
+    @Benchmark
+    public SensorData toEntity() {
+        SensorDataDto dto = dtos[cursor];
+        cursor = (cursor + 1) & (READINGS - 1);
+        return SensorDataDtoConverter.toEntity(dto);
+    }
+
+    @Benchmark
+    public SensorDataDto toDto() {
+        SensorData entity = entities[cursor];
+        cursor = (cursor + 1) & (READINGS - 1);
+        return SensorDataDtoConverter.toDto(entity);
+    }
+}
@@ -0,0 +1,75 @@
+package com.yusufsahin.iot_platform.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.yusufsahin.iot_platform.dto.SensorDataDto;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+// Jackson binding of one SensorDataDto JSON document.
+// fromString is the original listener path (String payload), fromBytes is what SensorDataDeserializer does
+// for JSON records, and boundReader shows what a pre-bound ObjectReader would save on top of that.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class SensorDataJsonBenchmark {
+
+    private static final int READINGS = 1024;
+
+    private ObjectMapper objectMapper;
+    private ObjectReader reader;
+    private String[] json;
+    private byte[][] utf8;
+    private int cursor;
+
+    @Setup
+    public void setUp() throws IOException {
+        objectMapper = new ObjectMapper()
+                .registerModule(new JavaTimeModule())
+                .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+        reader = objectMapper.readerFor(SensorDataDto.class);
+
+        SplittableRandom random = new SplittableRandom(42);
+        LocalDateTime now = LocalDateTime.now();
+        json = new String[READINGS];
+        utf8 = new byte[READINGS][];
+        for (int i = 0; i < READINGS; i++) {
+            SensorDataDto dto = new SensorDataDto(null, "device-" + String.format("%06d", random.nextInt(100_000)),
+                    10.0 + random.nextDouble(25.0), 30.0 + random.nextDouble(50.0), 990.0 + random.nextDouble(40.0),
+                    now.plusSeconds(i), "ZONE-" + (char) ('A' + i % 26), random.nextInt(101));
+            json[i] = objectMapper.writeValueAsString(dto);
+            utf8[i] = json[i].getBytes(StandardCharsets.UTF_8);
+        }
+    }
+
+    @Benchmark
+    public SensorDataDto fromString() throws IOException {
+        String document = json[cursor];
+        cursor = (cursor + 1) & (READINGS - 1);
+        return objectMapper.readValue(document, SensorDataDto.class);
+    }
+
+    @Benchmark
+    public SensorDataDto fromBytes() throws IOException {
+        byte[] document = utf8[cursor];
+        cursor = (cursor + 1) & (READINGS - 1);
+        return objectMapper.readValue(document, SensorDataDto.class);
+    }
+
+    @Benchmark
+    public SensorDataDto boundReader() throws IOException {
+        byte[] document = utf8[cursor];
+        cursor = (cursor + 1) & (READINGS - 1);
+        return reader.readValue(document);
+    }
+}
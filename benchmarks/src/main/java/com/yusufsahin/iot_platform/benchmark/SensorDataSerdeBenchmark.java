@@ -0,0 +1,75 @@
+package com.yusufsahin.iot_platform.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.yusufsahin.iot_platform.dto.SensorDataDto;
+import com.yusufsahin.iot_platform.serde.SensorDataDeserializer;
+import com.yusufsahin.iot_platform.serde.SensorDataFormat;
+import com.yusufsahin.iot_platform.serde.SensorDataSerializer;
+import org.openjdk.jmh.annotations.*;
+
+import java.time.LocalDateTime;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+// JSON vs binary wire format of one sensor reading on the sensor-data topic.
+// Bytes per message are printed once per fork in setUp, ser/deser cost is the benchmark score.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class SensorDataSerdeBenchmark {
+
+    private static final int READINGS = 1024;
+    private static final String TOPIC = "sensor-data";
+
+    @Param({"JSON", "BINARY"})
+    public SensorDataFormat format;
+
+    private SensorDataSerializer serializer;
+    private SensorDataDeserializer deserializer;
+    private SensorDataDto[] readings;
+    private byte[][] encoded;
+    private int cursor;
+
+    @Setup
+    public void setUp() {
+        ObjectMapper objectMapper = new ObjectMapper()
+                .registerModule(new JavaTimeModule())
+                .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+        serializer = new SensorDataSerializer(format, objectMapper);
+        deserializer = new SensorDataDeserializer(objectMapper);
+
+        SplittableRandom random = new SplittableRandom(42);
+        LocalDateTime now = LocalDateTime.now();
+        readings = new SensorDataDto[READINGS];
+        encoded = new byte[READINGS][];
+        long totalBytes = 0;
+        for (int i = 0; i < READINGS; i++) {
+            readings[i] = new SensorDataDto(null, "device-" + String.format("%06d", random.nextInt(100_000)),
+                    10.0 + random.nextDouble(25.0), 30.0 + random.nextDouble(50.0), 990.0 + random.nextDouble(40.0),
+                    now.plusNanos(random.nextLong(1_000_000_000L) / 1_000_000 * 1_000_000), "ZONE-" + (char) ('A' + i % 26),
+                    random.nextInt(101));
+            encoded[i] = serializer.serialize(TOPIC, readings[i]);
+            totalBytes += encoded[i].length;
+        }
+        System.out.printf("%n%s: %.1f bytes per message%n", format, (double) totalBytes / READINGS);
+    }
+
+    @Benchmark
+    public byte[] serialize() {
+        SensorDataDto reading = readings[cursor];
+        cursor = (cursor + 1) & (READINGS - 1);
+        return serializer.serialize(TOPIC, reading);
+    }
+
+    @Benchmark
+    public SensorDataDto deserialize() {
+        byte[] data = encoded[cursor];
+        cursor = (cursor + 1) & (READINGS - 1);
+        return deserializer.deserialize(TOPIC, data);
+    }
+}
@@ -0,0 +1,64 @@
+package com.yusufsahin.iot_platform.benchmark;
+
+import com.yusufsahin.iot_platform.service.StripedIngestExecutor;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+// Throughput of one polled batch fanned out over 1, 4 and 16 key-hashed workers.
+// Each worker share models what persistence costs: a fixed database round trip per transaction
+// plus per-record CPU for conversion and rule evaluation. Scores are records per second.
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class StripedIngestBenchmark {
+
+    private static final int BATCH_SIZE = 500;
+    private static final int DEVICES = 1000;
+
+    @Param({"1", "4", "16"})
+    public int workers;
+
+    // Simulated commit round trip per worker transaction
+    @Param({"2000"})
+    public long roundTripMicros;
+
+    // Simulated CPU per record, in Blackhole.consumeCPU tokens
+    @Param({"200"})
+    public long cpuPerRecord;
+
+    private StripedIngestExecutor executor;
+    private List<String> batch;
+
+    @Setup
+    public void setUp() {
+        executor = new StripedIngestExecutor(workers);
+        batch = new ArrayList<>(BATCH_SIZE);
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            batch.add("device-" + ((i * 7919) % DEVICES));
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws InterruptedException {
+        executor.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public void ingestBatch() {
+        executor.execute(batch, deviceId -> deviceId, share -> {
+            for (int i = 0; i < share.size(); i++) {
+                Blackhole.consumeCPU(cpuPerRecord);
+            }
+            LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(roundTripMicros));
+        });
+    }
+}
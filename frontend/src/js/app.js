@@ -337,17 +337,20 @@ function connectWebSocket() {
         updateConnectionStatus(true);
         
         // Subscribe to sensor data topic
+        // Readings arrive conflated per tick as a JSON array, newest reading per device.
+        // /topic/sensor-data/device/{id} and /topic/sensor-data/location/{location} carry a single device or location.
         stompClient.subscribe('/topic/sensor-data', message => {
-            const sensorData = JSON.parse(message.body);
+            const payload = JSON.parse(message.body);
             if (isRealtimeView) {
-                processSensorData(sensorData);
+                (Array.isArray(payload) ? payload : [payload]).forEach(sensorData => processSensorData(sensorData));
             }
         });
         
         // Subscribe to alert topic
         stompClient.subscribe('/topic/alert', message => {
-            const alertData = JSON.parse(message.body);
-            processAlertData(alertData);
+            // Alerts arrive batched as a JSON array
+            const payload = JSON.parse(message.body);
+            (Array.isArray(payload) ? payload : [payload]).forEach(processAlertData);
         });
     }, error => {
         console.error('WebSocket connection error:', error);
@@ -386,7 +389,7 @@ async function fetchInitialData() {
                     // Process each alert
                     alertsData.forEach(alert => {
                         // Extract and add deviceId
-                        alert.deviceId = extractDeviceIdFromMessage(alert.message);
+                        alert.deviceId = alert.deviceId || extractDeviceIdFromMessage(alert.message);
                         historicalAlertMessages.push(alert); // Store in historicalAlertMessages
                     });
                     
@@ -399,7 +402,15 @@ async function fetchInitialData() {
         } else {
             allSensorData = [];
             realtimeAlertMessages = [];
-            processInitialData([]);
+
+            // Seed the live view with each device's current reading
+            let latest = [];
+            const latestResponse = await fetch(`${API_URL}/devices/latest`);
+            if (latestResponse.ok) {
+                latest = await latestResponse.json();
+                allSensorData = latest;
+            }
+            processInitialData(latest);
         }
     } catch (error) {
         console.error('Error fetching initial data:', error);
@@ -410,11 +421,28 @@ async function fetchHistoricalData() {
     try {
         updateLoadingState(true);
         
+        // A single device over a date range is served from the pre-aggregated rollups
+        if (selectedDevice !== 'all' && startDateInput.value && endDateInput.value) {
+            const data = await fetchAggregatedData(selectedDevice, startDateInput.value, endDateInput.value);
+            setTimeout(() => {
+                processHistoricalData(data);
+
+                fetchHistoricalAlerts();
+            }, 10);
+            return;
+        }
+
         // Sensor data URL
         let url = `${API_URL}/sensor-data`;
         if (selectedDevice !== 'all') {
             url = `${API_URL}/sensor-data/device/${selectedDevice}`;
         }
+        // Let the server bound the scan to the selected days
+        if (startDateInput.value && endDateInput.value) {
+            const end = new Date(endDateInput.value);
+            end.setDate(end.getDate() + 1);
+            url += `?from=${startDateInput.value}T00:00:00&to=${end.toISOString().slice(0, 10)}T00:00:00`;
+        }
 
         const response = await fetch(url);
         if (!response.ok) {
@@ -446,6 +474,37 @@ async function fetchHistoricalData() {
     }
 }
 
+// Returns one reading-shaped point per bucket carrying the bucket averages
+async function fetchAggregatedData(deviceId, startDate, endDate) {
+    const from = `${startDate}T00:00:00`;
+    const end = new Date(endDate);
+    end.setDate(end.getDate() + 1);
+    const to = `${end.toISOString().slice(0, 10)}T00:00:00`;
+
+    const response = await fetch(`${API_URL}/sensor-data/aggregates?deviceId=${encodeURIComponent(deviceId)}&from=${from}&to=${to}`);
+    if (!response.ok) {
+        throw new Error(`HTTP error! Status: ${response.status}`);
+    }
+    const aggregates = await response.json();
+
+    const fields = {
+        TEMPERATURE: 'temperature',
+        HUMIDITY: 'humidity',
+        PRESSURE: 'pressure',
+        BATTERY_LEVEL: 'batteryLevel'
+    };
+    const points = new Map();
+    aggregates.buckets.forEach(bucket => {
+        let point = points.get(bucket.bucketStart);
+        if (!point) {
+            point = { deviceId, timestamp: bucket.bucketStart };
+            points.set(bucket.bucketStart, point);
+        }
+        point[fields[bucket.metric]] = bucket.avg;
+    });
+    return Array.from(points.values());
+}
+
 async function fetchHistoricalAlerts() {
     try {
         // Alerts URL
@@ -473,7 +532,7 @@ async function fetchHistoricalAlerts() {
             historicalAlertMessages = [];
 
             alertsData.forEach(alert => {
-                alert.deviceId = extractDeviceIdFromMessage(alert.message);
+                alert.deviceId = alert.deviceId || extractDeviceIdFromMessage(alert.message);
                 historicalAlertMessages.push(alert);
             });
 
@@ -637,7 +696,7 @@ function updateAlertsForSelectedDevice() {
     // Ensure all alert messages have deviceId property
     currentAlertMessages.forEach(alert => {
         if (!alert.deviceId) {
-            alert.deviceId = extractDeviceIdFromMessage(alert.message);
+            alert.deviceId = alert.deviceId || extractDeviceIdFromMessage(alert.message);
         }
     });
     
@@ -967,12 +1026,18 @@ function processAlertData(alertData) {
         return;
     }
 
-    // Extract deviceId from the alert message
-    const deviceId = extractDeviceIdFromMessage(alertData.message);
+    // Older alerts carry the device only inside the message text
+    const deviceId = alertData.deviceId || extractDeviceIdFromMessage(alertData.message);
     if (deviceId) {
         alertData.deviceId = deviceId;
     }
 
+    // Ongoing/resolved updates reuse the alert id; replace the earlier entry
+    const existingIndex = realtimeAlertMessages.findIndex(alert => alert.id === alertData.id);
+    if (existingIndex >= 0) {
+        realtimeAlertMessages.splice(existingIndex, 1);
+    }
+
     // Add the new alert to the beginning of the real-time array
     realtimeAlertMessages.unshift(alertData);
 
@@ -11,5 +11,5 @@ SET search_path TO iot_platform, public;
 -- Create extension if needed
 -- CREATE EXTENSION IF NOT EXISTS "uuid-ossp";
 
--- Create tables will be handled by Hibernate with ddl-auto=create-drop
+-- Tables and indexes are created by the backend's Flyway migrations (backend/src/main/resources/db/migration)
 -- But we can add any additional SQL statements here if needed